@@ -0,0 +1,247 @@
+package com.benchmark.common.concurrency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caps the calls a server works on at once with a limit that follows the observed latency (a gradient limit):
+ * while calls take about as long as they usually do the limit grows, by the square root of itself per window,
+ * and when the window's average latency rises above {@code tolerance} times the long-term average it shrinks in
+ * proportion, down to half per window. A call over the limit is refused at once, before it can queue behind
+ * slow ones, so a latency spike costs the calls that arrive during it a fast error instead of everyone's p99.
+ * <p>
+ * Each window of {@code windowMillis} with at least {@code minSamples} completions updates the limit; growth is
+ * smoothed by {@code smoothing}, shrinking is not. The long-term average is an exponential average over
+ * {@code longWindow} windows. The limit does not grow in a window where fewer than half of it were in use, so
+ * idle periods do not inflate it.
+ * <pre>
+ * concurrency.enabled=false
+ * concurrency.initialLimit=100
+ * concurrency.minLimit=10
+ * concurrency.maxLimit=1000
+ * concurrency.tolerance=2.0
+ * concurrency.smoothing=0.2
+ * concurrency.windowMillis=500
+ * concurrency.minSamples=20
+ * concurrency.longWindow=60
+ * </pre>
+ * Usage: {@code long start = limiter.tryAcquire()}; when it is {@link #REJECTED} answer with the protocol's
+ * overload error, otherwise call {@link #release(long)} once the call completes, or {@link #releaseIgnored(long)}
+ * when it failed or was cancelled and its latency says nothing about the server.
+ *
+ * @author phonghv
+ */
+public final class ConcurrencyLimiter implements MeterBinder {
+
+    /** HTTP status of a shed REST call, and the code reported by the other protocols */
+    public static final int ERROR_CODE = 503;
+    public static final String ERROR_MESSAGE = "Server concurrency limit reached";
+
+    /** returned by {@link #tryAcquire()} for a call over the limit */
+    public static final long REJECTED = -1;
+    // returned when the limiter is off, release ignores it
+    private static final long UNLIMITED = 0;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final double smoothing;
+    private final long windowNanos;
+    private final int minSamples;
+    private final double longFactor;
+    private final LongSupplier nanoClock;
+    private final long origin;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder windowNanosSum = new LongAdder();
+    private final LongAdder windowSamples = new LongAdder();
+    private final LongAccumulator windowMaxInFlight = new LongAccumulator(Math::max, 0);
+    private final AtomicBoolean updating = new AtomicBoolean();
+
+    // written by the thread that closes a window, under updating
+    private volatile double limit;
+    private volatile long windowEnd;
+    private volatile double longRttNanos;
+    private volatile double shortRttNanos;
+
+    /**
+     * @param tolerance  how many times the long-term average latency a window may take before the limit shrinks
+     * @param smoothing  weight of a window's larger limit against the current one, in (0, 1]
+     * @param longWindow windows averaged into the long-term latency
+     * @param nanoClock  monotonic nanoseconds, {@code System::nanoTime}
+     */
+    public ConcurrencyLimiter(boolean enabled, int initialLimit, int minLimit, int maxLimit, double tolerance,
+                              double smoothing, long windowMillis, int minSamples, int longWindow,
+                              LongSupplier nanoClock) {
+        if (minLimit <= 0 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("concurrency limits must satisfy 0 < minLimit <= initialLimit <= maxLimit");
+        }
+        if (tolerance < 1 || smoothing <= 0 || smoothing > 1 || windowMillis <= 0 || minSamples <= 0 || longWindow <= 0) {
+            throw new IllegalArgumentException("concurrency.tolerance must be at least 1, smoothing in (0, 1], "
+                    + "windowMillis, minSamples and longWindow positive");
+        }
+        this.enabled = enabled;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.windowNanos = windowMillis * 1_000_000;
+        this.minSamples = minSamples;
+        this.longFactor = 2.0 / (longWindow + 1);
+        this.nanoClock = nanoClock;
+        this.origin = nanoClock.getAsLong();
+        this.windowEnd = windowNanos;
+    }
+
+    /**
+     * @param properties property lookup returning {@code null} for missing keys, e.g. {@code environment::getProperty}
+     */
+    public static ConcurrencyLimiter fromProperties(Function<String, String> properties) {
+        return new ConcurrencyLimiter(
+                Boolean.parseBoolean(get(properties, "concurrency.enabled", "false")),
+                Integer.parseInt(get(properties, "concurrency.initialLimit", "100")),
+                Integer.parseInt(get(properties, "concurrency.minLimit", "10")),
+                Integer.parseInt(get(properties, "concurrency.maxLimit", "1000")),
+                Double.parseDouble(get(properties, "concurrency.tolerance", "2.0")),
+                Double.parseDouble(get(properties, "concurrency.smoothing", "0.2")),
+                Long.parseLong(get(properties, "concurrency.windowMillis", "500")),
+                Integer.parseInt(get(properties, "concurrency.minSamples", "20")),
+                Integer.parseInt(get(properties, "concurrency.longWindow", "60")),
+                System::nanoTime);
+    }
+
+    private static String get(Function<String, String> properties, String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Admits a call if fewer than the limit are in flight.
+     *
+     * @return the start of the call, to hand to {@link #release(long)}, or {@link #REJECTED}
+     */
+    public long tryAcquire() {
+        if (!enabled) {
+            return UNLIMITED;
+        }
+        int current = inFlight.incrementAndGet();
+        if (current > (int) limit) {
+            inFlight.decrementAndGet();
+            rejected.increment();
+            return REJECTED;
+        }
+        windowMaxInFlight.accumulate(current);
+        // kept positive, 0 is UNLIMITED
+        return nanoClock.getAsLong() - origin + 1;
+    }
+
+    /**
+     * Ends a call admitted at {@code start} and counts its latency.
+     */
+    public void release(long start) {
+        if (start <= 0) {
+            return;
+        }
+        inFlight.decrementAndGet();
+        long now = nanoClock.getAsLong() - origin + 1;
+        windowNanosSum.add(now - start);
+        windowSamples.increment();
+        if (now >= windowEnd && updating.compareAndSet(false, true)) {
+            try {
+                closeWindow(now);
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    /**
+     * Ends a call admitted at {@code start} without counting its latency: it failed or was cancelled.
+     */
+    public void releaseIgnored(long start) {
+        if (start > 0) {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private void closeWindow(long now) {
+        long samples = windowSamples.sum();
+        if (samples < minSamples) {
+            // too few calls to judge, keep collecting
+            return;
+        }
+        double shortRtt = (double) windowNanosSum.sumThenReset() / windowSamples.sumThenReset();
+        long maxInFlight = windowMaxInFlight.getThenReset();
+        windowEnd = now + windowNanos;
+        shortRttNanos = shortRtt;
+
+        double longRtt = longRttNanos == 0 ? shortRtt : longRttNanos * (1 - longFactor) + shortRtt * longFactor;
+        if (longRtt > shortRtt * 2) {
+            // recovering from a spike the long-term average absorbed, let it come back down quickly
+            longRtt *= 0.95;
+        }
+        longRttNanos = longRtt;
+
+        double current = limit;
+        if (maxInFlight < current / 2) {
+            // the limit was not what held calls back, nothing learned about it
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double next = current * gradient + Math.sqrt(current);
+        if (next > current) {
+            // grow gradually, shrink at once
+            next = current * (1 - smoothing) + next * smoothing;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, next));
+    }
+
+    public int limit() {
+        return (int) limit;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("concurrency_limit", this, ConcurrencyLimiter::limit)
+                .description("Calls admitted at once, adapted to the observed latency")
+                .register(registry);
+        Gauge.builder("concurrency_in_flight", this, ConcurrencyLimiter::inFlight)
+                .description("Calls admitted and not yet completed")
+                .register(registry);
+        FunctionCounter.builder("concurrency_rejected_total", rejected, LongAdder::sum)
+                .description("Calls refused because the concurrency limit was reached")
+                .register(registry);
+        Gauge.builder("concurrency_rtt_seconds", this, limiter -> limiter.shortRttNanos / 1e9)
+                .description("Average latency of the last window, short, and the long-term average, long")
+                .tag("window", "short")
+                .register(registry);
+        Gauge.builder("concurrency_rtt_seconds", this, limiter -> limiter.longRttNanos / 1e9)
+                .description("Average latency of the last window, short, and the long-term average, long")
+                .tag("window", "long")
+                .register(registry);
+    }
+}
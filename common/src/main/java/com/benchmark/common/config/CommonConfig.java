@@ -0,0 +1,91 @@
+package com.benchmark.common.config;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.id.MsgIdGenerator;
+import com.benchmark.common.journal.MessageJournal;
+import com.benchmark.common.latency.LatencyModels;
+import com.benchmark.common.latency.SimulatedLatency;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Beans of the shared building blocks, the same in every backend and configured from its properties. A backend
+ * imports this and only declares what depends on its protocol: the idempotency cache of its response type and
+ * the filters or interceptors that apply the limits. Blocks that are {@code MeterBinder}s register their meters
+ * with the backend's registry.
+ *
+ * @author phonghv
+ */
+@Configuration
+public class CommonConfig {
+
+    /**
+     * Simulated downstream latency, selected through the {@code latency.*} properties.
+     */
+    @Bean
+    public SimulatedLatency simulatedLatency(Environment environment, MeterRegistry meterRegistry) {
+        return new SimulatedLatency(LatencyModels.fromProperties(environment::getProperty), meterRegistry);
+    }
+
+    /**
+     * Generator of the {@code msg_id} of responses, tagged with {@code msgid.instanceId}.
+     */
+    @Bean
+    public MsgIdGenerator msgIdGenerator(Environment environment) {
+        return MsgIdGenerator.fromProperties(environment::getProperty);
+    }
+
+    /**
+     * Daily message quota, selected through the {@code quota.*} properties.
+     */
+    @Bean
+    public QuotaStore quotaStore(Environment environment) {
+        return QuotaStore.fromProperties(environment::getProperty);
+    }
+
+    /**
+     * Message text rendering, configured through the {@code template.*} properties.
+     */
+    @Bean
+    public TemplateEngine templateEngine(Environment environment) {
+        return TemplateEngine.fromProperties(environment::getProperty);
+    }
+
+    /**
+     * Journal of accepted messages, configured through the {@code journal.*} properties; closed with the context.
+     */
+    @Bean
+    public MessageJournal messageJournal(Environment environment) {
+        return MessageJournal.fromProperties(environment::getProperty);
+    }
+
+    /**
+     * Token buckets per phone and per template, configured through the {@code ratelimit.*} properties.
+     */
+    @Bean
+    public RateLimiter rateLimiter(Environment environment) {
+        return RateLimiter.fromProperties(environment::getProperty);
+    }
+
+    /**
+     * Adaptive concurrency limit, configured through the {@code concurrency.*} properties.
+     */
+    @Bean
+    public ConcurrencyLimiter concurrencyLimiter(Environment environment) {
+        return ConcurrencyLimiter.fromProperties(environment::getProperty);
+    }
+
+    /**
+     * Caller deadlines, configured through {@code deadline.enabled}.
+     */
+    @Bean
+    public Deadlines deadlines(Environment environment) {
+        return Deadlines.fromProperties(environment::getProperty);
+    }
+}
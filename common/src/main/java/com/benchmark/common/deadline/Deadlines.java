@@ -0,0 +1,166 @@
+package com.benchmark.common.deadline;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Deadlines of the callers, so that work nobody waits for any more is skipped or cut short instead of run to the end.
+ * A deadline is a {@code System.nanoTime()} value, {@link #NONE} when the caller gave no timeout; each backend
+ * derives it from its protocol (the gRPC context, a REST header, a Thrift message field).
+ * <p>
+ * A message whose deadline passed before its work began is {@code skipped}; one whose deadline passes during the
+ * simulated delay stops sleeping at the deadline, {@code cut_short}; one that completes after its deadline is
+ * {@code wasted}, its response is built and sent for nobody. With {@code deadline.enabled=false} nothing is skipped
+ * or cut short but wasted work is still counted, to compare both.
+ * <pre>
+ * deadline.enabled=true
+ * </pre>
+ *
+ * @author phonghv
+ */
+public final class Deadlines implements MeterBinder {
+
+    /** deadline of a caller without a timeout */
+    public static final long NONE = Long.MAX_VALUE;
+
+    /** error code of a message abandoned at its deadline, same as the HTTP status of REST */
+    public static final int ERROR_CODE = 504;
+    public static final String ERROR_MESSAGE = "Deadline exceeded";
+
+    private final boolean enabled;
+    private final LongSupplier nanoClock;
+
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder cutShort = new LongAdder();
+    private final LongAdder wasted = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+
+    /**
+     * @param nanoClock monotonic nanoseconds, {@code System::nanoTime}
+     */
+    public Deadlines(boolean enabled, LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @param properties property lookup returning {@code null} for missing keys, e.g. {@code environment::getProperty}
+     */
+    public static Deadlines fromProperties(Function<String, String> properties) {
+        String enabled = properties.apply("deadline.enabled");
+        return new Deadlines(enabled == null || enabled.isBlank() || Boolean.parseBoolean(enabled.trim()),
+                System::nanoTime);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * The deadline {@code timeout} from now, {@link #NONE} when it is not positive.
+     */
+    public long after(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            return NONE;
+        }
+        long now = nanoClock.getAsLong();
+        long nanos = unit.toNanos(timeout);
+        return nanos >= NONE - now ? NONE : now + nanos;
+    }
+
+    /**
+     * Nanoseconds left before {@code deadline}, {@link #NONE} when there is none or deadlines are not acted on.
+     */
+    public long remainingNanos(long deadline) {
+        if (!enabled || deadline == NONE) {
+            return NONE;
+        }
+        return Math.max(0, deadline - nanoClock.getAsLong());
+    }
+
+    /**
+     * Checked before the work of a message begins; an expired message is counted as skipped.
+     *
+     * @return {@code true} when the caller already gave up and the message should not be started
+     */
+    public boolean skip(long deadline) {
+        if (remainingNanos(deadline) > 0) {
+            return false;
+        }
+        skipped.increment();
+        return true;
+    }
+
+    /**
+     * Sleeps {@code delayMillis}, or until {@code deadline} when that comes first. An interrupt, e.g. from the
+     * cancellation of the call, also counts as cut short before it is thrown.
+     *
+     * @return {@code false} when the delay was cut short
+     */
+    public boolean sleep(long delayMillis, long deadline) throws InterruptedException {
+        long delay = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        long remaining = remainingNanos(deadline);
+        long start = nanoClock.getAsLong();
+        try {
+            if (remaining < delay) {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+                cutShort(delay - remaining);
+                return false;
+            }
+            Thread.sleep(delayMillis);
+            return true;
+        } catch (InterruptedException e) {
+            cutShort(Math.max(0, delay - (nanoClock.getAsLong() - start)));
+            throw e;
+        }
+    }
+
+    /**
+     * Counts a message abandoned before its delay was over, {@code savedNanos} of it not spent.
+     */
+    public void cutShort(long savedNanos) {
+        cutShort.increment();
+        this.savedNanos.add(savedNanos);
+    }
+
+    /**
+     * Called when a message completes; counts it as wasted when its deadline has passed.
+     */
+    public void completed(long deadline) {
+        if (deadline != NONE && nanoClock.getAsLong() - deadline >= 0) {
+            wasted.increment();
+        }
+    }
+
+    /**
+     * Counts a message completed for a caller known to be gone, e.g. a cancelled call.
+     */
+    public void wasted() {
+        wasted.increment();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("deadline_messages_total", skipped, LongAdder::sum)
+                .description("Messages past their caller's deadline: skipped or cut short (saved), or completed anyway (wasted)")
+                .tag("outcome", "skipped")
+                .register(registry);
+        FunctionCounter.builder("deadline_messages_total", cutShort, LongAdder::sum)
+                .description("Messages past their caller's deadline: skipped or cut short (saved), or completed anyway (wasted)")
+                .tag("outcome", "cut_short")
+                .register(registry);
+        FunctionCounter.builder("deadline_messages_total", wasted, LongAdder::sum)
+                .description("Messages past their caller's deadline: skipped or cut short (saved), or completed anyway (wasted)")
+                .tag("outcome", "wasted")
+                .register(registry);
+        FunctionCounter.builder("deadline_saved_delay_seconds_total", savedNanos, adder -> adder.sum() / 1e9)
+                .description("Simulated delay not spent because the caller's deadline came first")
+                .register(registry);
+    }
+}
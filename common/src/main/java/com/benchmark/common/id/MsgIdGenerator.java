@@ -0,0 +1,153 @@
+package com.benchmark.common.id;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Generates the 20 character {@code msg_id} returned by the three stacks.
+ * <p>
+ * An id packs 100 bits into 20 Crockford base32 characters, most significant first, so ids sort
+ * lexicographically by creation time:
+ * <pre>
+ * | 42 bits millis since 2025-01-01 | 28 bits instance | 8 bits stripe | 22 bits sequence |
+ * </pre>
+ * Callers are spread over {@value #STRIPES} counters by thread id. Each counter holds
+ * {@code millis << 22 | sequence} and is advanced with a CAS to {@code max(previous + 1, now << 22)},
+ * so it never repeats a value even if the wall clock steps back, and contention is limited to threads
+ * sharing a stripe. Two ids of the same instance differ in stripe or counter value; ids of different
+ * instances differ in the instance bits.
+ * <p>
+ * Configured with {@code msgid.instanceId} (0 to 2^28-1). Without it the instance is derived from
+ * the hostname and the process id, which is unique in practice but not guaranteed; set it
+ * explicitly when the instances are known in advance.
+ *
+ * @author phonghv
+ */
+public final class MsgIdGenerator {
+
+    public static final int LENGTH = 20;
+    public static final int MAX_INSTANCE_ID = (1 << 28) - 1;
+
+    // 2025-01-01T00:00:00Z; the signed counter keeps millis positive for about 69 years from here
+    static final long EPOCH_MILLIS = 1_735_689_600_000L;
+
+    private static final int SEQUENCE_BITS = 22;
+    private static final int STRIPE_BITS = 8;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+    // one counter per 128 bytes, so neighbouring stripes do not share a cache line
+    private static final int PADDING = 16;
+    private static final byte[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".getBytes(StandardCharsets.US_ASCII);
+
+    private final int instanceId;
+    private final AtomicLongArray counters = new AtomicLongArray((STRIPES + 1) * PADDING);
+
+    public MsgIdGenerator(int instanceId) {
+        if (instanceId < 0 || instanceId > MAX_INSTANCE_ID) {
+            throw new IllegalArgumentException("msgid.instanceId must be between 0 and " + MAX_INSTANCE_ID
+                    + " but was " + instanceId);
+        }
+        this.instanceId = instanceId;
+    }
+
+    /**
+     * @param properties property lookup returning {@code null} for missing keys, e.g. {@code environment::getProperty}
+     */
+    public static MsgIdGenerator fromProperties(Function<String, String> properties) {
+        String configured = properties.apply("msgid.instanceId");
+        if (configured != null && !configured.isBlank()) {
+            return new MsgIdGenerator(Integer.parseInt(configured.trim()));
+        }
+        return new MsgIdGenerator(deriveInstanceId(hostname(), ProcessHandle.current().pid()));
+    }
+
+    static int deriveInstanceId(String hostname, long pid) {
+        long h = hostname.hashCode() * 0x9E3779B97F4A7C15L + pid;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return (int) (h & MAX_INSTANCE_ID);
+    }
+
+    private static String hostname() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            String env = System.getenv("HOSTNAME");
+            return env != null ? env : "unknown";
+        }
+    }
+
+    public int instanceId() {
+        return instanceId;
+    }
+
+    public String next() {
+        int stripe = (int) Thread.currentThread().threadId() & (STRIPES - 1);
+        int slot = (stripe + 1) * PADDING;
+        long now = (System.currentTimeMillis() - EPOCH_MILLIS) << SEQUENCE_BITS;
+        long previous;
+        long value;
+        do {
+            previous = counters.get(slot);
+            value = Math.max(previous + 1, now);
+        } while (!counters.compareAndSet(slot, previous, value));
+        return encode(value, stripe);
+    }
+
+    private String encode(long counter, int stripe) {
+        long millis = counter >>> SEQUENCE_BITS;
+        long sequence = counter & ((1L << SEQUENCE_BITS) - 1);
+        // 50 + 50 bits: millis and the top of the instance, then the rest of the instance, stripe and sequence
+        long high = millis << 8 | instanceId >>> 20;
+        long low = (long) (instanceId & 0xFFFFF) << 30 | (long) stripe << SEQUENCE_BITS | sequence;
+
+        byte[] chars = new byte[LENGTH];
+        for (int i = 9; i >= 0; i--) {
+            chars[i] = ALPHABET[(int) (high & 31)];
+            chars[i + 10] = ALPHABET[(int) (low & 31)];
+            high >>>= 5;
+            low >>>= 5;
+        }
+        return new String(chars, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Creation time encoded in an id produced by {@link #next()}.
+     */
+    public static long timestampMillis(String id) {
+        return (decode(id, 0) >>> 8) + EPOCH_MILLIS;
+    }
+
+    /**
+     * Instance id encoded in an id produced by {@link #next()}.
+     */
+    public static int instanceId(String id) {
+        return (int) ((decode(id, 0) & 0xFF) << 20 | decode(id, 10) >>> 30);
+    }
+
+    private static long decode(String id, int offset) {
+        if (id.length() != LENGTH) {
+            throw new IllegalArgumentException("Not a msg_id: " + id);
+        }
+        long value = 0;
+        for (int i = offset; i < offset + 10; i++) {
+            int digit = indexOf(id.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a msg_id: " + id);
+            }
+            value = value << 5 | digit;
+        }
+        return value;
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,291 @@
+package com.benchmark.common.idempotency;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the response of every send by {@code tracking_id}, so a retry of the same message gets the
+ * original response back instead of being sent again.
+ * <p>
+ * Entries live in {@value #BUCKETS} + 1 maps, each covering a quarter of {@code idempotency.windowSeconds};
+ * when the newest one ends, the oldest is dropped whole, so a duplicate is recognised for at least the
+ * window and at most a quarter longer, with no per-entry expiry. Memory is bounded by
+ * {@code idempotency.maxEntries}: a bucket that fills up before its time is closed early, which shortens
+ * the window under overload instead of growing the heap. Entries dropped that way are counted as evictions.
+ * <p>
+ * The entry is a future of the response, put before the send starts, so concurrent duplicates wait for the
+ * one execution in flight. Only responses accepted by {@code remembered} are kept and shared: a rejected
+ * message can be retried, and duplicates already waiting on it run the send themselves, as they do when the
+ * execution fails. A rejection can depend on the caller, e.g. a deadline exceeded for the first caller while
+ * a duplicate waits longer, so it is never handed to another one. Two duplicates arriving during a bucket
+ * switch may both be sent.
+ * <pre>
+ * idempotency.enabled=true
+ * idempotency.windowSeconds=300
+ * idempotency.maxEntries=100000
+ * </pre>
+ *
+ * @param <V> response type of the stack
+ * @author phonghv
+ */
+public final class IdempotencyCache<V> implements MeterBinder {
+
+    private static final int BUCKETS = 4;
+    // completes the execution waited on by duplicates when its response is not remembered
+    private static final Exception NOT_REMEMBERED = new Exception("response not remembered", null, false, false) {
+    };
+
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final int bucketCapacity;
+    private final Predicate<? super V> remembered;
+    private final Clock clock;
+    // newest first, replaced as a whole on every switch
+    private volatile Bucket<V>[] buckets;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public IdempotencyCache(boolean enabled, long windowMillis, int maxEntries, Predicate<? super V> remembered,
+                            Clock clock) {
+        if (windowMillis < BUCKETS) {
+            throw new IllegalArgumentException("idempotency window must be positive but was " + windowMillis + " ms");
+        }
+        if (maxEntries < BUCKETS + 1) {
+            throw new IllegalArgumentException("idempotency.maxEntries must be at least " + (BUCKETS + 1)
+                    + " but was " + maxEntries);
+        }
+        this.enabled = enabled;
+        this.bucketMillis = windowMillis / BUCKETS;
+        this.bucketCapacity = maxEntries / (BUCKETS + 1);
+        this.remembered = remembered;
+        this.clock = clock;
+        this.buckets = emptyBuckets(clock.millis());
+    }
+
+    /**
+     * @param properties property lookup returning {@code null} for missing keys, e.g. {@code environment::getProperty}
+     * @param remembered responses that are kept for duplicates, typically the successful ones
+     */
+    public static <V> IdempotencyCache<V> fromProperties(Function<String, String> properties,
+                                                         Predicate<? super V> remembered) {
+        return new IdempotencyCache<>(
+                Boolean.parseBoolean(get(properties, "idempotency.enabled", "true")),
+                Long.parseLong(get(properties, "idempotency.windowSeconds", "300")) * 1000,
+                Integer.parseInt(get(properties, "idempotency.maxEntries", "100000")),
+                remembered,
+                Clock.systemUTC());
+    }
+
+    private static String get(Function<String, String> properties, String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Runs {@code send} unless a message with the same key was sent within the window or is being sent,
+     * in which case its response is returned. Messages without a key are always sent.
+     */
+    public <E extends Exception> V execute(String key, Send<V, E> send) throws E, InterruptedException {
+        if (!enabled || key == null || key.isEmpty()) {
+            return send.run();
+        }
+        for (; ; ) {
+            CompletableFuture<V> execution = new CompletableFuture<>();
+            CompletableFuture<V> existing = claim(key, execution);
+            if (existing != null) {
+                hits.increment();
+                try {
+                    return existing.get();
+                } catch (ExecutionException e) {
+                    // the original send failed or was rejected and was forgotten, this one takes over
+                    continue;
+                }
+            }
+            misses.increment();
+            V response;
+            try {
+                response = send.run();
+            } catch (Throwable e) {
+                forget(key, execution);
+                execution.completeExceptionally(e);
+                throw e;
+            }
+            if (remembered.test(response)) {
+                execution.complete(response);
+            } else {
+                forget(key, execution);
+                execution.completeExceptionally(NOT_REMEMBERED);
+            }
+            return response;
+        }
+    }
+
+    /**
+     * Non-blocking {@link #execute}: {@code send} is only started when the key is new.
+     */
+    public CompletableFuture<V> executeAsync(String key, Supplier<CompletableFuture<V>> send) {
+        if (!enabled || key == null || key.isEmpty()) {
+            return send.get();
+        }
+        CompletableFuture<V> execution = new CompletableFuture<>();
+        CompletableFuture<V> existing = claim(key, execution);
+        if (existing != null) {
+            hits.increment();
+            return existing.exceptionallyCompose(e -> executeAsync(key, send));
+        }
+        misses.increment();
+        CompletableFuture<V> sent;
+        try {
+            sent = send.get();
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        // the caller gets its own response, duplicates only a remembered one
+        return sent.whenComplete((response, e) -> {
+            if (e == null && remembered.test(response)) {
+                execution.complete(response);
+            } else {
+                forget(key, execution);
+                execution.completeExceptionally(e != null ? e : NOT_REMEMBERED);
+            }
+        });
+    }
+
+    /**
+     * Keys remembered or in flight.
+     */
+    public long size() {
+        long size = 0;
+        for (Bucket<V> bucket : buckets) {
+            size += bucket.size.get();
+        }
+        return size;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("idempotency_cache_requests_total", hits, LongAdder::sum)
+                .description("Sends by tracking_id: hit for a duplicate answered from the cache, miss for a new one")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("idempotency_cache_requests_total", misses, LongAdder::sum)
+                .description("Sends by tracking_id: hit for a duplicate answered from the cache, miss for a new one")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("idempotency_cache_evictions_total", evictions, LongAdder::sum)
+                .description("Responses dropped before the end of the window because the cache was full")
+                .register(registry);
+        Gauge.builder("idempotency_cache_size", this, IdempotencyCache::size)
+                .description("tracking_ids remembered or in flight")
+                .register(registry);
+    }
+
+    /**
+     * @return the execution already registered for {@code key}, or {@code null} when {@code execution} was registered
+     */
+    private CompletableFuture<V> claim(String key, CompletableFuture<V> execution) {
+        Bucket<V>[] current = current();
+        for (int i = 1; i < current.length; i++) {
+            if (current[i].size.get() > 0) {
+                CompletableFuture<V> existing = current[i].entries.get(key);
+                if (existing != null) {
+                    return existing;
+                }
+            }
+        }
+        Bucket<V> newest = current[0];
+        CompletableFuture<V> existing = newest.entries.putIfAbsent(key, execution);
+        if (existing == null && newest.size.incrementAndGet() >= bucketCapacity) {
+            shift(current, clock.millis(), true);
+        }
+        return existing;
+    }
+
+    private void forget(String key, CompletableFuture<V> execution) {
+        for (Bucket<V> bucket : buckets) {
+            if (bucket.entries.remove(key, execution)) {
+                bucket.size.decrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private Bucket<V>[] current() {
+        Bucket<V>[] current = buckets;
+        long now = clock.millis();
+        return now < current[0].endMillis ? current : shift(current, now, false);
+    }
+
+    private synchronized Bucket<V>[] shift(Bucket<V>[] seen, long now, boolean full) {
+        if (buckets != seen) {
+            // switched by another caller meanwhile
+            return buckets;
+        }
+        if (now - seen[0].endMillis >= bucketMillis * BUCKETS) {
+            // idle for longer than the window, nothing kept is still valid
+            buckets = emptyBuckets(now);
+            return buckets;
+        }
+        Bucket<V>[] next = seen.clone();
+        if (full) {
+            // the oldest bucket goes before its time
+            evictions.add(next[BUCKETS].size.get());
+            push(next, new Bucket<>(now + bucketMillis));
+        } else {
+            long endMillis = seen[0].endMillis;
+            do {
+                endMillis += bucketMillis;
+                push(next, new Bucket<>(endMillis));
+            } while (endMillis <= now);
+        }
+        buckets = next;
+        return next;
+    }
+
+    private static <V> void push(Bucket<V>[] buckets, Bucket<V> newest) {
+        System.arraycopy(buckets, 0, buckets, 1, BUCKETS);
+        buckets[0] = newest;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Bucket<V>[] emptyBuckets(long now) {
+        Bucket<V>[] empty = (Bucket<V>[]) new Bucket<?>[BUCKETS + 1];
+        for (int i = 0; i < empty.length; i++) {
+            empty[i] = new Bucket<>(now + bucketMillis - i * bucketMillis);
+        }
+        return empty;
+    }
+
+    /**
+     * A send that may throw a checked exception of the caller.
+     */
+    @FunctionalInterface
+    public interface Send<V, E extends Exception> {
+        V run() throws E, InterruptedException;
+    }
+
+    private static final class Bucket<V> {
+        final long endMillis;
+        final ConcurrentHashMap<String, CompletableFuture<V>> entries = new ConcurrentHashMap<>();
+        // entries put and not forgotten, without the cost of ConcurrentHashMap.size()
+        final AtomicInteger size = new AtomicInteger();
+
+        Bucket(long endMillis) {
+            this.endMillis = endMillis;
+        }
+    }
+}
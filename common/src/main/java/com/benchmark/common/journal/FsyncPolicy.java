@@ -0,0 +1,25 @@
+package com.benchmark.common.journal;
+
+/**
+ * When appended records are forced from the page cache to disk, {@code journal.fsync}.
+ *
+ * @author phonghv
+ */
+public enum FsyncPolicy {
+
+    /** never explicitly, the OS writes the mapped pages back on its own; survives a crash of the JVM, not of the host */
+    NONE,
+    /** every {@code journal.fsyncIntervalMillis} in the background; a host crash loses at most that much */
+    INTERVAL,
+    /** an append returns once its record is on disk, concurrent appends share one fsync */
+    BATCH;
+
+    public static FsyncPolicy parse(String value) {
+        return switch (value.trim().toLowerCase()) {
+            case "none" -> NONE;
+            case "interval" -> INTERVAL;
+            case "batch" -> BATCH;
+            default -> throw new IllegalArgumentException("Unsupported journal.fsync: " + value);
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package com.benchmark.common.journal;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Replays a journal directory: every complete record of every segment, oldest first. A record torn by a
+ * crash ends its segment, reading goes on with the next one.
+ *
+ * @author phonghv
+ */
+public final class JournalReader {
+
+    private JournalReader() {
+    }
+
+    /**
+     * @return the number of records passed to {@code sink}
+     */
+    public static long replay(Path dir, Consumer<JournalRecord> sink) throws IOException {
+        long[] count = new long[1];
+        for (long index : segments(dir)) {
+            Path file = JournalSegment.file(dir, index);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                JournalSegment.scan(segment, file, record -> {
+                    count[0]++;
+                    sink.accept(record);
+                });
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * Indexes of the segment files in {@code dir}, ascending; empty when the directory does not exist.
+     */
+    static List<Long> segments(Path dir) throws IOException {
+        List<Long> indexes = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return indexes;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            files.mapToLong(JournalSegment::index)
+                    .filter(index -> index >= 0)
+                    .sorted()
+                    .forEach(indexes::add);
+        }
+        return indexes;
+    }
+}
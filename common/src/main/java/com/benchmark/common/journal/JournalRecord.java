@@ -0,0 +1,180 @@
+package com.benchmark.common.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * An accepted message as written to the journal.
+ * <p>
+ * On disk: {@code int length, int crc32c, payload}, the payload being the four strings then the
+ * {@code template_data} entry count and entries. A string is an unsigned short byte length and its UTF-8
+ * bytes, {@code 0xFFFF} standing for {@code null}. A length of 0 marks the end of the written part of a segment.
+ *
+ * @param templateData may be empty, never {@code null} when read back
+ * @author phonghv
+ */
+public record JournalRecord(String msgId, String phone, String templateId, String trackingId,
+                            Map<String, String> templateData) {
+
+    static final int HEADER_BYTES = 8;
+
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final int MAX_STRING_BYTES = NULL_LENGTH - 1;
+
+    /**
+     * Header and payload of one record, ready to be copied into a segment. The strings are encoded straight
+     * into the record, which is the only allocation.
+     */
+    static byte[] encode(String msgId, String phone, String templateId, String trackingId,
+                         Map<String, String> templateData) {
+        int entries = templateData == null ? 0 : templateData.size();
+        if (entries > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Too many template_data entries to journal: " + entries);
+        }
+        int payload = stringBytes(msgId) + stringBytes(phone) + stringBytes(templateId) + stringBytes(trackingId) + 2;
+        if (entries > 0) {
+            for (Map.Entry<String, String> entry : templateData.entrySet()) {
+                payload += stringBytes(entry.getKey()) + stringBytes(entry.getValue());
+            }
+        }
+        byte[] record = new byte[HEADER_BYTES + payload];
+        int position = putInt(record, 0, payload);
+        position = putString(record, position + 4, msgId);
+        position = putString(record, position, phone);
+        position = putString(record, position, templateId);
+        position = putString(record, position, trackingId);
+        record[position++] = (byte) (entries >>> 8);
+        record[position++] = (byte) entries;
+        if (entries > 0) {
+            for (Map.Entry<String, String> entry : templateData.entrySet()) {
+                position = putString(record, position, entry.getKey());
+                position = putString(record, position, entry.getValue());
+            }
+        }
+        if (position != record.length) {
+            // the map changed while being encoded
+            throw new ConcurrentModificationException("template_data changed while journaling");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record, HEADER_BYTES, payload);
+        putInt(record, 4, (int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * Reads the record at the position of {@code buffer} and moves past it.
+     *
+     * @return {@code null}, with the position unchanged, at the end of the written part or at a record that is
+     * torn or corrupt
+     */
+    static JournalRecord decode(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        int payload = buffer.getInt(start);
+        if (payload <= 0 || payload > buffer.remaining() - HEADER_BYTES) {
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(start + HEADER_BYTES, payload));
+        if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+            return null;
+        }
+        ByteBuffer in = buffer.slice(start + HEADER_BYTES, payload);
+        String msgId = getString(in);
+        String phone = getString(in);
+        String templateId = getString(in);
+        String trackingId = getString(in);
+        int entries = Short.toUnsignedInt(in.getShort());
+        Map<String, String> templateData = new LinkedHashMap<>();
+        for (int i = 0; i < entries; i++) {
+            templateData.put(getString(in), getString(in));
+        }
+        buffer.position(start + HEADER_BYTES + payload);
+        return new JournalRecord(msgId, phone, templateId, trackingId, Collections.unmodifiableMap(templateData));
+    }
+
+    // length prefix and UTF-8 bytes, unpaired surrogates counted as '?' like String.getBytes
+    private static int stringBytes(String value) {
+        if (value == null) {
+            return 2;
+        }
+        int bytes = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += c >= 0x800 ? 2 : 1;
+                }
+            }
+        }
+        if (bytes > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("Value too long to journal: " + bytes + " bytes");
+        }
+        return 2 + bytes;
+    }
+
+    private static int putString(byte[] out, int position, String value) {
+        if (value == null) {
+            out[position] = (byte) (NULL_LENGTH >>> 8);
+            out[position + 1] = (byte) NULL_LENGTH;
+            return position + 2;
+        }
+        int start = position;
+        position += 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out[position++] = (byte) c;
+            } else if (c < 0x800) {
+                out[position++] = (byte) (0xC0 | c >> 6);
+                out[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out[position++] = (byte) (0xF0 | codePoint >> 18);
+                out[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                out[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                out[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                out[position++] = '?';
+            } else {
+                out[position++] = (byte) (0xE0 | c >> 12);
+                out[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                out[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        int length = position - start - 2;
+        out[start] = (byte) (length >>> 8);
+        out[start + 1] = (byte) length;
+        return position;
+    }
+
+    private static int putInt(byte[] out, int position, int value) {
+        out[position] = (byte) (value >>> 24);
+        out[position + 1] = (byte) (value >>> 16);
+        out[position + 2] = (byte) (value >>> 8);
+        out[position + 3] = (byte) value;
+        return position + 4;
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = Short.toUnsignedInt(in.getShort());
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+package com.benchmark.common.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * One journal file, mapped whole into memory: a header of {@code magic, version}, then records up to the
+ * first zero length. The file is created at its full size, so appending is a copy into the mapping.
+ * Writes are made by one thread at a time under the journal's lock; {@link #force} may run concurrently.
+ *
+ * @author phonghv
+ */
+final class JournalSegment implements AutoCloseable {
+
+    static final String SUFFIX = ".journal";
+    static final int MAGIC = 0x4D4A4E4C; // "MJNL"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_BYTES = 8;
+
+    final long index;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int position;
+    // up to where the mapping was last forced, guarded by this
+    private int forced;
+
+    private JournalSegment(long index, FileChannel channel, MappedByteBuffer buffer, int position) {
+        this.index = index;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.position = position;
+        this.forced = position;
+    }
+
+    static Path file(Path dir, long index) {
+        return dir.resolve(String.format("%020d", index) + SUFFIX);
+    }
+
+    /**
+     * @return the index of a segment file name, or -1 for any other file
+     */
+    static long index(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(SUFFIX) || name.length() != 20 + SUFFIX.length()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name, 0, 20, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static JournalSegment create(Path dir, long index, int size) throws IOException {
+        FileChannel channel = FileChannel.open(file(dir, index),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC).putInt(4, VERSION);
+            return new JournalSegment(index, channel, buffer, FILE_HEADER_BYTES);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the newest segment of a previous run to append after its last complete record. A record torn by
+     * a crash is zeroed so it cannot be mistaken for one written later.
+     */
+    static JournalSegment recover(Path dir, long index, int size) throws IOException {
+        Path file = file(dir, index);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+            int end = scan(buffer, file, null);
+            if (end + JournalRecord.HEADER_BYTES <= buffer.capacity() && buffer.getLong(end) != 0) {
+                byte[] zeros = new byte[4096];
+                for (int i = end; i < buffer.capacity(); i += zeros.length) {
+                    buffer.put(i, zeros, 0, Math.min(zeros.length, buffer.capacity() - i));
+                }
+            }
+            return new JournalSegment(index, channel, buffer, end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Passes the records of a segment to {@code sink} in order.
+     *
+     * @param sink may be {@code null} to only find the end
+     * @return the position after the last complete record
+     */
+    static int scan(ByteBuffer segment, Path file, Consumer<JournalRecord> sink) throws IOException {
+        if (segment.capacity() < FILE_HEADER_BYTES || segment.getInt(0) != MAGIC) {
+            throw new IOException("Not a journal segment: " + file);
+        }
+        if (segment.getInt(4) != VERSION) {
+            throw new IOException("Unsupported journal version " + segment.getInt(4) + ": " + file);
+        }
+        ByteBuffer records = segment.duplicate().position(FILE_HEADER_BYTES);
+        JournalRecord record;
+        while ((record = JournalRecord.decode(records)) != null) {
+            if (sink != null) {
+                sink.accept(record);
+            }
+        }
+        return records.position();
+    }
+
+    boolean fits(int bytes) {
+        return position + bytes <= buffer.capacity();
+    }
+
+    void write(byte[] record) {
+        buffer.put(position, record);
+        position += record.length;
+    }
+
+    int position() {
+        return position;
+    }
+
+    /**
+     * Writes the mapping back to disk up to {@code end}, a {@link #position} read under the journal's lock.
+     */
+    synchronized void force(int end) {
+        if (end > forced) {
+            buffer.force(forced, end - forced);
+            forced = end;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the mapping stays valid until the buffer is collected, a late force() still works
+        channel.close();
+    }
+}
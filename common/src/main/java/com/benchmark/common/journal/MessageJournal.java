@@ -0,0 +1,334 @@
+package com.benchmark.common.journal;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Append-only journal of accepted messages and their {@code msg_id}, so they can be replayed with
+ * {@link JournalReader} after a crash.
+ * <p>
+ * Records go to segment files of {@code journal.segmentMegabytes} in {@code journal.dir}, each mapped into
+ * memory, so an append is an encode outside any lock and a copy into the mapping under a short one. A full
+ * segment is forced and a new one started. On startup the newest segment is reopened after its last complete
+ * record.
+ * <p>
+ * With {@code journal.fsync=batch} a single sync thread forces everything appended since its last pass and
+ * then releases every append that pass covered, so concurrent appends share one fsync (group commit) and the
+ * batch grows with the load. {@code interval} forces in the background every {@code journal.fsyncIntervalMillis}
+ * without holding appends, {@code none} leaves write-back to the OS.
+ * <pre>
+ * journal.enabled=false
+ * journal.dir=data/journal
+ * journal.segmentMegabytes=64
+ * journal.fsync=batch                (none | interval | batch)
+ * journal.fsyncIntervalMillis=100
+ * </pre>
+ *
+ * @author phonghv
+ */
+public final class MessageJournal implements MeterBinder, AutoCloseable {
+
+    private static final CompletableFuture<Void> WRITTEN = CompletableFuture.completedFuture(null);
+    private static final String LOCK_FILE = "journal.lock";
+
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentBytes;
+    private final FsyncPolicy fsync;
+    private final long fsyncIntervalNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock
+    private JournalSegment segment;
+    private long appended;
+    private boolean closed;
+    // appends waiting for their fsync, in append order
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final Thread syncer;
+    private final FileChannel lockChannel;
+
+    private final LongAdder appends = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder syncs = new LongAdder();
+    private volatile long synced;
+
+    private MessageJournal(Path dir, int segmentBytes, FsyncPolicy fsync, long fsyncIntervalMillis,
+                           FileChannel lockChannel, JournalSegment segment) {
+        this.enabled = dir != null;
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.lockChannel = lockChannel;
+        this.segment = segment;
+        this.syncer = !enabled || fsync == FsyncPolicy.NONE ? null : Thread.ofPlatform()
+                .name("journal-sync")
+                .daemon()
+                .start(this::syncLoop);
+    }
+
+    /**
+     * A journal that records nothing, {@code journal.enabled=false}.
+     */
+    public static MessageJournal disabled() {
+        return new MessageJournal(null, 0, FsyncPolicy.NONE, 0, null, null);
+    }
+
+    /**
+     * Opens the journal in {@code dir}, created if missing. Only one journal may be open on a directory.
+     */
+    public static MessageJournal open(Path dir, int segmentBytes, FsyncPolicy fsync, long fsyncIntervalMillis)
+            throws IOException {
+        if (segmentBytes < 4096) {
+            throw new IllegalArgumentException("journal segment must be at least 4096 bytes but was " + segmentBytes);
+        }
+        if (fsync == FsyncPolicy.INTERVAL && fsyncIntervalMillis <= 0) {
+            throw new IllegalArgumentException("journal.fsyncIntervalMillis must be positive but was "
+                    + fsyncIntervalMillis);
+        }
+        Files.createDirectories(dir);
+        FileChannel lockChannel = FileChannel.open(dir.resolve(LOCK_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock fileLock;
+            try {
+                fileLock = lockChannel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                fileLock = null;
+            }
+            if (fileLock == null) {
+                throw new IllegalStateException("Journal " + dir + " is already open in another process or instance");
+            }
+            List<Long> segments = JournalReader.segments(dir);
+            JournalSegment segment = segments.isEmpty()
+                    ? JournalSegment.create(dir, 1, segmentBytes)
+                    : JournalSegment.recover(dir, segments.getLast(), segmentBytes);
+            return new MessageJournal(dir, segmentBytes, fsync, fsyncIntervalMillis, lockChannel, segment);
+        } catch (IOException | RuntimeException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param properties property lookup returning {@code null} for missing keys, e.g. {@code environment::getProperty}
+     */
+    public static MessageJournal fromProperties(Function<String, String> properties) {
+        if (!Boolean.parseBoolean(get(properties, "journal.enabled", "false"))) {
+            return disabled();
+        }
+        Path dir = Path.of(get(properties, "journal.dir", "data/journal"));
+        try {
+            return open(dir,
+                    Math.toIntExact(Long.parseLong(get(properties, "journal.segmentMegabytes", "64")) << 20),
+                    FsyncPolicy.parse(get(properties, "journal.fsync", "batch")),
+                    Long.parseLong(get(properties, "journal.fsyncIntervalMillis", "100")));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open journal " + dir, e);
+        }
+    }
+
+    private static String get(Function<String, String> properties, String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Appends an accepted message, returning once it is as durable as {@code journal.fsync} makes it.
+     *
+     * @throws UncheckedIOException when a new segment or the fsync fails
+     */
+    public void append(String msgId, String phone, String templateId, String trackingId,
+                       Map<String, String> templateData) {
+        CompletableFuture<Void> durable = appendAsync(msgId, phone, templateId, trackingId, templateData);
+        if (durable != WRITTEN) {
+            try {
+                durable.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof IOException io
+                        ? new UncheckedIOException("Failed to sync journal " + dir, io)
+                        : e;
+            }
+        }
+    }
+
+    /**
+     * Non-blocking {@link #append}: the record is written when this returns, the future completes once it is
+     * as durable as {@code journal.fsync} makes it.
+     */
+    public CompletableFuture<Void> appendAsync(String msgId, String phone, String templateId, String trackingId,
+                                               Map<String, String> templateData) {
+        if (!enabled) {
+            return WRITTEN;
+        }
+        byte[] record = JournalRecord.encode(msgId, phone, templateId, trackingId, templateData);
+        if (record.length > segmentBytes - JournalSegment.FILE_HEADER_BYTES) {
+            throw new IllegalArgumentException("Record of " + record.length + " bytes does not fit a journal segment");
+        }
+        CompletableFuture<Void> durable = fsync == FsyncPolicy.BATCH ? new CompletableFuture<>() : WRITTEN;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal " + dir + " is closed");
+            }
+            if (!segment.fits(record.length)) {
+                roll();
+            }
+            segment.write(record);
+            appended++;
+            if (durable != WRITTEN) {
+                pending.add(new Pending(appended, durable));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start a journal segment in " + dir, e);
+        } finally {
+            lock.unlock();
+        }
+        appends.increment();
+        bytes.add(record.length);
+        if (durable != WRITTEN) {
+            LockSupport.unpark(syncer);
+        }
+        return durable;
+    }
+
+    // under lock
+    private void roll() throws IOException {
+        JournalSegment full = segment;
+        if (fsync != FsyncPolicy.NONE) {
+            // everything before the new segment is on disk, so the sync thread only has to force the new one
+            full.force(full.position());
+        }
+        segment = JournalSegment.create(dir, full.index + 1, segmentBytes);
+        full.close();
+    }
+
+    private void syncLoop() {
+        while (true) {
+            if (fsync == FsyncPolicy.INTERVAL) {
+                LockSupport.parkNanos(this, fsyncIntervalNanos);
+            } else if (pending.isEmpty()) {
+                LockSupport.park(this);
+            }
+            JournalSegment current;
+            long target;
+            int end;
+            boolean stopping;
+            lock.lock();
+            try {
+                current = segment;
+                target = appended;
+                end = current.position();
+                stopping = closed;
+            } finally {
+                lock.unlock();
+            }
+            if (target > synced) {
+                IOException failure = null;
+                try {
+                    current.force(end);
+                    syncs.increment();
+                } catch (UncheckedIOException e) {
+                    failure = e.getCause();
+                }
+                synced = target;
+                Pending next;
+                while ((next = pending.peek()) != null && next.sequence <= target) {
+                    pending.poll();
+                    if (failure == null) {
+                        next.durable.complete(null);
+                    } else {
+                        next.durable.completeExceptionally(failure);
+                    }
+                }
+            }
+            if (stopping) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records not yet forced to disk.
+     */
+    public long unsynced() {
+        lock.lock();
+        try {
+            return syncer == null ? 0 : appended - synced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("journal_appends_total", appends, LongAdder::sum)
+                .description("Accepted messages appended to the journal")
+                .register(registry);
+        FunctionCounter.builder("journal_append_bytes_total", bytes, LongAdder::sum)
+                .description("Bytes appended to the journal")
+                .register(registry);
+        FunctionCounter.builder("journal_syncs_total", syncs, LongAdder::sum)
+                .description("Journal fsyncs, each covering every append since the previous one")
+                .register(registry);
+        Gauge.builder("journal_unsynced_records", this, MessageJournal::unsynced)
+                .description("Appended records not yet forced to disk")
+                .register(registry);
+    }
+
+    /**
+     * Forces what was appended, unless {@code journal.fsync=none}, and releases the directory.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        if (syncer != null) {
+            LockSupport.unpark(syncer);
+            try {
+                syncer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            segment.close();
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    private record Pending(long sequence, CompletableFuture<Void> durable) {
+    }
+}
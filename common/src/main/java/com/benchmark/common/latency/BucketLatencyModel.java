@@ -0,0 +1,75 @@
+package com.benchmark.common.latency;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Piecewise-uniform latency: pick a bucket by weight, then a uniform delay inside it.
+ * <p>
+ * Buckets are written as {@code weight:min-max} separated by commas, {@code max} exclusive, e.g.
+ * {@value #DEFAULT_SPEC} which is the original four-bucket mix of the benchmark.
+ *
+ * @author phonghv
+ */
+public final class BucketLatencyModel implements LatencyModel {
+
+    public static final String DEFAULT_SPEC = "0.95:100-500,0.03:500-1000,0.0195:1000-3000,0.0005:3001-5001";
+
+    private final double[] cumulative;
+    private final long[] min;
+    private final int[] spread;
+
+    public BucketLatencyModel(String spec) {
+        String[] parts = spec.split(",");
+        this.cumulative = new double[parts.length];
+        this.min = new long[parts.length];
+        this.spread = new int[parts.length];
+
+        double total = 0;
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i].trim();
+            int colon = part.indexOf(':');
+            int dash = part.indexOf('-', colon);
+            if (colon < 0 || dash < 0) {
+                throw new IllegalArgumentException("Invalid latency bucket '" + part + "', expected weight:min-max");
+            }
+            double weight = Double.parseDouble(part.substring(0, colon));
+            long lo = Long.parseLong(part.substring(colon + 1, dash).trim());
+            long hi = Long.parseLong(part.substring(dash + 1).trim());
+            if (weight < 0 || lo < 0 || hi <= lo) {
+                throw new IllegalArgumentException("Invalid latency bucket '" + part + "'");
+            }
+            total += weight;
+            cumulative[i] = total;
+            min[i] = lo;
+            spread[i] = Math.toIntExact(hi - lo);
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Latency buckets must have a positive total weight: " + spec);
+        }
+        // normalise so the weights do not have to sum to exactly 1
+        for (int i = 0; i < cumulative.length; i++) {
+            cumulative[i] /= total;
+        }
+        cumulative[cumulative.length - 1] = 1.0;
+    }
+
+    public static BucketLatencyModel standard() {
+        return new BucketLatencyModel(DEFAULT_SPEC);
+    }
+
+    @Override
+    public long nextDelayMillis() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double p = random.nextDouble();
+        int i = 0;
+        while (p >= cumulative[i] && i < cumulative.length - 1) {
+            i++;
+        }
+        return min[i] + random.nextInt(spread[i]);
+    }
+
+    @Override
+    public String name() {
+        return "buckets";
+    }
+}
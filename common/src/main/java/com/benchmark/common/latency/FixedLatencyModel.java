@@ -0,0 +1,28 @@
+package com.benchmark.common.latency;
+
+/**
+ * Constant latency.
+ *
+ * @author phonghv
+ */
+public final class FixedLatencyModel implements LatencyModel {
+
+    private final long delayMillis;
+
+    public FixedLatencyModel(long delayMillis) {
+        if (delayMillis < 0) {
+            throw new IllegalArgumentException("Fixed latency must not be negative: " + delayMillis);
+        }
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public long nextDelayMillis() {
+        return delayMillis;
+    }
+
+    @Override
+    public String name() {
+        return "fixed";
+    }
+}
@@ -0,0 +1,20 @@
+package com.benchmark.common.latency;
+
+/**
+ * Source of simulated downstream latency.
+ * Implementations must be safe to call from any number of threads without shared mutable state.
+ *
+ * @author phonghv
+ */
+public interface LatencyModel {
+
+    /**
+     * @return the next delay to apply, in milliseconds
+     */
+    long nextDelayMillis();
+
+    /**
+     * @return short name used as the {@code model} tag on published metrics
+     */
+    String name();
+}
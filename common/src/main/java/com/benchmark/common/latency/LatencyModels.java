@@ -0,0 +1,52 @@
+package com.benchmark.common.latency;
+
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * Builds a {@link LatencyModel} from configuration properties:
+ * <pre>
+ * latency.model=buckets|lognormal|fixed|trace     (default buckets)
+ * latency.buckets=0.95:100-500,...                (buckets, default is the original four-bucket mix)
+ * latency.lognormal.medianMillis=200              (lognormal)
+ * latency.lognormal.sigma=0.6                     (lognormal)
+ * latency.lognormal.maxMillis=5000                (lognormal)
+ * latency.fixed.millis=300                        (fixed)
+ * latency.trace.file=/path/to/trace.txt           (trace)
+ * </pre>
+ *
+ * @author phonghv
+ */
+public final class LatencyModels {
+
+    private LatencyModels() {
+    }
+
+    /**
+     * @param properties property lookup returning {@code null} for missing keys, e.g. {@code environment::getProperty}
+     */
+    public static LatencyModel fromProperties(Function<String, String> properties) {
+        String model = get(properties, "latency.model", "buckets").trim().toLowerCase();
+        return switch (model) {
+            case "buckets" -> new BucketLatencyModel(get(properties, "latency.buckets", BucketLatencyModel.DEFAULT_SPEC));
+            case "lognormal" -> new LogNormalLatencyModel(
+                    Double.parseDouble(get(properties, "latency.lognormal.medianMillis", "200")),
+                    Double.parseDouble(get(properties, "latency.lognormal.sigma", "0.6")),
+                    Long.parseLong(get(properties, "latency.lognormal.maxMillis", "5000")));
+            case "fixed" -> new FixedLatencyModel(Long.parseLong(get(properties, "latency.fixed.millis", "300")));
+            case "trace" -> {
+                String file = properties.apply("latency.trace.file");
+                if (file == null || file.isBlank()) {
+                    throw new IllegalArgumentException("latency.trace.file is required for latency.model=trace");
+                }
+                yield TraceReplayLatencyModel.load(Path.of(file));
+            }
+            default -> throw new IllegalArgumentException("Unsupported latency.model: " + model);
+        };
+    }
+
+    private static String get(Function<String, String> properties, String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.isBlank() ? defaultValue : value;
+    }
+}
@@ -0,0 +1,36 @@
+package com.benchmark.common.latency;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Lognormal latency with the given median and shape, capped at {@code maxMillis}.
+ *
+ * @author phonghv
+ */
+public final class LogNormalLatencyModel implements LatencyModel {
+
+    private final double mu;
+    private final double sigma;
+    private final long maxMillis;
+
+    public LogNormalLatencyModel(double medianMillis, double sigma, long maxMillis) {
+        if (medianMillis <= 0 || sigma < 0 || maxMillis <= 0) {
+            throw new IllegalArgumentException("Invalid lognormal latency: median=" + medianMillis
+                    + ", sigma=" + sigma + ", max=" + maxMillis);
+        }
+        this.mu = Math.log(medianMillis);
+        this.sigma = sigma;
+        this.maxMillis = maxMillis;
+    }
+
+    @Override
+    public long nextDelayMillis() {
+        double delay = Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+        return Math.min(maxMillis, Math.round(delay));
+    }
+
+    @Override
+    public String name() {
+        return "lognormal";
+    }
+}
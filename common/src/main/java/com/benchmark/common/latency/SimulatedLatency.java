@@ -0,0 +1,77 @@
+package com.benchmark.common.latency;
+
+import com.benchmark.common.deadline.Deadlines;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies a {@link LatencyModel} and publishes the latency actually applied as the
+ * {@code simulated_latency} histogram, tagged with the model name, so the three stacks
+ * can be checked against the same load profile.
+ *
+ * @author phonghv
+ */
+public final class SimulatedLatency {
+
+    private final LatencyModel model;
+    private final Timer applied;
+
+    public SimulatedLatency(LatencyModel model, MeterRegistry meterRegistry) {
+        this.model = model;
+        this.applied = Timer.builder("simulated_latency")
+                .description("Simulated downstream latency actually applied")
+                .tag("model", model.name())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(meterRegistry);
+    }
+
+    public LatencyModel model() {
+        return model;
+    }
+
+    /**
+     * Draws the next delay without applying it, for callers that schedule the completion
+     * themselves; they report the elapsed time through {@link #record(long)}.
+     */
+    public long nextDelayMillis() {
+        return model.nextDelayMillis();
+    }
+
+    /**
+     * Blocks the calling thread for the next delay of the model.
+     */
+    public void sleep() throws InterruptedException {
+        long delay = model.nextDelayMillis();
+        long start = System.nanoTime();
+        try {
+            Thread.sleep(delay);
+        } finally {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Blocks the calling thread for the next delay of the model, or until {@code deadline} when that comes first.
+     *
+     * @param deadline {@code System.nanoTime()} deadline of the caller, {@link Deadlines#NONE} for none
+     * @return {@code false} when the delay was cut short at the deadline
+     */
+    public boolean sleep(Deadlines deadlines, long deadline) throws InterruptedException {
+        long delay = model.nextDelayMillis();
+        long start = System.nanoTime();
+        try {
+            return deadlines.sleep(delay, deadline);
+        } finally {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    public void record(long appliedNanos) {
+        applied.record(appliedNanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,60 @@
+package com.benchmark.common.latency;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Replays latencies from a recorded trace file: one delay in milliseconds per line,
+ * blank lines and lines starting with {@code #} are ignored.
+ * <p>
+ * Samples are drawn uniformly at random from the trace instead of through a shared cursor,
+ * so the recorded distribution is reproduced without a contended counter on the hot path.
+ *
+ * @author phonghv
+ */
+public final class TraceReplayLatencyModel implements LatencyModel {
+
+    private final long[] samples;
+
+    public TraceReplayLatencyModel(long[] samples) {
+        if (samples.length == 0) {
+            throw new IllegalArgumentException("Latency trace is empty");
+        }
+        this.samples = samples.clone();
+    }
+
+    public static TraceReplayLatencyModel load(Path file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read latency trace " + file, e);
+        }
+        long[] samples = new long[lines.size()];
+        int n = 0;
+        for (String line : lines) {
+            String value = line.trim();
+            if (value.isEmpty() || value.startsWith("#")) {
+                continue;
+            }
+            samples[n++] = Long.parseLong(value);
+        }
+        return new TraceReplayLatencyModel(Arrays.copyOf(samples, n));
+    }
+
+    @Override
+    public long nextDelayMillis() {
+        return samples[ThreadLocalRandom.current().nextInt(samples.length)];
+    }
+
+    @Override
+    public String name() {
+        return "trace";
+    }
+}
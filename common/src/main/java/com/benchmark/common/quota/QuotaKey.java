@@ -0,0 +1,62 @@
+package com.benchmark.common.quota;
+
+/**
+ * What a daily quota is counted against, selected through {@code quota.key}.
+ *
+ * @author phonghv
+ */
+public enum QuotaKey {
+
+    /** one quota per recipient phone */
+    PHONE,
+    /** one quota per template */
+    TEMPLATE,
+    /** one quota per phone and template pair */
+    PHONE_TEMPLATE;
+
+    public static QuotaKey parse(String value) {
+        return switch (value.trim().toLowerCase()) {
+            case "phone" -> PHONE;
+            case "template" -> TEMPLATE;
+            case "phone-template" -> PHONE_TEMPLATE;
+            default -> throw new IllegalArgumentException("Unsupported quota.key: " + value);
+        };
+    }
+
+    /**
+     * 64-bit hash of the key of a message, never 0. Computed over the characters in place, no key string is built.
+     */
+    long hash(String phone, String templateId) {
+        return switch (this) {
+            case PHONE -> nonZero(mix(hash(phone)));
+            case TEMPLATE -> nonZero(mix(hash(templateId)));
+            case PHONE_TEMPLATE -> nonZero(mix(hash(phone) * 31 + mix(hash(templateId))));
+        };
+    }
+
+    // FNV-1a, 64 bit
+    private static long hash(String value) {
+        long h = 0xCBF29CE484222325L;
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                h ^= value.charAt(i);
+                h *= 0x100000001B3L;
+            }
+        }
+        return h;
+    }
+
+    // final mix of MurmurHash3, spreads FNV's weak high bits over the whole word
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long nonZero(long h) {
+        return h == 0 ? 1 : h;
+    }
+}
@@ -0,0 +1,328 @@
+package com.benchmark.common.quota;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Daily message quota per {@link QuotaKey}, counted in memory and reset at midnight of {@code quota.zone}.
+ * <p>
+ * Keys are stored as 64-bit hashes in open-addressing tables of primitive arrays, split in
+ * {@value #SEGMENTS} segments that grow independently. A slot is the key next to its count, 16 bytes
+ * and a single cache line to touch, with no object per key: about 33 bytes per key against 112 for a
+ * {@code ConcurrentHashMap<String, AtomicInteger>}. Two keys colliding on all 64 bits would share a
+ * quota; with ten million keys the odds are below one in a hundred thousand.
+ * <p>
+ * Counting a call on a known key is a CAS on its slot, without a lock, so contention is limited to
+ * callers of the same key. Only the first call of a key each day takes its segment's lock, to insert the
+ * key or grow the table. A growing table marks every slot it copies as moved, and callers that meet a
+ * moved slot retry on the new table, so no count is lost. At midnight the whole day is replaced by an
+ * empty one.
+ * <pre>
+ * quota.enabled=false             (never reject and report the full quota; true: enforce it)
+ * quota.dailyLimit=500
+ * quota.key=phone                 (phone | template | phone-template)
+ * quota.zone=                     (time zone of the daily reset, default the system zone)
+ * </pre>
+ *
+ * @author phonghv
+ */
+public final class QuotaStore implements MeterBinder {
+
+    /** returned by {@link #tryAcquire} when the quota of the day is used up */
+    public static final int REJECTED = -1;
+    /** error code of a rejected message in the response body, same as the HTTP status of REST */
+    public static final int ERROR_CODE = 429;
+    public static final String ERROR_MESSAGE = "Daily quota exceeded";
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SLOTS = 1 << 10;
+    private static final long MOVED = Long.MIN_VALUE;
+
+    private final boolean enforced;
+    private final int dailyLimit;
+    private final QuotaKey key;
+    private final ZoneId zone;
+    private final Clock clock;
+    private final AtomicReference<Day> day = new AtomicReference<>();
+    private final LongAdder rejected = new LongAdder();
+
+    public QuotaStore(boolean enforced, int dailyLimit, QuotaKey key, ZoneId zone, Clock clock) {
+        if (dailyLimit <= 0) {
+            throw new IllegalArgumentException("quota.dailyLimit must be positive but was " + dailyLimit);
+        }
+        this.enforced = enforced;
+        this.dailyLimit = dailyLimit;
+        this.key = key;
+        this.zone = zone;
+        this.clock = clock;
+        this.day.set(new Day(endOfDay(clock.millis())));
+    }
+
+    /**
+     * @param properties property lookup returning {@code null} for missing keys, e.g. {@code environment::getProperty}
+     */
+    public static QuotaStore fromProperties(Function<String, String> properties) {
+        String zone = get(properties, "quota.zone", ZoneId.systemDefault().getId());
+        return new QuotaStore(
+                Boolean.parseBoolean(get(properties, "quota.enabled", "false")),
+                Integer.parseInt(get(properties, "quota.dailyLimit", "500")),
+                QuotaKey.parse(get(properties, "quota.key", "phone")),
+                ZoneId.of(zone),
+                Clock.systemUTC());
+    }
+
+    private static String get(Function<String, String> properties, String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public int dailyLimit() {
+        return dailyLimit;
+    }
+
+    /**
+     * Counts one message against the quota of its key.
+     *
+     * @return the quota left for the rest of the day after this message, or {@link #REJECTED}
+     */
+    public int tryAcquire(String phone, String templateId) {
+        if (!enforced) {
+            return dailyLimit - 1;
+        }
+        long hash = key.hash(phone, templateId);
+        int remaining = currentDay().segment(hash).acquire(hash, dailyLimit);
+        if (remaining == REJECTED) {
+            rejected.increment();
+        }
+        return remaining;
+    }
+
+    /**
+     * Gives back a message counted by {@link #tryAcquire} that was not sent after all, e.g. abandoned at its
+     * caller's deadline. Right after midnight it goes to the new day's count, if the key has one.
+     */
+    public void release(String phone, String templateId) {
+        if (!enforced) {
+            return;
+        }
+        long hash = key.hash(phone, templateId);
+        currentDay().segment(hash).release(hash);
+    }
+
+    /**
+     * Quota left today for a key, without counting a message.
+     */
+    public int remaining(String phone, String templateId) {
+        if (!enforced) {
+            return dailyLimit;
+        }
+        long hash = key.hash(phone, templateId);
+        return dailyLimit - currentDay().segment(hash).used(hash);
+    }
+
+    /**
+     * Keys that sent at least one message today.
+     */
+    public long size() {
+        return currentDay().size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("quota_store_keys", this, QuotaStore::size)
+                .description("Keys with at least one message counted today")
+                .register(registry);
+        FunctionCounter.builder("quota_rejected_total", rejected, LongAdder::sum)
+                .description("Messages rejected because the daily quota was used up")
+                .register(registry);
+    }
+
+    private Day currentDay() {
+        Day current = day.get();
+        long now = clock.millis();
+        while (now >= current.endMillis) {
+            // losers of the race use the winner's day, counts taken on the old day stay there
+            day.compareAndSet(current, new Day(endOfDay(now)));
+            current = day.get();
+        }
+        return current;
+    }
+
+    private long endOfDay(long millis) {
+        LocalDate today = Instant.ofEpochMilli(millis).atZone(zone).toLocalDate();
+        return today.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static final class Day {
+        final long endMillis;
+        final Segment[] segments = new Segment[SEGMENTS];
+
+        Day(long endMillis) {
+            this.endMillis = endMillis;
+            for (int i = 0; i < SEGMENTS; i++) {
+                segments[i] = new Segment();
+            }
+        }
+
+        Segment segment(long hash) {
+            // high bits pick the segment, low bits the slot within it
+            return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+        }
+
+        long size() {
+            long size = 0;
+            for (Segment segment : segments) {
+                size += segment.size;
+            }
+            return size;
+        }
+    }
+
+    private static final class Segment {
+        private volatile Table table = new Table(INITIAL_SLOTS);
+        // written under the segment lock
+        private volatile int size;
+
+        int acquire(long hash, int limit) {
+            for (; ; ) {
+                Table current = table;
+                int slot = current.find(hash);
+                if (slot < 0) {
+                    insert(hash);
+                    continue;
+                }
+                long used = current.used(slot);
+                if (used == MOVED) {
+                    // the table is being grown, wait for the new one
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (used >= limit) {
+                    return REJECTED;
+                }
+                if (current.casUsed(slot, used, used + 1)) {
+                    return (int) (limit - used - 1);
+                }
+            }
+        }
+
+        void release(long hash) {
+            for (; ; ) {
+                Table current = table;
+                int slot = current.find(hash);
+                if (slot < 0) {
+                    return;
+                }
+                long used = current.used(slot);
+                if (used == MOVED) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (used == 0 || current.casUsed(slot, used, used - 1)) {
+                    return;
+                }
+            }
+        }
+
+        int used(long hash) {
+            for (; ; ) {
+                Table current = table;
+                int slot = current.find(hash);
+                if (slot < 0) {
+                    return 0;
+                }
+                long used = current.used(slot);
+                if (used != MOVED) {
+                    return (int) used;
+                }
+                Thread.onSpinWait();
+            }
+        }
+
+        private synchronized void insert(long hash) {
+            if (table.find(hash) >= 0) {
+                return;
+            }
+            if ((size + 1) * 4L > table.capacity() * 3L) {
+                table = table.grow();
+            }
+            table.insert(hash, 0);
+            size++;
+        }
+    }
+
+    /**
+     * Slot {@code i} is the key at {@code 2i} and its count at {@code 2i + 1}; key 0 marks a free slot.
+     */
+    private static final class Table {
+        final AtomicLongArray slots;
+        final int mask;
+
+        Table(int capacity) {
+            slots = new AtomicLongArray(capacity * 2);
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        long used(int slot) {
+            return slots.get(2 * slot + 1);
+        }
+
+        boolean casUsed(int slot, long expected, long used) {
+            return slots.compareAndSet(2 * slot + 1, expected, used);
+        }
+
+        /**
+         * @return the slot of {@code hash}, or -1 when it is not in the table
+         */
+        int find(long hash) {
+            for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+                long k = slots.get(2 * slot);
+                if (k == hash) {
+                    return slot;
+                }
+                if (k == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        // caller holds the segment lock
+        void insert(long hash, long used) {
+            int slot = (int) hash & mask;
+            while (slots.get(2 * slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.set(2 * slot + 1, used);
+            // publishing the key makes the slot visible to lock-free readers
+            slots.set(2 * slot, hash);
+        }
+
+        // caller holds the segment lock
+        Table grow() {
+            Table bigger = new Table(capacity() * 2);
+            for (int slot = 0; slot < capacity(); slot++) {
+                long k = slots.get(2 * slot);
+                if (k != 0) {
+                    bigger.insert(k, slots.getAndSet(2 * slot + 1, MOVED));
+                }
+            }
+            return bigger;
+        }
+    }
+}
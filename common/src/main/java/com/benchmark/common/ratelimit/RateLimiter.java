@@ -0,0 +1,180 @@
+package com.benchmark.common.ratelimit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Throttles senders per phone and per template with token buckets, checked before a message reaches the
+ * quota, the template engine or the simulated downstream, so a rejection costs a hash and a CAS.
+ * <p>
+ * Each limit allows {@code perSecond} messages per key on average and bursts of {@code burst}; a limit
+ * with {@code perSecond=0} is off. A call must pass both; when the template limit rejects it, the token
+ * taken from the phone's bucket is put back. Buckets are kept in {@link TokenBuckets} without locks and
+ * idle keys are evicted as the tables need room.
+ * <pre>
+ * ratelimit.enabled=false
+ * ratelimit.phone.perSecond=10
+ * ratelimit.phone.burst=20
+ * ratelimit.template.perSecond=0     (0: no limit per template)
+ * ratelimit.template.burst=1000
+ * </pre>
+ *
+ * @author phonghv
+ */
+public final class RateLimiter implements MeterBinder {
+
+    /** error code of a throttled message in the response body, same as the HTTP status of REST */
+    public static final int ERROR_CODE = 429;
+    public static final String ERROR_MESSAGE = "Rate limit exceeded";
+
+    // one decision in SAMPLE_EVERY is timed, a second clock read would cost as much as the decision
+    private static final int SAMPLE_EVERY = 64;
+
+    private final boolean enabled;
+    private final TokenBuckets phones;
+    private final TokenBuckets templates;
+    private final LongSupplier nanoClock;
+    private final long origin;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder rejectedByPhone = new LongAdder();
+    private final LongAdder rejectedByTemplate = new LongAdder();
+    private final LongAdder sampledChecks = new LongAdder();
+    private final LongAdder sampledNanos = new LongAdder();
+
+    /**
+     * @param phonePerSecond    0 for no limit per phone
+     * @param templatePerSecond 0 for no limit per template
+     * @param nanoClock         monotonic nanoseconds, {@code System::nanoTime}
+     */
+    public RateLimiter(boolean enabled, double phonePerSecond, int phoneBurst, double templatePerSecond,
+                       int templateBurst, LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.phones = phonePerSecond > 0 ? new TokenBuckets(phonePerSecond, phoneBurst) : null;
+        this.templates = templatePerSecond > 0 ? new TokenBuckets(templatePerSecond, templateBurst) : null;
+        this.nanoClock = nanoClock;
+        this.origin = nanoClock.getAsLong();
+    }
+
+    /**
+     * @param properties property lookup returning {@code null} for missing keys, e.g. {@code environment::getProperty}
+     */
+    public static RateLimiter fromProperties(Function<String, String> properties) {
+        return new RateLimiter(
+                Boolean.parseBoolean(get(properties, "ratelimit.enabled", "false")),
+                Double.parseDouble(get(properties, "ratelimit.phone.perSecond", "10")),
+                Integer.parseInt(get(properties, "ratelimit.phone.burst", "20")),
+                Double.parseDouble(get(properties, "ratelimit.template.perSecond", "0")),
+                Integer.parseInt(get(properties, "ratelimit.template.burst", "1000")),
+                System::nanoTime);
+    }
+
+    private static String get(Function<String, String> properties, String key, String defaultValue) {
+        String value = properties.apply(key);
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes a token for one message of {@code phone} with {@code templateId}.
+     *
+     * @return {@code false} when either limit is exceeded
+     */
+    public boolean tryAcquire(String phone, String templateId) {
+        if (!enabled) {
+            return true;
+        }
+        long start = nanoClock.getAsLong();
+        // kept positive, 0 is a bucket never used
+        long now = start - origin + 1;
+        boolean passed = true;
+        long phoneKey = 0;
+        if (phones != null) {
+            phoneKey = hash(phone);
+            if (!phones.tryAcquire(phoneKey, now)) {
+                rejectedByPhone.increment();
+                passed = false;
+            }
+        }
+        if (passed && templates != null && !templates.tryAcquire(hash(templateId), now)) {
+            if (phones != null) {
+                phones.release(phoneKey);
+            }
+            rejectedByTemplate.increment();
+            passed = false;
+        }
+        if (passed) {
+            allowed.increment();
+        }
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_EVERY) == 0) {
+            sampledChecks.increment();
+            sampledNanos.add(nanoClock.getAsLong() - start);
+        }
+        return passed;
+    }
+
+    /**
+     * Phones and templates with a bucket, idle ones included until they are evicted.
+     */
+    public long size() {
+        return (phones == null ? 0 : phones.size()) + (templates == null ? 0 : templates.size());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ratelimit_requests_total", allowed, LongAdder::sum)
+                .description("Rate limit decisions: allowed, or rejected by the phone or template limit")
+                .tag("result", "allowed")
+                .register(registry);
+        FunctionCounter.builder("ratelimit_requests_total", rejectedByPhone, LongAdder::sum)
+                .description("Rate limit decisions: allowed, or rejected by the phone or template limit")
+                .tag("result", "rejected_phone")
+                .register(registry);
+        FunctionCounter.builder("ratelimit_requests_total", rejectedByTemplate, LongAdder::sum)
+                .description("Rate limit decisions: allowed, or rejected by the phone or template limit")
+                .tag("result", "rejected_template")
+                .register(registry);
+        FunctionTimer.builder("ratelimit_check", this,
+                        limiter -> limiter.sampledChecks.sum(), limiter -> limiter.sampledNanos.sum(),
+                        TimeUnit.NANOSECONDS)
+                .description("Time to decide, sampled one decision in " + SAMPLE_EVERY + ": the overhead per message")
+                .register(registry);
+        Gauge.builder("ratelimit_keys", this, RateLimiter::size)
+                .description("Phones and templates with a bucket, idle ones until evicted")
+                .register(registry);
+        FunctionCounter.builder("ratelimit_evicted_keys_total", this, RateLimiter::evicted)
+                .description("Idle keys dropped from the bucket tables")
+                .register(registry);
+    }
+
+    private double evicted() {
+        return (phones == null ? 0 : phones.evicted.sum()) + (templates == null ? 0 : templates.evicted.sum());
+    }
+
+    // FNV-1a 64 over the characters, mixed so the high bits spread over segments; never 0
+    static long hash(String value) {
+        long h = 0xCBF29CE484222325L;
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                h ^= value.charAt(i);
+                h *= 0x100000001B3L;
+            }
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
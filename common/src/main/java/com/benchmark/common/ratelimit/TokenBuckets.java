@@ -0,0 +1,221 @@
+package com.benchmark.common.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets of one limit, one per key, as in {@link RateLimiter}.
+ * <p>
+ * A bucket is kept as the time its next token is due (GCRA, the generic cell rate algorithm): a call takes
+ * a token by moving that time one interval forward with a CAS, and is rejected when it would lie more than
+ * {@code burst} intervals ahead. A refill is implicit in the clock moving on, so there is no refill task
+ * and nothing to lock. Keys are 64-bit hashes in open-addressing tables of primitive arrays, split in
+ * segments like the quota store. A bucket whose due time has passed is full, indistinguishable from a key
+ * never seen, so idle keys are simply left out whenever a segment's table is rebuilt for room.
+ *
+ * @author phonghv
+ */
+final class TokenBuckets {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENTS = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SLOTS = 1 << 8;
+    private static final long MOVED = Long.MIN_VALUE;
+
+    final long intervalNanos;
+    private final long toleranceNanos;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    final LongAdder evicted = new LongAdder();
+
+    TokenBuckets(double perSecond, int burst) {
+        if (perSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("rate limit must be positive but was " + perSecond + "/s, burst " + burst);
+        }
+        this.intervalNanos = Math.max(1, Math.round(1_000_000_000 / perSecond));
+        this.toleranceNanos = intervalNanos * burst;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Takes a token from the bucket of {@code key}.
+     *
+     * @param now nanoseconds of a monotonic clock, always positive
+     */
+    boolean tryAcquire(long key, long now) {
+        return segment(key).acquire(key, now);
+    }
+
+    /**
+     * Puts back a token taken by {@link #tryAcquire} for a call that was rejected by another limit.
+     */
+    void release(long key) {
+        segment(key).release(key);
+    }
+
+    long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    private Segment segment(long key) {
+        // high bits pick the segment, low bits the slot within it
+        return segments[(int) (key >>> (64 - SEGMENT_BITS))];
+    }
+
+    private final class Segment {
+        private volatile Table table = new Table(INITIAL_SLOTS);
+        // written under the segment lock
+        private volatile int size;
+
+        boolean acquire(long key, long now) {
+            for (; ; ) {
+                Table current = table;
+                int slot = current.find(key);
+                if (slot < 0) {
+                    insert(key, now);
+                    continue;
+                }
+                long due = current.due(slot);
+                if (due == MOVED) {
+                    // the table is being rebuilt, wait for the new one
+                    Thread.onSpinWait();
+                    continue;
+                }
+                long next = Math.max(due, now) + intervalNanos;
+                if (next - now > toleranceNanos) {
+                    return false;
+                }
+                if (current.casDue(slot, due, next)) {
+                    return true;
+                }
+            }
+        }
+
+        void release(long key) {
+            for (; ; ) {
+                Table current = table;
+                int slot = current.find(key);
+                if (slot < 0) {
+                    return;
+                }
+                long due = current.due(slot);
+                if (due == MOVED) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (current.casDue(slot, due, due - intervalNanos)) {
+                    return;
+                }
+            }
+        }
+
+        private synchronized void insert(long key, long now) {
+            if (table.find(key) >= 0) {
+                return;
+            }
+            if ((size + 1) * 4L > table.capacity() * 3L) {
+                rebuild(now);
+            }
+            table.insert(key, 0);
+            size++;
+        }
+
+        // under the segment lock: drops the full buckets, then sizes the table for the rest
+        private void rebuild(long now) {
+            Table old = table;
+            int live = 0;
+            for (int slot = 0; slot < old.capacity(); slot++) {
+                if (old.key(slot) != 0 && old.due(slot) > now) {
+                    live++;
+                }
+            }
+            int capacity = old.capacity();
+            while ((live + 1) * 4L > capacity * 3L) {
+                capacity *= 2;
+            }
+            while (capacity > INITIAL_SLOTS && live * 8L < capacity) {
+                capacity /= 2;
+            }
+            Table rebuilt = new Table(capacity);
+            int kept = 0;
+            for (int slot = 0; slot < old.capacity(); slot++) {
+                long key = old.key(slot);
+                if (key != 0) {
+                    long due = old.moveDue(slot);
+                    if (due > now) {
+                        rebuilt.insert(key, due);
+                        kept++;
+                    }
+                }
+            }
+            evicted.add(size - kept);
+            size = kept;
+            table = rebuilt;
+        }
+    }
+
+    /**
+     * Slot {@code i} is the key at {@code 2i} and the due time of its next token at {@code 2i + 1};
+     * key 0 marks a free slot.
+     */
+    private static final class Table {
+        final AtomicLongArray slots;
+        final int mask;
+
+        Table(int capacity) {
+            slots = new AtomicLongArray(capacity * 2);
+            mask = capacity - 1;
+        }
+
+        int capacity() {
+            return mask + 1;
+        }
+
+        long key(int slot) {
+            return slots.get(2 * slot);
+        }
+
+        long due(int slot) {
+            return slots.get(2 * slot + 1);
+        }
+
+        boolean casDue(int slot, long expected, long due) {
+            return slots.compareAndSet(2 * slot + 1, expected, due);
+        }
+
+        long moveDue(int slot) {
+            return slots.getAndSet(2 * slot + 1, MOVED);
+        }
+
+        /**
+         * @return the slot of {@code key}, or -1 when it is not in the table
+         */
+        int find(long key) {
+            for (int slot = (int) key & mask; ; slot = (slot + 1) & mask) {
+                long k = slots.get(2 * slot);
+                if (k == key) {
+                    return slot;
+                }
+                if (k == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        // caller holds the segment lock
+        void insert(long key, long due) {
+            int slot = (int) key & mask;
+            while (slots.get(2 * slot) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.set(2 * slot + 1, due);
+            // publishing the key makes the slot visible to lock-free readers
+            slots.set(2 * slot, key);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.benchmark.common.template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A message template parsed once into literal text and placeholder names, so rendering is a walk over
+ * two arrays with one map lookup per placeholder.
+ * <p>
+ * {@code {name}} is replaced by the value of {@code name} in the template data, or by nothing when the
+ * data has no such value; {@code {{} and {@code }}} stand for literal braces.
+ *
+ * @author phonghv
+ */
+public final class CompiledTemplate {
+
+    // literals[i] precedes names[i]; the last literal follows the last placeholder
+    private final String[] literals;
+    private final String[] names;
+    private final int literalLength;
+
+    private CompiledTemplate(String[] literals, String[] names) {
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * @throws IllegalArgumentException when a brace is not closed, or a placeholder is empty
+     */
+    public static CompiledTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '{' && i + 1 < text.length() && text.charAt(i + 1) == '{') {
+                literal.append('{');
+                i += 2;
+            } else if (c == '}' && i + 1 < text.length() && text.charAt(i + 1) == '}') {
+                literal.append('}');
+                i += 2;
+            } else if (c == '{') {
+                int end = text.indexOf('}', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed placeholder at " + i + " in template: " + text);
+                }
+                String name = text.substring(i + 1, end).trim();
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Empty placeholder at " + i + " in template: " + text);
+                }
+                literals.add(literal.toString());
+                names.add(name);
+                literal.setLength(0);
+                i = end + 1;
+            } else if (c == '}') {
+                throw new IllegalArgumentException("Unopened '}' at " + i + " in template: " + text);
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        literals.add(literal.toString());
+        return new CompiledTemplate(literals.toArray(String[]::new), names.toArray(String[]::new));
+    }
+
+    public int placeholders() {
+        return names.length;
+    }
+
+    /**
+     * Length of the template without its placeholders, a lower bound of every rendered text.
+     */
+    public int literalLength() {
+        return literalLength;
+    }
+
+    /**
+     * Appends the rendered text to {@code out}.
+     *
+     * @param data placeholder values, may be {@code null}; values are appended through {@code toString()}
+     * @return the number of characters appended
+     */
+    public int renderTo(Map<String, ?> data, StringBuilder out) {
+        int start = out.length();
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            Object value = data == null ? null : data.get(names[i]);
+            if (value != null) {
+                out.append(value);
+            }
+        }
+        out.append(literals[names.length]);
+        return out.length() - start;
+    }
+}
@@ -0,0 +1,106 @@
+package com.benchmark.common.template;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Compiled templates by {@code template_id}, at most {@code maximumSize} of them.
+ * <p>
+ * A hit is a map read and, the first time after an eviction pass, setting the entry's reference bit;
+ * no lock and no allocation. A miss compiles under the cache lock, so a template is compiled once even
+ * when many callers miss it together. When full, the oldest entries are examined in insertion order
+ * (CLOCK): a referenced entry gets a second chance and moves to the back, the first unreferenced one is
+ * evicted. Ids unknown to the source are not cached.
+ *
+ * @author phonghv
+ */
+final class TemplateCache {
+
+    private final int maximumSize;
+    private final Function<String, CompiledTemplate> loader;
+    private final ConcurrentHashMap<String, Entry> entries;
+    // insertion order of the cached ids, guarded by this
+    private final ArrayDeque<String> clock = new ArrayDeque<>();
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+
+    TemplateCache(int maximumSize, Function<String, CompiledTemplate> loader) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("template.cacheSize must be positive but was " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.loader = loader;
+        this.entries = new ConcurrentHashMap<>(Math.min(maximumSize, 1024) * 2);
+    }
+
+    /**
+     * @return the compiled template, or {@code null} when the source has no template with this id
+     */
+    CompiledTemplate get(String templateId) {
+        if (templateId == null) {
+            misses.increment();
+            return null;
+        }
+        Entry entry = entries.get(templateId);
+        if (entry != null) {
+            hits.increment();
+            if (!entry.referenced) {
+                // only written when clear, so hot entries do not keep dirtying their cache line
+                entry.referenced = true;
+            }
+            return entry.template;
+        }
+        misses.increment();
+        return load(templateId);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private synchronized CompiledTemplate load(String templateId) {
+        Entry entry = entries.get(templateId);
+        if (entry != null) {
+            // compiled by a caller that missed at the same time
+            return entry.template;
+        }
+        CompiledTemplate template = loader.apply(templateId);
+        if (template == null) {
+            return null;
+        }
+        while (entries.size() >= maximumSize) {
+            evictOne();
+        }
+        entries.put(templateId, new Entry(template));
+        clock.addLast(templateId);
+        return template;
+    }
+
+    private void evictOne() {
+        for (; ; ) {
+            String templateId = clock.pollFirst();
+            Entry entry = entries.get(templateId);
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.addLast(templateId);
+            } else {
+                entries.remove(templateId);
+                evictions.increment();
+                return;
+            }
+        }
+    }
+
+    private static final class Entry {
+        final CompiledTemplate template;
+        volatile boolean referenced;
+
+        Entry(CompiledTemplate template) {
+            this.template = template;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.benchmark.common.template;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Renders the SMS text of a message from its {@code template_id} and {@code template_data}.
+ * <p>
+ * Template texts come from a source keyed by {@code template_id}, standing in for the template database
+ * of production. They are compiled on first use and kept in a {@link TemplateCache} of
+ * {@code template.cacheSize} entries. Rendering writes into {@link StringBuilder}s taken from a small
+ * pool, striped by thread id and reused across messages, so a render allocates nothing once the
+ * buffers have grown to the message size. The text would go to the SMS gateway, which these backends
+ * simulate; only its length leaves the engine.
+ * <pre>
+ * template.file=                  (UTF-8 properties file of template_id=text, default the bundled templates)
+ * template.cacheSize=1000
+ * </pre>
+ *
+ * @author phonghv
+ */
+public final class TemplateEngine implements MeterBinder {
+
+    /** returned by {@link #render} when the source has no template with the id */
+    public static final int NOT_FOUND = -1;
+    /** error code of a message with an unknown template in the response body, same as the HTTP status of REST */
+    public static final int ERROR_CODE = 404;
+    public static final String ERROR_MESSAGE = "Template not found";
+
+    static final String BUNDLED_TEMPLATES = "templates.properties";
+
+    private static final int BUFFER_STRIPES = 64;
+    private static final int INITIAL_BUFFER_CHARS = 256;
+    // a buffer grown past this by an unusually long message is dropped instead of kept in the pool
+    private static final int MAX_POOLED_BUFFER_CHARS = 4096;
+
+    private final TemplateCache cache;
+    private final AtomicReferenceArray<StringBuilder> buffers = new AtomicReferenceArray<>(BUFFER_STRIPES);
+
+    /**
+     * @param source template text by id, {@code null} for an unknown id
+     */
+    public TemplateEngine(Function<String, String> source, int cacheSize) {
+        this.cache = new TemplateCache(cacheSize, templateId -> {
+            String text = source.apply(templateId);
+            return text == null ? null : CompiledTemplate.compile(text);
+        });
+    }
+
+    /**
+     * @param properties property lookup returning {@code null} for missing keys, e.g. {@code environment::getProperty}
+     */
+    public static TemplateEngine fromProperties(Function<String, String> properties) {
+        String file = properties.apply("template.file");
+        Map<String, String> templates = file == null || file.isBlank()
+                ? bundled()
+                : load(Path.of(file.trim()));
+        String cacheSize = properties.apply("template.cacheSize");
+        return new TemplateEngine(templates::get,
+                cacheSize == null || cacheSize.isBlank() ? 1000 : Integer.parseInt(cacheSize.trim()));
+    }
+
+    /**
+     * Reads {@code template_id=text} lines; every template is compiled once here so a broken one fails at startup.
+     */
+    public static Map<String, String> load(Path file) {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read templates " + file, e);
+        }
+    }
+
+    /**
+     * The templates shipped with the backends, used when {@code template.file} is not set.
+     */
+    public static Map<String, String> bundled() {
+        try (InputStream in = TemplateEngine.class.getResourceAsStream(BUNDLED_TEMPLATES)) {
+            if (in == null) {
+                throw new IllegalStateException("Bundled " + BUNDLED_TEMPLATES + " is missing");
+            }
+            return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read bundled templates", e);
+        }
+    }
+
+    private static Map<String, String> parse(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        Map<String, String> templates = new HashMap<>();
+        for (String templateId : properties.stringPropertyNames()) {
+            String text = properties.getProperty(templateId);
+            CompiledTemplate.compile(text);
+            templates.put(templateId, text);
+        }
+        return Map.copyOf(templates);
+    }
+
+    /**
+     * Renders the text of a message.
+     *
+     * @param data placeholder values, may be {@code null}
+     * @return the length of the rendered text in characters, or {@link #NOT_FOUND}
+     */
+    public int render(String templateId, Map<String, ?> data) {
+        CompiledTemplate template = cache.get(templateId);
+        if (template == null) {
+            return NOT_FOUND;
+        }
+        int stripe = (int) Thread.currentThread().threadId() & (BUFFER_STRIPES - 1);
+        StringBuilder buffer = buffers.getAndSet(stripe, null);
+        if (buffer == null) {
+            buffer = new StringBuilder(INITIAL_BUFFER_CHARS);
+        }
+        try {
+            return template.renderTo(data, buffer);
+        } finally {
+            if (buffer.capacity() <= MAX_POOLED_BUFFER_CHARS) {
+                buffer.setLength(0);
+                buffers.lazySet(stripe, buffer);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("template_cache_requests_total", cache.hits, LongAdder::sum)
+                .description("Template lookups by result")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("template_cache_requests_total", cache.misses, LongAdder::sum)
+                .description("Template lookups by result")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("template_cache_evictions_total", cache.evictions, LongAdder::sum)
+                .description("Compiled templates evicted from the cache")
+                .register(registry);
+        Gauge.builder("template_cache_size", cache, TemplateCache::size)
+                .description("Compiled templates in the cache")
+                .register(registry);
+    }
+}
@@ -0,0 +1,105 @@
+package com.benchmark.common.concurrency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimiterTest {
+
+    private static final long MILLI = 1_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(-5_000 * MILLI);
+
+    private ConcurrencyLimiter limiter(int initialLimit) {
+        return new ConcurrencyLimiter(true, initialLimit, 10, 1000, 2.0, 0.2, 100, 20, 60, clock::get);
+    }
+
+    @Test
+    void callsOverTheLimitAreRejectedAtOnce() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ConcurrencyLimiter limiter = limiter(20);
+        limiter.bindTo(registry);
+        long[] starts = new long[20];
+        for (int i = 0; i < 20; i++) {
+            starts[i] = limiter.tryAcquire();
+            assertNotEquals(ConcurrencyLimiter.REJECTED, starts[i]);
+        }
+        assertEquals(ConcurrencyLimiter.REJECTED, limiter.tryAcquire());
+        assertEquals(20, limiter.inFlight());
+
+        limiter.releaseIgnored(starts[0]);
+        assertNotEquals(ConcurrencyLimiter.REJECTED, limiter.tryAcquire());
+        assertEquals(1.0, registry.get("concurrency_rejected_total").functionCounter().count());
+        assertEquals(20.0, registry.get("concurrency_in_flight").gauge().value());
+        assertEquals(20.0, registry.get("concurrency_limit").gauge().value());
+    }
+
+    @Test
+    void steadyLatencyAtTheLimitGrowsIt() {
+        ConcurrencyLimiter limiter = limiter(20);
+        for (int window = 0; window < 20; window++) {
+            runWindow(limiter, limiter.limit(), 10 * MILLI);
+        }
+        assertTrue(limiter.limit() > 40, "limit " + limiter.limit());
+    }
+
+    @Test
+    void latencySpikeShrinksItAndItRecovers() {
+        ConcurrencyLimiter limiter = limiter(200);
+        for (int window = 0; window < 10; window++) {
+            runWindow(limiter, 200, 10 * MILLI);
+        }
+        int before = limiter.limit();
+        for (int window = 0; window < 5; window++) {
+            runWindow(limiter, limiter.limit(), 100 * MILLI);
+        }
+        int during = limiter.limit();
+        assertTrue(during < before / 2, before + " -> " + during);
+        assertTrue(during >= 10);
+
+        for (int window = 0; window < 30; window++) {
+            runWindow(limiter, limiter.limit(), 10 * MILLI);
+        }
+        assertTrue(limiter.limit() > during * 2, during + " -> " + limiter.limit());
+    }
+
+    @Test
+    void idleTrafficDoesNotGrowIt() {
+        ConcurrencyLimiter limiter = limiter(100);
+        for (int window = 0; window < 20; window++) {
+            runWindow(limiter, 10, 10 * MILLI);
+        }
+        assertEquals(100, limiter.limit());
+    }
+
+    @Test
+    void disabledAdmitsEverything() {
+        ConcurrencyLimiter limiter = ConcurrencyLimiter.fromProperties(key -> null);
+        for (int i = 0; i < 10_000; i++) {
+            assertNotEquals(ConcurrencyLimiter.REJECTED, limiter.tryAcquire());
+        }
+        assertEquals(0, limiter.inFlight());
+    }
+
+    // `concurrent` calls start together and all take `latency`, over and over until a 100 ms window closes
+    private void runWindow(ConcurrencyLimiter limiter, int concurrent, long latency) {
+        long windowEnd = clock.get() + 100 * MILLI;
+        while (clock.get() < windowEnd) {
+            long[] starts = new long[concurrent];
+            for (int i = 0; i < concurrent; i++) {
+                starts[i] = limiter.tryAcquire();
+            }
+            clock.addAndGet(latency);
+            for (long start : starts) {
+                if (start != ConcurrencyLimiter.REJECTED) {
+                    limiter.release(start);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.benchmark.common.deadline;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeadlinesTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private Deadlines deadlines(boolean enabled) {
+        Deadlines deadlines = new Deadlines(enabled, System::nanoTime);
+        deadlines.bindTo(registry);
+        return deadlines;
+    }
+
+    @Test
+    void expiredMessagesAreSkipped() {
+        Deadlines deadlines = deadlines(true);
+        assertTrue(deadlines.skip(System.nanoTime() - 1));
+        assertFalse(deadlines.skip(deadlines.after(1, TimeUnit.SECONDS)));
+        assertFalse(deadlines.skip(Deadlines.NONE));
+        assertEquals(Deadlines.NONE, deadlines.after(0, TimeUnit.MILLISECONDS));
+        assertEquals(1.0, count("skipped"));
+    }
+
+    @Test
+    void delayStopsAtTheDeadline() throws InterruptedException {
+        Deadlines deadlines = deadlines(true);
+        long start = System.nanoTime();
+        assertFalse(deadlines.sleep(2_000, deadlines.after(50, TimeUnit.MILLISECONDS)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertTrue(deadlines.sleep(10, deadlines.after(1, TimeUnit.SECONDS)));
+        assertTrue(deadlines.sleep(10, Deadlines.NONE));
+
+        assertEquals(1.0, count("cut_short"));
+        double saved = registry.get("deadline_saved_delay_seconds_total").functionCounter().count();
+        assertTrue(saved > 1.9 && saved < 2.0, "saved " + saved);
+    }
+
+    @Test
+    void interruptedDelayIsCutShort() {
+        Deadlines deadlines = deadlines(true);
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, () -> deadlines.sleep(1_000, Deadlines.NONE));
+        assertEquals(1.0, count("cut_short"));
+    }
+
+    @Test
+    void disabledRunsEverythingAndCountsTheWaste() throws InterruptedException {
+        Deadlines deadlines = deadlines(false);
+        long deadline = deadlines.after(5, TimeUnit.MILLISECONDS);
+        assertTrue(deadlines.sleep(20, deadline));
+        assertFalse(deadlines.skip(deadline));
+        deadlines.completed(deadline);
+        deadlines.completed(Deadlines.NONE);
+        assertEquals(1.0, count("wasted"));
+        assertEquals(0.0, count("cut_short"));
+    }
+
+    private double count(String outcome) {
+        return registry.get("deadline_messages_total").tag("outcome", outcome).functionCounter().count();
+    }
+}
@@ -0,0 +1,87 @@
+package com.benchmark.common.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MsgIdGeneratorTest {
+
+    @Test
+    void idsAreUniqueAcrossVirtualThreads() throws InterruptedException {
+        MsgIdGenerator generator = new MsgIdGenerator(42);
+        int threads = 2000;
+        int perThread = 500;
+        Set<String> ids = ConcurrentHashMap.newKeySet(threads * perThread);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.add(Thread.ofVirtual().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    ids.add(generator.next());
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertEquals(threads * perThread, ids.size());
+    }
+
+    @Test
+    void idsOfOneThreadSortByCreation() {
+        MsgIdGenerator generator = new MsgIdGenerator(7);
+        String previous = generator.next();
+        for (int i = 0; i < 100_000; i++) {
+            String id = generator.next();
+            assertTrue(id.compareTo(previous) > 0, previous + " >= " + id);
+            previous = id;
+        }
+    }
+
+    @Test
+    void idCarriesTimestampAndInstance() {
+        MsgIdGenerator generator = new MsgIdGenerator(MsgIdGenerator.MAX_INSTANCE_ID);
+        long before = System.currentTimeMillis();
+        String id = generator.next();
+        long after = System.currentTimeMillis();
+
+        assertEquals(MsgIdGenerator.LENGTH, id.length());
+        assertTrue(id.chars().allMatch(c -> Character.isDigit(c) || Character.isUpperCase(c)), id);
+        long timestamp = MsgIdGenerator.timestampMillis(id);
+        assertTrue(timestamp >= before && timestamp <= after, "timestamp " + timestamp);
+        assertEquals(MsgIdGenerator.MAX_INSTANCE_ID, MsgIdGenerator.instanceId(id));
+        assertEquals(12345, MsgIdGenerator.instanceId(new MsgIdGenerator(12345).next()));
+    }
+
+    @Test
+    void instancesDoNotShareIds() {
+        String a = new MsgIdGenerator(1).next();
+        String b = new MsgIdGenerator(2).next();
+        assertNotEquals(a, b);
+        assertNotEquals(MsgIdGenerator.deriveInstanceId("rest-backend-1", 1),
+                MsgIdGenerator.deriveInstanceId("rest-backend-2", 1));
+    }
+
+    @Test
+    void instanceIdFromProperties() {
+        assertEquals(99, MsgIdGenerator.fromProperties(key -> key.equals("msgid.instanceId") ? "99" : null).instanceId());
+        int derived = MsgIdGenerator.fromProperties(key -> null).instanceId();
+        assertTrue(derived >= 0 && derived <= MsgIdGenerator.MAX_INSTANCE_ID);
+        assertThrows(IllegalArgumentException.class, () -> new MsgIdGenerator(MsgIdGenerator.MAX_INSTANCE_ID + 1));
+    }
+}
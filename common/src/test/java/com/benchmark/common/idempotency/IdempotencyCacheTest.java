@@ -0,0 +1,223 @@
+package com.benchmark.common.idempotency;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdempotencyCacheTest {
+
+    private static final long WINDOW = 60_000;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-03-01T00:00:00Z"));
+    private final AtomicInteger sends = new AtomicInteger();
+
+    @Test
+    void duplicateGetsTheOriginalResponse() throws Exception {
+        IdempotencyCache<String> cache = cache(1000);
+        String first = cache.execute("t1", this::send);
+        assertSame(first, cache.execute("t1", this::send));
+        assertEquals(1, sends.get());
+
+        cache.execute("t2", this::send);
+        cache.execute(null, this::send);
+        cache.execute("", this::send);
+        assertEquals(4, sends.get());
+    }
+
+    @Test
+    void rejectedResponsesAreNotRemembered() throws Exception {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(true, WINDOW, 1000, r -> !r.startsWith("rejected"), clock);
+        assertEquals("rejected", cache.execute("t", () -> "rejected"));
+        assertEquals("sent", cache.execute("t", () -> "sent"));
+        assertEquals("sent", cache.execute("t", () -> "again"));
+    }
+
+    @Test
+    void failedSendIsRetried() throws Exception {
+        IdempotencyCache<String> cache = cache(1000);
+        assertThrows(IOException.class, () -> cache.execute("t", () -> {
+            throw new IOException("downstream");
+        }));
+        assertEquals("response-1", cache.execute("t", this::send));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void concurrentDuplicatesShareOneSend() throws Exception {
+        IdempotencyCache<String> cache = cache(1000);
+        CountDownLatch release = new CountDownLatch(1);
+        Set<String> responses = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            threads.add(Thread.ofVirtual().start(() -> {
+                try {
+                    responses.add(cache.execute("hot", () -> {
+                        release.await();
+                        return send();
+                    }));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+        Thread.sleep(50);
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, sends.get());
+        assertEquals(Set.of("response-1"), responses);
+    }
+
+    @Test
+    void asyncDuplicatesShareOneSend() throws Exception {
+        IdempotencyCache<String> cache = cache(1000);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> first = cache.executeAsync("t", () -> {
+            sends.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<String> duplicate = cache.executeAsync("t", () -> CompletableFuture.completedFuture(send()));
+        pending.complete("response");
+
+        assertEquals("response", first.get(1, TimeUnit.SECONDS));
+        assertEquals("response", duplicate.get(1, TimeUnit.SECONDS));
+        assertEquals(1, sends.get());
+    }
+
+    @Test
+    void waitingDuplicatesDoNotShareARejectedResponse() throws Exception {
+        IdempotencyCache<String> cache = new IdempotencyCache<>(true, WINDOW, 1000, r -> !r.startsWith("rejected"), clock);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> first = cache.executeAsync("t", () -> pending);
+        CompletableFuture<String> duplicate = cache.executeAsync("t", () -> CompletableFuture.completedFuture(send()));
+        pending.complete("rejected: deadline exceeded");
+
+        assertEquals("rejected: deadline exceeded", first.get(1, TimeUnit.SECONDS));
+        assertEquals("response-1", duplicate.get(1, TimeUnit.SECONDS));
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread original = Thread.ofVirtual().start(() -> {
+            try {
+                cache.execute("s", () -> {
+                    started.countDown();
+                    release.await();
+                    return "rejected";
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        CompletableFuture<String> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.execute("s", this::send);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(50);
+        release.countDown();
+        original.join();
+        assertEquals("response-2", waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void forgetsAfterTheWindow() throws Exception {
+        IdempotencyCache<String> cache = cache(1000);
+        String first = cache.execute("t", this::send);
+
+        clock.advance(WINDOW - 1);
+        assertSame(first, cache.execute("t", this::send));
+
+        // kept at most a quarter of the window longer
+        clock.advance(WINDOW / 4 + 1);
+        assertEquals("response-2", cache.execute("t", this::send));
+
+        clock.advance(WINDOW * 10);
+        assertEquals("response-3", cache.execute("t", this::send));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void memoryIsBoundedByMaxEntries() throws Exception {
+        IdempotencyCache<String> cache = cache(50);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        for (int i = 0; i < 1000; i++) {
+            cache.execute("t" + i, this::send);
+        }
+        cache.execute("t999", this::send);
+
+        assertTrue(cache.size() <= 50, "size " + cache.size());
+        assertEquals(1000, sends.get());
+        assertTrue(registry.get("idempotency_cache_evictions_total").functionCounter().count() >= 900);
+        assertEquals(1.0, registry.get("idempotency_cache_requests_total").tag("result", "hit").functionCounter().count());
+        assertEquals(1000.0, registry.get("idempotency_cache_requests_total").tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    void disabledAlwaysSends() throws Exception {
+        IdempotencyCache<String> cache = IdempotencyCache.fromProperties(
+                key -> key.equals("idempotency.enabled") ? "false" : null, r -> true);
+        cache.execute("t", this::send);
+        cache.execute("t", this::send);
+        assertEquals(2, sends.get());
+        assertThrows(IllegalArgumentException.class,
+                () -> new IdempotencyCache<String>(true, WINDOW, 1, r -> true, clock));
+    }
+
+    private IdempotencyCache<String> cache(int maxEntries) {
+        return new IdempotencyCache<>(true, WINDOW, maxEntries, r -> true, clock);
+    }
+
+    private String send() {
+        return "response-" + sends.incrementAndGet();
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(long millis) {
+            now = now.plusMillis(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.benchmark.common.journal;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageJournalTest {
+
+    private static final Map<String, String> DATA = Map.of("customer", "Nguyễn Thị Hoàng Anh", "amount", "100");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void appendedRecordsAreReplayedInOrder() throws IOException {
+        try (MessageJournal journal = MessageJournal.open(dir, 4096, FsyncPolicy.BATCH, 0)) {
+            journal.append("m1", "84987654321", "otp", "t1", DATA);
+            journal.append("m2", "84987654322", "otp", null, null);
+        }
+        List<JournalRecord> records = replay();
+        assertEquals(List.of(
+                new JournalRecord("m1", "84987654321", "otp", "t1", DATA),
+                new JournalRecord("m2", "84987654322", "otp", null, Map.of())), records);
+    }
+
+    @Test
+    void stringsAreEncodedAsStringGetBytes() {
+        String text = "Nguyễn Thị Hoàng Anh ₫ 😀 \uD800 end";
+        byte[] record = JournalRecord.encode(text, "", null, "a", Map.of(text, text));
+        JournalRecord decoded = JournalRecord.decode(ByteBuffer.wrap(record));
+        String expected = new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        assertEquals(new JournalRecord(expected, "", null, "a", Map.of(expected, expected)), decoded);
+    }
+
+    @Test
+    void segmentsRollBySizeAndReopenAfterTheLastRecord() throws IOException {
+        try (MessageJournal journal = MessageJournal.open(dir, 4096, FsyncPolicy.NONE, 0)) {
+            for (int i = 0; i < 100; i++) {
+                journal.append("m" + i, "84987654321", "otp", "t" + i, DATA);
+            }
+        }
+        long segments = JournalReader.segments(dir).size();
+        assertTrue(segments > 1, "segments " + segments);
+
+        try (MessageJournal journal = MessageJournal.open(dir, 4096, FsyncPolicy.INTERVAL, 10)) {
+            journal.append("m100", "84987654321", "otp", "t100", DATA);
+        }
+        List<JournalRecord> records = replay();
+        assertEquals(101, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("m" + i, records.get(i).msgId());
+        }
+        assertEquals(segments, JournalReader.segments(dir).size());
+    }
+
+    @Test
+    void tornRecordIsDroppedAndOverwritten() throws IOException {
+        try (MessageJournal journal = MessageJournal.open(dir, 4096, FsyncPolicy.NONE, 0)) {
+            journal.append("m1", "84987654321", "otp", "t1", DATA);
+        }
+        // a crash in the middle of the second record: header written, payload not
+        Path segment = JournalSegment.file(dir, 1);
+        int end = end(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8).putInt(40).putInt(12345).flip(), end);
+        }
+        assertEquals(1, replay().size());
+
+        try (MessageJournal journal = MessageJournal.open(dir, 4096, FsyncPolicy.NONE, 0)) {
+            journal.append("m2", "84987654321", "otp", "t2", null);
+        }
+        assertEquals(List.of("m1", "m2"), replay().stream().map(JournalRecord::msgId).toList());
+    }
+
+    @Test
+    void concurrentBatchAppendsShareFsyncs() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (MessageJournal journal = MessageJournal.open(dir, 1 << 20, FsyncPolicy.BATCH, 0)) {
+            journal.bindTo(registry);
+            List<CompletableFuture<Void>> durable = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                durable.add(journal.appendAsync("m" + i, "84987654321", "otp", "t" + i, DATA));
+            }
+            CompletableFuture.allOf(durable.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+            assertEquals(0, journal.unsynced());
+        }
+        double syncs = registry.get("journal_syncs_total").functionCounter().count();
+        assertEquals(1000.0, registry.get("journal_appends_total").functionCounter().count());
+        assertTrue(syncs >= 1 && syncs < 1000, "syncs " + syncs);
+        assertEquals(1000, replay().size());
+    }
+
+    @Test
+    void oneJournalPerDirectory() throws IOException {
+        try (MessageJournal journal = MessageJournal.open(dir, 4096, FsyncPolicy.NONE, 0)) {
+            assertThrows(IllegalStateException.class, () -> MessageJournal.open(dir, 4096, FsyncPolicy.NONE, 0));
+        }
+        MessageJournal.open(dir, 4096, FsyncPolicy.NONE, 0).close();
+    }
+
+    @Test
+    void disabledWritesNothing() throws IOException {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("journal.dir", dir.resolve("journal").toString());
+        try (MessageJournal journal = MessageJournal.fromProperties(properties::get)) {
+            journal.append("m1", "84987654321", "otp", "t1", DATA);
+        }
+        assertTrue(Files.notExists(dir.resolve("journal")));
+
+        properties.put("journal.enabled", "true");
+        properties.put("journal.fsync", "sometimes");
+        assertThrows(IllegalArgumentException.class, () -> MessageJournal.fromProperties(properties::get));
+    }
+
+    private List<JournalRecord> replay() throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        long count = JournalReader.replay(dir, records::add);
+        assertEquals(records.size(), count);
+        return records;
+    }
+
+    private static int end(Path segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            return JournalSegment.scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), segment, null);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.benchmark.common.latency;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyModelsTest {
+
+    @Test
+    void standardBucketsMatchOriginalMix() {
+        BucketLatencyModel model = BucketLatencyModel.standard();
+        int n = 200_000;
+        int fast = 0;
+        for (int i = 0; i < n; i++) {
+            long delay = model.nextDelayMillis();
+            assertTrue(delay >= 100 && delay < 5001, "delay out of range: " + delay);
+            if (delay < 500) fast++;
+        }
+        assertEquals(0.95, fast / (double) n, 0.01);
+    }
+
+    @Test
+    void defaultsToBuckets() {
+        assertInstanceOf(BucketLatencyModel.class, LatencyModels.fromProperties(key -> null));
+    }
+
+    @Test
+    void lognormalMedianIsRespected() {
+        LatencyModel model = LatencyModels.fromProperties(Map.of(
+                "latency.model", "lognormal",
+                "latency.lognormal.medianMillis", "200",
+                "latency.lognormal.sigma", "0.5")::get);
+        long[] delays = new long[100_001];
+        for (int i = 0; i < delays.length; i++) {
+            delays[i] = model.nextDelayMillis();
+        }
+        Arrays.sort(delays);
+        assertEquals(200, delays[delays.length / 2], 10);
+    }
+
+    @Test
+    void replaysTraceFile(@TempDir Path dir) throws Exception {
+        Path trace = dir.resolve("trace.txt");
+        Files.writeString(trace, "# recorded\n120\n\n340\n");
+        LatencyModel model = LatencyModels.fromProperties(Map.of(
+                "latency.model", "trace",
+                "latency.trace.file", trace.toString())::get);
+        for (int i = 0; i < 100; i++) {
+            long delay = model.nextDelayMillis();
+            assertTrue(delay == 120 || delay == 340);
+        }
+    }
+
+    @Test
+    void rejectsUnknownModel() {
+        assertThrows(IllegalArgumentException.class,
+                () -> LatencyModels.fromProperties(Map.of("latency.model", "gaussian")::get));
+    }
+
+    @Test
+    void recordsAppliedLatency() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SimulatedLatency latency = new SimulatedLatency(new FixedLatencyModel(5), registry);
+        latency.sleep();
+
+        Timer timer = registry.get("simulated_latency").tag("model", "fixed").timer();
+        assertEquals(1, timer.count());
+        assertTrue(timer.totalTime(TimeUnit.MILLISECONDS) >= 5);
+    }
+}
@@ -0,0 +1,179 @@
+package com.benchmark.common.quota;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QuotaStoreTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
+
+    @Test
+    void countsDownAndRejectsOverQuota() {
+        QuotaStore store = new QuotaStore(true, 3, QuotaKey.PHONE, ZONE, Clock.systemUTC());
+        assertEquals(2, store.tryAcquire("84987654321", "t1"));
+        assertEquals(1, store.tryAcquire("84987654321", "t2"));
+        assertEquals(0, store.tryAcquire("84987654321", "t1"));
+        assertEquals(QuotaStore.REJECTED, store.tryAcquire("84987654321", "t1"));
+        assertEquals(0, store.remaining("84987654321", null));
+
+        assertEquals(2, store.tryAcquire("84900000000", "t1"));
+        assertEquals(3, store.remaining("84911111111", null));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void releasedMessagesAreGivenBack() {
+        QuotaStore store = new QuotaStore(true, 2, QuotaKey.PHONE, ZONE, Clock.systemUTC());
+        assertEquals(1, store.tryAcquire("84987654321", "t1"));
+        assertEquals(0, store.tryAcquire("84987654321", "t1"));
+        store.release("84987654321", "t1");
+        assertEquals(0, store.tryAcquire("84987654321", "t1"));
+        assertEquals(QuotaStore.REJECTED, store.tryAcquire("84987654321", "t1"));
+
+        // nothing to give back for a key that sent nothing
+        store.release("84900000000", "t1");
+        assertEquals(2, store.remaining("84900000000", null));
+    }
+
+    @Test
+    void keyDecidesWhatIsCounted() {
+        QuotaStore byTemplate = new QuotaStore(true, 10, QuotaKey.TEMPLATE, ZONE, Clock.systemUTC());
+        byTemplate.tryAcquire("a", "t1");
+        byTemplate.tryAcquire("b", "t1");
+        assertEquals(8, byTemplate.remaining(null, "t1"));
+
+        QuotaStore byPair = new QuotaStore(true, 10, QuotaKey.PHONE_TEMPLATE, ZONE, Clock.systemUTC());
+        byPair.tryAcquire("a", "t1");
+        byPair.tryAcquire("a", "t2");
+        byPair.tryAcquire("b", "t1");
+        assertEquals(9, byPair.remaining("a", "t1"));
+        assertEquals(3, byPair.size());
+    }
+
+    @Test
+    void resetsAtMidnightOfTheZone() {
+        // 23:59:59 in Ho Chi Minh City (UTC+7)
+        MutableClock clock = new MutableClock(Instant.parse("2026-03-01T16:59:59Z"));
+        QuotaStore store = new QuotaStore(true, 1, QuotaKey.PHONE, ZONE, clock);
+        assertEquals(0, store.tryAcquire("p", "t"));
+        assertEquals(QuotaStore.REJECTED, store.tryAcquire("p", "t"));
+
+        clock.now = Instant.parse("2026-03-01T17:00:00Z");
+        assertEquals(0, store.tryAcquire("p", "t"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void hotKeyIsNeverOverCounted() throws InterruptedException {
+        int limit = 10_000;
+        QuotaStore store = new QuotaStore(true, limit, QuotaKey.PHONE, ZONE, Clock.systemUTC());
+        AtomicInteger accepted = new AtomicInteger();
+        runOnVirtualThreads(1000, t -> {
+            for (int i = 0; i < 20; i++) {
+                if (store.tryAcquire("hot", "t") != QuotaStore.REJECTED) {
+                    accepted.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(limit, accepted.get());
+        assertEquals(0, store.remaining("hot", "t"));
+    }
+
+    @Test
+    void keepsEveryCountWhileTablesGrow() throws InterruptedException {
+        QuotaStore store = new QuotaStore(true, 500, QuotaKey.PHONE, ZONE, Clock.systemUTC());
+        int threads = 200;
+        int keysPerThread = 1000;
+        // every key is counted twice, by two threads racing on insert and growth
+        runOnVirtualThreads(threads, t -> {
+            int base = (t / 2) * keysPerThread;
+            for (int i = 0; i < keysPerThread; i++) {
+                store.tryAcquire(String.valueOf(base + i), null);
+            }
+        });
+        assertEquals(threads / 2 * keysPerThread, store.size());
+        for (int k = 0; k < threads / 2 * keysPerThread; k++) {
+            assertEquals(498, store.remaining(String.valueOf(k), null), "key " + k);
+        }
+    }
+
+    @Test
+    void disabledNeverRejects() {
+        QuotaStore store = QuotaStore.fromProperties(key -> switch (key) {
+            case "quota.enabled" -> "false";
+            case "quota.dailyLimit" -> "2";
+            default -> null;
+        });
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, store.tryAcquire("p", "t"));
+        }
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    void publishesMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        QuotaStore store = new QuotaStore(true, 1, QuotaKey.PHONE, ZONE, Clock.systemUTC());
+        store.bindTo(registry);
+        store.tryAcquire("p", "t");
+        store.tryAcquire("p", "t");
+        assertEquals(1.0, registry.get("quota_store_keys").gauge().value());
+        assertEquals(1.0, registry.get("quota_rejected_total").functionCounter().count());
+    }
+
+    @Test
+    void rejectsInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> QuotaKey.parse("email"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new QuotaStore(true, 0, QuotaKey.PHONE, ZONE, Clock.systemUTC()));
+    }
+
+    private static void runOnVirtualThreads(int count, ThreadBody body) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>(count);
+        for (int t = 0; t < count; t++) {
+            int index = t;
+            threads.add(Thread.ofVirtual().start(() -> body.run(index)));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private interface ThreadBody {
+        void run(int index);
+    }
+
+    private static final class MutableClock extends Clock {
+        Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.benchmark.common.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(-5 * SECOND);
+
+    @Test
+    void burstThenSteadyRate() {
+        RateLimiter limiter = new RateLimiter(true, 10, 20, 0, 0, clock::get);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.tryAcquire("84900000001", "otp"), "call " + i);
+        }
+        assertFalse(limiter.tryAcquire("84900000001", "otp"));
+        // other phones have their own bucket
+        assertTrue(limiter.tryAcquire("84900000002", "otp"));
+
+        // one token every 100 ms
+        clock.addAndGet(SECOND / 10);
+        assertTrue(limiter.tryAcquire("84900000001", "otp"));
+        assertFalse(limiter.tryAcquire("84900000001", "otp"));
+
+        // idle for longer than the burst takes to refill: full again, never more
+        clock.addAndGet(10 * SECOND);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.tryAcquire("84900000001", "otp"));
+        }
+        assertFalse(limiter.tryAcquire("84900000001", "otp"));
+    }
+
+    @Test
+    void templateLimitGivesThePhoneTokenBack() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RateLimiter limiter = new RateLimiter(true, 1, 2, 1, 3, clock::get);
+        limiter.bindTo(registry);
+        assertTrue(limiter.tryAcquire("84900000001", "otp"));
+        assertTrue(limiter.tryAcquire("84900000002", "otp"));
+        assertTrue(limiter.tryAcquire("84900000003", "otp"));
+        assertFalse(limiter.tryAcquire("84900000001", "otp"));
+        // the rejected call did not use the phone's second token
+        assertTrue(limiter.tryAcquire("84900000001", "promo"));
+        assertFalse(limiter.tryAcquire("84900000001", "promo"));
+
+        assertEquals(4.0, count(registry, "allowed"));
+        assertEquals(1.0, count(registry, "rejected_phone"));
+        assertEquals(1.0, count(registry, "rejected_template"));
+    }
+
+    @Test
+    void idleKeysAreEvicted() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RateLimiter limiter = new RateLimiter(true, 10, 20, 0, 0, clock::get);
+        limiter.bindTo(registry);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 50_000; i++) {
+                limiter.tryAcquire("84" + (round * 50_000 + i), "otp");
+            }
+            // every bucket is full again after 100 ms
+            clock.addAndGet(SECOND);
+        }
+        assertTrue(limiter.size() < 150_000, "keys " + limiter.size());
+        assertTrue(registry.get("ratelimit_evicted_keys_total").functionCounter().count() > 350_000);
+    }
+
+    @Test
+    void concurrentCallsTakeExactlyTheBurst() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(true, 1, 100, 0, 0, clock::get);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1000; i++) {
+                    if (limiter.tryAcquire("84900000001", "otp")) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(100, allowed.get());
+    }
+
+    @Test
+    void disabledAllowsEverything() {
+        RateLimiter limiter = RateLimiter.fromProperties(key -> null);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.tryAcquire("84900000001", "otp"));
+        }
+        assertEquals(0, limiter.size());
+    }
+
+    private static double count(SimpleMeterRegistry registry, String result) {
+        return registry.get("ratelimit_requests_total").tag("result", result).functionCounter().count();
+    }
+}
@@ -0,0 +1,129 @@
+package com.benchmark.common.template;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemplateEngineTest {
+
+    @Test
+    void rendersPlaceholdersAndEscapedBraces() {
+        CompiledTemplate template = CompiledTemplate.compile("Hi {name}, {{code}} is {code}{missing}.");
+        StringBuilder out = new StringBuilder("> ");
+        int length = template.renderTo(Map.of("name", "An", "code", 42), out);
+
+        assertEquals("> Hi An, {code} is 42.", out.toString());
+        assertEquals(out.length() - 2, length);
+        assertEquals(2 + 1, template.placeholders());
+        assertEquals("Hi , {code} is .".length(), template.literalLength());
+    }
+
+    @Test
+    void rejectsMalformedTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("Hi {name"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("Hi { }"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledTemplate.compile("Hi name}"));
+    }
+
+    @Test
+    void rendersTheBundledSampleTemplate() {
+        TemplateEngine engine = TemplateEngine.fromProperties(key -> null);
+        Map<String, String> data = Map.of("ky", "1", "thang", "4/2020", "start_date", "20/03/2020",
+                "end_date", "20/04/2020", "customer", "Nguyễn Thị Hoàng Anh", "cid", "PE010299485",
+                "address", "VNG Campus, TP.HCM", "amount", "100", "total", "100000");
+
+        int length = engine.render("7895417a7d3f9461cd2e", data);
+        assertTrue(length > 150, "rendered " + length + " characters");
+        assertEquals(TemplateEngine.NOT_FOUND, engine.render("unknown", data));
+        assertEquals(TemplateEngine.NOT_FOUND, engine.render(null, data));
+    }
+
+    @Test
+    void loadsTemplatesFromFile() throws Exception {
+        Path file = Files.createTempFile("templates", ".properties");
+        try {
+            Files.writeString(file, "t1=Xin chào {name}\n");
+            TemplateEngine engine = TemplateEngine.fromProperties(key -> key.equals("template.file") ? file.toString() : null);
+            assertEquals("Xin chào Bình".length(), engine.render("t1", Map.of("name", "Bình")));
+            assertEquals(TemplateEngine.NOT_FOUND, engine.render("7895417a7d3f9461cd2e", Map.of()));
+
+            Files.writeString(file, "broken=Xin chào {name\n");
+            assertThrows(IllegalArgumentException.class,
+                    () -> TemplateEngine.fromProperties(key -> key.equals("template.file") ? file.toString() : null));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void compilesOnceAndEvictsUnreferencedTemplatesFirst() {
+        AtomicInteger compiled = new AtomicInteger();
+        TemplateCache cache = new TemplateCache(2, templateId -> {
+            compiled.incrementAndGet();
+            return templateId.startsWith("t") ? CompiledTemplate.compile(templateId) : null;
+        });
+
+        CompiledTemplate t1 = cache.get("t1");
+        assertNotNull(t1);
+        assertEquals(t1, cache.get("t1"));
+        cache.get("t2");
+        // t1 was used since it was cached, t2 was not: t2 goes first
+        cache.get("t3");
+        assertEquals(2, cache.size());
+        assertEquals(t1, cache.get("t1"));
+        assertNull(cache.get("x"));
+
+        assertEquals(4, compiled.get());
+        assertEquals(2, cache.hits.sum());
+        assertEquals(4, cache.misses.sum());
+        assertEquals(1, cache.evictions.sum());
+    }
+
+    @Test
+    void publishesCacheMetrics() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TemplateEngine engine = new TemplateEngine(Map.of("a", "{x}", "b", "{y}")::get, 1);
+        engine.bindTo(registry);
+        engine.render("a", Map.of());
+        engine.render("a", Map.of());
+        engine.render("b", Map.of());
+
+        assertEquals(1.0, registry.get("template_cache_requests_total").tag("result", "hit").functionCounter().count());
+        assertEquals(2.0, registry.get("template_cache_requests_total").tag("result", "miss").functionCounter().count());
+        assertEquals(1.0, registry.get("template_cache_evictions_total").functionCounter().count());
+        assertEquals(1.0, registry.get("template_cache_size").gauge().value());
+    }
+
+    @Test
+    void renderingReusesItsBuffers() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        TemplateEngine engine = TemplateEngine.fromProperties(key -> null);
+        Map<String, String> data = new HashMap<>(Map.of("ky", "1", "customer", "Nguyễn Thị Hoàng Anh", "total", "100000"));
+
+        int length = 0;
+        for (int i = 0; i < 10_000; i++) {
+            length += engine.render("7895417a7d3f9461cd2e", data);
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            length += engine.render("7895417a7d3f9461cd2e", data);
+        }
+        long perRender = (threads.getThreadAllocatedBytes(threadId) - before) / 10_000;
+
+        assertTrue(length > 0);
+        assertTrue(perRender < 16, "allocated " + perRender + " bytes per render");
+    }
+}
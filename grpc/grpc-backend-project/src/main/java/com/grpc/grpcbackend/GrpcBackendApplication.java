@@ -1,9 +1,12 @@
 package com.grpc.grpcbackend;
 
+import com.benchmark.common.config.CommonConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@Import(CommonConfig.class)
 public class GrpcBackendApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,26 @@
+package com.grpc.grpcbackend.config;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import com.grpc.grpcbackend.service.ConcurrencyLimitInterceptor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.grpc.server.GlobalServerInterceptor;
+
+/**
+ * Applies the {@link ConcurrencyLimiter} of {@code CommonConfig} to unary calls with an interceptor in front of
+ * every service. The interceptor runs after the rate limit, so a call the rate limit rejects never takes a slot
+ * or counts towards the measured latency.
+ *
+ * @author phonghv
+ */
+@Configuration
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    @GlobalServerInterceptor
+    @Order(RateLimitConfig.INTERCEPTOR_ORDER + 100)
+    public ConcurrencyLimitInterceptor concurrencyLimitInterceptor(ConcurrencyLimiter concurrencyLimiter) {
+        return new ConcurrencyLimitInterceptor(concurrencyLimiter);
+    }
+}
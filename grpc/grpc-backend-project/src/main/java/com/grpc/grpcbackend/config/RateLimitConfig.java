@@ -0,0 +1,28 @@
+package com.grpc.grpcbackend.config;
+
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.grpc.grpcbackend.service.RateLimitInterceptor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.grpc.server.GlobalServerInterceptor;
+
+/**
+ * Applies the {@link RateLimiter} of {@code CommonConfig} to unary calls with an interceptor in front of every
+ * service; streams are checked per message by {@code MessageService}.
+ *
+ * @author phonghv
+ */
+@Configuration
+public class RateLimitConfig {
+
+    // global interceptors run in this order, lowest first
+    public static final int INTERCEPTOR_ORDER = 100;
+
+    @Bean
+    @GlobalServerInterceptor
+    @Order(INTERCEPTOR_ORDER)
+    public RateLimitInterceptor rateLimitInterceptor(RateLimiter rateLimiter) {
+        return new RateLimitInterceptor(rateLimiter);
+    }
+}
@@ -0,0 +1,78 @@
+package com.grpc.grpcbackend.service;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import io.grpc.ForwardingServerCall;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Adaptive concurrency limit of unary calls: a call over the limit is closed with {@code UNAVAILABLE}, which
+ * clients may retry, before its request is read; an admitted call is released when it is closed or cancelled,
+ * and only calls closed with {@code OK} count towards the latency the limit follows. Streams last as long as the
+ * client keeps them open and bound their own messages with {@code grpc.stream.maxInFlight}, they pass through.
+ *
+ * @author phonghv
+ */
+public class ConcurrencyLimitInterceptor implements ServerInterceptor {
+
+    private static final Status SHED = Status.UNAVAILABLE.withDescription(ConcurrencyLimiter.ERROR_MESSAGE);
+
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitInterceptor(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        if (!limiter.enabled() || call.getMethodDescriptor().getType() != MethodDescriptor.MethodType.UNARY) {
+            return next.startCall(call, headers);
+        }
+        long start = limiter.tryAcquire();
+        if (start == ConcurrencyLimiter.REJECTED) {
+            call.close(SHED, new Metadata());
+            return new ServerCall.Listener<>() {
+            };
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        ServerCall<ReqT, RespT> limited = new ForwardingServerCall.SimpleForwardingServerCall<>(call) {
+            @Override
+            public void close(Status status, Metadata trailers) {
+                if (released.compareAndSet(false, true)) {
+                    if (status.isOk()) {
+                        limiter.release(start);
+                    } else {
+                        limiter.releaseIgnored(start);
+                    }
+                }
+                super.close(status, trailers);
+            }
+        };
+        ServerCall.Listener<ReqT> listener;
+        try {
+            listener = next.startCall(limited, headers);
+        } catch (RuntimeException e) {
+            if (released.compareAndSet(false, true)) {
+                limiter.releaseIgnored(start);
+            }
+            throw e;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            @Override
+            public void onCancel() {
+                if (released.compareAndSet(false, true)) {
+                    limiter.releaseIgnored(start);
+                }
+                super.onCancel();
+            }
+        };
+    }
+}
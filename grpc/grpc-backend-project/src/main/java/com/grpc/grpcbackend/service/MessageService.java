@@ -1,32 +1,70 @@
 package com.grpc.grpcbackend.service;
 
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.id.MsgIdGenerator;
+import com.benchmark.common.idempotency.IdempotencyCache;
+import com.benchmark.common.journal.MessageJournal;
+import com.benchmark.common.latency.SimulatedLatency;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
+import com.grpc.grpcbackend.MessageBatchResponse;
 import com.grpc.grpcbackend.MessageRequest;
 import com.grpc.grpcbackend.MessageResponse;
 import com.grpc.grpcbackend.MessageServiceGrpc;
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.grpc.server.service.GrpcService;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 
-import java.util.Random;
-import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * Message sends over gRPC. The deadline of the call, and its cancellation by the client, are followed through
+ * {@link Deadlines}: a message whose caller is gone is not started, and its simulated delay is cut short when the
+ * deadline passes or the call is cancelled, giving its quota back.
  *
  * @author phonghv
  */
 @GrpcService
 public class MessageService extends MessageServiceGrpc.MessageServiceImplBase {
 
-    private final Random random = new Random();
+    private final SimulatedLatency simulatedLatency;
+    private final MsgIdGenerator msgIdGenerator;
+    private final QuotaStore quotaStore;
+    private final TemplateEngine templateEngine;
+    private final IdempotencyCache<MessageResponse> idempotencyCache;
+    private final MessageJournal journal;
+    private final RateLimiter rateLimiter;
+    private final Deadlines deadlines;
     private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
 
     private final Counter sendMessageCounter;
     private final Counter sendMessageNoDelayCounter;
+    private final MessageStreamHandler streamHandler;
 
-    public MessageService(MeterRegistry meterRegistry) {
+    public MessageService(MeterRegistry meterRegistry, SimulatedLatency simulatedLatency, MsgIdGenerator msgIdGenerator,
+                          QuotaStore quotaStore, TemplateEngine templateEngine,
+                          IdempotencyCache<MessageResponse> idempotencyCache, MessageJournal journal,
+                          RateLimiter rateLimiter, Deadlines deadlines, @Qualifier("grpcExecutor") Executor grpcExecutor,
+                          @Value("${grpc.stream.maxInFlight:256}") int streamMaxInFlight) {
+        this.simulatedLatency = simulatedLatency;
+        this.msgIdGenerator = msgIdGenerator;
+        this.quotaStore = quotaStore;
+        this.templateEngine = templateEngine;
+        this.idempotencyCache = idempotencyCache;
+        this.journal = journal;
+        this.rateLimiter = rateLimiter;
+        this.deadlines = deadlines;
         this.sendMessageCounter = Counter.builder("message_service_send_total")
                 .description("Số lần gọi sendMessage()")
                 .tag("method", "sendMessage")
@@ -36,30 +74,16 @@ public class MessageService extends MessageServiceGrpc.MessageServiceImplBase {
                 .description("Số lần gọi sendMessageNoRandomDelay()")
                 .tag("method", "sendMessageNoRandomDelay")
                 .register(meterRegistry);
+
+        this.streamHandler = new MessageStreamHandler(this::processStreamedMessage, grpcExecutor, streamMaxInFlight);
     }
 
 
     @Override
     public void sendMessage(MessageRequest request, StreamObserver<MessageResponse> responseObserver) {
         try {
-            simulateDelay();
-            String msgId = UUID.randomUUID().toString().substring(0, 20);
-            long now = System.currentTimeMillis();
-
-            MessageResponse response = MessageResponse.newBuilder()
-                    .setError(0)
-                    .setMessage("Success")
-                    .setMsgId(msgId)
-                    .setSentTime(now)
-                    .setSendingMode("1")
-                    .setQuota(MessageResponse.Quota.newBuilder()
-                            .setDailyQuota("500")
-                            .setRemainingQuota("499")
-                            .build())
-                    .build();
-
-            responseObserver.onNext(response);
-            responseObserver.onCompleted();
+            respond(idempotencyCache.execute(request.getTrackingId(),
+                    () -> send(request, deadline -> simulatedLatency.sleep(deadlines, deadline))), responseObserver);
         } catch (Exception e) {
             logger.error("Error processing sendMessage request: {}", e.getMessage(), e);
             responseObserver.onError(e);
@@ -68,39 +92,12 @@ public class MessageService extends MessageServiceGrpc.MessageServiceImplBase {
         }
     }
 
-    private void simulateDelay() throws InterruptedException {
-        double p = random.nextDouble();
-        long delay;
-        if (p < 0.95) delay = 100 + random.nextInt(400);
-        else if (p < 0.98) delay = 500 + random.nextInt(500);
-        else if (p < 0.9995) delay = 1000 + random.nextInt(2000);
-        else delay = 3001 + random.nextInt(2000);
-        Thread.sleep(delay);
-    }
-
     @Override
     public void sendMessageNoRandomDelay(MessageRequest request, StreamObserver<MessageResponse> responseObserver) {
         try {
-            // delay for 100 milliseconds
-            Thread.sleep(10);
-
-            String msgId = UUID.randomUUID().toString().substring(0, 20);
-            long now = System.currentTimeMillis();
-
-            MessageResponse response = MessageResponse.newBuilder()
-                    .setError(0)
-                    .setMessage("Success")
-                    .setMsgId(msgId)
-                    .setSentTime(now)
-                    .setSendingMode("1")
-                    .setQuota(MessageResponse.Quota.newBuilder()
-                            .setDailyQuota("500")
-                            .setRemainingQuota("499")
-                            .build())
-                    .build();
-
-            responseObserver.onNext(response);
-            responseObserver.onCompleted();
+            // delay for 10 milliseconds
+            respond(idempotencyCache.execute(request.getTrackingId(),
+                    () -> send(request, deadline -> deadlines.sleep(10, deadline))), responseObserver);
         } catch (Exception e) {
             logger.error("Error processing sendMessageNoRandomDelay request: {}", e.getMessage(), e);
             responseObserver.onError(e);
@@ -108,5 +105,216 @@ public class MessageService extends MessageServiceGrpc.MessageServiceImplBase {
             sendMessageNoDelayCounter.increment();
         }
     }
-}
 
+    @Override
+    public StreamObserver<MessageRequest> sendMessages(StreamObserver<MessageBatchResponse> responseObserver) {
+        return streamHandler.collect(responseObserver);
+    }
+
+    @Override
+    public StreamObserver<MessageRequest> sendMessageStream(StreamObserver<MessageResponse> responseObserver) {
+        return streamHandler.pipeline(responseObserver);
+    }
+
+    private MessageResponse processStreamedMessage(MessageRequest request) {
+        try {
+            // unary calls are checked by RateLimitInterceptor, streamed messages one by one here
+            if (!rateLimiter.tryAcquire(request.getPhone(), request.getTemplateId())) {
+                return rateLimitedResponse(request);
+            }
+            return idempotencyCache.execute(request.getTrackingId(),
+                    () -> send(request, deadline -> simulatedLatency.sleep(deadlines, deadline)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return errorResponse(request, e);
+        } catch (Exception e) {
+            logger.error("Error processing streamed message: {}", e.getMessage(), e);
+            return errorResponse(request, e);
+        } finally {
+            sendMessageCounter.increment();
+        }
+    }
+
+    /**
+     * One message, without the idempotency check: rendered, counted against the quota, then delayed.
+     * A rejected message is an error response, {@link #respond} turns it into a status for unary calls.
+     */
+    private MessageResponse send(MessageRequest request, Delay delay) throws InterruptedException {
+        Context context = Context.current();
+        // a cancelled call has no one waiting any more, as if its deadline were now
+        long deadline = context.isCancelled() ? System.nanoTime() : deadline(context.getDeadline());
+        if (deadlines.skip(deadline)) {
+            return deadlineExceededResponse(request);
+        }
+        int contentLength = templateEngine.render(request.getTemplateId(), request.getTemplateDataMap());
+        if (contentLength == TemplateEngine.NOT_FOUND) {
+            return templateNotFoundResponse(request);
+        }
+        int remainingQuota = quotaStore.tryAcquire(request.getPhone(), request.getTemplateId());
+        if (remainingQuota == QuotaStore.REJECTED) {
+            return quotaExceededResponse(request);
+        }
+        if (!delay(delay, deadline, context)) {
+            quotaStore.release(request.getPhone(), request.getTemplateId());
+            return deadlineExceededResponse(request);
+        }
+        MessageResponse response = buildResponse(request, remainingQuota, contentLength);
+        journal.append(response.getMsgId(), request.getPhone(), request.getTemplateId(), request.getTrackingId(),
+                request.getTemplateDataMap());
+        if (context.isCancelled()) {
+            deadlines.wasted();
+        } else {
+            deadlines.completed(deadline);
+        }
+        return response;
+    }
+
+    private static long deadline(Deadline deadline) {
+        return deadline == null ? Deadlines.NONE : System.nanoTime() + deadline.timeRemaining(TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Applies the delay, interrupted when the call is cancelled: the client went away, or the deadline passed.
+     *
+     * @return {@code false} when it was cut short
+     */
+    private boolean delay(Delay delay, long deadline, Context context) throws InterruptedException {
+        if (!deadlines.enabled()) {
+            return delay.apply(deadline);
+        }
+        CancellationInterrupt interrupt = new CancellationInterrupt(Thread.currentThread());
+        context.addListener(interrupt, Runnable::run);
+        try {
+            return delay.apply(deadline);
+        } catch (InterruptedException e) {
+            if (!context.isCancelled()) {
+                throw e;
+            }
+            return false;
+        } finally {
+            context.removeListener(interrupt);
+            interrupt.done();
+        }
+    }
+
+    /**
+     * Interrupts the delaying thread when the call is cancelled, never after {@link #done()}: a cancellation that
+     * races with the end of the delay is cleared there, so it cannot hit whatever the thread runs next.
+     */
+    private static final class CancellationInterrupt implements Context.CancellationListener {
+        private static final int DELAYING = 0, DONE = 1, INTERRUPTING = 2, INTERRUPTED = 3;
+
+        private final Thread thread;
+        private final AtomicInteger state = new AtomicInteger(DELAYING);
+
+        CancellationInterrupt(Thread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        public void cancelled(Context context) {
+            if (state.compareAndSet(DELAYING, INTERRUPTING)) {
+                thread.interrupt();
+                state.set(INTERRUPTED);
+            }
+        }
+
+        void done() {
+            if (state.compareAndSet(DELAYING, DONE)) {
+                return;
+            }
+            while (state.get() != INTERRUPTED) {
+                Thread.onSpinWait();
+            }
+            Thread.interrupted();
+        }
+    }
+
+    // unary calls fail with a status, which the JSON transcoder maps to the HTTP status of the REST stack
+    private static void respond(MessageResponse response, StreamObserver<MessageResponse> responseObserver) {
+        switch (response.getError()) {
+            case QuotaStore.ERROR_CODE -> responseObserver.onError(
+                    Status.RESOURCE_EXHAUSTED.withDescription(response.getMessage()).asRuntimeException());
+            case TemplateEngine.ERROR_CODE -> responseObserver.onError(
+                    Status.NOT_FOUND.withDescription(response.getMessage()).asRuntimeException());
+            case Deadlines.ERROR_CODE -> responseObserver.onError(
+                    Status.DEADLINE_EXCEEDED.withDescription(response.getMessage()).asRuntimeException());
+            default -> {
+                responseObserver.onNext(response);
+                responseObserver.onCompleted();
+            }
+        }
+    }
+
+    private MessageResponse buildResponse(MessageRequest request, int remainingQuota, int contentLength) {
+        String msgId = msgIdGenerator.next();
+        long now = System.currentTimeMillis();
+
+        return MessageResponse.newBuilder()
+                .setError(0)
+                .setMessage("Success")
+                .setMsgId(msgId)
+                .setSentTime(now)
+                .setSendingMode("1")
+                .setQuota(quota(remainingQuota))
+                .setTrackingId(request.getTrackingId())
+                .setContentLength(contentLength)
+                .build();
+    }
+
+    private MessageResponse quotaExceededResponse(MessageRequest request) {
+        return MessageResponse.newBuilder()
+                .setError(QuotaStore.ERROR_CODE)
+                .setMessage(QuotaStore.ERROR_MESSAGE)
+                .setQuota(quota(0))
+                .setTrackingId(request.getTrackingId())
+                .build();
+    }
+
+    private static MessageResponse templateNotFoundResponse(MessageRequest request) {
+        return MessageResponse.newBuilder()
+                .setError(TemplateEngine.ERROR_CODE)
+                .setMessage(TemplateEngine.ERROR_MESSAGE)
+                .setTrackingId(request.getTrackingId())
+                .build();
+    }
+
+    private static MessageResponse deadlineExceededResponse(MessageRequest request) {
+        return MessageResponse.newBuilder()
+                .setError(Deadlines.ERROR_CODE)
+                .setMessage(Deadlines.ERROR_MESSAGE)
+                .setTrackingId(request.getTrackingId())
+                .build();
+    }
+
+    private static MessageResponse rateLimitedResponse(MessageRequest request) {
+        return MessageResponse.newBuilder()
+                .setError(RateLimiter.ERROR_CODE)
+                .setMessage(RateLimiter.ERROR_MESSAGE)
+                .setTrackingId(request.getTrackingId())
+                .build();
+    }
+
+    private MessageResponse.Quota quota(int remainingQuota) {
+        return MessageResponse.Quota.newBuilder()
+                .setDailyQuota(String.valueOf(quotaStore.dailyLimit()))
+                .setRemainingQuota(String.valueOf(remainingQuota))
+                .build();
+    }
+
+    static MessageResponse errorResponse(MessageRequest request, Exception e) {
+        return MessageResponse.newBuilder()
+                .setError(1)
+                .setMessage("Error processing request: " + e.getMessage())
+                .setTrackingId(request.getTrackingId())
+                .build();
+    }
+
+    @FunctionalInterface
+    private interface Delay {
+        /**
+         * @return {@code false} when cut short at {@code deadline}
+         */
+        boolean apply(long deadline) throws InterruptedException;
+    }
+}
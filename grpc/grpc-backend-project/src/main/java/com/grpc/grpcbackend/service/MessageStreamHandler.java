@@ -0,0 +1,177 @@
+package com.grpc.grpcbackend.service;
+
+import com.grpc.grpcbackend.MessageBatchResponse;
+import com.grpc.grpcbackend.MessageRequest;
+import com.grpc.grpcbackend.MessageResponse;
+import io.grpc.Context;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Processes the requests of a streaming call concurrently on the given executor.
+ * <p>
+ * Inbound flow control is manual: at most {@code maxInFlight} messages of one stream are requested
+ * from the transport and processed at a time, and one more is requested for each completed message
+ * once the call is ready to send, so a client that reads its responses slowly also slows down its requests.
+ * Outbound writes are serialized because a {@link StreamObserver} is not thread-safe. A message whose
+ * processing throws is answered with an error response.
+ *
+ * @author phonghv
+ */
+class MessageStreamHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageStreamHandler.class);
+
+    private final Function<MessageRequest, MessageResponse> processor;
+    private final Executor executor;
+    private final int maxInFlight;
+
+    MessageStreamHandler(Function<MessageRequest, MessageResponse> processor, Executor executor, int maxInFlight) {
+        this.processor = processor;
+        this.executor = executor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Bidirectional: each response is written as soon as its message completes.
+     */
+    StreamObserver<MessageRequest> pipeline(StreamObserver<MessageResponse> responseObserver) {
+        ServerCallStreamObserver<MessageResponse> call = (ServerCallStreamObserver<MessageResponse>) responseObserver;
+        return new ConcurrentRequestObserver(call, call::onNext, call::onCompleted);
+    }
+
+    /**
+     * Client-streaming: responses are collected and returned as one batch after the client half-closes.
+     */
+    StreamObserver<MessageRequest> collect(StreamObserver<MessageBatchResponse> responseObserver) {
+        ServerCallStreamObserver<MessageBatchResponse> call = (ServerCallStreamObserver<MessageBatchResponse>) responseObserver;
+        ConcurrentLinkedQueue<MessageResponse> responses = new ConcurrentLinkedQueue<>();
+        return new ConcurrentRequestObserver(call, responses::add, () -> {
+            MessageBatchResponse.Builder batch = MessageBatchResponse.newBuilder();
+            for (MessageResponse response : responses) {
+                if (response.getError() == 0) {
+                    batch.setAccepted(batch.getAccepted() + 1);
+                } else {
+                    batch.setFailed(batch.getFailed() + 1);
+                }
+                batch.addResponses(response);
+            }
+            call.onNext(batch.build());
+            call.onCompleted();
+        });
+    }
+
+    private final class ConcurrentRequestObserver implements StreamObserver<MessageRequest> {
+
+        private final ServerCallStreamObserver<?> call;
+        private final Consumer<MessageResponse> onResponse;
+        private final Runnable onAllCompleted;
+        // messages still being processed, plus one while the client has not half-closed
+        private final AtomicInteger pending = new AtomicInteger(1);
+        // completed messages not yet replaced by a request, held while the call is not ready
+        private final AtomicInteger owed = new AtomicInteger();
+        // guarded by this
+        private boolean closed;
+
+        ConcurrentRequestObserver(ServerCallStreamObserver<?> call, Consumer<MessageResponse> onResponse,
+                                  Runnable onAllCompleted) {
+            this.call = call;
+            this.onResponse = onResponse;
+            this.onAllCompleted = onAllCompleted;
+            call.setOnCancelHandler(this::close);
+            call.setOnReadyHandler(this::requestOwed);
+            call.disableAutoRequest();
+            call.request(maxInFlight);
+        }
+
+        @Override
+        public void onNext(MessageRequest request) {
+            pending.incrementAndGet();
+            try {
+                // the call's context goes along, with its deadline and cancellation
+                executor.execute(Context.current().wrap(() -> {
+                    try {
+                        respond(process(request));
+                    } finally {
+                        owed.incrementAndGet();
+                        if (call.isReady()) {
+                            requestOwed();
+                        }
+                        finishOne();
+                    }
+                }));
+            } catch (Exception e) {
+                logger.error("Error dispatching streamed message: {}", e.getMessage(), e);
+                finishOne();
+            }
+        }
+
+        private MessageResponse process(MessageRequest request) {
+            try {
+                return processor.apply(request);
+            } catch (Exception e) {
+                logger.error("Error processing streamed message: {}", e.getMessage(), e);
+                return MessageService.errorResponse(request, e);
+            }
+        }
+
+        private void respond(MessageResponse response) {
+            try {
+                synchronized (this) {
+                    if (!closed) {
+                        onResponse.accept(response);
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Error writing streamed response: {}", e.getMessage(), e);
+            }
+        }
+
+        // on a completion while ready, and from the onReady handler once the call drains its outbound buffer
+        private void requestOwed() {
+            int count = owed.getAndSet(0);
+            if (count > 0 && !isClosed()) {
+                call.request(count);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            logger.warn("Message stream failed: {}", t.getMessage());
+            close();
+        }
+
+        @Override
+        public void onCompleted() {
+            finishOne();
+        }
+
+        private void finishOne() {
+            if (pending.decrementAndGet() == 0) {
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    closed = true;
+                    onAllCompleted.run();
+                }
+            }
+        }
+
+        private synchronized void close() {
+            closed = true;
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.grpc.grpcbackend.service;
+
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.grpc.grpcbackend.MessageRequest;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Rate limit of unary sends: the request is checked as it arrives and a throttled call is closed with
+ * {@code RESOURCE_EXHAUSTED} without reaching the service, its idempotency cache or its delay. Streamed
+ * messages pass through and are checked one by one by {@link MessageService}, so a throttled message fails
+ * alone instead of the whole stream.
+ *
+ * @author phonghv
+ */
+public class RateLimitInterceptor implements ServerInterceptor {
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitInterceptor(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+                                                                 ServerCallHandler<ReqT, RespT> next) {
+        ServerCall.Listener<ReqT> listener = next.startCall(call, headers);
+        if (!rateLimiter.enabled() || !call.getMethodDescriptor().getType().clientSendsOneMessage()) {
+            return listener;
+        }
+        return new ForwardingServerCallListener.SimpleForwardingServerCallListener<>(listener) {
+            private boolean rejected;
+
+            @Override
+            public void onMessage(ReqT message) {
+                if (message instanceof MessageRequest request
+                        && !rateLimiter.tryAcquire(request.getPhone(), request.getTemplateId())) {
+                    rejected = true;
+                    call.close(Status.RESOURCE_EXHAUSTED.withDescription(RateLimiter.ERROR_MESSAGE), new Metadata());
+                    return;
+                }
+                super.onMessage(message);
+            }
+
+            @Override
+            public void onHalfClose() {
+                // the service never saw the request, nothing to answer
+                if (!rejected) {
+                    super.onHalfClose();
+                }
+            }
+        };
+    }
+}
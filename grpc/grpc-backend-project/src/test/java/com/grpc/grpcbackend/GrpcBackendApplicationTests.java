@@ -1,13 +1,39 @@
 package com.grpc.grpcbackend;
 
+import com.grpc.grpcbackend.service.ConcurrencyLimitInterceptor;
+import com.grpc.grpcbackend.service.RateLimitInterceptor;
+import io.grpc.ServerInterceptor;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 @SpringBootTest
 class GrpcBackendApplicationTests {
 
+    @Autowired
+    List<ServerInterceptor> interceptors;
+
     @Test
     void contextLoads() {
     }
 
+    @Test
+    void rateLimitRunsBeforeConcurrencyLimit() {
+        int rateLimit = indexOf(RateLimitInterceptor.class);
+        int concurrencyLimit = indexOf(ConcurrencyLimitInterceptor.class);
+        assertTrue(rateLimit >= 0 && rateLimit < concurrencyLimit, interceptors::toString);
+    }
+
+    private int indexOf(Class<?> type) {
+        for (int i = 0; i < interceptors.size(); i++) {
+            if (type.isInstance(interceptors.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
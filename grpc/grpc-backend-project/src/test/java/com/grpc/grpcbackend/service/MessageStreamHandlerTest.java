@@ -0,0 +1,137 @@
+package com.grpc.grpcbackend.service;
+
+import com.grpc.grpcbackend.MessageBatchResponse;
+import com.grpc.grpcbackend.MessageRequest;
+import com.grpc.grpcbackend.MessageResponse;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageStreamHandlerTest {
+
+    @Test
+    void completedMessagesAreReplacedOnlyOnceTheCallIsReady() {
+        FakeCall<MessageResponse> call = new FakeCall<>();
+        MessageStreamHandler handler = new MessageStreamHandler(MessageStreamHandlerTest::success, Runnable::run, 2);
+        StreamObserver<MessageRequest> requests = handler.pipeline(call);
+        assertEquals(2, call.requested);
+
+        requests.onNext(request("a"));
+        assertEquals(3, call.requested);
+
+        // the client stops reading: completions are held back
+        call.ready = false;
+        requests.onNext(request("b"));
+        requests.onNext(request("c"));
+        assertEquals(3, call.requested);
+        assertEquals(3, call.values.size());
+
+        call.ready = true;
+        call.onReadyHandler.run();
+        assertEquals(5, call.requested);
+        call.onReadyHandler.run();
+        assertEquals(5, call.requested);
+    }
+
+    @Test
+    void failedMessageIsAnsweredAndCountedAsFailed() {
+        FakeCall<MessageBatchResponse> call = new FakeCall<>();
+        MessageStreamHandler handler = new MessageStreamHandler(request -> {
+            if (request.getTrackingId().equals("bad")) {
+                throw new IllegalStateException("boom");
+            }
+            return success(request);
+        }, Runnable::run, 4);
+        StreamObserver<MessageRequest> requests = handler.collect(call);
+
+        requests.onNext(request("good"));
+        requests.onNext(request("bad"));
+        requests.onCompleted();
+
+        assertTrue(call.completed);
+        MessageBatchResponse batch = call.values.get(0);
+        assertEquals(1, batch.getAccepted());
+        assertEquals(1, batch.getFailed());
+        MessageResponse failed = batch.getResponses(1);
+        assertEquals("bad", failed.getTrackingId());
+        assertEquals("Error processing request: boom", failed.getMessage());
+        // every message is replaced, failed or not
+        assertEquals(6, call.requested);
+    }
+
+    private static MessageRequest request(String trackingId) {
+        return MessageRequest.newBuilder().setPhone("84987654321").setTrackingId(trackingId).build();
+    }
+
+    private static MessageResponse success(MessageRequest request) {
+        return MessageResponse.newBuilder().setError(0).setTrackingId(request.getTrackingId()).build();
+    }
+
+    private static final class FakeCall<V> extends ServerCallStreamObserver<V> {
+        final List<V> values = new ArrayList<>();
+        boolean ready = true;
+        boolean completed;
+        int requested;
+        Runnable onReadyHandler;
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public void setOnCancelHandler(Runnable onCancelHandler) {
+        }
+
+        @Override
+        public void setCompression(String compression) {
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setOnReadyHandler(Runnable onReadyHandler) {
+            this.onReadyHandler = onReadyHandler;
+        }
+
+        @Override
+        public void disableAutoRequest() {
+        }
+
+        @Override
+        public void disableAutoInboundFlowControl() {
+        }
+
+        @Override
+        public void request(int count) {
+            requested += count;
+        }
+
+        @Override
+        public void setMessageCompression(boolean enable) {
+        }
+
+        @Override
+        public void onNext(V value) {
+            values.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+        }
+
+        @Override
+        public void onCompleted() {
+            completed = true;
+        }
+    }
+}
@@ -0,0 +1,315 @@
+package com.grpc.grpcbackend.service;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.id.MsgIdGenerator;
+import com.benchmark.common.idempotency.IdempotencyCache;
+import com.benchmark.common.journal.MessageJournal;
+import com.benchmark.common.latency.FixedLatencyModel;
+import com.benchmark.common.latency.LatencyModel;
+import com.benchmark.common.latency.LogNormalLatencyModel;
+import com.benchmark.common.latency.SimulatedLatency;
+import com.benchmark.common.quota.QuotaKey;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
+import com.grpc.grpcbackend.MessageBatchResponse;
+import com.grpc.grpcbackend.MessageRequest;
+import com.grpc.grpcbackend.MessageResponse;
+import com.grpc.grpcbackend.MessageServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MessageStreamingTest {
+
+    private static final int MESSAGES = 200;
+
+    private Server server;
+    private ManagedChannel channel;
+    private QuotaStore quotaStore;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        start(RateLimiter.fromProperties(key -> null), ConcurrencyLimiter.fromProperties(key -> null));
+    }
+
+    private void start(RateLimiter rateLimiter, ConcurrencyLimiter concurrencyLimiter) throws Exception {
+        // spread delays so completions come back out of request order
+        start(rateLimiter, concurrencyLimiter, new LogNormalLatencyModel(20, 0.8, 200));
+    }
+
+    private void start(RateLimiter rateLimiter, ConcurrencyLimiter concurrencyLimiter, LatencyModel latencyModel)
+            throws Exception {
+        SimulatedLatency latency = new SimulatedLatency(latencyModel, new SimpleMeterRegistry());
+        // every test message uses the same phone, the quota covers exactly one batch
+        quotaStore = new QuotaStore(true, MESSAGES, QuotaKey.PHONE, ZoneId.systemDefault(), Clock.systemUTC());
+        Deadlines deadlines = new Deadlines(true, System::nanoTime);
+        registry = new SimpleMeterRegistry();
+        deadlines.bindTo(registry);
+        MessageService service = new MessageService(new SimpleMeterRegistry(), latency, new MsgIdGenerator(1),
+                quotaStore, TemplateEngine.fromProperties(key -> null),
+                IdempotencyCache.fromProperties(key -> null, response -> response.getError() == 0),
+                MessageJournal.disabled(), rateLimiter, deadlines,
+                Executors.newVirtualThreadPerTaskExecutor(), 64);
+        String name = InProcessServerBuilder.generateName();
+        server = InProcessServerBuilder.forName(name).directExecutor().addService(service)
+                // the last one added runs first: rate limit, then concurrency limit, as in the application
+                .intercept(new ConcurrencyLimitInterceptor(concurrencyLimiter))
+                .intercept(new RateLimitInterceptor(rateLimiter)).build().start();
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void sendMessageStream_returnsEveryResponseAsItCompletes() throws Exception {
+        ConcurrentLinkedQueue<MessageResponse> received = new ConcurrentLinkedQueue<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        StreamObserver<MessageRequest> requests = MessageServiceGrpc.newStub(channel)
+                .sendMessageStream(new StreamObserver<>() {
+                    @Override
+                    public void onNext(MessageResponse value) {
+                        received.add(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        done.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        done.complete(null);
+                    }
+                });
+        for (int i = 0; i < MESSAGES; i++) {
+            requests.onNext(request(i));
+        }
+        requests.onCompleted();
+        done.get(30, TimeUnit.SECONDS);
+
+        List<String> order = new ArrayList<>();
+        Set<String> trackingIds = new HashSet<>();
+        for (MessageResponse response : received) {
+            assertEquals(0, response.getError());
+            order.add(response.getTrackingId());
+            trackingIds.add(response.getTrackingId());
+        }
+        assertEquals(MESSAGES, trackingIds.size());
+        assertNotEquals(requestOrder(), order);
+    }
+
+    @Test
+    void sendMessages_returnsOneBatchAfterHalfClose() throws Exception {
+        MessageBatchResponse batch = sendBatch(MESSAGES);
+        assertEquals(MESSAGES, batch.getAccepted());
+        assertEquals(0, batch.getFailed());
+        assertEquals(MESSAGES, batch.getResponsesCount());
+        assertTrue(batch.getResponses(0).getContentLength() > 0);
+    }
+
+    @Test
+    void unknownTemplate_failsWithoutUsingQuota() throws Exception {
+        MessageRequest unknown = request(0).toBuilder().setTemplateId("no-such-template").build();
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+                () -> MessageServiceGrpc.newBlockingStub(channel).sendMessageNoRandomDelay(unknown));
+        assertEquals(Status.Code.NOT_FOUND, e.getStatus().getCode());
+
+        CompletableFuture<MessageResponse> streamed = new CompletableFuture<>();
+        StreamObserver<MessageRequest> requests = MessageServiceGrpc.newStub(channel)
+                .sendMessageStream(new StreamObserver<>() {
+                    @Override
+                    public void onNext(MessageResponse value) {
+                        streamed.complete(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        streamed.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+        requests.onNext(unknown);
+        requests.onCompleted();
+        assertEquals(TemplateEngine.ERROR_CODE, streamed.get(30, TimeUnit.SECONDS).getError());
+
+        // the whole quota is still there for a full batch
+        assertEquals(MESSAGES, sendBatch(MESSAGES).getAccepted());
+    }
+
+    @Test
+    void retriedMessages_getTheOriginalResponses() throws Exception {
+        MessageBatchResponse first = sendBatch(MESSAGES);
+        // the quota only covers one batch, the retry is answered from the idempotency cache
+        MessageBatchResponse retried = sendBatch(MESSAGES);
+        assertEquals(MESSAGES, retried.getAccepted());
+        assertEquals(msgIds(first), msgIds(retried));
+
+        MessageResponse single = MessageServiceGrpc.newBlockingStub(channel).sendMessageNoRandomDelay(request(0));
+        assertTrue(msgIds(first).contains(single.getMsgId()));
+    }
+
+    private static Set<String> msgIds(MessageBatchResponse batch) {
+        Set<String> msgIds = new HashSet<>();
+        batch.getResponsesList().forEach(response -> msgIds.add(response.getMsgId()));
+        return msgIds;
+    }
+
+    @Test
+    void overQuota_streamedMessagesFailAndSingleCallIsResourceExhausted() throws Exception {
+        MessageBatchResponse batch = sendBatch(MESSAGES + 10);
+        assertEquals(MESSAGES, batch.getAccepted());
+        assertEquals(10, batch.getFailed());
+        long rejected = batch.getResponsesList().stream()
+                .filter(response -> response.getError() == QuotaStore.ERROR_CODE)
+                .filter(response -> response.getQuota().getRemainingQuota().equals("0"))
+                .count();
+        assertEquals(10, rejected);
+
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+                () -> MessageServiceGrpc.newBlockingStub(channel).sendMessageNoRandomDelay(request(MESSAGES + 10)));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+    }
+
+    @Test
+    void rateLimited_singleCallIsResourceExhaustedAndStreamedMessagesFail() throws Exception {
+        tearDown();
+        start(new RateLimiter(true, 0.001, 2, 0, 0, System::nanoTime), ConcurrencyLimiter.fromProperties(key -> null));
+
+        // a burst of two: one single call, then one message of the stream
+        MessageServiceGrpc.newBlockingStub(channel).sendMessageNoRandomDelay(request(0));
+        MessageBatchResponse batch = sendBatch(3);
+        assertEquals(1, batch.getAccepted());
+        assertEquals(2, batch.getFailed());
+        assertEquals(2, batch.getResponsesList().stream()
+                .filter(response -> response.getError() == RateLimiter.ERROR_CODE)
+                .count());
+
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+                () -> MessageServiceGrpc.newBlockingStub(channel).sendMessageNoRandomDelay(request(3)));
+        assertEquals(Status.Code.RESOURCE_EXHAUSTED, e.getStatus().getCode());
+        assertEquals(RateLimiter.ERROR_MESSAGE, e.getStatus().getDescription());
+    }
+
+    @Test
+    void overConcurrencyLimit_unaryCallsAreUnavailableAndStreamsPass() throws Exception {
+        tearDown();
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(true, 1, 1, 1, 2.0, 0.2, 500, 20, 60, System::nanoTime);
+        start(RateLimiter.fromProperties(key -> null), limiter);
+
+        // the only slot is taken by a call in flight
+        long inFlight = limiter.tryAcquire();
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+                () -> MessageServiceGrpc.newBlockingStub(channel).sendMessageNoRandomDelay(request(0)));
+        assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        assertEquals(ConcurrencyLimiter.ERROR_MESSAGE, e.getStatus().getDescription());
+        assertEquals(10, sendBatch(10).getAccepted());
+
+        limiter.release(inFlight);
+        assertEquals(0, MessageServiceGrpc.newBlockingStub(channel).sendMessageNoRandomDelay(request(1)).getError());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void expiredDeadline_cutsTheDelayShortAndGivesTheQuotaBack() throws Exception {
+        tearDown();
+        start(RateLimiter.fromProperties(key -> null), ConcurrencyLimiter.fromProperties(key -> null),
+                new FixedLatencyModel(5_000));
+
+        long start = System.nanoTime();
+        StatusRuntimeException e = assertThrows(StatusRuntimeException.class,
+                () -> MessageServiceGrpc.newBlockingStub(channel).withDeadlineAfter(100, TimeUnit.MILLISECONDS)
+                        .sendMessage(request(0)));
+        assertEquals(Status.Code.DEADLINE_EXCEEDED, e.getStatus().getCode());
+        while (deadlineMessages("cut_short") == 0 && System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4)) {
+            Thread.sleep(5);
+        }
+        assertEquals(1.0, deadlineMessages("cut_short"));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(MESSAGES, quotaStore.remaining("84987654321", null));
+
+        // a call that expired before it reached the service is not started at all
+        assertThrows(StatusRuntimeException.class,
+                () -> MessageServiceGrpc.newBlockingStub(channel).withDeadlineAfter(0, TimeUnit.MILLISECONDS)
+                        .sendMessage(request(1)));
+        assertEquals(0.0, deadlineMessages("wasted"));
+    }
+
+    private double deadlineMessages(String outcome) {
+        return registry.get("deadline_messages_total").tag("outcome", outcome).functionCounter().count();
+    }
+
+    private MessageBatchResponse sendBatch(int messages) throws Exception {
+        CompletableFuture<MessageBatchResponse> result = new CompletableFuture<>();
+        StreamObserver<MessageRequest> requests = MessageServiceGrpc.newStub(channel)
+                .sendMessages(new StreamObserver<>() {
+                    @Override
+                    public void onNext(MessageBatchResponse value) {
+                        result.complete(value);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+        for (int i = 0; i < messages; i++) {
+            requests.onNext(request(i));
+        }
+        requests.onCompleted();
+        return result.get(30, TimeUnit.SECONDS);
+    }
+
+    private static MessageRequest request(int i) {
+        return MessageRequest.newBuilder()
+                .setPhone("84987654321")
+                .setTemplateId("7895417a7d3f9461cd2e")
+                .setTrackingId("tracking_" + i)
+                .build();
+    }
+
+    private static List<String> requestOrder() {
+        List<String> order = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            order.add("tracking_" + i);
+        }
+        return order;
+    }
+}
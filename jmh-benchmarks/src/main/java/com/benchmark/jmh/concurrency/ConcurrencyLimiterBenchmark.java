@@ -0,0 +1,59 @@
+package com.benchmark.jmh.concurrency;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost the {@link ConcurrencyLimiter} adds to a call, with all threads of the machine calling at once:
+ * {@code off} is the disabled limiter, {@code admit} an admitted call (acquire, two clock reads, release into the
+ * window, and now and then the window update), {@code shed} a call refused because the limit is taken.
+ *
+ * @author phonghv
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ConcurrencyLimiterBenchmark {
+
+    @Param({"off", "admit", "shed"})
+    public String mode;
+
+    private ConcurrencyLimiter limiter;
+
+    @Setup
+    public void setup() {
+        limiter = new ConcurrencyLimiter(!mode.equals("off"), 1000, 10, 1000, 2.0, 0.2, 500, 20, 60,
+                System::nanoTime);
+        if (mode.equals("shed")) {
+            while (limiter.tryAcquire() != ConcurrencyLimiter.REJECTED) {
+                // calls that never complete
+            }
+        }
+    }
+
+    @Benchmark
+    public long call() {
+        long start = limiter.tryAcquire();
+        if (start != ConcurrencyLimiter.REJECTED) {
+            limiter.release(start);
+        }
+        return start;
+    }
+}
@@ -0,0 +1,76 @@
+package com.benchmark.jmh.id;
+
+import com.benchmark.common.id.MsgIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cost of one {@code msg_id}: the former {@code UUID.randomUUID().toString().substring(0, 20)}
+ * against {@link MsgIdGenerator}. {@code sequential} measures a single caller, {@code virtualThreads}
+ * has {@value #VIRTUAL_THREADS} virtual threads draw ids at once, as a loaded backend does; thread start
+ * and join are the same for both generators, the score is per id.
+ *
+ * @author phonghv
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MsgIdBenchmark {
+
+    static final int VIRTUAL_THREADS = 1000;
+    static final int IDS_PER_THREAD = 100;
+
+    @Param({"uuid", "msgid"})
+    public String generator;
+
+    private Supplier<String> ids;
+
+    @Setup
+    public void setup() {
+        if (generator.equals("uuid")) {
+            ids = () -> UUID.randomUUID().toString().substring(0, 20);
+        } else {
+            MsgIdGenerator msgIdGenerator = new MsgIdGenerator(1);
+            ids = msgIdGenerator::next;
+        }
+    }
+
+    @Benchmark
+    public String sequential() {
+        return ids.get();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(VIRTUAL_THREADS * IDS_PER_THREAD)
+    public void virtualThreads(Blackhole blackhole) throws InterruptedException {
+        Thread[] threads = new Thread[VIRTUAL_THREADS];
+        for (int t = 0; t < VIRTUAL_THREADS; t++) {
+            threads[t] = Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < IDS_PER_THREAD; i++) {
+                    blackhole.consume(ids.get());
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}
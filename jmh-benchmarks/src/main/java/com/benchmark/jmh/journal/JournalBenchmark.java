@@ -0,0 +1,92 @@
+package com.benchmark.jmh.journal;
+
+import com.benchmark.common.journal.FsyncPolicy;
+import com.benchmark.common.journal.MessageJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Appends of the README sample message to {@link MessageJournal} from {@value #APPENDERS} threads, the
+ * concurrency of request handlers on the {@code sendMessageNoRandomDelay} path, under each
+ * {@code journal.fsync} policy. Throughput is appends per second, sample time the latency of one append
+ * including its wait for the group commit under {@code batch}. The journal lives in a temporary directory
+ * (set {@code -Djava.io.tmpdir} to measure a particular disk) and is emptied after every iteration.
+ *
+ * @author phonghv
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(JournalBenchmark.APPENDERS)
+public class JournalBenchmark {
+
+    static final int APPENDERS = 16;
+    private static final long MSG_ID_BASE = 1_000_000_000_000_000_000L;
+
+    @Param({"none", "interval", "batch"})
+    public String fsync;
+
+    private final AtomicLong msgIds = new AtomicLong();
+    private Map<String, String> data;
+    private Path dir;
+    private MessageJournal journal;
+
+    @Setup(Level.Iteration)
+    public void open() throws IOException {
+        data = new LinkedHashMap<>();
+        data.put("ky", "1");
+        data.put("thang", "4/2020");
+        data.put("start_date", "20/03/2020");
+        data.put("end_date", "20/04/2020");
+        data.put("customer", "Nguyễn Thị Hoàng Anh");
+        data.put("cid", "PE010299485");
+        data.put("address", "VNG Campus, TP.HCM");
+        data.put("amount", "100");
+        data.put("total", "100000");
+        dir = Files.createTempDirectory("journal-benchmark");
+        journal = MessageJournal.open(dir, 64 << 20, FsyncPolicy.parse(fsync), 100);
+    }
+
+    @TearDown(Level.Iteration)
+    public void delete() throws IOException {
+        journal.close();
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public void append() {
+        long id = msgIds.incrementAndGet();
+        // 20 characters, as from MsgIdGenerator
+        String msgId = "m" + (MSG_ID_BASE + id);
+        journal.append(msgId, "84987654321", "7895417a7d3f9461cd2e", "t" + id, data);
+    }
+}
@@ -0,0 +1,137 @@
+package com.benchmark.jmh.quota;
+
+import com.benchmark.common.quota.QuotaKey;
+import com.benchmark.common.quota.QuotaStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Quota checks per second over {@value #KEYS} phones, with all threads of the machine counting at once.
+ * {@code uniform} spreads calls evenly; {@code zipf} sends them with a Zipf(1.1) skew, where the hottest
+ * phone takes about 12% of the calls, so a few slots see most of the contention. {@code striped} is
+ * {@link QuotaStore}, {@code map} the straightforward {@code ConcurrentHashMap<String, AtomicInteger>}.
+ * The limit is never reached, every call takes the counting path. The phone of every call is a new
+ * String decoded from bytes, as it is when read from a request body, so neither store gets a hash
+ * code cached in a long-lived key.
+ *
+ * @author phonghv
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(Threads.MAX)
+public class QuotaStoreBenchmark {
+
+    static final int KEYS = 1_000_000;
+    private static final int SAMPLES = 1 << 20;
+
+    @Param({"striped", "map"})
+    public String store;
+
+    @Param({"uniform", "zipf"})
+    public String distribution;
+
+    private byte[][] phones;
+    private int[] samples;
+    private QuotaCounter counter;
+
+    @Setup
+    public void setup() {
+        phones = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            phones[i] = ("84" + String.format("%09d", i)).getBytes(StandardCharsets.ISO_8859_1);
+        }
+        samples = distribution.equals("zipf") ? zipf(1.1) : uniform();
+        counter = store.equals("striped") ? stripedStore() : mapStore();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        @Setup
+        public void setup() {
+            next = new SplittableRandom().nextInt(SAMPLES);
+        }
+    }
+
+    @Benchmark
+    public int tryAcquire(Cursor cursor) {
+        int index = samples[cursor.next++ & (SAMPLES - 1)];
+        return counter.tryAcquire(new String(phones[index], StandardCharsets.ISO_8859_1));
+    }
+
+    private interface QuotaCounter {
+        int tryAcquire(String phone);
+    }
+
+    private static QuotaCounter stripedStore() {
+        QuotaStore quotaStore = new QuotaStore(true, Integer.MAX_VALUE, QuotaKey.PHONE, ZoneId.systemDefault(),
+                Clock.systemUTC());
+        return phone -> quotaStore.tryAcquire(phone, null);
+    }
+
+    private static QuotaCounter mapStore() {
+        ConcurrentHashMap<String, AtomicInteger> used = new ConcurrentHashMap<>();
+        int limit = Integer.MAX_VALUE;
+        return phone -> {
+            AtomicInteger count = used.computeIfAbsent(phone, key -> new AtomicInteger());
+            for (; ; ) {
+                int current = count.get();
+                if (current >= limit) {
+                    return QuotaStore.REJECTED;
+                }
+                if (count.compareAndSet(current, current + 1)) {
+                    return limit - current - 1;
+                }
+            }
+        };
+    }
+
+    private static int[] uniform() {
+        SplittableRandom random = new SplittableRandom(42);
+        int[] samples = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            samples[i] = random.nextInt(KEYS);
+        }
+        return samples;
+    }
+
+    private static int[] zipf(double exponent) {
+        double[] cdf = new double[KEYS];
+        double sum = 0;
+        for (int rank = 0; rank < KEYS; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cdf[rank] = sum;
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        int[] samples = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            int rank = Arrays.binarySearch(cdf, random.nextDouble() * sum);
+            samples[i] = rank >= 0 ? rank : Math.min(-rank - 1, KEYS - 1);
+        }
+        return samples;
+    }
+}
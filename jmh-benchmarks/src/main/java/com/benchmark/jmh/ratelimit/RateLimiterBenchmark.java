@@ -0,0 +1,74 @@
+package com.benchmark.jmh.ratelimit;
+
+import com.benchmark.common.ratelimit.RateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one {@link RateLimiter} decision over {@value #KEYS} phones, with all threads of the machine
+ * checking at once: {@code off} is the disabled limiter, {@code phone} the default 10/s per phone,
+ * {@code phone-template} adds 1000/s per template over {@value #TEMPLATES} templates, a few hot keys
+ * every thread contends on. Calls come far faster than the limits, so most are rejected and the
+ * allowed ones take the CAS; the phone is a new String decoded from bytes, as read from a request body.
+ *
+ * @author phonghv
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class RateLimiterBenchmark {
+
+    static final int KEYS = 100_000;
+    static final int TEMPLATES = 8;
+
+    @Param({"off", "phone", "phone-template"})
+    public String limits;
+
+    private byte[][] phones;
+    private String[] templates;
+    private RateLimiter limiter;
+
+    @Setup
+    public void setup() {
+        phones = new byte[KEYS][];
+        for (int i = 0; i < KEYS; i++) {
+            phones[i] = ("84" + String.format("%09d", i)).getBytes(StandardCharsets.ISO_8859_1);
+        }
+        templates = new String[TEMPLATES];
+        for (int i = 0; i < TEMPLATES; i++) {
+            templates[i] = "template-" + i;
+        }
+        limiter = new RateLimiter(!limits.equals("off"), 10, 20,
+                limits.equals("phone-template") ? 1000 : 0, 1000, System::nanoTime);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        final SplittableRandom random = new SplittableRandom();
+    }
+
+    @Benchmark
+    public boolean tryAcquire(Cursor cursor) {
+        int key = cursor.random.nextInt(KEYS);
+        String phone = new String(phones[key], StandardCharsets.ISO_8859_1);
+        return limiter.tryAcquire(phone, templates[key & (TEMPLATES - 1)]);
+    }
+}
@@ -0,0 +1,34 @@
+package com.benchmark.jmh.serialization;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Typed counterparts of the REST JSON bodies, with the same property names as the {@code Map} variant.
+ *
+ * @author phonghv
+ */
+final class JsonMessages {
+
+    private JsonMessages() {
+    }
+
+    record Request(String phone,
+                   @JsonProperty("template_id") String templateId,
+                   @JsonProperty("template_data") Map<String, String> templateData,
+                   @JsonProperty("tracking_id") String trackingId) {
+    }
+
+    record Response(int error, String message, Data data) {
+    }
+
+    record Data(@JsonProperty("msg_id") String msgId,
+                @JsonProperty("sent_time") long sentTime,
+                @JsonProperty("sending_mode") String sendingMode,
+                Quota quota) {
+    }
+
+    record Quota(String dailyQuota, String remainingQuota) {
+    }
+}
@@ -0,0 +1,163 @@
+package com.benchmark.jmh.serialization;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encodes and decodes the benchmark request and response in one wire format. Each instance holds
+ * one payload pair and its reusable serializers, so it is confined to one benchmark thread.
+ *
+ * @author phonghv
+ */
+interface MessageCodec {
+
+    String PROTOBUF = "protobuf";
+    String THRIFT_BINARY = "thrift-binary";
+    String THRIFT_COMPACT = "thrift-compact";
+    String JACKSON_MAP = "jackson-map";
+    String JACKSON_RECORD = "jackson-record";
+
+    String[] ALL = {PROTOBUF, THRIFT_BINARY, THRIFT_COMPACT, JACKSON_MAP, JACKSON_RECORD};
+
+    byte[] encodeRequest() throws Exception;
+
+    Object decodeRequest(byte[] bytes) throws Exception;
+
+    byte[] encodeResponse() throws Exception;
+
+    Object decodeResponse(byte[] bytes) throws Exception;
+
+    static MessageCodec create(String name, int scale) {
+        return switch (name) {
+            case PROTOBUF -> new Protobuf(scale);
+            case THRIFT_BINARY -> new Thrift(new TBinaryProtocol.Factory(), scale);
+            case THRIFT_COMPACT -> new Thrift(new TCompactProtocol.Factory(), scale);
+            case JACKSON_MAP -> new Jackson(Payloads.jsonRequestMap(scale), Payloads.jsonResponseMap(),
+                    new TypeReference<Map<String, Object>>() {}, new TypeReference<Map<String, Object>>() {});
+            case JACKSON_RECORD -> new Jackson(Payloads.jsonRequestRecord(scale), Payloads.jsonResponseRecord(),
+                    new TypeReference<JsonMessages.Request>() {}, new TypeReference<JsonMessages.Response>() {});
+            default -> throw new IllegalArgumentException("Unknown codec: " + name);
+        };
+    }
+
+    final class Protobuf implements MessageCodec {
+
+        private final com.grpc.grpcbackend.MessageRequest request;
+        private final com.grpc.grpcbackend.MessageResponse response;
+
+        Protobuf(int scale) {
+            this.request = Payloads.protobufRequest(scale);
+            this.response = Payloads.protobufResponse();
+        }
+
+        @Override
+        public byte[] encodeRequest() {
+            return request.toByteArray();
+        }
+
+        @Override
+        public Object decodeRequest(byte[] bytes) throws IOException {
+            return com.grpc.grpcbackend.MessageRequest.parseFrom(bytes);
+        }
+
+        @Override
+        public byte[] encodeResponse() {
+            return response.toByteArray();
+        }
+
+        @Override
+        public Object decodeResponse(byte[] bytes) throws IOException {
+            return com.grpc.grpcbackend.MessageResponse.parseFrom(bytes);
+        }
+    }
+
+    final class Thrift implements MessageCodec {
+
+        private final com.thrift.thriftbackend.Message request;
+        private final com.thrift.thriftbackend.MessageResponse response;
+        private final TSerializer serializer;
+        private final TDeserializer deserializer;
+
+        Thrift(TProtocolFactory protocolFactory, int scale) {
+            this.request = Payloads.thriftRequest(scale);
+            this.response = Payloads.thriftResponse();
+            this.serializer = new TSerializer(protocolFactory);
+            this.deserializer = new TDeserializer(protocolFactory);
+        }
+
+        @Override
+        public byte[] encodeRequest() throws TException {
+            return serializer.serialize(request);
+        }
+
+        @Override
+        public Object decodeRequest(byte[] bytes) throws TException {
+            return deserialize(new com.thrift.thriftbackend.Message(), bytes);
+        }
+
+        @Override
+        public byte[] encodeResponse() throws TException {
+            return serializer.serialize(response);
+        }
+
+        @Override
+        public Object decodeResponse(byte[] bytes) throws TException {
+            return deserialize(new com.thrift.thriftbackend.MessageResponse(), bytes);
+        }
+
+        private <T extends TBase<?, ?>> T deserialize(T target, byte[] bytes) throws TException {
+            deserializer.deserialize(target, bytes);
+            return target;
+        }
+    }
+
+    final class Jackson implements MessageCodec {
+
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        private final Object request;
+        private final Object response;
+        private final ObjectWriter writer = MAPPER.writer();
+        private final ObjectReader requestReader;
+        private final ObjectReader responseReader;
+
+        Jackson(Object request, Object response, TypeReference<?> requestType, TypeReference<?> responseType) {
+            this.request = request;
+            this.response = response;
+            this.requestReader = MAPPER.readerFor(requestType);
+            this.responseReader = MAPPER.readerFor(responseType);
+        }
+
+        @Override
+        public byte[] encodeRequest() throws IOException {
+            return writer.writeValueAsBytes(request);
+        }
+
+        @Override
+        public Object decodeRequest(byte[] bytes) throws IOException {
+            return requestReader.readValue(bytes);
+        }
+
+        @Override
+        public byte[] encodeResponse() throws IOException {
+            return writer.writeValueAsBytes(response);
+        }
+
+        @Override
+        public Object decodeResponse(byte[] bytes) throws IOException {
+            return responseReader.readValue(bytes);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.benchmark.jmh.serialization;
+
+/**
+ * Prints the encoded size of the benchmark request and response per codec and scale, the
+ * "bytes per message" column that JMH itself does not report.
+ *
+ * @author phonghv
+ */
+public class PayloadSizeReport {
+
+    private static final int[] SCALES = {1, 10, 100};
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-16s %6s %14s %15s%n", "codec", "scale", "request bytes", "response bytes");
+        for (String codec : MessageCodec.ALL) {
+            for (int scale : SCALES) {
+                MessageCodec messageCodec = MessageCodec.create(codec, scale);
+                System.out.printf("%-16s %6d %14d %15d%n", codec, scale,
+                        messageCodec.encodeRequest().length, messageCodec.encodeResponse().length);
+            }
+        }
+    }
+}
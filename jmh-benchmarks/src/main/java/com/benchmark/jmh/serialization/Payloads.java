@@ -0,0 +1,129 @@
+package com.benchmark.jmh.serialization;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The README sample request and the typical response, in every representation that is benchmarked.
+ * <p>
+ * {@code scale} multiplies the nine {@code template_data} entries of the sample, so scale 1 is the
+ * sample itself and larger scales show how each codec copes with bigger maps.
+ *
+ * @author phonghv
+ */
+final class Payloads {
+
+    static final String PHONE = "84987654321";
+    static final String TEMPLATE_ID = "7895417a7d3f9461cd2e";
+    static final String TRACKING_ID = "tracking_id";
+    static final String MSG_ID = "3f1c2a9e-5b7d-4e21-8";
+    static final long SENT_TIME = 1710000000000L;
+
+    private static final Map<String, String> SAMPLE_TEMPLATE_DATA = sampleTemplateData();
+
+    private Payloads() {
+    }
+
+    static Map<String, String> templateData(int scale) {
+        if (scale <= 1) {
+            return SAMPLE_TEMPLATE_DATA;
+        }
+        Map<String, String> data = new LinkedHashMap<>();
+        for (int i = 0; i < scale; i++) {
+            String suffix = i == 0 ? "" : "_" + i;
+            SAMPLE_TEMPLATE_DATA.forEach((key, value) -> data.put(key + suffix, value));
+        }
+        return data;
+    }
+
+    static com.grpc.grpcbackend.MessageRequest protobufRequest(int scale) {
+        return com.grpc.grpcbackend.MessageRequest.newBuilder()
+                .setPhone(PHONE)
+                .setTemplateId(TEMPLATE_ID)
+                .putAllTemplateData(templateData(scale))
+                .setTrackingId(TRACKING_ID)
+                .build();
+    }
+
+    static com.grpc.grpcbackend.MessageResponse protobufResponse() {
+        return com.grpc.grpcbackend.MessageResponse.newBuilder()
+                .setError(0)
+                .setMessage("Success")
+                .setMsgId(MSG_ID)
+                .setSentTime(SENT_TIME)
+                .setSendingMode("1")
+                .setQuota(com.grpc.grpcbackend.MessageResponse.Quota.newBuilder()
+                        .setDailyQuota("500")
+                        .setRemainingQuota("499"))
+                .setTrackingId(TRACKING_ID)
+                .build();
+    }
+
+    static com.thrift.thriftbackend.Message thriftRequest(int scale) {
+        return new com.thrift.thriftbackend.Message()
+                .setPhone(PHONE)
+                .setTemplateId(TEMPLATE_ID)
+                .setTemplateData(new LinkedHashMap<>(templateData(scale)))
+                .setTrackingId(TRACKING_ID);
+    }
+
+    static com.thrift.thriftbackend.MessageResponse thriftResponse() {
+        return new com.thrift.thriftbackend.MessageResponse()
+                .setError(0)
+                .setMessage("Success")
+                .setMsgId(MSG_ID)
+                .setSendTime(SENT_TIME)
+                .setSendingMode("1")
+                .setQuota(new com.thrift.thriftbackend.Quota()
+                        .setDailyQuota("500")
+                        .setRemainingQuota("499"));
+    }
+
+    static Map<String, Object> jsonRequestMap(int scale) {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("phone", PHONE);
+        request.put("template_id", TEMPLATE_ID);
+        request.put("template_data", templateData(scale));
+        request.put("tracking_id", TRACKING_ID);
+        return request;
+    }
+
+    static Map<String, Object> jsonResponseMap() {
+        Map<String, Object> quota = new LinkedHashMap<>();
+        quota.put("dailyQuota", "500");
+        quota.put("remainingQuota", "499");
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("msg_id", MSG_ID);
+        data.put("sent_time", SENT_TIME);
+        data.put("sending_mode", "1");
+        data.put("quota", quota);
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("error", 0);
+        response.put("message", "Success");
+        response.put("data", data);
+        return response;
+    }
+
+    static JsonMessages.Request jsonRequestRecord(int scale) {
+        return new JsonMessages.Request(PHONE, TEMPLATE_ID, templateData(scale), TRACKING_ID);
+    }
+
+    static JsonMessages.Response jsonResponseRecord() {
+        return new JsonMessages.Response(0, "Success",
+                new JsonMessages.Data(MSG_ID, SENT_TIME, "1", new JsonMessages.Quota("500", "499")));
+    }
+
+    private static Map<String, String> sampleTemplateData() {
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("ky", "1");
+        data.put("thang", "4/2020");
+        data.put("start_date", "20/03/2020");
+        data.put("end_date", "20/04/2020");
+        data.put("customer", "Nguyễn Thị Hoàng Anh");
+        data.put("cid", "PE010299485");
+        data.put("address", "VNG Campus, TP.HCM");
+        data.put("amount", "100");
+        data.put("total", "100000");
+        return data;
+    }
+}
@@ -0,0 +1,71 @@
+package com.benchmark.jmh.serialization;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode/decode cost of the same message in each wire format used by the three stacks, so the
+ * codec share of the end-to-end gap can be separated from transport. Run with {@code -prof gc}
+ * (the default of the {@code jmh} Gradle task) to get {@code gc.alloc.rate.norm}, the bytes
+ * allocated per operation; {@code ./gradlew payloadSizes} prints the encoded bytes per message.
+ *
+ * @author phonghv
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({MessageCodec.PROTOBUF, MessageCodec.THRIFT_BINARY, MessageCodec.THRIFT_COMPACT,
+            MessageCodec.JACKSON_MAP, MessageCodec.JACKSON_RECORD})
+    public String codec;
+
+    // multiplier of the nine template_data entries of the README sample
+    @Param({"1", "10", "100"})
+    public int scale;
+
+    private MessageCodec messageCodec;
+    private byte[] encodedRequest;
+    private byte[] encodedResponse;
+
+    @Setup
+    public void setup() throws Exception {
+        messageCodec = MessageCodec.create(codec, scale);
+        encodedRequest = messageCodec.encodeRequest();
+        encodedResponse = messageCodec.encodeResponse();
+    }
+
+    @Benchmark
+    public byte[] encodeRequest() throws Exception {
+        return messageCodec.encodeRequest();
+    }
+
+    @Benchmark
+    public Object decodeRequest() throws Exception {
+        return messageCodec.decodeRequest(encodedRequest);
+    }
+
+    @Benchmark
+    public byte[] encodeResponse() throws Exception {
+        return messageCodec.encodeResponse();
+    }
+
+    @Benchmark
+    public Object decodeResponse() throws Exception {
+        return messageCodec.decodeResponse(encodedResponse);
+    }
+}
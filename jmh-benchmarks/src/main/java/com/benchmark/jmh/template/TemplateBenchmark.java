@@ -0,0 +1,70 @@
+package com.benchmark.jmh.template;
+
+import com.benchmark.common.template.TemplateEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the README sample message: {@code compiled} is {@link TemplateEngine} (cache hit, pooled
+ * buffer), {@code replace} the straightforward {@code String.replace} of every {@code {key}} of the data
+ * into the template text. Run with {@code -prof gc} for the bytes allocated per message.
+ *
+ * @author phonghv
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateBenchmark {
+
+    static final String TEMPLATE_ID = "7895417a7d3f9461cd2e";
+
+    private TemplateEngine engine;
+    private String text;
+    private Map<String, String> data;
+
+    @Setup
+    public void setup() {
+        Map<String, String> templates = TemplateEngine.bundled();
+        text = templates.get(TEMPLATE_ID);
+        engine = new TemplateEngine(templates::get, 1000);
+        data = new LinkedHashMap<>();
+        data.put("ky", "1");
+        data.put("thang", "4/2020");
+        data.put("start_date", "20/03/2020");
+        data.put("end_date", "20/04/2020");
+        data.put("customer", "Nguyễn Thị Hoàng Anh");
+        data.put("cid", "PE010299485");
+        data.put("address", "VNG Campus, TP.HCM");
+        data.put("amount", "100");
+        data.put("total", "100000");
+    }
+
+    @Benchmark
+    public int compiled() {
+        return engine.render(TEMPLATE_ID, data);
+    }
+
+    @Benchmark
+    public int replace() {
+        String rendered = text;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            rendered = rendered.replace("{" + entry.getKey() + "}", entry.getValue());
+        }
+        return rendered.length();
+    }
+}
@@ -0,0 +1,51 @@
+package com.benchmark.loadgen;
+
+/**
+ * Intended send time of every request, fixed in advance and independent of how fast the server
+ * answers. Times are computed from the request index rather than accumulated, so rounding never drifts.
+ *
+ * @author phonghv
+ */
+abstract class ArrivalSchedule {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    /**
+     * Nanoseconds from the start of the run at which request {@code index} (0-based) is due.
+     */
+    abstract long arrivalNanos(long index);
+
+    static ArrivalSchedule constant(double ratePerSecond) {
+        double intervalNanos = NANOS_PER_SECOND / ratePerSecond;
+        return new ArrivalSchedule() {
+            @Override
+            long arrivalNanos(long index) {
+                return (long) (index * intervalNanos);
+            }
+        };
+    }
+
+    /**
+     * Rate grows linearly from {@code fromRate} to {@code toRate} over {@code rampNanos}, then stays at {@code toRate}.
+     */
+    static ArrivalSchedule ramp(double fromRate, double toRate, long rampNanos) {
+        double rampSeconds = rampNanos / NANOS_PER_SECOND;
+        double slope = (toRate - fromRate) / rampSeconds;
+        // requests sent during the whole ramp: area under the rate line
+        double rampRequests = (fromRate + toRate) / 2 * rampSeconds;
+        return new ArrivalSchedule() {
+            @Override
+            long arrivalNanos(long index) {
+                if (index >= rampRequests) {
+                    return rampNanos + (long) ((index - rampRequests) / toRate * NANOS_PER_SECOND);
+                }
+                if (slope == 0) {
+                    return (long) (index / fromRate * NANOS_PER_SECOND);
+                }
+                // solve fromRate * t + slope * t^2 / 2 = index for t
+                double seconds = (-fromRate + Math.sqrt(fromRate * fromRate + 2 * slope * index)) / slope;
+                return (long) (seconds * NANOS_PER_SECOND);
+            }
+        };
+    }
+}
@@ -0,0 +1,118 @@
+package com.benchmark.loadgen;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One backend's boot jar running in a child JVM on loopback ports picked at start, with the state that would
+ * otherwise decide the results turned off: no daily quota, no journal, no rate limit. Its output goes to
+ * {@code <protocol>.log} next to the report.
+ *
+ * @author phonghv
+ */
+final class BackendProcess implements AutoCloseable {
+
+    static final String HOST = "127.0.0.1";
+    private static final long START_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(3);
+
+    private final String protocol;
+    private final Process process;
+    private final int port;
+
+    private BackendProcess(String protocol, Process process, int port) {
+        this.protocol = protocol;
+        this.process = process;
+        this.port = port;
+    }
+
+    static BackendProcess start(String protocol, String jar, Path logDir) throws IOException, InterruptedException {
+        int port = freePort();
+        int httpPort = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        command.add("-Xmx1g");
+        command.add("-jar");
+        command.add(jar);
+        command.add("--quota.enabled=false");
+        command.add("--journal.enabled=false");
+        command.add("--ratelimit.enabled=false");
+        switch (protocol) {
+            case "rest", "rest-h2c", "rest-reactive" -> {
+                if (!protocol.equals("rest")) {
+                    command.add("--spring.profiles.active=" + protocol.substring("rest-".length()));
+                }
+                command.add("--server.address=" + HOST);
+                command.add("--server.port=" + port);
+            }
+            case "grpc" -> {
+                command.add("--server.port=" + httpPort);
+                command.add("--spring.grpc.server.host=" + HOST);
+                command.add("--spring.grpc.server.port=" + port);
+            }
+            case "thrift" -> {
+                command.add("--server.port=" + httpPort);
+                command.add("--management.server.port=" + httpPort);
+                command.add("--thrift.server.host=" + HOST);
+                command.add("--thrift.server.port=" + port);
+                command.add("--thrift.client.pool.minIdle=0");
+            }
+            default -> throw new IllegalArgumentException("Unsupported protocol: " + protocol);
+        }
+        Path log = logDir.resolve(protocol + ".log");
+        Process process = new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log.toFile())
+                .start();
+        BackendProcess backend = new BackendProcess(protocol, process, port);
+        try {
+            backend.awaitListening(log);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            backend.close();
+            throw e;
+        }
+        return backend;
+    }
+
+    private void awaitListening(Path log) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + START_TIMEOUT_NANOS;
+        while (true) {
+            if (!process.isAlive()) {
+                throw new IOException(protocol + " backend exited with " + process.exitValue() + ", see " + log);
+            }
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(HOST, port), 1000);
+                return;
+            } catch (IOException notYet) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException(protocol + " backend did not listen on " + port + ", see " + log);
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    int port() {
+        return port;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        process.destroy();
+        if (!process.waitFor(20, TimeUnit.SECONDS)) {
+            process.destroyForcibly().waitFor();
+        }
+    }
+
+    // released before the backend binds it; another process taking it in between fails the start
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.benchmark.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the three backends on one machine without Docker, Envoy or Nginx: each backend's boot jar is started
+ * on loopback ports ({@link BackendProcess}), then the same matrix of route × method × payload scale ×
+ * concurrency is run against it with the load generator's drivers, directly and through a {@link LoopbackProxy}.
+ * <p>
+ * A run is closed-loop: {@code concurrency} clients on virtual threads call back to back, so throughput is
+ * what the backend sustains at that concurrency and latency is service time. The results are written to
+ * {@code comparison.json} and {@code comparison.csv}, labelled (e.g. with the commit) so runs of different
+ * commits can be compared, and printed as a table.
+ * <pre>
+ * ./gradlew compare -Pargs='--concurrency=16,64,256 --duration=20s'
+ * </pre>
+ *
+ * @author phonghv
+ */
+public class Comparison {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    public static void main(String[] args) throws Exception {
+        ComparisonOptions options;
+        try {
+            options = ComparisonOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(ComparisonOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        Path outputDir = Path.of(options.outputDir());
+        Files.createDirectories(outputDir);
+
+        List<ComparisonResult> results = new ArrayList<>();
+        for (String protocol : options.protocols()) {
+            System.out.printf("starting %s backend%n", protocol);
+            try (BackendProcess backend = BackendProcess.start(protocol, options.jars().get(protocol), outputDir);
+                 LoopbackProxy proxy = LoopbackProxy.start(backend.port())) {
+                for (String route : options.routes()) {
+                    int port = route.equals("proxy") ? proxy.port() : backend.port();
+                    for (String method : options.methods()) {
+                        for (int payloadScale : options.payloadScales()) {
+                            for (int concurrency : options.concurrency()) {
+                                ComparisonResult result = run(options, protocol, route, port, method, payloadScale,
+                                        concurrency);
+                                System.out.println(result.csv());
+                                results.add(result);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        write(options, results, outputDir);
+        printTable(results, System.out);
+    }
+
+    static ComparisonResult run(ComparisonOptions options, String protocol, String route, int port, String method,
+                                int payloadScale, int concurrency) throws Exception {
+        LoadOptions loadOptions = new LoadOptions(protocol, BackendProcess.HOST, port, method, "constant", 1, 1,
+                options.duration(), options.warmup(), Integer.MAX_VALUE, "binary", 100_000, payloadScale, null);
+        try (ProtocolDriver driver = ProtocolDriver.create(loadOptions)) {
+            return closedLoop(driver, protocol, route, method, payloadScale, concurrency, options.warmup().toNanos(),
+                    options.duration().toNanos());
+        }
+    }
+
+    static ComparisonResult closedLoop(ProtocolDriver driver, String protocol, String route, String method,
+                                       int payloadScale, int concurrency, long warmupNanos, long durationNanos)
+            throws InterruptedException {
+        Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        AtomicLong requests = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long measureFrom = System.nanoTime() + warmupNanos;
+        long end = measureFrom + durationNanos;
+        List<Thread> clients = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            clients.add(Thread.ofVirtual().start(() -> {
+                for (long start = System.nanoTime(); start < end; start = System.nanoTime()) {
+                    boolean ok;
+                    try {
+                        ok = driver.call();
+                    } catch (Exception e) {
+                        ok = false;
+                    }
+                    long done = System.nanoTime();
+                    // calls that started in the warm-up or ran past the end are not counted
+                    if (start < measureFrom || done > end) {
+                        continue;
+                    }
+                    if (ok) {
+                        requests.incrementAndGet();
+                        latency.recordValue(Math.min((done - start) / 1000, HIGHEST_TRACKABLE_MICROS));
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        return ComparisonResult.of(protocol, route, method, payloadScale, concurrency, requests.get(), errors.get(),
+                durationNanos / 1e9, latency);
+    }
+
+    static void write(ComparisonOptions options, List<ComparisonResult> results, Path outputDir) throws IOException {
+        List<String> csv = new ArrayList<>();
+        csv.add(ComparisonResult.CSV_HEADER);
+        results.forEach(result -> csv.add(result.csv()));
+        Files.write(outputDir.resolve("comparison.csv"), csv);
+
+        StringBuilder json = new StringBuilder()
+                .append("{\"label\":\"").append(options.label().replace("\\", "\\\\").replace("\"", "\\\""))
+                .append("\",\"timestamp\":\"").append(Instant.now())
+                .append("\",\"duration_s\":").append(options.duration().toSeconds())
+                .append(",\"warmup_s\":").append(options.warmup().toSeconds())
+                .append(",\"results\":[");
+        for (int i = 0; i < results.size(); i++) {
+            json.append(i == 0 ? "\n  " : ",\n  ").append(results.get(i).json());
+        }
+        Files.writeString(outputDir.resolve("comparison.json"), json.append("\n]}\n"));
+        System.out.printf("%nreport: %s, %s%n", outputDir.resolve("comparison.json").toAbsolutePath(),
+                outputDir.resolve("comparison.csv").toAbsolutePath());
+    }
+
+    static void printTable(List<ComparisonResult> results, PrintStream out) {
+        out.printf("%n%-13s %-7s %-25s %6s %5s %10s %7s %9s %9s %9s %9s%n", "proto", "route", "method", "scale", "conc",
+                "req/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (ComparisonResult r : results) {
+            out.printf(Locale.ROOT, "%-13s %-7s %-25s %6d %5d %10.1f %7d %9.2f %9.2f %9.2f %9.2f%n", r.protocol(),
+                    r.route(), r.method(), r.payloadScale(), r.concurrency(), r.throughput(), r.errors(), r.p50(),
+                    r.p99(), r.p999(), r.max());
+        }
+    }
+}
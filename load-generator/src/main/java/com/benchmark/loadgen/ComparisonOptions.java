@@ -0,0 +1,89 @@
+package com.benchmark.loadgen;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line options of {@link Comparison}, given as {@code --name=value}; lists are comma separated.
+ *
+ * @author phonghv
+ */
+record ComparisonOptions(Map<String, String> jars,
+                         List<String> protocols,
+                         List<String> routes,
+                         List<String> methods,
+                         List<Integer> payloadScales,
+                         List<Integer> concurrency,
+                         Duration duration,
+                         Duration warmup,
+                         String outputDir,
+                         String label) {
+
+    static final String USAGE = """
+            Usage: comparison --rest-jar=FILE --grpc-jar=FILE --thrift-jar=FILE [options]
+              --protocols=rest,grpc,thrift         backends to start, a jar is needed for each; rest-h2c and
+                                                   rest-reactive run the rest jar with its h2c or reactive profile
+              --routes=direct,proxy                direct to the backend, or through a loopback TCP relay
+              --methods=sendMessageNoRandomDelay,sendMessage
+              --payload-scales=1,10                template_data repeated N times
+              --concurrency=16,64                  closed-loop clients per run
+              --duration=10s                       measured time per run (ms, s, m suffixes)
+              --warmup=3s                          calls before measuring, per run
+              --out=build/reports/comparison       comparison.json and comparison.csv are written here
+              --label=NAME                         recorded in the report, e.g. the commit
+            """;
+
+    static ComparisonOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            values.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        List<String> protocols = list(values.getOrDefault("protocols", "rest,grpc,thrift"));
+        Map<String, String> jars = new HashMap<>();
+        for (String protocol : protocols) {
+            if (!List.of("rest", "rest-h2c", "rest-reactive", "grpc", "thrift").contains(protocol)) {
+                throw new IllegalArgumentException("--protocols must be rest, rest-h2c, rest-reactive, grpc or thrift");
+            }
+            String jarName = protocol.startsWith("rest") ? "rest" : protocol;
+            String jar = values.get(jarName + "-jar");
+            if (jar == null) {
+                throw new IllegalArgumentException("--" + jarName + "-jar is required");
+            }
+            jars.put(protocol, jar);
+        }
+        List<String> routes = list(values.getOrDefault("routes", "direct,proxy"));
+        if (!List.of("direct", "proxy").containsAll(routes)) {
+            throw new IllegalArgumentException("--routes must be direct or proxy");
+        }
+        List<String> methods = list(values.getOrDefault("methods", "sendMessageNoRandomDelay,sendMessage"));
+        methods.forEach(ProtocolDriver::isNoDelay);
+
+        return new ComparisonOptions(jars, protocols, routes, methods,
+                integers(values.getOrDefault("payload-scales", "1,10")),
+                integers(values.getOrDefault("concurrency", "16,64")),
+                LoadOptions.parseDuration(values.getOrDefault("duration", "10s")),
+                LoadOptions.parseDuration(values.getOrDefault("warmup", "3s")),
+                values.getOrDefault("out", "build/reports/comparison"),
+                values.getOrDefault("label", ""));
+    }
+
+    private static List<String> list(String value) {
+        return Arrays.stream(value.split(",")).map(String::trim).filter(v -> !v.isEmpty()).toList();
+    }
+
+    private static List<Integer> integers(String value) {
+        List<Integer> integers = list(value).stream().map(Integer::parseInt).toList();
+        if (integers.isEmpty() || integers.stream().anyMatch(i -> i <= 0)) {
+            throw new IllegalArgumentException("Expected positive numbers but got: " + value);
+        }
+        return integers;
+    }
+}
@@ -0,0 +1,42 @@
+package com.benchmark.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Locale;
+
+/**
+ * One cell of the {@link Comparison} matrix. Latencies are in milliseconds.
+ *
+ * @author phonghv
+ */
+record ComparisonResult(String protocol, String route, String method, int payloadScale, int concurrency,
+                        long requests, long errors, double throughput, double p50, double p90, double p99,
+                        double p999, double max) {
+
+    static final String CSV_HEADER =
+            "protocol,route,method,payload_scale,concurrency,requests,errors,throughput_per_s,p50_ms,p90_ms,p99_ms,p999_ms,max_ms";
+
+    static ComparisonResult of(String protocol, String route, String method, int payloadScale, int concurrency,
+                               long requests, long errors, double seconds, Histogram micros) {
+        return new ComparisonResult(protocol, route, method, payloadScale, concurrency, requests, errors,
+                requests / seconds,
+                micros.getValueAtPercentile(50) / 1000.0,
+                micros.getValueAtPercentile(90) / 1000.0,
+                micros.getValueAtPercentile(99) / 1000.0,
+                micros.getValueAtPercentile(99.9) / 1000.0,
+                micros.getMaxValue() / 1000.0);
+    }
+
+    String csv() {
+        return String.format(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.3f", protocol, route, method,
+                payloadScale, concurrency, requests, errors, throughput, p50, p90, p99, p999, max);
+    }
+
+    String json() {
+        return String.format(Locale.ROOT, "{\"protocol\":\"%s\",\"route\":\"%s\",\"method\":\"%s\",\"payload_scale\":%d,"
+                        + "\"concurrency\":%d,\"requests\":%d,\"errors\":%d,\"throughput_per_s\":%.1f,\"p50_ms\":%.3f,"
+                        + "\"p90_ms\":%.3f,\"p99_ms\":%.3f,\"p999_ms\":%.3f,\"max_ms\":%.3f}",
+                protocol, route, method, payloadScale, concurrency, requests, errors, throughput, p50, p90, p99, p999,
+                max);
+    }
+}
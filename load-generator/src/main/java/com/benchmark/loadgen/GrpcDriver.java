@@ -0,0 +1,56 @@
+package com.benchmark.loadgen;
+
+import com.grpc.grpcbackend.MessageRequest;
+import com.grpc.grpcbackend.MessageResponse;
+import com.grpc.grpcbackend.MessageServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.NettyChannelBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unary calls over one plaintext HTTP/2 channel, which multiplexes all concurrent calls.
+ *
+ * @author phonghv
+ */
+class GrpcDriver implements ProtocolDriver {
+
+    private final ManagedChannel channel;
+    private final MessageServiceGrpc.MessageServiceBlockingStub stub;
+    private final MessageRequest request;
+    private final boolean noDelay;
+    private final int phones;
+
+    GrpcDriver(LoadOptions options) {
+        this.channel = NettyChannelBuilder.forAddress(options.host(), options.port())
+                .usePlaintext()
+                .build();
+        this.stub = MessageServiceGrpc.newBlockingStub(channel);
+        this.noDelay = ProtocolDriver.isNoDelay(options.method());
+        this.phones = options.phones();
+        this.request = MessageRequest.newBuilder()
+                .setPhone(SampleMessage.PHONE)
+                .setTemplateId(SampleMessage.TEMPLATE_ID)
+                .putAllTemplateData(SampleMessage.templateData(options.payloadScale()))
+                .setTrackingId(SampleMessage.TRACKING_ID)
+                .build();
+    }
+
+    @Override
+    public boolean call() {
+        MessageServiceGrpc.MessageServiceBlockingStub deadlineStub = stub.withDeadlineAfter(30, TimeUnit.SECONDS);
+        MessageRequest request = this.request.toBuilder()
+                .setPhone(SampleMessage.phone(phones))
+                .setTrackingId(SampleMessage.trackingId())
+                .build();
+        MessageResponse response = noDelay
+                ? deadlineStub.sendMessageNoRandomDelay(request)
+                : deadlineStub.sendMessage(request);
+        return response.getError() == 0;
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        channel.shutdown().awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
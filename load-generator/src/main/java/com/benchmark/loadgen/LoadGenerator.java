@@ -0,0 +1,172 @@
+package com.benchmark.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator: requests are sent at a fixed arrival rate (constant or linear ramp),
+ * each from its own virtual thread, whether or not earlier requests have completed.
+ * <p>
+ * Response time is measured from the <em>intended</em> send time of the schedule, so time a request spends
+ * waiting behind a stalled server or a late scheduler is charged to it instead of silently skipped
+ * (coordinated omission). Service time, measured from the actual send, is reported next to it.
+ *
+ * @author phonghv
+ */
+public class LoadGenerator {
+
+    // latencies are recorded in microseconds, up to one hour
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.HOURS.toMicros(1);
+    private static final long PROGRESS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final LoadOptions options;
+    private final ProtocolDriver driver;
+    private final Histogram responseTime = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final Histogram serviceTime = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    LoadGenerator(LoadOptions options, ProtocolDriver driver) {
+        this.options = options;
+        this.driver = driver;
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try (ProtocolDriver driver = ProtocolDriver.create(options)) {
+            LoadGenerator generator = new LoadGenerator(options, driver);
+            generator.run();
+            generator.report(System.out);
+            if (options.histogramFile() != null) {
+                try (PrintStream out = new PrintStream(new FileOutputStream(options.histogramFile()))) {
+                    generator.responseTime.outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        }
+    }
+
+    void run() throws InterruptedException {
+        ArrivalSchedule schedule = options.schedule();
+        long warmupNanos = options.warmup().toNanos();
+        long totalNanos = warmupNanos + options.duration().toNanos();
+
+        long start = System.nanoTime();
+        long nextProgress = start + PROGRESS_INTERVAL_NANOS;
+        for (long i = 0; ; i++) {
+            long intended = start + schedule.arrivalNanos(i);
+            if (intended - start >= totalNanos) {
+                break;
+            }
+            long now;
+            while ((now = System.nanoTime()) < intended) {
+                LockSupport.parkNanos(intended - now);
+            }
+            if (now >= nextProgress) {
+                printProgress(now - start, warmupNanos);
+                nextProgress += PROGRESS_INTERVAL_NANOS;
+            }
+
+            boolean measured = intended - start >= warmupNanos;
+            if (inFlight.get() >= options.maxInFlight()) {
+                if (measured) {
+                    dropped.incrementAndGet();
+                }
+                continue;
+            }
+            inFlight.incrementAndGet();
+            Thread.ofVirtual().start(() -> execute(intended, measured));
+        }
+
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void execute(long intended, boolean measured) {
+        long sendTime = System.nanoTime();
+        boolean ok;
+        try {
+            ok = driver.call();
+        } catch (Exception e) {
+            ok = false;
+        }
+        long end = System.nanoTime();
+        inFlight.decrementAndGet();
+        if (!measured) {
+            return;
+        }
+        if (ok) {
+            completed.incrementAndGet();
+            responseTime.recordValue(Math.min((end - intended) / 1000, HIGHEST_TRACKABLE_MICROS));
+            serviceTime.recordValue(Math.min((end - sendTime) / 1000, HIGHEST_TRACKABLE_MICROS));
+        } else {
+            errors.incrementAndGet();
+        }
+    }
+
+    private void printProgress(long elapsedNanos, long warmupNanos) {
+        System.out.printf("[%5ds]%s in-flight=%d completed=%d errors=%d dropped=%d%n",
+                TimeUnit.NANOSECONDS.toSeconds(elapsedNanos), elapsedNanos < warmupNanos ? " warmup" : "",
+                inFlight.get(), completed.get(), errors.get(), dropped.get());
+    }
+
+    void report(PrintStream out) {
+        double seconds = options.duration().toNanos() / 1e9;
+        out.println();
+        out.printf("protocol=%s target=%s:%d method=%s pattern=%s rate=%.0f/s%s duration=%ds warmup=%ds%n",
+                options.protocol(), options.host(), options.port(), options.method(), options.pattern(), options.rate(),
+                options.pattern().equals("ramp") ? String.format(" ramp-to=%.0f/s", options.rampToRate()) : "",
+                options.duration().toSeconds(), options.warmup().toSeconds());
+        out.printf("requests: %d ok, %d errors, %d dropped, %.1f ok/s%n",
+                completed.get(), errors.get(), dropped.get(), completed.get() / seconds);
+        out.printf("%-36s %10s %10s %10s %10s %10s %10s%n", "latency (ms)", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+        printRow(out, "response time (from intended send)", responseTime);
+        printRow(out, "service time (from actual send)", serviceTime);
+    }
+
+    private static void printRow(PrintStream out, String label, Histogram histogram) {
+        out.printf("%-36s %10.2f %10.2f %10.2f %10.2f %10.2f %10.2f%n", label,
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getValueAtPercentile(99.99)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    Histogram responseTime() {
+        return responseTime;
+    }
+
+    long errors() {
+        return errors.get();
+    }
+
+    long completed() {
+        return completed.get();
+    }
+}
@@ -0,0 +1,111 @@
+package com.benchmark.loadgen;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line options, given as {@code --name=value}.
+ *
+ * @author phonghv
+ */
+record LoadOptions(String protocol,
+                   String host,
+                   int port,
+                   String method,
+                   String pattern,
+                   double rate,
+                   double rampToRate,
+                   Duration duration,
+                   Duration warmup,
+                   int maxInFlight,
+                   String thriftProtocol,
+                   int phones,
+                   int payloadScale,
+                   String histogramFile) {
+
+    static final String USAGE = """
+            Usage: load-generator --protocol=rest|rest-h2c|rest-reactive|grpc|thrift [options]
+              --target=host:port          default localhost:8080 (rest), localhost:8082 (rest-h2c),
+                                          localhost:8083 (rest-reactive), localhost:9090 (grpc), localhost:9091 (thrift)
+              --method=NAME               sendMessage (default) or sendMessageNoRandomDelay
+              --pattern=constant|ramp     arrival pattern, default constant
+              --rate=N                    requests per second (start rate for ramp), default 1000
+              --ramp-to=N                 end rate of a ramp, default 2 x rate
+              --duration=60s              measured duration (ms, s, m suffixes)
+              --warmup=10s                load applied before measuring, excluded from the results
+              --max-in-flight=N           requests beyond this are counted as dropped, default 50000
+              --thrift-protocol=binary    binary, compact or json, must match the server's thrift.protocol
+              --phones=N                  distinct phones the requests are spread over, default 100000,
+                                          keeps each phone under the backends' daily quota
+              --payload-scale=N           repeats the nine template_data entries of the sample N times, default 1
+              --hgrm=FILE                 also write the full percentile distribution to FILE
+            """;
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            values.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        String protocol = values.getOrDefault("protocol", "").toLowerCase();
+        int defaultPort = switch (protocol) {
+            case "rest" -> 8080;
+            case "rest-h2c" -> 8082;
+            case "rest-reactive" -> 8083;
+            case "grpc" -> 9090;
+            case "thrift" -> 9091;
+            default -> throw new IllegalArgumentException("--protocol must be rest, rest-h2c, rest-reactive, grpc or thrift");
+        };
+        String target = values.getOrDefault("target", "localhost:" + defaultPort);
+        int colon = target.lastIndexOf(':');
+        String host = colon < 0 ? target : target.substring(0, colon);
+        int port = colon < 0 ? defaultPort : Integer.parseInt(target.substring(colon + 1));
+
+        String pattern = values.getOrDefault("pattern", "constant").toLowerCase();
+        if (!pattern.equals("constant") && !pattern.equals("ramp")) {
+            throw new IllegalArgumentException("--pattern must be constant or ramp");
+        }
+        double rate = Double.parseDouble(values.getOrDefault("rate", "1000"));
+        double rampTo = Double.parseDouble(values.getOrDefault("ramp-to", String.valueOf(rate * 2)));
+        if (rate <= 0 || rampTo <= 0) {
+            throw new IllegalArgumentException("--rate and --ramp-to must be positive");
+        }
+
+        return new LoadOptions(protocol, host, port,
+                values.getOrDefault("method", "sendMessage"),
+                pattern, rate, rampTo,
+                parseDuration(values.getOrDefault("duration", "60s")),
+                parseDuration(values.getOrDefault("warmup", "10s")),
+                Integer.parseInt(values.getOrDefault("max-in-flight", "50000")),
+                values.getOrDefault("thrift-protocol", "binary").toLowerCase(),
+                Integer.parseInt(values.getOrDefault("phones", "100000")),
+                Integer.parseInt(values.getOrDefault("payload-scale", "1")),
+                values.get("hgrm"));
+    }
+
+    static Duration parseDuration(String value) {
+        String v = value.trim().toLowerCase();
+        if (v.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(v.substring(0, v.length() - 2)));
+        }
+        if (v.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(v.substring(0, v.length() - 1)));
+        }
+        if (v.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(v.substring(0, v.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(v));
+    }
+
+    ArrivalSchedule schedule() {
+        long totalNanos = warmup.toNanos() + duration.toNanos();
+        return pattern.equals("ramp")
+                ? ArrivalSchedule.ramp(rate, rampToRate, totalNanos)
+                : ArrivalSchedule.constant(rate);
+    }
+}
@@ -0,0 +1,93 @@
+package com.benchmark.loadgen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Stand-in for the Nginx/Envoy hop of the deployed stacks: relays every accepted loopback connection to the
+ * backend, byte for byte, one virtual thread per direction. It adds the cost of a second connection and a copy
+ * without any protocol awareness, so the three protocols pay the same for it.
+ *
+ * @author phonghv
+ */
+final class LoopbackProxy implements AutoCloseable {
+
+    private static final int BUFFER_BYTES = 16 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final int targetPort;
+
+    private LoopbackProxy(ServerSocket serverSocket, int targetPort) {
+        this.serverSocket = serverSocket;
+        this.targetPort = targetPort;
+    }
+
+    static LoopbackProxy start(int targetPort) throws IOException {
+        ServerSocket serverSocket = new ServerSocket(0, 1024, InetAddress.getLoopbackAddress());
+        LoopbackProxy proxy = new LoopbackProxy(serverSocket, targetPort);
+        Thread.ofVirtual().name("loopback-proxy-accept").start(proxy::accept);
+        return proxy;
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                Thread.ofVirtual().start(() -> relay(client));
+            } catch (IOException e) {
+                // closed
+            }
+        }
+    }
+
+    private void relay(Socket client) {
+        try (client; Socket backend = new Socket()) {
+            backend.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), targetPort));
+            client.setTcpNoDelay(true);
+            backend.setTcpNoDelay(true);
+            Thread upstream = Thread.ofVirtual().start(() -> copy(client, backend));
+            copy(backend, client);
+            upstream.join();
+        } catch (IOException | InterruptedException e) {
+            // one side went away, both are closed
+        }
+    }
+
+    // until either side closes; then both directions are shut
+    private static void copy(Socket from, Socket to) {
+        byte[] buffer = new byte[BUFFER_BYTES];
+        try {
+            InputStream in = from.getInputStream();
+            OutputStream out = to.getOutputStream();
+            for (int n; (n = in.read(buffer)) >= 0; ) {
+                out.write(buffer, 0, n);
+            }
+            to.shutdownOutput();
+        } catch (IOException e) {
+            closeQuietly(from);
+            closeQuietly(to);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // already closed
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
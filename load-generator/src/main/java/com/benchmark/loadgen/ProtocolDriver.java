@@ -0,0 +1,32 @@
+package com.benchmark.loadgen;
+
+/**
+ * Sends one request to a backend and waits for its response. Implementations are called
+ * concurrently from many virtual threads.
+ *
+ * @author phonghv
+ */
+interface ProtocolDriver extends AutoCloseable {
+
+    /**
+     * @return {@code false} when the backend answered with an error code
+     */
+    boolean call() throws Exception;
+
+    static ProtocolDriver create(LoadOptions options) {
+        return switch (options.protocol()) {
+            case "rest", "rest-h2c", "rest-reactive" -> new RestDriver(options);
+            case "grpc" -> new GrpcDriver(options);
+            case "thrift" -> new ThriftDriver(options);
+            default -> throw new IllegalArgumentException("Unsupported protocol: " + options.protocol());
+        };
+    }
+
+    static boolean isNoDelay(String method) {
+        return switch (method) {
+            case "sendMessage" -> false;
+            case "sendMessageNoRandomDelay" -> true;
+            default -> throw new IllegalArgumentException("Unsupported method: " + method);
+        };
+    }
+}
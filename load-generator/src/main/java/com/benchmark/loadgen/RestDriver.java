@@ -0,0 +1,83 @@
+package com.benchmark.loadgen;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+
+/**
+ * POSTs the sample JSON body to the REST backend (or the Envoy JSON gateway) over HTTP/1.1, or with
+ * {@code --protocol=rest-h2c} as streams of one HTTP/2 cleartext connection. {@code rest-reactive} is plain
+ * HTTP/1.1 too, only its default port differs.
+ *
+ * @author phonghv
+ */
+class RestDriver implements ProtocolDriver {
+
+    private final HttpClient httpClient;
+    private final HttpRequest request;
+    private final int phones;
+    private final int payloadScale;
+
+    RestDriver(LoadOptions options) {
+        String path = ProtocolDriver.isNoDelay(options.method())
+                ? "/api/send-message-no-random-delay"
+                : "/api/send-message";
+        boolean http2 = options.protocol().equals("rest-h2c");
+        this.httpClient = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        this.request = HttpRequest.newBuilder(URI.create("http://" + options.host() + ":" + options.port() + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(SampleMessage.JSON.getBytes(StandardCharsets.UTF_8)))
+                .build();
+        this.phones = options.phones();
+        this.payloadScale = options.payloadScale();
+        if (http2) {
+            upgrade(options);
+        }
+    }
+
+    // Jetty only upgrades a request without a body to h2c; once this one is, the sends reuse its connection
+    private void upgrade(LoadOptions options) {
+        URI health = URI.create("http://" + options.host() + ":" + options.port() + "/actuator/health");
+        try {
+            HttpResponse<Void> response = httpClient.send(
+                    HttpRequest.newBuilder(health).timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            if (response.version() != HttpClient.Version.HTTP_2) {
+                throw new IllegalStateException(options.host() + ":" + options.port()
+                        + " did not upgrade to h2c, is the backend running with the h2c profile?");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during the h2c upgrade", e);
+        }
+    }
+
+    @Override
+    public boolean call() throws Exception {
+        byte[] body = SampleMessage.json(SampleMessage.phone(phones), SampleMessage.trackingId(), payloadScale)
+                .getBytes(StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(this.request, (name, value) -> true)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        return response.statusCode() == 200 && response.body().contains("\"error\":0");
+    }
+
+    @Override
+    public void close() {
+        httpClient.close();
+    }
+}
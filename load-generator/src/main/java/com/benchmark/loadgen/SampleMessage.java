@@ -0,0 +1,124 @@
+package com.benchmark.loadgen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The README sample request, sent by every driver so the three stacks carry the same payload. The phone
+ * varies over {@code --phones} numbers of the sample's length, so the daily quota of the backends is spread
+ * over many keys, and every request gets its own {@code tracking_id} of the sample's length, so the
+ * idempotency cache of the backends sees new messages, not retries. The payload size stays the same, unless
+ * {@code --payload-scale} repeats the nine {@code template_data} entries, as the JMH serialization benchmarks do.
+ *
+ * @author phonghv
+ */
+final class SampleMessage {
+
+    static final String PHONE = "84987654321";
+    static final String TEMPLATE_ID = "7895417a7d3f9461cd2e";
+    static final String TRACKING_ID = "tracking_id";
+    static final Map<String, String> TEMPLATE_DATA = templateData();
+
+    private static final String JSON_BEFORE_PHONE = "{\"phone\":\"";
+    private static final String JSON_BEFORE_TRACKING_ID = "\"tracking_id\":\"";
+    private static final String JSON_END = "\"}";
+    private static final String JSON_AFTER_PHONE = """
+            ","template_id":"7895417a7d3f9461cd2e","template_data":{"ky":"1","thang":"4/2020",\
+            "start_date":"20/03/2020","end_date":"20/04/2020","customer":"Nguyễn Thị Hoàng Anh","cid":"PE010299485",\
+            "address":"VNG Campus, TP.HCM","amount":"100","total":"100000"},""";
+
+    static final String JSON = json(PHONE, TRACKING_ID);
+
+    // the part after the phone for payload scales above 1, built once per scale
+    private static final Map<Integer, String> SCALED_JSON_AFTER_PHONE = new ConcurrentHashMap<>();
+
+    // tracking_id: a random tag of the run, so a second run within the backends' window is not a retry,
+    // then a base-36 sequence number
+    private static final int RUN_TAG_CHARS = 4;
+    private static final long RUN_TAGS = 36L * 36 * 36 * 36;
+    // the leading 1 pads the tag to RUN_TAG_CHARS digits and is cut off
+    private static final String RUN_TAG = Long.toString(RUN_TAGS + ThreadLocalRandom.current().nextLong(RUN_TAGS), 36)
+            .substring(1);
+    private static final AtomicLong NEXT_TRACKING_ID = new AtomicLong();
+
+    private SampleMessage() {
+    }
+
+    static String json(String phone, String trackingId) {
+        return JSON_BEFORE_PHONE + phone + JSON_AFTER_PHONE + JSON_BEFORE_TRACKING_ID + trackingId + JSON_END;
+    }
+
+    static String json(String phone, String trackingId, int payloadScale) {
+        if (payloadScale <= 1) {
+            return json(phone, trackingId);
+        }
+        String afterPhone = SCALED_JSON_AFTER_PHONE.computeIfAbsent(payloadScale, SampleMessage::jsonAfterPhone);
+        return JSON_BEFORE_PHONE + phone + afterPhone + JSON_BEFORE_TRACKING_ID + trackingId + JSON_END;
+    }
+
+    private static String jsonAfterPhone(int payloadScale) {
+        StringBuilder json = new StringBuilder("\",\"template_id\":\"").append(TEMPLATE_ID).append("\",\"template_data\":{");
+        templateData(payloadScale).forEach((key, value) ->
+                json.append('"').append(key).append("\":\"").append(value).append("\","));
+        json.setCharAt(json.length() - 1, '}');
+        return json.append(',').toString();
+    }
+
+    /**
+     * The sample {@code template_data}, its entries repeated {@code payloadScale} times with numbered keys.
+     */
+    static Map<String, String> templateData(int payloadScale) {
+        if (payloadScale <= 1) {
+            return TEMPLATE_DATA;
+        }
+        Map<String, String> data = new LinkedHashMap<>();
+        for (int i = 0; i < payloadScale; i++) {
+            String suffix = i == 0 ? "" : "_" + i;
+            TEMPLATE_DATA.forEach((key, value) -> data.put(key + suffix, value));
+        }
+        return data;
+    }
+
+    /**
+     * A {@code tracking_id} not sent before by this process, as long as the sample one.
+     */
+    static String trackingId() {
+        char[] id = new char[TRACKING_ID.length()];
+        RUN_TAG.getChars(0, RUN_TAG_CHARS, id, 0);
+        long sequence = NEXT_TRACKING_ID.getAndIncrement();
+        for (int i = id.length - 1; i >= RUN_TAG_CHARS; i--) {
+            id[i] = Character.forDigit((int) (sequence % 36), 36);
+            sequence /= 36;
+        }
+        return new String(id);
+    }
+
+    /**
+     * A phone picked at random among {@code phones} numbers, the sample phone when {@code phones} is 1.
+     */
+    static String phone(int phones) {
+        if (phones <= 1) {
+            return PHONE;
+        }
+        int index = ThreadLocalRandom.current().nextInt(phones);
+        // 84 + 9 digits, the length of the sample phone
+        return "84" + String.format("%09d", index);
+    }
+
+    private static Map<String, String> templateData() {
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("ky", "1");
+        data.put("thang", "4/2020");
+        data.put("start_date", "20/03/2020");
+        data.put("end_date", "20/04/2020");
+        data.put("customer", "Nguyễn Thị Hoàng Anh");
+        data.put("cid", "PE010299485");
+        data.put("address", "VNG Campus, TP.HCM");
+        data.put("amount", "100");
+        data.put("total", "100000");
+        return data;
+    }
+}
@@ -0,0 +1,92 @@
+package com.benchmark.loadgen;
+
+import com.thrift.thriftbackend.Message;
+import com.thrift.thriftbackend.MessageResponse;
+import com.thrift.thriftbackend.MessageService;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TJSONProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Blocking framed Thrift calls. A Thrift connection carries one call at a time, so connections are
+ * opened on demand and reused, growing to the number of concurrent requests.
+ *
+ * @author phonghv
+ */
+class ThriftDriver implements ProtocolDriver {
+
+    private static final int SOCKET_TIMEOUT_MILLIS = 30_000;
+
+    private final String host;
+    private final int port;
+    private final TProtocolFactory protocolFactory;
+    private final boolean noDelay;
+    private final int phones;
+    private final Map<String, String> templateData;
+    private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+    ThriftDriver(LoadOptions options) {
+        this.host = options.host();
+        this.port = options.port();
+        this.noDelay = ProtocolDriver.isNoDelay(options.method());
+        this.phones = options.phones();
+        this.templateData = SampleMessage.templateData(options.payloadScale());
+        this.protocolFactory = switch (options.thriftProtocol()) {
+            case "binary" -> new TBinaryProtocol.Factory();
+            case "compact" -> new TCompactProtocol.Factory();
+            case "json" -> new TJSONProtocol.Factory();
+            default -> throw new IllegalArgumentException("Unsupported thrift protocol: " + options.thriftProtocol());
+        };
+    }
+
+    @Override
+    public boolean call() throws Exception {
+        Connection conn = idle.poll();
+        if (conn == null) {
+            conn = open();
+        }
+        try {
+            // a fresh struct per call, generated Thrift structs are mutable
+            Message message = new Message()
+                    .setPhone(SampleMessage.phone(phones))
+                    .setTemplateId(SampleMessage.TEMPLATE_ID)
+                    .setTemplateData(new LinkedHashMap<>(templateData))
+                    .setTrackingId(SampleMessage.trackingId());
+            MessageResponse response = noDelay
+                    ? conn.client.sendMessageNoRandomDelay(message)
+                    : conn.client.sendMessage(message);
+            idle.offer(conn);
+            return response.getError() == 0;
+        } catch (Exception e) {
+            conn.transport.close();
+            throw e;
+        }
+    }
+
+    private Connection open() throws TTransportException {
+        TSocket socket = new TSocket(host, port, SOCKET_TIMEOUT_MILLIS);
+        TTransport transport = new TFramedTransport(socket);
+        transport.open();
+        return new Connection(new MessageService.Client(protocolFactory.getProtocol(transport)), transport);
+    }
+
+    @Override
+    public void close() {
+        Connection conn;
+        while ((conn = idle.poll()) != null) {
+            conn.transport.close();
+        }
+    }
+
+    private record Connection(MessageService.Client client, TTransport transport) {
+    }
+}
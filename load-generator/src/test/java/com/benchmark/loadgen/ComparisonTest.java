@@ -0,0 +1,88 @@
+package com.benchmark.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ComparisonTest {
+
+    @Test
+    void proxyRelaysBothWays() throws Exception {
+        try (ServerSocket echo = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread.ofVirtual().start(() -> {
+                try (Socket socket = echo.accept()) {
+                    socket.getInputStream().transferTo(socket.getOutputStream());
+                } catch (Exception ignored) {
+                    // test over
+                }
+            });
+            try (LoopbackProxy proxy = LoopbackProxy.start(echo.getLocalPort());
+                 Socket client = new Socket(InetAddress.getLoopbackAddress(), proxy.port())) {
+                OutputStream out = client.getOutputStream();
+                out.write("ping".getBytes(StandardCharsets.US_ASCII));
+                client.shutdownOutput();
+                InputStream in = client.getInputStream();
+                assertEquals("ping", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    @Test
+    void closedLoopCountsOnlyMeasuredCalls() throws Exception {
+        ProtocolDriver driver = new ProtocolDriver() {
+            @Override
+            public boolean call() throws InterruptedException {
+                Thread.sleep(10);
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ComparisonResult result = Comparison.closedLoop(driver, "grpc", "direct", "sendMessageNoRandomDelay", 1, 4,
+                TimeUnit.MILLISECONDS.toNanos(200), TimeUnit.SECONDS.toNanos(1));
+
+        // four clients at 10 ms a call for one second, give or take scheduling
+        assertTrue(result.requests() > 250 && result.requests() <= 400, "requests " + result.requests());
+        assertEquals(0, result.errors());
+        assertTrue(result.p50() >= 10, "p50 " + result.p50());
+        assertEquals(ComparisonResult.CSV_HEADER.split(",").length, result.csv().split(",").length);
+    }
+
+    @Test
+    void everyProtocolNeedsItsJar() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ComparisonOptions.parse(new String[]{"--rest-jar=rest.jar", "--grpc-jar=grpc.jar"}));
+        ComparisonOptions options = ComparisonOptions.parse(new String[]{"--protocols=grpc", "--grpc-jar=grpc.jar",
+                "--concurrency=1,8"});
+        assertEquals(List.of(1, 8), options.concurrency());
+    }
+
+    @Test
+    void restVariantsRunTheRestJar() {
+        ComparisonOptions options = ComparisonOptions.parse(new String[]{"--protocols=rest,rest-h2c,rest-reactive",
+                "--rest-jar=rest.jar"});
+        assertEquals(Map.of("rest", "rest.jar", "rest-h2c", "rest.jar", "rest-reactive", "rest.jar"), options.jars());
+    }
+
+    @Test
+    void scaledPayloadRepeatsTheTemplateData() {
+        assertEquals(90, SampleMessage.templateData(10).size());
+        String json = SampleMessage.json(SampleMessage.PHONE, SampleMessage.TRACKING_ID, 10);
+        assertTrue(json.contains("\"total_9\":\"100000\"},\"tracking_id\":\"tracking_id\"}"), json);
+        assertEquals(SampleMessage.JSON, SampleMessage.json(SampleMessage.PHONE, SampleMessage.TRACKING_ID, 1));
+    }
+}
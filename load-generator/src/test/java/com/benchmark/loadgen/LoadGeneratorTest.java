@@ -0,0 +1,83 @@
+package com.benchmark.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadGeneratorTest {
+
+    @Test
+    void constantScheduleSpacesRequestsEvenly() {
+        ArrivalSchedule schedule = ArrivalSchedule.constant(1000);
+        assertEquals(0, schedule.arrivalNanos(0));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), schedule.arrivalNanos(1));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), schedule.arrivalNanos(1000));
+    }
+
+    @Test
+    void rampScheduleSendsTheAreaUnderTheRateLine() {
+        // 100/s growing to 300/s over 10 s is 2000 requests
+        ArrivalSchedule schedule = ArrivalSchedule.ramp(100, 300, TimeUnit.SECONDS.toNanos(10));
+        assertEquals(TimeUnit.SECONDS.toNanos(10), schedule.arrivalNanos(2000), TimeUnit.MILLISECONDS.toNanos(1));
+        // the gaps shrink as the rate grows
+        long first = schedule.arrivalNanos(1) - schedule.arrivalNanos(0);
+        long last = schedule.arrivalNanos(2000) - schedule.arrivalNanos(1999);
+        assertTrue(first > 2 * last);
+    }
+
+    @Test
+    void stalledServerIsChargedToEveryRequestSentDuringTheStall() throws Exception {
+        long stallUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+        ProtocolDriver stallingDriver = new ProtocolDriver() {
+            @Override
+            public boolean call() throws InterruptedException {
+                long remaining = stallUntil - System.nanoTime();
+                if (remaining > 0) {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                }
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        LoadOptions options = new LoadOptions("grpc", "localhost", 9090, "sendMessage", "constant", 1000, 1000,
+                Duration.ofSeconds(1), Duration.ZERO, 50_000, "binary", 1, 1, null);
+
+        LoadGenerator generator = new LoadGenerator(options, stallingDriver);
+        generator.run();
+
+        // no request is skipped while the server is stalled, and the first one waited the whole stall
+        assertEquals(1000, generator.completed());
+        assertEquals(0, generator.errors());
+        assertTrue(generator.responseTime().getMaxValue() >= TimeUnit.MILLISECONDS.toMicros(250));
+        assertTrue(generator.responseTime().getValueAtPercentile(50) < TimeUnit.MILLISECONDS.toMicros(50));
+    }
+
+    @Test
+    void spreadPhonesKeepThePayloadSize() {
+        assertEquals(SampleMessage.PHONE, SampleMessage.phone(1));
+        for (int i = 0; i < 1000; i++) {
+            String phone = SampleMessage.phone(100_000);
+            assertEquals(SampleMessage.PHONE.length(), phone.length());
+            assertEquals(SampleMessage.JSON.length(), SampleMessage.json(phone, SampleMessage.trackingId()).length());
+        }
+    }
+
+    @Test
+    void everyRequestHasItsOwnTrackingId() {
+        Set<String> trackingIds = new HashSet<>();
+        for (int i = 0; i < 100_000; i++) {
+            String trackingId = SampleMessage.trackingId();
+            assertEquals(SampleMessage.TRACKING_ID.length(), trackingId.length());
+            assertTrue(trackingIds.add(trackingId), trackingId);
+        }
+    }
+}
@@ -1,9 +1,12 @@
 package com.demo.rest;
 
+import com.benchmark.common.config.CommonConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@Import(CommonConfig.class)
 public class RestBackendApplication {
 
     public static void main(String[] args) {
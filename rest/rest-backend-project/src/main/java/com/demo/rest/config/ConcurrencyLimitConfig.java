@@ -0,0 +1,35 @@
+package com.demo.rest.config;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import com.demo.rest.controller.ConcurrencyLimitFilter;
+import com.demo.rest.controller.ReactiveConcurrencyLimitFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Filters applying the {@link ConcurrencyLimiter} of {@code CommonConfig} to the single sends; the servlet filter
+ * is only registered when the limit is enabled, the reactive one lets everything through when it is not.
+ *
+ * @author phonghv
+ */
+@Configuration
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public FilterRegistrationBean<ConcurrencyLimitFilter> concurrencyLimitFilter(ConcurrencyLimiter concurrencyLimiter) {
+        FilterRegistrationBean<ConcurrencyLimitFilter> registration =
+                new FilterRegistrationBean<>(new ConcurrencyLimitFilter(concurrencyLimiter));
+        registration.addUrlPatterns("/api/send-message", "/api/send-message-no-random-delay");
+        registration.setEnabled(concurrencyLimiter.enabled());
+        return registration;
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public ReactiveConcurrencyLimitFilter reactiveConcurrencyLimitFilter(ConcurrencyLimiter concurrencyLimiter) {
+        return new ReactiveConcurrencyLimitFilter(concurrencyLimiter);
+    }
+}
@@ -0,0 +1,21 @@
+package com.demo.rest.config;
+
+import com.benchmark.common.idempotency.IdempotencyCache;
+import com.demo.rest.model.MessageResponse;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Responses remembered by tracking_id for retried sends, configured through the {@code idempotency.*} properties.
+ *
+ * @author phonghv
+ */
+@Configuration
+public class IdempotencyConfig {
+
+    @Bean
+    public IdempotencyCache<MessageResponse> idempotencyCache(Environment environment) {
+        return IdempotencyCache.fromProperties(environment::getProperty, MessageResponse::isSuccess);
+    }
+}
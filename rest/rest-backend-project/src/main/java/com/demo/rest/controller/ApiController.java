@@ -1,32 +1,77 @@
 package com.demo.rest.controller;
 
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.id.MsgIdGenerator;
+import com.benchmark.common.idempotency.IdempotencyCache;
+import com.benchmark.common.journal.MessageJournal;
+import com.benchmark.common.latency.SimulatedLatency;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.demo.rest.model.MessageRequest;
+import com.demo.rest.model.MessageResponse;
+import com.demo.rest.trace.RequestTracer;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.io.IOException;
 import java.util.Map;
-import java.util.Random;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Message sends over HTTP. A caller that will stop waiting after some time says so with the
+ * {@code X-Request-Timeout-Ms} header; the deadline it gives is followed through {@link Deadlines}: an expired
+ * message is not started, its simulated delay is cut short at the deadline and its quota given back, answered 504.
+ * The {@code reactive} profile serves the same endpoints with {@link ReactiveApiController} instead.
  *
  * @author phonghv
  */
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api")
 public class ApiController {
-    private final Random random = new Random();
+    private static final Logger logger = LoggerFactory.getLogger(ApiController.class);
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    static final String TIMEOUT_HEADER = "X-Request-Timeout-Ms";
+
+    private final SimulatedLatency simulatedLatency;
+    private final MsgIdGenerator msgIdGenerator;
+    private final MessageAdmission admission;
+    private final IdempotencyCache<MessageResponse> idempotencyCache;
+    private final MessageJournal journal;
+    private final RateLimiter rateLimiter;
+    private final Deadlines deadlines;
+    private final BulkMessageProcessor bulkMessageProcessor;
+    private final RequestTracer requestTracer;
 
     private final Counter sendMessageCounter;
     private final Counter sendMessageNoDelayCounter;
 
-    public ApiController(MeterRegistry meterRegistry) {
+    public ApiController(MeterRegistry meterRegistry, SimulatedLatency simulatedLatency, MsgIdGenerator msgIdGenerator,
+                         MessageAdmission admission, IdempotencyCache<MessageResponse> idempotencyCache, MessageJournal journal,
+                         RateLimiter rateLimiter, Deadlines deadlines, ObjectMapper objectMapper,
+                         RequestTracer requestTracer, @Value("${rest.bulk.maxInFlight:256}") int bulkMaxInFlight) {
+        this.simulatedLatency = simulatedLatency;
+        this.msgIdGenerator = msgIdGenerator;
+        this.admission = admission;
+        this.idempotencyCache = idempotencyCache;
+        this.journal = journal;
+        this.rateLimiter = rateLimiter;
+        this.deadlines = deadlines;
+        this.requestTracer = requestTracer;
+        this.bulkMessageProcessor = new BulkMessageProcessor(objectMapper, this::sendBulkMessage, bulkMaxInFlight);
         this.sendMessageCounter = Counter.builder("message_service_send_total")
                 .description("Số lần gọi sendMessage()")
                 .tag("method", "sendMessage")
@@ -39,55 +84,110 @@ public class ApiController {
     }
 
     @PostMapping("/send-message")
-    public ResponseEntity<Map<String, Object>> sendMessage(@RequestBody Map<String, Object> request) throws InterruptedException, UnknownHostException {
-        simulateDelay();
-        String hostname = InetAddress.getLocalHost().getHostName();
-        System.out.println("Handled by instance: " + hostname + ", Thread: " + Thread.currentThread());
-
-        Map<String, Object> response = Map.of(
-                "error", 0,
-                "message", "Success",
-                "data", Map.of(
-                        "msg_id", UUID.randomUUID().toString().substring(0, 20),
-                        "sent_time", System.currentTimeMillis(),
-                        "sending_mode", "1",
-                        "quota", Map.of("dailyQuota", "500", "remainingQuota", "499")
-                )
-        );
-
-        sendMessageCounter.increment();
-        return ResponseEntity.ok(response);
+    public ResponseEntity<MessageResponse> sendMessage(@RequestBody MessageRequest request,
+            @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutMillis) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            long deadline = deadline(timeoutMillis);
+            MessageResponse response = idempotencyCache.execute(request.trackingId(),
+                    () -> send(request, deadline, simulatedLatency::sleep));
+            requestTracer.record("sendMessage", start);
+            return toResponseEntity(response);
+        } finally {
+            sendMessageCounter.increment();
+        }
     }
 
     @PostMapping("/send-message-no-random-delay")
-    public ResponseEntity<Map<String, Object>> sendMessageNoRandomDelay(@RequestBody Map<String, Object> request) throws UnknownHostException, InterruptedException {
-        String hostname = InetAddress.getLocalHost().getHostName();
-        System.out.println("Handled by instance: " + hostname + ", Thread: " + Thread.currentThread());
-
-        Thread.sleep(10);
-
-        Map<String, Object> response = Map.of(
-                "error", 0,
-                "message", "Success",
-                "data", Map.of(
-                        "msg_id", UUID.randomUUID().toString().substring(0, 20),
-                        "sent_time", System.currentTimeMillis(),
-                        "sending_mode", "1",
-                        "quota", Map.of("dailyQuota", "500", "remainingQuota", "499")
-                )
-        );
-
-        sendMessageNoDelayCounter.increment();
-        return ResponseEntity.ok(response);
+    public ResponseEntity<MessageResponse> sendMessageNoRandomDelay(@RequestBody MessageRequest request,
+            @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutMillis) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            long deadline = deadline(timeoutMillis);
+            MessageResponse response = idempotencyCache.execute(request.trackingId(),
+                    () -> send(request, deadline, (deadlines, at) -> deadlines.sleep(10, at)));
+            requestTracer.record("sendMessageNoRandomDelay", start);
+            return toResponseEntity(response);
+        } finally {
+            sendMessageNoDelayCounter.increment();
+        }
+    }
+
+    /**
+     * Bulk send: the body is NDJSON (one message per line) or a JSON array of messages, the response
+     * is NDJSON with one result per message, written in completion order and tagged with its tracking_id.
+     * A timeout header is the deadline of the whole body.
+     */
+    @PostMapping(value = "/send-messages",
+            consumes = {APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = APPLICATION_NDJSON_VALUE)
+    public void sendMessages(HttpServletRequest request, HttpServletResponse response,
+            @RequestHeader(value = TIMEOUT_HEADER, required = false) Long timeoutMillis) throws IOException, InterruptedException {
+        long deadline = deadline(timeoutMillis);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        bulkMessageProcessor.process(request.getInputStream(), response.getOutputStream(), deadline);
+    }
+
+    /**
+     * One message, without the idempotency check: admitted by {@link MessageAdmission}, then delayed.
+     */
+    private MessageResponse send(MessageRequest request, long deadline, Delay delay) throws InterruptedException {
+        MessageAdmission.Admitted admitted = admission.admit(request, deadline);
+        if (admitted.rejection() != null) {
+            return admitted.rejection();
+        }
+        if (!delay.apply(deadlines, deadline)) {
+            return admission.cutShort(request);
+        }
+
+        String msgId = msgIdGenerator.next();
+        journal.append(msgId, request.phone(), request.templateId(), request.trackingId(), request.templateData());
+        return admission.sent(admitted, msgId, deadline);
+    }
+
+    private long deadline(Long timeoutMillis) {
+        return timeoutMillis == null ? Deadlines.NONE : deadlines.after(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // error codes of a rejected message are the HTTP statuses, 429, 404 and 504
+    private static ResponseEntity<MessageResponse> toResponseEntity(MessageResponse response) {
+        return response.isSuccess()
+                ? ResponseEntity.ok(response)
+                : ResponseEntity.status(response.error()).body(response);
+    }
+
+    private Object sendBulkMessage(MessageRequest request, long deadline) {
+        long start = System.nanoTime();
+        try {
+            // single sends are checked by RateLimitAdvice as their body is read, bulk lines here
+            if (!rateLimiter.tryAcquire(request.phone(), request.templateId())) {
+                return MessageResponse.rateLimited().withTrackingId(request.trackingId());
+            }
+            MessageResponse response = idempotencyCache.execute(request.trackingId(),
+                    () -> send(request, deadline, simulatedLatency::sleep));
+            return response.withTrackingId(request.trackingId());
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logger.error("Error processing bulk message: {}", e.getMessage(), e);
+            Map<String, Object> result = BulkMessageProcessor.errorLine("Error processing request: " + e.getMessage());
+            if (request.trackingId() != null) {
+                result.put("tracking_id", request.trackingId());
+            }
+            return result;
+        } finally {
+            sendMessageCounter.increment();
+            requestTracer.record("sendMessages", start);
+        }
     }
 
-    private void simulateDelay() throws InterruptedException {
-        double p = random.nextDouble();
-        long delay;
-        if (p < 0.95) delay = 100 + random.nextInt(400);
-        else if (p < 0.98) delay = 500 + random.nextInt(500);
-        else if (p < 0.9995) delay = 1000 + random.nextInt(2000);
-        else delay = 3001 + random.nextInt(2000);
-        Thread.sleep(delay);
+    @FunctionalInterface
+    private interface Delay {
+        /**
+         * @return {@code false} when cut short at {@code deadline}
+         */
+        boolean apply(Deadlines deadlines, long deadline) throws InterruptedException;
     }
 }
@@ -0,0 +1,117 @@
+package com.demo.rest.controller;
+
+import com.demo.rest.model.MessageRequest;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Streams a bulk send: reads messages one by one from an NDJSON body (or a single JSON array)
+ * with the Jackson streaming parser, processes them concurrently on virtual threads and writes one
+ * NDJSON result line per message as soon as it completes.
+ * <p>
+ * At most {@code maxInFlight} messages are parsed ahead of their results, so memory stays bounded
+ * no matter how large the batch is.
+ *
+ * @author phonghv
+ */
+class BulkMessageProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkMessageProcessor.class);
+    private static final byte[] NEWLINE = {'\n'};
+
+    private final ObjectMapper objectMapper;
+    private final Processor processor;
+    private final int maxInFlight;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param processor result of one message, written as its line
+     */
+    BulkMessageProcessor(ObjectMapper objectMapper, Processor processor, int maxInFlight) {
+        this.objectMapper = objectMapper;
+        this.processor = processor;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * @param deadline the caller's deadline of the whole body, handed to every message
+     */
+    void process(InputStream in, OutputStream out, long deadline) throws IOException, InterruptedException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ReentrantLock writeLock = new ReentrantLock();
+
+        try (JsonParser parser = objectMapper.createParser(in)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+            while (token == JsonToken.START_OBJECT) {
+                MessageRequest message = parser.readValueAs(MessageRequest.class);
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        writeLine(out, writeLock, processor.apply(message, deadline));
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                token = parser.nextToken();
+            }
+            if (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                throw new JsonParseException(parser, "Expected a JSON object per message but found " + token);
+            }
+        } catch (JsonProcessingException e) {
+            // results already written stay valid, report where the body went wrong as the last line
+            inFlight.acquire(maxInFlight);
+            writeLine(out, writeLock, errorLine("Malformed request body: " + e.getOriginalMessage()));
+            return;
+        }
+
+        // wait for the messages still in flight before the response is completed
+        inFlight.acquire(maxInFlight);
+    }
+
+    private void writeLine(OutputStream out, ReentrantLock writeLock, Object result) {
+        try {
+            byte[] line = objectMapper.writeValueAsBytes(result);
+            writeLock.lock();
+            try {
+                out.write(line);
+                out.write(NEWLINE);
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to write bulk result: {}", e.getMessage());
+        }
+    }
+
+    static Map<String, Object> errorLine(String message) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("error", 1);
+        line.put("message", message);
+        return line;
+    }
+
+    @FunctionalInterface
+    interface Processor {
+        Object apply(MessageRequest message, long deadline);
+    }
+}
@@ -0,0 +1,61 @@
+package com.demo.rest.controller;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Adaptive concurrency limit of the single sends of {@link ApiController}: a request over the limit is answered
+ * 503 by the filter, before its body is read or a handler is picked, so shedding costs next to nothing while the
+ * admitted requests keep their latency. Bulk sends hold their connection for the whole body and bound their own
+ * messages with {@code rest.bulk.maxInFlight}, they are not registered here.
+ *
+ * @author phonghv
+ */
+public class ConcurrencyLimitFilter implements Filter {
+
+    // same shape as a rejected MessageResponse
+    private static final byte[] BODY = ("{\"error\":" + ConcurrencyLimiter.ERROR_CODE + ",\"message\":\""
+            + ConcurrencyLimiter.ERROR_MESSAGE + "\",\"data\":{}}").getBytes(StandardCharsets.UTF_8);
+
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitFilter(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        long start = limiter.tryAcquire();
+        if (start == ConcurrencyLimiter.REJECTED) {
+            HttpServletResponse httpResponse = (HttpServletResponse) response;
+            httpResponse.setStatus(ConcurrencyLimiter.ERROR_CODE);
+            httpResponse.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            httpResponse.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            httpResponse.setContentLength(BODY.length);
+            httpResponse.getOutputStream().write(BODY);
+            return;
+        }
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+        } finally {
+            if (completed) {
+                limiter.release(start);
+            } else {
+                limiter.releaseIgnored(start);
+            }
+        }
+    }
+}
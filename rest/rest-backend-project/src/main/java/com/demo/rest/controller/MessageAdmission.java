@@ -0,0 +1,75 @@
+package com.demo.rest.controller;
+
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.template.TemplateEngine;
+import com.demo.rest.model.MessageRequest;
+import com.demo.rest.model.MessageResponse;
+import org.springframework.stereotype.Component;
+
+/**
+ * The synchronous part of a send, shared by {@link ApiController} and {@link ReactiveApiController}, which only
+ * differ in how they wait out the simulated delay and append to the journal: before the delay a message is
+ * skipped once its deadline has passed, rendered, then counted against the quota; a delay cut short at the
+ * deadline gives the quota back; a sent message is answered with its quota and rendered length.
+ *
+ * @author phonghv
+ */
+@Component
+public class MessageAdmission {
+
+    private final QuotaStore quotaStore;
+    private final TemplateEngine templateEngine;
+    private final Deadlines deadlines;
+
+    public MessageAdmission(QuotaStore quotaStore, TemplateEngine templateEngine, Deadlines deadlines) {
+        this.quotaStore = quotaStore;
+        this.templateEngine = templateEngine;
+        this.deadlines = deadlines;
+    }
+
+    /**
+     * @return the message admitted, or its rejection: deadline exceeded, template not found or quota exceeded
+     */
+    Admitted admit(MessageRequest request, long deadline) {
+        if (deadlines.skip(deadline)) {
+            return Admitted.rejected(MessageResponse.deadlineExceeded());
+        }
+        int contentLength = templateEngine.render(request.templateId(), request.templateData());
+        if (contentLength == TemplateEngine.NOT_FOUND) {
+            return Admitted.rejected(MessageResponse.templateNotFound());
+        }
+        int remainingQuota = quotaStore.tryAcquire(request.phone(), request.templateId());
+        if (remainingQuota == QuotaStore.REJECTED) {
+            return Admitted.rejected(MessageResponse.quotaExceeded(quotaStore.dailyLimit()));
+        }
+        return new Admitted(null, contentLength, remainingQuota);
+    }
+
+    /**
+     * The answer to an admitted message whose delay was cut short at its deadline.
+     */
+    MessageResponse cutShort(MessageRequest request) {
+        quotaStore.release(request.phone(), request.templateId());
+        return MessageResponse.deadlineExceeded();
+    }
+
+    /**
+     * The answer to an admitted message sent and journaled as {@code msgId}.
+     */
+    MessageResponse sent(Admitted admitted, String msgId, long deadline) {
+        deadlines.completed(deadline);
+        return MessageResponse.success(msgId, System.currentTimeMillis(), quotaStore.dailyLimit(),
+                admitted.remainingQuota(), admitted.contentLength());
+    }
+
+    /**
+     * @param rejection the response of a message that is not sent, {@code null} once admitted
+     */
+    record Admitted(MessageResponse rejection, int contentLength, int remainingQuota) {
+
+        static Admitted rejected(MessageResponse rejection) {
+            return new Admitted(rejection, 0, 0);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.demo.rest.controller;
+
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.demo.rest.model.MessageRequest;
+import com.demo.rest.model.MessageResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+
+/**
+ * Rate limit of the single sends of {@link ApiController}: checked as soon as the body is read, so a throttled
+ * sender is answered 429 before the handler, the idempotency cache or the delay. Bulk sends are checked per
+ * line by the controller.
+ *
+ * @author phonghv
+ */
+@RestControllerAdvice(assignableTypes = ApiController.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class RateLimitAdvice extends RequestBodyAdviceAdapter {
+
+    private final RateLimiter rateLimiter;
+
+    public RateLimitAdvice(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return rateLimiter.enabled() && targetType == MessageRequest.class;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter,
+                                Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        MessageRequest request = (MessageRequest) body;
+        if (!rateLimiter.tryAcquire(request.phone(), request.templateId())) {
+            throw RateLimitedException.INSTANCE;
+        }
+        return body;
+    }
+
+    @ExceptionHandler(RateLimitedException.class)
+    public ResponseEntity<MessageResponse> rateLimited() {
+        return ResponseEntity.status(RateLimiter.ERROR_CODE).body(MessageResponse.rateLimited());
+    }
+
+    // thrown for every throttled request, so without a stack trace
+    static final class RateLimitedException extends RuntimeException {
+        static final RateLimitedException INSTANCE = new RateLimitedException();
+
+        private RateLimitedException() {
+            super(RateLimiter.ERROR_MESSAGE, null, false, false);
+        }
+    }
+}
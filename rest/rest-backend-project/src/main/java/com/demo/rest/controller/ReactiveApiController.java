@@ -0,0 +1,208 @@
+package com.demo.rest.controller;
+
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.id.MsgIdGenerator;
+import com.benchmark.common.idempotency.IdempotencyCache;
+import com.benchmark.common.journal.MessageJournal;
+import com.benchmark.common.latency.SimulatedLatency;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.demo.rest.model.MessageRequest;
+import com.demo.rest.model.MessageResponse;
+import com.demo.rest.trace.RequestTracer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Non-blocking variant of {@link ApiController} on WebFlux and Netty, started with the {@code reactive} profile
+ * ({@code spring.main.web-application-type=reactive}). Same endpoints, bodies and status codes; the simulated
+ * latency is a {@link Mono#delay} on the Reactor timer instead of a sleeping virtual thread, so a message in its
+ * delay holds no thread at all, and a bulk body is a {@link Flux} of messages decoded as they arrive.
+ *
+ * @author phonghv
+ */
+@RestController
+@RequestMapping("/api")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveApiController {
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveApiController.class);
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private final SimulatedLatency simulatedLatency;
+    private final MsgIdGenerator msgIdGenerator;
+    private final MessageAdmission admission;
+    private final IdempotencyCache<MessageResponse> idempotencyCache;
+    private final MessageJournal journal;
+    private final RateLimiter rateLimiter;
+    private final Deadlines deadlines;
+    private final RequestTracer requestTracer;
+    private final int bulkMaxInFlight;
+
+    private final Counter sendMessageCounter;
+    private final Counter sendMessageNoDelayCounter;
+
+    public ReactiveApiController(MeterRegistry meterRegistry, SimulatedLatency simulatedLatency,
+                                 MsgIdGenerator msgIdGenerator, MessageAdmission admission,
+                                 IdempotencyCache<MessageResponse> idempotencyCache, MessageJournal journal,
+                                 RateLimiter rateLimiter, Deadlines deadlines, RequestTracer requestTracer,
+                                 @Value("${rest.bulk.maxInFlight:256}") int bulkMaxInFlight) {
+        this.simulatedLatency = simulatedLatency;
+        this.msgIdGenerator = msgIdGenerator;
+        this.admission = admission;
+        this.idempotencyCache = idempotencyCache;
+        this.journal = journal;
+        this.rateLimiter = rateLimiter;
+        this.deadlines = deadlines;
+        this.requestTracer = requestTracer;
+        this.bulkMaxInFlight = Math.max(1, bulkMaxInFlight);
+        this.sendMessageCounter = Counter.builder("message_service_send_total")
+                .description("Số lần gọi sendMessage()")
+                .tag("method", "sendMessage")
+                .register(meterRegistry);
+
+        this.sendMessageNoDelayCounter = Counter.builder("message_service_send_no_delay_total")
+                .description("Số lần gọi sendMessageNoRandomDelay()")
+                .tag("method", "sendMessageNoRandomDelay")
+                .register(meterRegistry);
+    }
+
+    @PostMapping("/send-message")
+    public Mono<ResponseEntity<MessageResponse>> sendMessage(@RequestBody MessageRequest request,
+            @RequestHeader(value = ApiController.TIMEOUT_HEADER, required = false) Long timeoutMillis) {
+        long start = System.nanoTime();
+        return sendChecked(request, deadline(timeoutMillis), simulatedLatency::nextDelayMillis, true)
+                .map(ReactiveApiController::toResponseEntity)
+                .doFinally(signal -> {
+                    sendMessageCounter.increment();
+                    requestTracer.record("sendMessage", start);
+                });
+    }
+
+    @PostMapping("/send-message-no-random-delay")
+    public Mono<ResponseEntity<MessageResponse>> sendMessageNoRandomDelay(@RequestBody MessageRequest request,
+            @RequestHeader(value = ApiController.TIMEOUT_HEADER, required = false) Long timeoutMillis) {
+        long start = System.nanoTime();
+        return sendChecked(request, deadline(timeoutMillis), () -> 10, false)
+                .map(ReactiveApiController::toResponseEntity)
+                .doFinally(signal -> {
+                    sendMessageNoDelayCounter.increment();
+                    requestTracer.record("sendMessageNoRandomDelay", start);
+                });
+    }
+
+    /**
+     * Bulk send, as {@link ApiController#sendMessages}: NDJSON or a JSON array in, one NDJSON result per message
+     * out in completion order. A malformed body ends with an error line once the messages before it completed.
+     */
+    @PostMapping(value = "/send-messages",
+            consumes = {APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE},
+            produces = APPLICATION_NDJSON_VALUE)
+    public Flux<Object> sendMessages(@RequestBody Flux<MessageRequest> messages,
+            @RequestHeader(value = ApiController.TIMEOUT_HEADER, required = false) Long timeoutMillis) {
+        long deadline = deadline(timeoutMillis);
+        return messages
+                .flatMapDelayError(message -> sendBulkMessage(message, deadline), bulkMaxInFlight, 1)
+                .onErrorResume(ServerWebInputException.class, e -> Mono.just(
+                        BulkMessageProcessor.errorLine("Malformed request body: " + malformed(e))));
+    }
+
+    private static String malformed(ServerWebInputException e) {
+        Throwable cause = e.getMostSpecificCause();
+        return cause instanceof JsonProcessingException json ? json.getOriginalMessage() : cause.getMessage();
+    }
+
+    /**
+     * Rate limit first, as {@link RateLimitAdvice} does for the blocking controller, then the idempotency cache.
+     */
+    private Mono<MessageResponse> sendChecked(MessageRequest request, long deadline, LongSupplier delayMillis,
+                                              boolean simulated) {
+        if (!rateLimiter.tryAcquire(request.phone(), request.templateId())) {
+            return Mono.just(MessageResponse.rateLimited());
+        }
+        // a retry shares the send in flight, so the caller that gives up does not cancel it
+        return Mono.fromFuture(() -> idempotencyCache.executeAsync(request.trackingId(),
+                () -> send(request, deadline, delayMillis.getAsLong(), simulated).toFuture()), true);
+    }
+
+    /**
+     * One message, without the idempotency check: admitted by {@link MessageAdmission}, then delayed on the timer.
+     */
+    private Mono<MessageResponse> send(MessageRequest request, long deadline, long delayMillis, boolean simulated) {
+        MessageAdmission.Admitted admitted = admission.admit(request, deadline);
+        if (admitted.rejection() != null) {
+            return Mono.just(admitted.rejection());
+        }
+        long start = System.nanoTime();
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        long remainingNanos = deadlines.remainingNanos(deadline);
+        if (remainingNanos < delayNanos) {
+            // the caller stops waiting first: answer at its deadline, the rest of the delay is saved
+            return Mono.delay(Duration.ofNanos(remainingNanos)).map(tick -> {
+                if (simulated) {
+                    simulatedLatency.record(System.nanoTime() - start);
+                }
+                deadlines.cutShort(delayNanos - remainingNanos);
+                return admission.cutShort(request);
+            });
+        }
+        return Mono.delay(Duration.ofMillis(delayMillis)).flatMap(tick -> {
+            if (simulated) {
+                simulatedLatency.record(System.nanoTime() - start);
+            }
+            String msgId = msgIdGenerator.next();
+            // with journal.fsync=batch the response waits for the group commit, off the timer thread
+            return Mono.fromFuture(() -> journal.appendAsync(msgId, request.phone(), request.templateId(),
+                            request.trackingId(), request.templateData()))
+                    .then(Mono.fromSupplier(() -> admission.sent(admitted, msgId, deadline)));
+        });
+    }
+
+    private Mono<Object> sendBulkMessage(MessageRequest request, long deadline) {
+        long start = System.nanoTime();
+        return sendChecked(request, deadline, simulatedLatency::nextDelayMillis, true)
+                .<Object>map(response -> response.withTrackingId(request.trackingId()))
+                .onErrorResume(e -> {
+                    logger.error("Error processing bulk message: {}", e.getMessage(), e);
+                    Map<String, Object> result =
+                            BulkMessageProcessor.errorLine("Error processing request: " + e.getMessage());
+                    if (request.trackingId() != null) {
+                        result.put("tracking_id", request.trackingId());
+                    }
+                    return Mono.just(result);
+                })
+                .doFinally(signal -> {
+                    sendMessageCounter.increment();
+                    requestTracer.record("sendMessages", start);
+                });
+    }
+
+    private long deadline(Long timeoutMillis) {
+        return timeoutMillis == null ? Deadlines.NONE : deadlines.after(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // error codes of a rejected message are the HTTP statuses, 429, 404 and 504
+    private static ResponseEntity<MessageResponse> toResponseEntity(MessageResponse response) {
+        return response.isSuccess()
+                ? ResponseEntity.ok(response)
+                : ResponseEntity.status(response.error()).body(response);
+    }
+}
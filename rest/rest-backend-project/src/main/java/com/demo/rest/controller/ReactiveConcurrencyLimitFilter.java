@@ -0,0 +1,59 @@
+package com.demo.rest.controller;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * {@link ConcurrencyLimitFilter} of the single sends of {@link ReactiveApiController}: a request over the limit
+ * is answered 503 before its body is read. A call ends when its response completes; one whose client went away
+ * is released without its latency.
+ *
+ * @author phonghv
+ */
+public class ReactiveConcurrencyLimitFilter implements WebFilter {
+
+    private static final Set<String> PATHS = Set.of("/api/send-message", "/api/send-message-no-random-delay");
+    // same shape as a rejected MessageResponse
+    private static final byte[] BODY = ("{\"error\":" + ConcurrencyLimiter.ERROR_CODE + ",\"message\":\""
+            + ConcurrencyLimiter.ERROR_MESSAGE + "\",\"data\":{}}").getBytes(StandardCharsets.UTF_8);
+
+    private final ConcurrencyLimiter limiter;
+
+    public ReactiveConcurrencyLimitFilter(ConcurrencyLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!limiter.enabled() || !PATHS.contains(exchange.getRequest().getPath().pathWithinApplication().value())) {
+            return chain.filter(exchange);
+        }
+        long start = limiter.tryAcquire();
+        if (start == ConcurrencyLimiter.REJECTED) {
+            ServerHttpResponse response = exchange.getResponse();
+            response.setStatusCode(HttpStatusCode.valueOf(ConcurrencyLimiter.ERROR_CODE));
+            response.getHeaders().set(HttpHeaders.RETRY_AFTER, "1");
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            response.getHeaders().setContentLength(BODY.length);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(BODY)));
+        }
+        return chain.filter(exchange).doFinally(signal -> {
+            if (signal == SignalType.ON_COMPLETE) {
+                limiter.release(start);
+            } else {
+                limiter.releaseIgnored(start);
+            }
+        });
+    }
+}
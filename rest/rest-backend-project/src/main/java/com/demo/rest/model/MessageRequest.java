@@ -0,0 +1,16 @@
+package com.demo.rest.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Body of the send endpoints, bound directly instead of through a generic {@code Map}.
+ *
+ * @author phonghv
+ */
+public record MessageRequest(String phone,
+                             @JsonProperty("template_id") String templateId,
+                             @JsonProperty("template_data") Map<String, String> templateData,
+                             @JsonProperty("tracking_id") String trackingId) {
+}
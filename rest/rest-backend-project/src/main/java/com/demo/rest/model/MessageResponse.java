@@ -0,0 +1,63 @@
+package com.demo.rest.model;
+
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Send result. Only the per-request values are held here, the constant parts of the
+ * body are written by {@link MessageResponseSerializer}.
+ *
+ * @author phonghv
+ */
+@JsonSerialize(using = MessageResponseSerializer.class)
+public record MessageResponse(int error, String msgId, long sentTime, int dailyQuota, int remainingQuota,
+                              int contentLength, String trackingId, boolean throttled) {
+
+    private static final MessageResponse RATE_LIMITED =
+            new MessageResponse(RateLimiter.ERROR_CODE, null, 0, 0, 0, 0, null, true);
+    private static final MessageResponse DEADLINE_EXCEEDED =
+            new MessageResponse(Deadlines.ERROR_CODE, null, 0, 0, 0, 0, null, false);
+
+    public static MessageResponse success(String msgId, long sentTime, int dailyQuota, int remainingQuota,
+                                          int contentLength) {
+        return new MessageResponse(0, msgId, sentTime, dailyQuota, remainingQuota, contentLength, null, false);
+    }
+
+    public static MessageResponse quotaExceeded(int dailyQuota) {
+        return new MessageResponse(QuotaStore.ERROR_CODE, null, 0, dailyQuota, 0, 0, null, false);
+    }
+
+    public static MessageResponse templateNotFound() {
+        return new MessageResponse(TemplateEngine.ERROR_CODE, null, 0, 0, 0, 0, null, false);
+    }
+
+    /**
+     * Rejected by the rate limiter before anything was counted; same code as a quota rejection, told apart by
+     * {@link #throttled()}.
+     */
+    public static MessageResponse rateLimited() {
+        return RATE_LIMITED;
+    }
+
+    /**
+     * Abandoned at the caller's deadline; a quota taken for it was given back.
+     */
+    public static MessageResponse deadlineExceeded() {
+        return DEADLINE_EXCEEDED;
+    }
+
+    /**
+     * The same result tagged with the message's tracking_id, as bulk result lines are.
+     */
+    public MessageResponse withTrackingId(String trackingId) {
+        return new MessageResponse(error, msgId, sentTime, dailyQuota, remainingQuota, contentLength, trackingId,
+                throttled);
+    }
+
+    public boolean isSuccess() {
+        return error == 0;
+    }
+}
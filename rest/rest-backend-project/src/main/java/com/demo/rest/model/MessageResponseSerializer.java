@@ -0,0 +1,123 @@
+package com.demo.rest.model;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+
+/**
+ * Writes {@link MessageResponse} in the established response shape:
+ * <pre>
+ * {"error":0,"message":"Success","data":{"msg_id":"...","sent_time":...,"sending_mode":"1","content_length":237,
+ *  "quota":{"dailyQuota":"500","remainingQuota":"499"}}}
+ * {"error":429,"message":"Daily quota exceeded","data":{"quota":{"dailyQuota":"500","remainingQuota":"0"}}}
+ * {"error":404,"message":"Template not found","data":{}}
+ * {"error":429,"message":"Rate limit exceeded","data":{}}
+ * {"error":504,"message":"Deadline exceeded","data":{}}
+ * {"error":503,"message":"Server concurrency limit reached","data":{}}
+ * </pre>
+ * Field names and the constant values are encoded once, so a response costs only its per-request values. A
+ * response with any other error code is a bug and fails to serialize.
+ *
+ * @author phonghv
+ */
+class MessageResponseSerializer extends StdSerializer<MessageResponse> {
+
+    private static final SerializableString ERROR = new SerializedString("error");
+    private static final SerializableString MESSAGE = new SerializedString("message");
+    private static final SerializableString DATA = new SerializedString("data");
+    private static final SerializableString MSG_ID = new SerializedString("msg_id");
+    private static final SerializableString SENT_TIME = new SerializedString("sent_time");
+    private static final SerializableString SENDING_MODE = new SerializedString("sending_mode");
+    private static final SerializableString CONTENT_LENGTH = new SerializedString("content_length");
+    private static final SerializableString QUOTA = new SerializedString("quota");
+    private static final SerializableString TRACKING_ID = new SerializedString("tracking_id");
+    private static final SerializableString DAILY_QUOTA = new SerializedString("dailyQuota");
+    private static final SerializableString REMAINING_QUOTA = new SerializedString("remainingQuota");
+
+    private static final SerializableString SUCCESS = new SerializedString("Success");
+    private static final SerializableString SENDING_MODE_VALUE = new SerializedString("1");
+    private static final SerializableString QUOTA_EXCEEDED = new SerializedString(QuotaStore.ERROR_MESSAGE);
+    private static final SerializableString TEMPLATE_NOT_FOUND = new SerializedString(TemplateEngine.ERROR_MESSAGE);
+    private static final SerializableString RATE_LIMITED = new SerializedString(RateLimiter.ERROR_MESSAGE);
+    private static final SerializableString DEADLINE_EXCEEDED = new SerializedString(Deadlines.ERROR_MESSAGE);
+    private static final SerializableString CONCURRENCY_LIMITED =
+            new SerializedString(ConcurrencyLimiter.ERROR_MESSAGE);
+
+    MessageResponseSerializer() {
+        super(MessageResponse.class);
+    }
+
+    @Override
+    public void serialize(MessageResponse value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        gen.writeFieldName(ERROR);
+        gen.writeNumber(value.error());
+        SerializableString message = message(value);
+        gen.writeFieldName(MESSAGE);
+        gen.writeString(message);
+
+        gen.writeFieldName(DATA);
+        gen.writeStartObject();
+        if (value.isSuccess()) {
+            gen.writeFieldName(MSG_ID);
+            gen.writeString(value.msgId());
+            gen.writeFieldName(SENT_TIME);
+            gen.writeNumber(value.sentTime());
+            gen.writeFieldName(SENDING_MODE);
+            gen.writeString(SENDING_MODE_VALUE);
+            gen.writeFieldName(CONTENT_LENGTH);
+            gen.writeNumber(value.contentLength());
+        }
+        if (message == SUCCESS || message == QUOTA_EXCEEDED) {
+            // only these counted against the quota, other rejections took nothing or gave it back
+            gen.writeFieldName(QUOTA);
+            gen.writeStartObject();
+            gen.writeFieldName(DAILY_QUOTA);
+            gen.writeString(Integer.toString(value.dailyQuota()));
+            gen.writeFieldName(REMAINING_QUOTA);
+            gen.writeString(Integer.toString(value.remainingQuota()));
+            gen.writeEndObject();
+        }
+        gen.writeEndObject();
+
+        if (value.trackingId() != null) {
+            gen.writeFieldName(TRACKING_ID);
+            gen.writeString(value.trackingId());
+        }
+        gen.writeEndObject();
+    }
+
+    // the quota and the rate limiter share 429, a rate limited response is throttled
+    private static SerializableString message(MessageResponse value) {
+        int error = value.error();
+        if (error == 0) {
+            return SUCCESS;
+        }
+        if (error == RateLimiter.ERROR_CODE && value.throttled()) {
+            return RATE_LIMITED;
+        }
+        if (error == QuotaStore.ERROR_CODE && !value.throttled()) {
+            return QUOTA_EXCEEDED;
+        }
+        if (error == TemplateEngine.ERROR_CODE) {
+            return TEMPLATE_NOT_FOUND;
+        }
+        if (error == Deadlines.ERROR_CODE) {
+            return DEADLINE_EXCEEDED;
+        }
+        if (error == ConcurrencyLimiter.ERROR_CODE) {
+            return CONCURRENCY_LIMITED;
+        }
+        throw new IllegalStateException("No message for error code " + error
+                + (value.throttled() ? " (throttled)" : ""));
+    }
+}
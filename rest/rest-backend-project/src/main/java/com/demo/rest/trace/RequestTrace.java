@@ -0,0 +1,10 @@
+package com.demo.rest.trace;
+
+/**
+ * One sampled request: which instance and thread handled it, the endpoint and how long it took.
+ *
+ * @author phonghv
+ */
+public record RequestTrace(long sequence, long timestampMillis, String instance, String thread, String method,
+                           long latencyMicros) {
+}
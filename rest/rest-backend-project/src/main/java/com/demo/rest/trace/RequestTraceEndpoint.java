@@ -0,0 +1,34 @@
+package com.demo.rest.trace;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/requesttraces}: the most recent sampled requests of this instance.
+ *
+ * @author phonghv
+ */
+@Component
+@Endpoint(id = "requesttraces")
+public class RequestTraceEndpoint {
+
+    private final RequestTracer tracer;
+
+    public RequestTraceEndpoint(RequestTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> traces() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("instance", tracer.instance());
+        result.put("sampleRate", tracer.sampleRate());
+        result.put("recorded", tracer.recorded());
+        result.put("traces", tracer.recent());
+        return result;
+    }
+}
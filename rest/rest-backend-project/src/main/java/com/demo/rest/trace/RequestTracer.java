@@ -0,0 +1,106 @@
+package com.demo.rest.trace;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-request tracing without a lock on the request path: a sampled fraction of requests is written
+ * to a {@link TraceRing}, which a background thread drains to the log and the {@code requesttraces}
+ * actuator endpoint reads. The instance name is resolved once at startup.
+ *
+ * @author phonghv
+ */
+@Component
+public class RequestTracer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestTracer.class);
+
+    private final String instance = resolveInstance();
+    private final double sampleRate;
+    private final TraceRing ring;
+    private final ScheduledExecutorService drainer;
+    private long drainedSequence;
+
+    public RequestTracer(@Value("${rest.trace.sampleRate:0.01}") double sampleRate,
+                         @Value("${rest.trace.bufferSize:1024}") int bufferSize,
+                         @Value("${rest.trace.log:false}") boolean logTraces,
+                         @Value("${rest.trace.drainIntervalMillis:1000}") long drainIntervalMillis) {
+        this.sampleRate = Math.max(0, Math.min(1, sampleRate));
+        this.ring = new TraceRing(bufferSize);
+        if (logTraces && this.sampleRate > 0) {
+            this.drainer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "rest-trace-drainer");
+                t.setDaemon(true);
+                return t;
+            });
+            drainer.scheduleWithFixedDelay(this::drainToLog, drainIntervalMillis, drainIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.drainer = null;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (drainer != null) {
+            drainer.shutdownNow();
+        }
+    }
+
+    /**
+     * Records the request started at {@code startNanos} if it is sampled.
+     */
+    public void record(String method, long startNanos) {
+        if (sampleRate == 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+        long latencyMicros = (System.nanoTime() - startNanos) / 1000;
+        String thread = Thread.currentThread().toString();
+        ring.add(sequence -> new RequestTrace(sequence, System.currentTimeMillis(), instance, thread, method,
+                latencyMicros));
+    }
+
+    public String instance() {
+        return instance;
+    }
+
+    public double sampleRate() {
+        return sampleRate;
+    }
+
+    public long recorded() {
+        return ring.written();
+    }
+
+    public List<RequestTrace> recent() {
+        return ring.snapshot();
+    }
+
+    private void drainToLog() {
+        try {
+            drainedSequence = ring.drain(drainedSequence, trace -> logger.info("{} {} handled by {} on {} in {} us",
+                    trace.timestampMillis(), trace.method(), trace.instance(), trace.thread(), trace.latencyMicros()));
+        } catch (Throwable e) {
+            logger.warn("Failed to drain request traces: {}", e.getMessage());
+        }
+    }
+
+    private static String resolveInstance() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            String hostname = System.getenv("HOSTNAME");
+            return hostname != null ? hostname : "unknown";
+        }
+    }
+}
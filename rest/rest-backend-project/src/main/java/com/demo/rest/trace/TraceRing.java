@@ -0,0 +1,65 @@
+package com.demo.rest.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Fixed-size, lock-free ring of the most recent traces. Writers claim a sequence number with one
+ * atomic increment and overwrite the oldest slot, so they never wait for each other or for readers;
+ * a reader that falls a full lap behind simply misses the overwritten traces.
+ *
+ * @author phonghv
+ */
+class TraceRing {
+
+    private final AtomicReferenceArray<RequestTrace> slots;
+    private final int mask;
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    TraceRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    void add(LongFunction<RequestTrace> traceForSequence) {
+        long sequence = nextSequence.getAndIncrement();
+        slots.set((int) (sequence & mask), traceForSequence.apply(sequence));
+    }
+
+    long written() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Passes the traces written since {@code fromSequence} to {@code consumer}, oldest first.
+     *
+     * @return the sequence to continue from on the next call
+     */
+    long drain(long fromSequence, Consumer<RequestTrace> consumer) {
+        long end = nextSequence.get();
+        long sequence = Math.max(fromSequence, end - slots.length());
+        for (; sequence < end; sequence++) {
+            RequestTrace trace = slots.get((int) (sequence & mask));
+            if (trace == null || trace.sequence() < sequence) {
+                // claimed but not written yet, pick it up next time
+                break;
+            }
+            if (trace.sequence() == sequence) {
+                consumer.accept(trace);
+            }
+            // a greater sequence means the slot was already overwritten
+        }
+        return sequence;
+    }
+
+    List<RequestTrace> snapshot() {
+        List<RequestTrace> traces = new ArrayList<>(slots.length());
+        drain(0, traces::add);
+        return traces;
+    }
+}
@@ -0,0 +1,88 @@
+package com.demo.rest.controller;
+
+import com.demo.rest.model.MessageRequest;
+import com.demo.rest.model.MessageResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Guards the bytes allocated per request on the send path: body decoding, the controller and
+ * response encoding, run on the test thread so the thread's allocation counter covers all of it.
+ * The servlet container's own allocations are not included.
+ */
+@SpringBootTest(properties = {
+        "latency.model=fixed",
+        "latency.fixed.millis=0",
+        // every request of the test uses the same phone, keep counting it but never reject
+        "quota.enabled=true",
+        "quota.dailyLimit=" + Integer.MAX_VALUE,
+        // every request has the same tracking_id, measure the send and not the duplicate lookup
+        "idempotency.enabled=false"
+})
+class ApiControllerAllocationTest {
+
+    private static final int WARMUP_REQUESTS = 20_000;
+    private static final int MEASURED_REQUESTS = 20_000;
+    private static final long BYTES_PER_REQUEST_BUDGET = 4 * 1024;
+
+    private static final byte[] BODY = """
+            {"phone":"84987654321","template_id":"7895417a7d3f9461cd2e","template_data":{"ky":"1","thang":"4/2020",\
+            "start_date":"20/03/2020","end_date":"20/04/2020","customer":"Nguyễn Thị Hoàng Anh","cid":"PE010299485",\
+            "address":"VNG Campus, TP.HCM","amount":"100","total":"100000"},"tracking_id":"tracking_id"}"""
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    ApiController controller;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    void responseKeepsItsShape() throws Exception {
+        byte[] json = handle();
+        Map<?, ?> response = objectMapper.readValue(json, Map.class);
+        assertEquals(0, response.get("error"));
+        assertEquals("Success", response.get("message"));
+        Map<?, ?> data = (Map<?, ?>) response.get("data");
+        assertEquals(20, ((String) data.get("msg_id")).length());
+        assertTrue(data.get("sent_time") instanceof Long);
+        assertEquals("1", data.get("sending_mode"));
+        assertTrue((Integer) data.get("content_length") > 150);
+        Map<?, ?> quota = (Map<?, ?>) data.get("quota");
+        assertEquals(String.valueOf(Integer.MAX_VALUE), quota.get("dailyQuota"));
+        assertTrue(Integer.parseInt((String) quota.get("remainingQuota")) < Integer.MAX_VALUE);
+    }
+
+    @Test
+    void bytesAllocatedPerRequestStayUnderBudget() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            handle();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_REQUESTS; i++) {
+            handle();
+        }
+        long perRequest = (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_REQUESTS;
+
+        assertTrue(perRequest <= BYTES_PER_REQUEST_BUDGET,
+                "Allocated " + perRequest + " bytes per request, budget is " + BYTES_PER_REQUEST_BUDGET);
+    }
+
+    private byte[] handle() throws Exception {
+        MessageRequest request = objectMapper.readValue(BODY, MessageRequest.class);
+        MessageResponse response = controller.sendMessage(request, null).getBody();
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
@@ -0,0 +1,87 @@
+package com.demo.rest.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "latency.model=lognormal",
+        "latency.lognormal.medianMillis=20",
+        "latency.lognormal.maxMillis=200"
+})
+class BulkSendMessagesTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void ndjsonBody_returnsOneResultPerMessage() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            body.append("{\"phone\":\"84987654321\",\"template_id\":\"7895417a7d3f9461cd2e\",\"tracking_id\":\"t")
+                    .append(i).append("\"}\n");
+        }
+        List<Map<String, Object>> results = post("application/x-ndjson", body.toString());
+
+        Set<Object> trackingIds = new HashSet<>();
+        for (Map<String, Object> result : results) {
+            assertEquals(0, result.get("error"));
+            trackingIds.add(result.get("tracking_id"));
+        }
+        assertEquals(50, trackingIds.size());
+    }
+
+    @Test
+    void jsonArrayBody_isAccepted() throws Exception {
+        List<Map<String, Object>> results = post("application/json",
+                "[{\"phone\":\"1\",\"tracking_id\":\"a\"},{\"phone\":\"2\",\"tracking_id\":\"b\"}]");
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    void malformedBody_endsWithErrorLine() throws Exception {
+        List<Map<String, Object>> results = post("application/x-ndjson",
+                "{\"phone\":\"1\",\"tracking_id\":\"a\"}\n{\"phone\":");
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(1).get("error"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> post(String contentType, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/send-messages"))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        return response.body()
+                .filter(line -> !line.isBlank())
+                .map(line -> {
+                    try {
+                        return (Map<String, Object>) objectMapper.readValue(line, Map.class);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .toList();
+    }
+}
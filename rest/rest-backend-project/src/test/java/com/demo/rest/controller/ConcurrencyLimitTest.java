@@ -0,0 +1,76 @@
+package com.demo.rest.controller;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "concurrency.enabled=true",
+        "concurrency.initialLimit=1",
+        "concurrency.minLimit=1",
+        "concurrency.maxLimit=1",
+        "latency.model=fixed",
+        "latency.fixed.millis=1000"
+})
+class ConcurrencyLimitTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    ConcurrencyLimiter concurrencyLimiter;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void requestsOverTheLimitAreShed() throws Exception {
+        CompletableFuture<HttpResponse<String>> slow = httpClient.sendAsync(
+                request("/api/send-message", message("84900000051", "concurrency-1")),
+                HttpResponse.BodyHandlers.ofString());
+        while (concurrencyLimiter.inFlight() == 0) {
+            Thread.sleep(5);
+        }
+
+        HttpResponse<String> shed = httpClient.send(
+                request("/api/send-message-no-random-delay", message("84900000052", "concurrency-2")),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(503, shed.statusCode());
+        assertEquals("1", shed.headers().firstValue("Retry-After").orElse(null));
+        Map<?, ?> body = objectMapper.readValue(shed.body(), Map.class);
+        assertEquals(ConcurrencyLimiter.ERROR_MESSAGE, body.get("message"));
+
+        assertEquals(200, slow.get().statusCode());
+        assertEquals(200, httpClient.send(
+                request("/api/send-message-no-random-delay", message("84900000052", "concurrency-3")),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(1, concurrencyLimiter.rejected());
+    }
+
+    private static String message(String phone, String trackingId) {
+        return """
+                {"phone":"%s","template_id":"otp","template_data":{"otp":"123456"},"tracking_id":"%s"}"""
+                .formatted(phone, trackingId);
+    }
+
+    private HttpRequest request(String path, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
@@ -0,0 +1,83 @@
+package com.demo.rest.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "latency.model=fixed",
+        "latency.fixed.millis=5000",
+        "quota.enabled=true",
+        "idempotency.enabled=false"
+})
+class DeadlineTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void expiredDeadline_cutsTheDelayShortAndGivesTheQuotaBack() throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<String> expired = post("/api/send-message", message("84900000051", "deadline-1"), "100",
+                "application/json");
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(504, expired.statusCode());
+        Map<?, ?> body = objectMapper.readValue(expired.body(), Map.class);
+        assertEquals("Deadline exceeded", body.get("message"));
+        assertEquals(Map.of(), body.get("data"));
+
+        // the quota taken by the abandoned message was given back
+        HttpResponse<String> sent = post("/api/send-message-no-random-delay", message("84900000051", "deadline-2"),
+                "1000", "application/json");
+        assertEquals(200, sent.statusCode());
+        Map<?, ?> quota = (Map<?, ?>) ((Map<?, ?>) objectMapper.readValue(sent.body(), Map.class).get("data")).get("quota");
+        assertEquals("499", quota.get("remainingQuota"));
+    }
+
+    @Test
+    void bulkTimeoutIsTheDeadlineOfEveryLine() throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<String> response = post("/api/send-messages",
+                message("84900000052", "bulk-deadline-1") + "\n" + message("84900000052", "bulk-deadline-2") + "\n",
+                "100", "application/x-ndjson");
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(200, response.statusCode());
+        assertEquals(2, response.body().lines().count());
+        for (String line : response.body().lines().toList()) {
+            assertEquals(504, objectMapper.readValue(line, Map.class).get("error"));
+        }
+    }
+
+    private static String message(String phone, String trackingId) {
+        return """
+                {"phone":"%s","template_id":"otp","template_data":{"otp":"123456"},"tracking_id":"%s"}"""
+                .formatted(phone, trackingId);
+    }
+
+    private HttpResponse<String> post(String path, String body, String timeoutMillis, String contentType)
+            throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                        .header("Content-Type", contentType)
+                        .header(ApiController.TIMEOUT_HEADER, timeoutMillis)
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,97 @@
+package com.demo.rest.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "latency.model=fixed",
+        "latency.fixed.millis=300",
+        "quota.enabled=true",
+        "quota.dailyLimit=100"
+})
+class IdempotentSendTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void retriedSend_getsTheOriginalResponseWithoutDelay() throws Exception {
+        String body = """
+                {"phone":"84900000021","template_id":"otp","tracking_id":"retry-1"}""";
+        Map<?, ?> first = data(post("/api/send-message", "application/json", body));
+
+        long start = System.nanoTime();
+        Map<?, ?> retried = data(post("/api/send-message", "application/json", body));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(first, retried);
+        assertTrue(elapsedMillis < 250, "duplicate took " + elapsedMillis + " ms");
+
+        // a new tracking_id is a new message
+        Map<?, ?> other = data(post("/api/send-message", "application/json", body.replace("retry-1", "retry-2")));
+        assertNotEquals(first.get("msg_id"), other.get("msg_id"));
+        assertEquals("98", ((Map<?, ?>) other.get("quota")).get("remainingQuota"));
+    }
+
+    @Test
+    void concurrentDuplicates_areSentOnce() throws Exception {
+        String body = """
+                {"phone":"84900000022","template_id":"otp","tracking_id":"concurrent-1"}""";
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            responses.add(httpClient.sendAsync(request("/api/send-message", "application/json", body),
+                    HttpResponse.BodyHandlers.ofString()));
+        }
+        Set<Object> msgIds = new HashSet<>();
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            msgIds.add(data(response.get()).get("msg_id"));
+        }
+        assertEquals(1, msgIds.size());
+
+        // the bulk endpoint shares the same tracking_ids
+        HttpResponse<String> bulk = post("/api/send-messages", "application/x-ndjson", body + "\n");
+        Map<?, ?> line = objectMapper.readValue(bulk.body().strip(), Map.class);
+        assertEquals(msgIds.iterator().next(), ((Map<?, ?>) line.get("data")).get("msg_id"));
+        assertEquals("concurrent-1", line.get("tracking_id"));
+        assertEquals("99", ((Map<?, ?>) ((Map<?, ?>) line.get("data")).get("quota")).get("remainingQuota"));
+    }
+
+    private Map<?, ?> data(HttpResponse<String> response) throws Exception {
+        assertEquals(200, response.statusCode(), response.body());
+        return (Map<?, ?>) objectMapper.readValue(response.body(), Map.class).get("data");
+    }
+
+    private HttpResponse<String> post(String path, String contentType, String body) throws Exception {
+        return httpClient.send(request(path, contentType, body), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest request(String path, String contentType, String body) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
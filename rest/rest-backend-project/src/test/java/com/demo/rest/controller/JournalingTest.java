@@ -0,0 +1,77 @@
+package com.demo.rest.controller;
+
+import com.benchmark.common.journal.JournalReader;
+import com.benchmark.common.journal.JournalRecord;
+import com.benchmark.common.journal.MessageJournal;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "journal.enabled=true",
+        "journal.fsync=batch",
+        "journal.segmentMegabytes=1"
+})
+class JournalingTest {
+
+    @TempDir
+    static Path journalDir;
+
+    @DynamicPropertySource
+    static void journalDir(DynamicPropertyRegistry registry) {
+        registry.add("journal.dir", journalDir::toString);
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MessageJournal journal;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void acceptedMessagesAreJournaled() throws Exception {
+        HttpResponse<String> accepted = post("""
+                {"phone":"84900000031","template_id":"otp","template_data":{"otp":"123456"},"tracking_id":"journal-1"}""");
+        HttpResponse<String> rejected = post("""
+                {"phone":"84900000031","template_id":"no-such-template","tracking_id":"journal-2"}""");
+        assertEquals(200, accepted.statusCode(), accepted.body());
+        assertEquals(404, rejected.statusCode());
+        Map<?, ?> data = (Map<?, ?>) objectMapper.readValue(accepted.body(), Map.class).get("data");
+
+        // batch fsync: the response was sent once the record was on disk
+        assertEquals(0, journal.unsynced());
+        List<JournalRecord> records = new ArrayList<>();
+        JournalReader.replay(journalDir, records::add);
+        assertEquals(List.of(new JournalRecord((String) data.get("msg_id"), "84900000031", "otp", "journal-1",
+                Map.of("otp", "123456"))), records);
+    }
+
+    private HttpResponse<String> post(String body) throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/send-message-no-random-delay"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,99 @@
+package com.demo.rest.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "latency.model=fixed",
+        "latency.fixed.millis=1",
+        "quota.enabled=true",
+        "quota.dailyLimit=2"
+})
+class QuotaEnforcementTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void singleSend_countsDownThenRejectsWith429() throws Exception {
+        String body = "{\"phone\":\"84900000001\",\"template_id\":\"otp\"}";
+
+        HttpResponse<String> first = post("/api/send-message", "application/json", body);
+        assertEquals(200, first.statusCode());
+        assertEquals(Map.of("dailyQuota", "2", "remainingQuota", "1"), data(first.body()).get("quota"));
+        assertEquals(200, post("/api/send-message-no-random-delay", "application/json", body).statusCode());
+
+        HttpResponse<String> rejected = post("/api/send-message", "application/json", body);
+        assertEquals(429, rejected.statusCode());
+        Map<?, ?> response = objectMapper.readValue(rejected.body(), Map.class);
+        assertEquals(429, response.get("error"));
+        assertEquals("Daily quota exceeded", response.get("message"));
+        assertEquals(Map.of("dailyQuota", "2", "remainingQuota", "0"), data(rejected.body()).get("quota"));
+
+        // other phones have their own quota
+        assertEquals(200, post("/api/send-message", "application/json", "{\"phone\":\"84900000002\",\"template_id\":\"otp\"}").statusCode());
+    }
+
+    @Test
+    void bulkSend_rejectsMessagesOverQuota() throws Exception {
+        String body = """
+                {"phone":"84900000003","template_id":"otp","tracking_id":"a"}
+                {"phone":"84900000003","template_id":"otp","tracking_id":"b"}
+                {"phone":"84900000003","template_id":"otp","tracking_id":"c"}
+                """;
+        double sendsBefore = sends();
+        HttpResponse<String> response = post("/api/send-messages", "application/x-ndjson", body);
+        assertEquals(200, response.statusCode());
+        List<Object> errors = response.body().lines()
+                .filter(line -> !line.isBlank())
+                .map(line -> {
+                    try {
+                        return objectMapper.readValue(line, Map.class).get("error");
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .sorted((a, b) -> Integer.compare((Integer) a, (Integer) b))
+                .toList();
+        assertEquals(List.of(0, 0, 429), errors);
+        // every message is counted, the rejected one too
+        assertEquals(sendsBefore + 3, sends());
+    }
+
+    private double sends() {
+        return meterRegistry.get("message_service_send_total").counter().count();
+    }
+
+    private Map<?, ?> data(String body) throws Exception {
+        return (Map<?, ?>) objectMapper.readValue(body, Map.class).get("data");
+    }
+
+    private HttpResponse<String> post(String path, String contentType, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,86 @@
+package com.demo.rest.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "ratelimit.enabled=true",
+        "ratelimit.phone.perSecond=0.001",
+        "ratelimit.phone.burst=2"
+})
+class RateLimitTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void burstThenTooManyRequests() throws Exception {
+        assertEquals(200, post("/api/send-message-no-random-delay", message("84900000041", "limit-1")).statusCode());
+        assertEquals(200, post("/api/send-message-no-random-delay", message("84900000041", "limit-2")).statusCode());
+
+        HttpResponse<String> throttled = post("/api/send-message-no-random-delay", message("84900000041", "limit-3"));
+        assertEquals(429, throttled.statusCode());
+        Map<?, ?> body = objectMapper.readValue(throttled.body(), Map.class);
+        assertEquals("Rate limit exceeded", body.get("message"));
+        assertEquals(Map.of(), body.get("data"));
+
+        // another phone has its own bucket
+        assertEquals(200, post("/api/send-message-no-random-delay", message("84900000042", "limit-4")).statusCode());
+    }
+
+    @Test
+    void bulkLinesAreCheckedOneByOne() throws Exception {
+        HttpResponse<String> response = post("/api/send-messages",
+                message("84900000043", "bulk-limit-1") + "\n"
+                        + message("84900000043", "bulk-limit-2") + "\n"
+                        + message("84900000043", "bulk-limit-3") + "\n",
+                "application/x-ndjson");
+        assertEquals(200, response.statusCode());
+        List<Integer> errors = response.body().lines()
+                .map(line -> {
+                    try {
+                        return (Integer) objectMapper.readValue(line, Map.class).get("error");
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .sorted()
+                .toList();
+        assertEquals(List.of(0, 0, 429), errors);
+    }
+
+    private static String message(String phone, String trackingId) {
+        return """
+                {"phone":"%s","template_id":"otp","template_data":{"otp":"123456"},"tracking_id":"%s"}"""
+                .formatted(phone, trackingId);
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return post(path, body, "application/json");
+    }
+
+    private HttpResponse<String> post(String path, String body, String contentType) throws Exception {
+        return httpClient.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                        .header("Content-Type", contentType)
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,113 @@
+package com.demo.rest.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.ApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.main.web-application-type=reactive",
+        "latency.model=fixed",
+        "latency.fixed.millis=5000",
+        "quota.enabled=true",
+        "idempotency.enabled=false"
+})
+class ReactiveApiTest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    ApplicationContext context;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void reactiveControllerReplacesTheBlockingOne() {
+        assertEquals(1, context.getBeanNamesForType(ReactiveApiController.class).length);
+        assertEquals(0, context.getBeanNamesForType(ApiController.class).length);
+    }
+
+    @Test
+    void sendMessage_keepsTheResponseShape() throws Exception {
+        HttpResponse<String> sent = post("/api/send-message-no-random-delay", message("84900000071", "otp", "r-1"),
+                null, "application/json");
+        assertEquals(200, sent.statusCode());
+        Map<?, ?> data = (Map<?, ?>) objectMapper.readValue(sent.body(), Map.class).get("data");
+        assertTrue(data.get("msg_id") instanceof String);
+        assertEquals("499", ((Map<?, ?>) data.get("quota")).get("remainingQuota"));
+
+        HttpResponse<String> unknown = post("/api/send-message-no-random-delay",
+                message("84900000071", "no-such-template", "r-2"), null, "application/json");
+        assertEquals(404, unknown.statusCode());
+    }
+
+    @Test
+    void expiredDeadline_endsTheDelayEarlyAndGivesTheQuotaBack() throws Exception {
+        long start = System.nanoTime();
+        HttpResponse<String> expired = post("/api/send-message", message("84900000072", "otp", "r-3"), "100",
+                "application/json");
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(504, expired.statusCode());
+
+        HttpResponse<String> sent = post("/api/send-message-no-random-delay", message("84900000072", "otp", "r-4"),
+                null, "application/json");
+        Map<?, ?> quota = (Map<?, ?>) ((Map<?, ?>) objectMapper.readValue(sent.body(), Map.class).get("data")).get("quota");
+        assertEquals("499", quota.get("remainingQuota"));
+    }
+
+    @Test
+    void bulkSend_streamsOneLinePerMessageThenTheMalformedTail() throws Exception {
+        HttpResponse<String> response = post("/api/send-messages",
+                message("84900000073", "otp", "b-1") + "\n" + message("84900000073", "otp", "b-2") + "\n",
+                "100", "application/x-ndjson");
+        assertEquals(200, response.statusCode());
+        Set<Object> trackingIds = new HashSet<>();
+        for (String line : response.body().lines().toList()) {
+            Map<?, ?> result = objectMapper.readValue(line, Map.class);
+            assertEquals(504, result.get("error"));
+            trackingIds.add(result.get("tracking_id"));
+        }
+        assertEquals(Set.of("b-1", "b-2"), trackingIds);
+
+        List<String> lines = post("/api/send-messages", message("84900000073", "otp", "b-3") + "\n{\"phone\":",
+                "100", "application/x-ndjson").body().lines().toList();
+        assertEquals(2, lines.size());
+        assertEquals(1, objectMapper.readValue(lines.get(1), Map.class).get("error"));
+    }
+
+    private static String message(String phone, String templateId, String trackingId) {
+        return """
+                {"phone":"%s","template_id":"%s","template_data":{"otp":"123456"},"tracking_id":"%s"}"""
+                .formatted(phone, templateId, trackingId);
+    }
+
+    private HttpResponse<String> post(String path, String body, String timeoutMillis, String contentType)
+            throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (timeoutMillis != null) {
+            request.header(ApiController.TIMEOUT_HEADER, timeoutMillis);
+        }
+        return httpClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,88 @@
+package com.demo.rest.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "latency.model=fixed",
+        "latency.fixed.millis=1",
+        "quota.enabled=true",
+        "quota.dailyLimit=1"
+})
+class TemplateRenderingTest {
+
+    private static final String OTP_TEXT = "Mã xác thực của bạn là 123456, có hiệu lực trong 5 phút. "
+            + "Không chia sẻ mã này cho bất kỳ ai.";
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    @Test
+    void singleSend_returnsTheRenderedLength() throws Exception {
+        HttpResponse<String> response = post("/api/send-message", "application/json", """
+                {"phone":"84900000011","template_id":"otp","template_data":{"otp":"123456","minutes":"5"}}""");
+        assertEquals(200, response.statusCode());
+        assertEquals(OTP_TEXT.length(), data(response.body()).get("content_length"));
+    }
+
+    @Test
+    void unknownTemplate_isRejectedWith404WithoutUsingQuota() throws Exception {
+        HttpResponse<String> rejected = post("/api/send-message", "application/json", """
+                {"phone":"84900000012","template_id":"no-such-template"}""");
+        assertEquals(404, rejected.statusCode());
+        Map<?, ?> body = objectMapper.readValue(rejected.body(), Map.class);
+        assertEquals(404, body.get("error"));
+        assertEquals("Template not found", body.get("message"));
+        assertFalse(data(rejected.body()).containsKey("quota"));
+
+        // the only message of the day is still available
+        assertEquals(200, post("/api/send-message", "application/json", """
+                {"phone":"84900000012","template_id":"otp"}""").statusCode());
+    }
+
+    @Test
+    void bulkSend_rendersEveryMessage() throws Exception {
+        HttpResponse<String> response = post("/api/send-messages", "application/x-ndjson", """
+                {"phone":"84900000013","template_id":"otp","template_data":{"otp":"123456","minutes":5},"tracking_id":"a"}
+                {"phone":"84900000014","template_id":"no-such-template","tracking_id":"b"}
+                """);
+        assertEquals(200, response.statusCode());
+        Map<Object, Map<?, ?>> byTrackingId = new HashMap<>();
+        for (String line : response.body().lines().filter(line -> !line.isBlank()).toList()) {
+            Map<?, ?> result = objectMapper.readValue(line, Map.class);
+            byTrackingId.put(result.get("tracking_id"), result);
+        }
+        assertEquals(OTP_TEXT.length(), ((Map<?, ?>) byTrackingId.get("a").get("data")).get("content_length"));
+        assertEquals(404, byTrackingId.get("b").get("error"));
+    }
+
+    private Map<?, ?> data(String body) throws Exception {
+        return (Map<?, ?>) objectMapper.readValue(body, Map.class).get("data");
+    }
+
+    private HttpResponse<String> post(String path, String contentType, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,46 @@
+package com.demo.rest.model;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MessageResponseSerializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void eachErrorCodeIsWrittenWithItsOwnMessage() throws Exception {
+        assertEquals("{\"error\":429,\"message\":\"" + QuotaStore.ERROR_MESSAGE
+                        + "\",\"data\":{\"quota\":{\"dailyQuota\":\"500\",\"remainingQuota\":\"0\"}}}",
+                objectMapper.writeValueAsString(MessageResponse.quotaExceeded(500)));
+        assertEquals(body(RateLimiter.ERROR_CODE, RateLimiter.ERROR_MESSAGE),
+                objectMapper.writeValueAsString(MessageResponse.rateLimited()));
+        assertEquals(body(TemplateEngine.ERROR_CODE, TemplateEngine.ERROR_MESSAGE),
+                objectMapper.writeValueAsString(MessageResponse.templateNotFound()));
+        assertEquals(body(Deadlines.ERROR_CODE, Deadlines.ERROR_MESSAGE),
+                objectMapper.writeValueAsString(MessageResponse.deadlineExceeded()));
+        assertEquals(body(ConcurrencyLimiter.ERROR_CODE, ConcurrencyLimiter.ERROR_MESSAGE),
+                objectMapper.writeValueAsString(error(ConcurrencyLimiter.ERROR_CODE)));
+    }
+
+    @Test
+    void unknownErrorCodeFailsInsteadOfReportingAQuotaRejection() {
+        assertThrows(JsonMappingException.class, () -> objectMapper.writeValueAsString(error(500)));
+    }
+
+    private static MessageResponse error(int error) {
+        return new MessageResponse(error, null, 0, 0, 0, 0, null, false);
+    }
+
+    private static String body(int error, String message) {
+        return "{\"error\":" + error + ",\"message\":\"" + message + "\",\"data\":{}}";
+    }
+}
@@ -0,0 +1,58 @@
+package com.demo.rest.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestTracerTest {
+
+    @Test
+    void keepsTheMostRecentTracesInOrder() {
+        RequestTracer tracer = new RequestTracer(1.0, 16, false, 1000);
+        for (int i = 0; i < 40; i++) {
+            tracer.record("sendMessage", System.nanoTime());
+        }
+
+        List<RequestTrace> traces = tracer.recent();
+        assertEquals(40, tracer.recorded());
+        assertEquals(16, traces.size());
+        assertEquals(24, traces.get(0).sequence());
+        assertEquals(39, traces.get(15).sequence());
+        assertEquals(tracer.instance(), traces.get(0).instance());
+    }
+
+    @Test
+    void unsampledRequestsAreNotRecorded() {
+        RequestTracer tracer = new RequestTracer(0, 16, false, 1000);
+        tracer.record("sendMessage", System.nanoTime());
+        assertEquals(0, tracer.recorded());
+        assertTrue(tracer.recent().isEmpty());
+    }
+
+    @Test
+    void concurrentWritersNeverLoseTheirSequence() throws Exception {
+        RequestTracer tracer = new RequestTracer(1.0, 1024, false, 1000);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            writers.add(Thread.ofVirtual().start(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    tracer.record("sendMessage", System.nanoTime());
+                }
+            }));
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        List<RequestTrace> traces = tracer.recent();
+        assertEquals(80_000, tracer.recorded());
+        assertEquals(1024, traces.size());
+        for (int i = 1; i < traces.size(); i++) {
+            assertEquals(traces.get(i - 1).sequence() + 1, traces.get(i).sequence());
+        }
+    }
+}
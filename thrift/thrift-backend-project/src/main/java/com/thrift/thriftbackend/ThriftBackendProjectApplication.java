@@ -1,9 +1,12 @@
 package com.thrift.thriftbackend;
 
+import com.benchmark.common.config.CommonConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Import;
 
 @SpringBootApplication
+@Import(CommonConfig.class)
 public class ThriftBackendProjectApplication {
 
     public static void main(String[] args) {
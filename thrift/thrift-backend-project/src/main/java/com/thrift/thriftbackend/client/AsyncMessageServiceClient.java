@@ -0,0 +1,322 @@
+package com.thrift.thriftbackend.client;
+
+import com.thrift.thriftbackend.Message;
+import com.thrift.thriftbackend.MessageResponse;
+import com.thrift.thriftbackend.MessageService;
+import com.thrift.thriftbackend.config.ThriftStack;
+import jakarta.annotation.PreDestroy;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.async.TAsyncClientManager;
+import org.apache.thrift.async.TAsyncMethodCall;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TNonblockingSocket;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking Thrift client: all connections are driven by a small fixed set of
+ * {@link TAsyncClientManager} selector threads and every call returns a {@link CompletableFuture},
+ * so no caller thread is parked on a socket for the 100–5000 ms a call takes.
+ * <p>
+ * Calls are not multiplexed: an {@code AsyncClient} runs one call at a time and the nonblocking servers
+ * do not read the next frame of a connection before answering the current one, so each in-flight call
+ * still occupies one connection. Connections are reused across calls and capped by {@code maxConnections}
+ * (64 by default), calls beyond that wait in a queue without holding a thread. At most {@code maxQueued} calls
+ * wait, further ones fail at once with a {@link RejectedExecutionException}; a call that found no connection
+ * within {@code queueTimeoutMillis} (the request timeout by default) fails with a {@link TimeoutException}, like
+ * a pooled borrow that times out. Futures are completed on the selector thread, so callers must not block inside
+ * dependent stages.
+ * <p>
+ * Every connection goes to {@code thrift.server.host:port}, the client does not balance over
+ * {@code thrift.client.endpoints}; {@link MessageServiceClient} refuses to start in async mode with endpoints set.
+ *
+ * @author phonghv
+ */
+@Service
+public class AsyncMessageServiceClient {
+
+    @Value("${thrift.server.host:localhost}")
+    private String host;
+
+    @Value("${thrift.server.port:9091}")
+    private int port;
+
+    @Value("${thrift.client.requestTimeoutMillis:3000}")
+    private int requestTimeoutMillis;
+
+    @Value("${thrift.client.async.selectorThreads:2}")
+    private int selectorThreads;
+
+    @Value("${thrift.client.async.maxConnections:64}")
+    private int maxConnections;
+
+    // calls waiting for a connection, and how long each may wait
+    @Value("${thrift.client.async.maxQueued:1024}")
+    private int maxQueued;
+
+    @Value("${thrift.client.async.queueTimeoutMillis:${thrift.client.requestTimeoutMillis:3000}}")
+    private long queueTimeoutMillis;
+
+    private final TProtocolFactory protocolFactory;
+    private final ConcurrentLinkedQueue<AsyncConnection> idle = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<PendingCall<?>> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    // calls in waiting that are neither started nor expired
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger nextManager = new AtomicInteger();
+
+    // selector threads are only started on first use
+    private volatile TAsyncClientManager[] managers;
+    private volatile boolean closed;
+
+    public AsyncMessageServiceClient(ThriftStack thriftStack) {
+        // async calls are always framed on the wire, only the protocol is configurable
+        this.protocolFactory = thriftStack.protocolFactory();
+    }
+
+    public CompletableFuture<MessageResponse> sendMessage(Message request) {
+        Message message = withTimeout(request);
+        return submit((client, callback) -> client.sendMessage(message, callback),
+                call -> ((MessageService.AsyncClient.sendMessage_call) call).getResult());
+    }
+
+    public CompletableFuture<MessageResponse> sendMessageNoRandomDelay(Message request) {
+        Message message = withTimeout(request);
+        return submit((client, callback) -> client.sendMessageNoRandomDelay(message, callback),
+                call -> ((MessageService.AsyncClient.sendMessageNoRandomDelay_call) call).getResult());
+    }
+
+    public CompletableFuture<List<MessageResponse>> sendMessages(List<Message> requests) {
+        List<Message> messages = requests == null ? null : requests.stream().map(this::withTimeout).toList();
+        return submit((client, callback) -> client.sendMessages(messages, callback),
+                call -> ((MessageService.AsyncClient.sendMessages_call) call).getResult());
+    }
+
+    public int openConnections() {
+        return openConnections.get();
+    }
+
+    // the server gives up on a message when this client does, the caller's message is left as it is
+    private Message withTimeout(Message message) {
+        return MessageServiceClient.withTimeout(message, requestTimeoutMillis);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        closed = true;
+        TAsyncClientManager[] current = managers;
+        if (current != null) {
+            for (TAsyncClientManager manager : current) {
+                manager.stop();
+            }
+        }
+        AsyncConnection connection;
+        while ((connection = idle.poll()) != null) {
+            discard(connection);
+        }
+        PendingCall<?> pending;
+        while ((pending = pollWaiting()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("Thrift async client is shut down"));
+        }
+    }
+
+    private <R> CompletableFuture<R> submit(CallStarter starter, ResultReader<R> reader) {
+        PendingCall<R> pending = new PendingCall<>(starter, reader);
+        if (closed) {
+            pending.future.completeExceptionally(new IllegalStateException("Thrift async client is shut down"));
+            return pending.future;
+        }
+
+        AsyncConnection connection = idle.poll();
+        if (connection == null) {
+            if (openConnections.incrementAndGet() <= maxConnections) {
+                try {
+                    connection = openConnection();
+                } catch (IOException e) {
+                    openConnections.decrementAndGet();
+                    pending.future.completeExceptionally(e);
+                    return pending.future;
+                }
+            } else {
+                openConnections.decrementAndGet();
+                enqueue(pending);
+                return pending.future;
+            }
+        }
+        start(connection, pending);
+        return pending.future;
+    }
+
+    private void enqueue(PendingCall<?> pending) {
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            pending.future.completeExceptionally(new RejectedExecutionException(
+                    "Thrift async client queue is full, " + maxQueued + " calls wait for a connection"));
+            return;
+        }
+        waiting.offer(pending);
+        CompletableFuture.delayedExecutor(queueTimeoutMillis, TimeUnit.MILLISECONDS).execute(() -> {
+            if (pending.claim()) {
+                queued.decrementAndGet();
+                waiting.remove(pending);
+                pending.future.completeExceptionally(
+                        new TimeoutException("Timeout waiting for a Thrift async connection"));
+            }
+        });
+        // a connection may have been released between the poll in submit and the offer
+        drainWaiting();
+    }
+
+    // the next waiting call that has not expired, claimed for a start
+    private PendingCall<?> pollWaiting() {
+        PendingCall<?> pending;
+        while ((pending = waiting.poll()) != null) {
+            if (pending.claim()) {
+                queued.decrementAndGet();
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    private <R> void start(AsyncConnection connection, PendingCall<R> pending) {
+        try {
+            pending.starter.start(connection.client, new AsyncMethodCallback<TAsyncMethodCall<?>>() {
+                @Override
+                public void onComplete(TAsyncMethodCall<?> call) {
+                    try {
+                        pending.future.complete(pending.reader.read(call));
+                    } catch (Exception e) {
+                        pending.future.completeExceptionally(e);
+                    }
+                    release(connection);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    pending.future.completeExceptionally(e);
+                    // the client is unusable after an error, replace its connection
+                    discard(connection);
+                    drainWaiting();
+                }
+            });
+        } catch (Exception e) {
+            pending.future.completeExceptionally(e);
+            discard(connection);
+            drainWaiting();
+        }
+    }
+
+    private void release(AsyncConnection connection) {
+        if (closed) {
+            discard(connection);
+            return;
+        }
+        PendingCall<?> next = pollWaiting();
+        if (next != null) {
+            start(connection, next);
+        } else {
+            idle.offer(connection);
+            drainWaiting();
+        }
+    }
+
+    private void drainWaiting() {
+        while (!waiting.isEmpty()) {
+            AsyncConnection connection = idle.poll();
+            if (connection == null) {
+                if (openConnections.incrementAndGet() > maxConnections) {
+                    openConnections.decrementAndGet();
+                    return;
+                }
+                try {
+                    connection = openConnection();
+                } catch (IOException e) {
+                    openConnections.decrementAndGet();
+                    PendingCall<?> failed = pollWaiting();
+                    if (failed != null) {
+                        failed.future.completeExceptionally(e);
+                    }
+                    continue;
+                }
+            }
+            PendingCall<?> next = pollWaiting();
+            if (next == null) {
+                idle.offer(connection);
+                return;
+            }
+            start(connection, next);
+        }
+    }
+
+    private AsyncConnection openConnection() throws IOException {
+        TNonblockingSocket transport = new TNonblockingSocket(host, port, requestTimeoutMillis);
+        MessageService.AsyncClient client = new MessageService.AsyncClient(protocolFactory, nextManager(), transport);
+        client.setTimeout(requestTimeoutMillis);
+        return new AsyncConnection(client, transport);
+    }
+
+    private void discard(AsyncConnection connection) {
+        connection.transport.close();
+        openConnections.decrementAndGet();
+    }
+
+    private TAsyncClientManager nextManager() throws IOException {
+        TAsyncClientManager[] current = managers;
+        if (current == null) {
+            synchronized (this) {
+                current = managers;
+                if (current == null) {
+                    current = new TAsyncClientManager[Math.max(1, selectorThreads)];
+                    for (int i = 0; i < current.length; i++) {
+                        current[i] = new TAsyncClientManager();
+                    }
+                    managers = current;
+                }
+            }
+        }
+        return current[Math.floorMod(nextManager.getAndIncrement(), current.length)];
+    }
+
+    @FunctionalInterface
+    private interface CallStarter {
+        void start(MessageService.AsyncClient client, AsyncMethodCallback<TAsyncMethodCall<?>> callback)
+                throws TException;
+    }
+
+    @FunctionalInterface
+    private interface ResultReader<R> {
+        R read(TAsyncMethodCall<?> call) throws TException;
+    }
+
+    private record AsyncConnection(MessageService.AsyncClient client, TNonblockingSocket transport) {
+    }
+
+    private static final class PendingCall<R> {
+        final CallStarter starter;
+        final ResultReader<R> reader;
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        // taken by whichever comes first: a connection, or the queue timeout
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        PendingCall(CallStarter starter, ResultReader<R> reader) {
+            this.starter = starter;
+            this.reader = reader;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
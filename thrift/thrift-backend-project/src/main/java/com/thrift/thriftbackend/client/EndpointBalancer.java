@@ -0,0 +1,318 @@
+package com.thrift.thriftbackend.client;
+
+import com.thrift.thriftbackend.client.MessageServiceClient.ClientConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side load balancing of the pooled connections over several Thrift backends, each with its own
+ * {@link ThriftConnectionPool}. A call goes to the less busy of two endpoints picked at random (power of two
+ * choices over the calls in flight), so load follows each backend's speed per request instead of per connection
+ * and without the herding of always picking the least busy one.
+ * <p>
+ * An endpoint is ejected for {@code ejectionMillis} times the number of its consecutive ejections (at most
+ * {@code maxEjectionMillis}) after {@code consecutiveFailures} failed calls in a row, or when its average latency
+ * rises above {@code latencyFactor} times that of the fastest admitted endpoint; averages count once an endpoint
+ * has served {@code minRequests} calls. At most {@code maxEjectedPercent} of the endpoints are out at once, so one
+ * endpoint is never ejected. An ejected endpoint is re-admitted when its time is up, with a fresh average; it
+ * gets back to a single ejection time once it serves {@code minRequests} calls without being ejected again.
+ *
+ * @author phonghv
+ */
+class EndpointBalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(EndpointBalancer.class);
+    // weight of a call in an endpoint's average latency
+    private static final double ALPHA = 0.05;
+
+    @FunctionalInterface
+    interface PoolFactory {
+        ThriftConnectionPool create(String host, int port);
+    }
+
+    record Settings(int consecutiveFailures, double latencyFactor, int minRequests, long ejectionMillis,
+                    long maxEjectionMillis, int maxEjectedPercent) {
+    }
+
+    private final Endpoint[] endpoints;
+    private final Settings settings;
+    private final int maxEjected;
+    private final LongSupplier nanoClock;
+    private final AtomicInteger ejected = new AtomicInteger();
+
+    /**
+     * @param endpoints {@code host:port} of each backend
+     * @param nanoClock monotonic nanoseconds, {@code System::nanoTime}
+     */
+    EndpointBalancer(List<String> endpoints, PoolFactory pools, Settings settings, LongSupplier nanoClock,
+                     MeterRegistry meterRegistry, String protocol) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("thrift.client.endpoints must list at least one host:port");
+        }
+        this.settings = settings;
+        this.maxEjected = endpoints.size() * Math.max(0, Math.min(100, settings.maxEjectedPercent())) / 100;
+        this.nanoClock = nanoClock;
+        List<Endpoint> created = new ArrayList<>(endpoints.size());
+        for (String address : endpoints) {
+            int colon = address.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("thrift.client.endpoints entry is not host:port: " + address);
+            }
+            String host = address.substring(0, colon).trim();
+            int port = Integer.parseInt(address.substring(colon + 1).trim());
+            Endpoint endpoint = new Endpoint(created.size(), host + ":" + port, pools.create(host, port));
+            bind(endpoint, meterRegistry, protocol);
+            created.add(endpoint);
+        }
+        this.endpoints = created.toArray(Endpoint[]::new);
+    }
+
+    private void bind(Endpoint endpoint, MeterRegistry meterRegistry, String protocol) {
+        Gauge.builder("thrift_client_endpoint_in_flight", endpoint.inFlight, AtomicInteger::get)
+                .description("Số yêu cầu đang xử lý trên mỗi backend")
+                .tag("protocol", protocol)
+                .tag("endpoint", endpoint.address)
+                .register(meterRegistry);
+        Gauge.builder("thrift_client_endpoint_latency_seconds", endpoint, e -> e.latencyNanos / 1e9)
+                .description("Độ trễ trung bình gần đây của mỗi backend")
+                .tag("protocol", protocol)
+                .tag("endpoint", endpoint.address)
+                .register(meterRegistry);
+        Gauge.builder("thrift_client_endpoint_ejected", endpoint, e -> isEjected(e) ? 1 : 0)
+                .description("Backend đang bị loại tạm thời (1) hay đang nhận yêu cầu (0)")
+                .tag("protocol", protocol)
+                .tag("endpoint", endpoint.address)
+                .register(meterRegistry);
+        endpoint.ejections = Counter.builder("thrift_client_endpoint_ejections_total")
+                .description("Số lần backend bị loại do lỗi liên tiếp hoặc độ trễ cao")
+                .tag("protocol", protocol)
+                .tag("endpoint", endpoint.address)
+                .register(meterRegistry);
+    }
+
+    private boolean isEjected(Endpoint endpoint) {
+        long until = endpoint.ejectedUntil.get();
+        return until != 0 && nanoClock.getAsLong() - until < 0;
+    }
+
+    /**
+     * Borrows a connection of the chosen endpoint; hand it back with {@link #release}, {@link #invalidate} or
+     * {@link #discard}.
+     */
+    ClientConnection borrow() throws InterruptedException {
+        return borrow(null);
+    }
+
+    /**
+     * Borrows a connection of the chosen endpoint other than {@code excluded}, e.g. the one a hedged call went to.
+     *
+     * @param excluded endpoint not to choose, {@code null} for any
+     */
+    ClientConnection borrow(Endpoint excluded) throws InterruptedException {
+        if (excluded != null && endpoints.length < 2) {
+            throw new IllegalStateException("No other Thrift endpoint than " + excluded.address);
+        }
+        Endpoint endpoint = choose(nanoClock.getAsLong(), excluded);
+        endpoint.inFlight.incrementAndGet();
+        ClientConnection conn;
+        try {
+            conn = endpoint.pool.borrow();
+        } catch (RuntimeException e) {
+            // the endpoint could not be connected to
+            endpoint.inFlight.decrementAndGet();
+            failed(endpoint);
+            throw e;
+        } catch (InterruptedException e) {
+            endpoint.inFlight.decrementAndGet();
+            throw e;
+        }
+        conn.endpoint = endpoint;
+        conn.borrowedNanos = nanoClock.getAsLong();
+        return conn;
+    }
+
+    /**
+     * The call on {@code conn} succeeded.
+     */
+    void release(ClientConnection conn) {
+        Endpoint endpoint = conn.endpoint;
+        endpoint.inFlight.decrementAndGet();
+        succeeded(endpoint, nanoClock.getAsLong() - conn.borrowedNanos);
+        endpoint.pool.release(conn);
+    }
+
+    /**
+     * The call on {@code conn} failed, the connection is closed.
+     */
+    void invalidate(ClientConnection conn) {
+        Endpoint endpoint = conn.endpoint;
+        endpoint.inFlight.decrementAndGet();
+        failed(endpoint);
+        endpoint.pool.invalidate(conn);
+    }
+
+    /**
+     * The call on {@code conn} was given up by the caller, e.g. a hedge that lost; it says nothing about the
+     * endpoint and the connection is closed.
+     */
+    void discard(ClientConnection conn) {
+        Endpoint endpoint = conn.endpoint;
+        endpoint.inFlight.decrementAndGet();
+        endpoint.pool.invalidate(conn);
+    }
+
+    void close() {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.pool.close();
+        }
+    }
+
+    private Endpoint choose(long now, Endpoint excluded) {
+        // candidates are numbered without the excluded endpoint
+        int skip = excluded == null ? -1 : excluded.index;
+        int n = skip < 0 ? endpoints.length : endpoints.length - 1;
+        if (n == 1) {
+            return candidate(0, skip);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(n);
+        int j = random.nextInt(n - 1);
+        if (j >= i) {
+            j++;
+        }
+        Endpoint a = candidate(i, skip);
+        Endpoint b = candidate(j, skip);
+        boolean aAdmitted = admitted(a, now);
+        boolean bAdmitted = admitted(b, now);
+        if (aAdmitted && bAdmitted) {
+            return a.inFlight.get() <= b.inFlight.get() ? a : b;
+        }
+        if (aAdmitted) {
+            return a;
+        }
+        if (bAdmitted) {
+            return b;
+        }
+        // both picks are ejected, take the first admitted endpoint after them
+        for (int k = 1; k < n; k++) {
+            Endpoint next = candidate((i + k) % n, skip);
+            if (admitted(next, now)) {
+                return next;
+            }
+        }
+        return a;
+    }
+
+    private Endpoint candidate(int i, int skip) {
+        return endpoints[skip >= 0 && i >= skip ? i + 1 : i];
+    }
+
+    private boolean admitted(Endpoint endpoint, long now) {
+        long until = endpoint.ejectedUntil.get();
+        if (until == 0) {
+            return true;
+        }
+        if (now - until < 0) {
+            return false;
+        }
+        if (endpoint.ejectedUntil.compareAndSet(until, 0)) {
+            endpoint.latencyNanos = 0;
+            endpoint.calls.set(0);
+            endpoint.failures.set(0);
+            ejected.decrementAndGet();
+            logger.info("Thrift endpoint {} re-admitted", endpoint.address);
+        }
+        return true;
+    }
+
+    private void succeeded(Endpoint endpoint, long latencyNanos) {
+        endpoint.failures.set(0);
+        double average = endpoint.latencyNanos;
+        // racy read-modify-write, a lost update only drops one sample from the average
+        endpoint.latencyNanos = average == 0 ? latencyNanos : average + ALPHA * (latencyNanos - average);
+        long calls = endpoint.calls.incrementAndGet();
+        if (calls < settings.minRequests()) {
+            return;
+        }
+        if (calls == settings.minRequests()) {
+            // served long enough since its last re-admission
+            endpoint.consecutiveEjections.set(0);
+        }
+        if (settings.latencyFactor() > 0 && endpoint.latencyNanos > settings.latencyFactor() * fastest(endpoint)) {
+            eject(endpoint, "latency");
+        }
+    }
+
+    private void failed(Endpoint endpoint) {
+        if (settings.consecutiveFailures() > 0
+                && endpoint.failures.incrementAndGet() >= settings.consecutiveFailures()) {
+            eject(endpoint, "failures");
+        }
+    }
+
+    // lowest average latency of the other admitted endpoints with enough calls, infinite when there is none
+    private double fastest(Endpoint self) {
+        double fastest = Double.POSITIVE_INFINITY;
+        for (Endpoint other : endpoints) {
+            if (other != self && other.ejectedUntil.get() == 0 && other.calls.get() >= settings.minRequests()) {
+                fastest = Math.min(fastest, other.latencyNanos);
+            }
+        }
+        return fastest;
+    }
+
+    private void eject(Endpoint endpoint, String reason) {
+        int current;
+        do {
+            current = ejected.get();
+            if (current >= maxEjected) {
+                return;
+            }
+        } while (!ejected.compareAndSet(current, current + 1));
+        int ejections = endpoint.consecutiveEjections.incrementAndGet();
+        long millis = Math.min(settings.maxEjectionMillis(), settings.ejectionMillis() * ejections);
+        long until = nanoClock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (!endpoint.ejectedUntil.compareAndSet(0, until == 0 ? 1 : until)) {
+            // already ejected by a concurrent call
+            endpoint.consecutiveEjections.decrementAndGet();
+            ejected.decrementAndGet();
+            return;
+        }
+        endpoint.ejections.increment();
+        logger.warn("Thrift endpoint {} ejected for {} ms ({})", endpoint.address, millis, reason);
+    }
+
+    static final class Endpoint {
+        // position in the endpoints array
+        final int index;
+        final String address;
+        final ThriftConnectionPool pool;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        // ejections in a row, each one longer
+        final AtomicInteger consecutiveEjections = new AtomicInteger();
+        // calls served since the endpoint was (re-)admitted
+        final AtomicLong calls = new AtomicLong();
+        // System.nanoTime() the endpoint is re-admitted at, 0 while it is admitted
+        final AtomicLong ejectedUntil = new AtomicLong();
+        volatile double latencyNanos;
+        Counter ejections;
+
+        Endpoint(int index, String address, ThriftConnectionPool pool) {
+            this.index = index;
+            this.address = address;
+            this.pool = pool;
+        }
+    }
+}
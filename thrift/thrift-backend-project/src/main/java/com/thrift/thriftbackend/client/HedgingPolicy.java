@@ -0,0 +1,236 @@
+package com.thrift.thriftbackend.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Hedged calls: when a call has not answered after the hedge delay, a second attempt of the same call is started
+ * and whichever answers first is the result; the other one is abandoned. The delay is {@code delayMillis}, or when
+ * that is 0 the {@code percentile} of the latencies of the last {@value #SAMPLES} calls, never below
+ * {@code minDelayMillis}, so only the slow tail is hedged.
+ * <p>
+ * Hedges are paid from a budget: every call adds {@code maxRatio} of a hedge, up to {@code burst} hedges, and a
+ * hedge takes one, so at most that share of calls is sent twice even when the server as a whole slows down.
+ *
+ * @author phonghv
+ */
+class HedgingPolicy {
+
+    // latencies kept for the percentile, recomputed every RECOMPUTE_EVERY calls
+    static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_EVERY = 128;
+    // budget in thousandths of a hedge
+    private static final long UNIT = 1000;
+
+    /**
+     * One attempt of a call, abandoned when the other attempt answered first.
+     */
+    interface Attempt<R> {
+        CompletableFuture<R> result();
+
+        void abandon();
+    }
+
+    record Settings(long delayMillis, double percentile, long minDelayMillis, double maxRatio, int burst) {
+    }
+
+    private final long fixedDelayNanos;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long depositPerCall;
+    private final long maxBudget;
+    private final LongSupplier nanoClock;
+    private final ScheduledThreadPoolExecutor timer;
+
+    private final AtomicLongArray latencies = new AtomicLongArray(SAMPLES);
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong budget;
+    private volatile long percentileNanos;
+
+    private final Counter sent;
+    private final Counter won;
+    private final Counter denied;
+
+    /**
+     * @param nanoClock monotonic nanoseconds, {@code System::nanoTime}
+     */
+    HedgingPolicy(Settings settings, LongSupplier nanoClock, MeterRegistry meterRegistry, String protocol) {
+        if (settings.percentile() <= 0 || settings.percentile() >= 1 || settings.maxRatio() < 0
+                || settings.burst() < 1) {
+            throw new IllegalArgumentException("thrift.client.hedge.percentile must be in (0, 1), "
+                    + "maxRatio not negative and burst positive");
+        }
+        this.fixedDelayNanos = TimeUnit.MILLISECONDS.toNanos(settings.delayMillis());
+        this.percentile = settings.percentile();
+        this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(settings.minDelayMillis());
+        this.depositPerCall = Math.round(settings.maxRatio() * UNIT);
+        this.maxBudget = settings.burst() * UNIT;
+        this.budget = new AtomicLong(maxBudget);
+        this.nanoClock = nanoClock;
+
+        this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "thrift-client-hedge-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+
+        this.sent = hedges(meterRegistry, protocol, "sent");
+        this.won = hedges(meterRegistry, protocol, "won");
+        this.denied = hedges(meterRegistry, protocol, "denied");
+        Gauge.builder("thrift_client_hedge_delay_seconds", this, policy -> policy.delayNanos() / 1e9)
+                .description("Thời gian chờ trước khi gửi yêu cầu dự phòng")
+                .tag("protocol", protocol)
+                .register(meterRegistry);
+    }
+
+    private static Counter hedges(MeterRegistry meterRegistry, String protocol, String result) {
+        return Counter.builder("thrift_client_hedge_total")
+                .description("Yêu cầu dự phòng (hedge): đã gửi, trả lời trước, hoặc bị ngân sách từ chối")
+                .tag("protocol", protocol)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    void close() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Runs a call, hedged with a second attempt if the first has not answered after the hedge delay.
+     *
+     * @param attempts starts one attempt of the call each time it is asked, or returns {@code null} when no hedge
+     *                 can be started, e.g. while it is not known yet where the first attempt went
+     * @return the first answer, or the failure of the last attempt when none answered
+     */
+    <R> CompletableFuture<R> call(Supplier<Attempt<R>> attempts) {
+        HedgedCall<R> call = new HedgedCall<>(nanoClock.getAsLong());
+        deposit();
+        call.add(attempts.get(), false);
+        if (call.result.isDone()) {
+            return call.result;
+        }
+        ScheduledFuture<?> hedge = timer.schedule(() -> {
+            if (call.result.isDone()) {
+                return;
+            }
+            if (!withdraw()) {
+                denied.increment();
+                return;
+            }
+            Attempt<R> attempt = attempts.get();
+            if (attempt == null) {
+                refund();
+                return;
+            }
+            sent.increment();
+            call.add(attempt, true);
+        }, delayNanos(), TimeUnit.NANOSECONDS);
+        call.result.whenComplete((response, e) -> hedge.cancel(false));
+        return call.result;
+    }
+
+    long delayNanos() {
+        if (fixedDelayNanos > 0) {
+            return fixedDelayNanos;
+        }
+        return Math.max(minDelayNanos, percentileNanos);
+    }
+
+    private void deposit() {
+        if (depositPerCall > 0 && budget.get() < maxBudget) {
+            budget.getAndUpdate(current -> Math.min(maxBudget, current + depositPerCall));
+        }
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < UNIT) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - UNIT));
+        return true;
+    }
+
+    private void refund() {
+        budget.getAndUpdate(current -> Math.min(maxBudget, current + UNIT));
+    }
+
+    private void record(long latencyNanos) {
+        long n = recorded.getAndIncrement();
+        latencies.set((int) (n % SAMPLES), latencyNanos);
+        if ((n + 1) % RECOMPUTE_EVERY == 0) {
+            int count = (int) Math.min(n + 1, SAMPLES);
+            long[] sorted = new long[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            percentileNanos = sorted[(int) Math.min(count - 1, Math.ceil(percentile * count) - 1)];
+        }
+    }
+
+    /**
+     * Up to two attempts racing for one result.
+     */
+    private final class HedgedCall<R> {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        final long start;
+        // attempts started and not yet failed
+        final AtomicInteger outstanding = new AtomicInteger();
+        // set by the first attempt to answer
+        final AtomicBoolean answered = new AtomicBoolean();
+        volatile Attempt<R> primary;
+        volatile Attempt<R> hedge;
+
+        HedgedCall(long start) {
+            this.start = start;
+        }
+
+        void add(Attempt<R> attempt, boolean isHedge) {
+            outstanding.incrementAndGet();
+            if (isHedge) {
+                hedge = attempt;
+            } else {
+                primary = attempt;
+            }
+            attempt.result().whenComplete((response, e) -> {
+                if (e == null) {
+                    if (answered.compareAndSet(false, true)) {
+                        // counted before the caller wakes up, so it sees its own call in the metrics
+                        record(nanoClock.getAsLong() - start);
+                        if (isHedge) {
+                            won.increment();
+                        }
+                        result.complete(response);
+                        Attempt<R> other = isHedge ? primary : hedge;
+                        if (other != null) {
+                            other.abandon();
+                        }
+                    }
+                } else if (outstanding.decrementAndGet() == 0) {
+                    result.completeExceptionally(e);
+                }
+            });
+            if (isHedge && result.isDone()) {
+                // the primary answered while the hedge was being started
+                attempt.abandon();
+            }
+        }
+    }
+}
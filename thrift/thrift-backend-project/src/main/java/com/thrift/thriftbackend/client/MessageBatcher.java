@@ -0,0 +1,148 @@
+package com.thrift.thriftbackend.client;
+
+import com.thrift.thriftbackend.Message;
+import com.thrift.thriftbackend.MessageResponse;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Batching mode for {@link MessageServiceClient}: single messages submitted by many callers are
+ * coalesced into {@code sendMessages} calls of up to {@code maxSize} messages, or whatever has
+ * accumulated after {@code lingerMillis}, so each frame carries many messages. The flusher thread is only started
+ * by the first message, an application that never batches does not wake up every {@code lingerMillis}.
+ *
+ * @author phonghv
+ */
+@Service
+public class MessageBatcher {
+
+    private final MessageServiceClient client;
+
+    @Value("${thrift.client.batch.maxSize:100}")
+    private int maxSize;
+
+    @Value("${thrift.client.batch.lingerMillis:5}")
+    private int lingerMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // guarded by lock
+    private List<PendingMessage> current = new ArrayList<>();
+    // guarded by lock, null until the first message
+    private ScheduledExecutorService flusher;
+    private boolean closed;
+
+    private final ExecutorService dispatcher = Executors.newVirtualThreadPerTaskExecutor();
+
+    public MessageBatcher(MessageServiceClient client) {
+        this.client = client;
+    }
+
+    @PostConstruct
+    void init() {
+        if (maxSize < 1) maxSize = 1;
+        if (lingerMillis < 1) lingerMillis = 1;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ScheduledExecutorService started;
+        lock.lock();
+        try {
+            closed = true;
+            started = flusher;
+        } finally {
+            lock.unlock();
+        }
+        if (started != null) {
+            started.shutdownNow();
+        }
+        flush();
+        dispatcher.shutdown();
+    }
+
+    public CompletableFuture<MessageResponse> send(Message message) {
+        CompletableFuture<MessageResponse> future = new CompletableFuture<>();
+        List<PendingMessage> full = null;
+        lock.lock();
+        try {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("Thrift message batcher is shut down"));
+                return future;
+            }
+            if (flusher == null) {
+                startFlusher();
+            }
+            current.add(new PendingMessage(message, future));
+            if (current.size() >= maxSize) {
+                full = current;
+                current = new ArrayList<>(maxSize);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return future;
+    }
+
+    private void startFlusher() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "thrift-client-batch-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleAtFixedRate(this::flush, lingerMillis, lingerMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        List<PendingMessage> batch;
+        lock.lock();
+        try {
+            if (current.isEmpty()) {
+                return;
+            }
+            batch = current;
+            current = new ArrayList<>(maxSize);
+        } finally {
+            lock.unlock();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(List<PendingMessage> batch) {
+        dispatcher.execute(() -> {
+            List<Message> messages = new ArrayList<>(batch.size());
+            for (PendingMessage pending : batch) {
+                messages.add(pending.message());
+            }
+            try {
+                List<MessageResponse> responses = client.sendMessages(messages);
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).future().complete(responses.get(i));
+                }
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                for (PendingMessage pending : batch) {
+                    pending.future().completeExceptionally(e);
+                }
+            }
+        });
+    }
+
+    private record PendingMessage(Message message, CompletableFuture<MessageResponse> future) {
+    }
+}
@@ -1,19 +1,44 @@
 package com.thrift.thriftbackend.client;
 
+import com.thrift.thriftbackend.Message;
+import com.thrift.thriftbackend.MessageResponse;
 import com.thrift.thriftbackend.MessageService;
+import com.thrift.thriftbackend.config.ThriftStack;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
-import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TProtocol;
-import org.apache.thrift.transport.TFramedTransport;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.*;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * Blocking facade of the Thrift clients: pooled connections, or the {@link AsyncMessageServiceClient}.
+ * <p>
+ * Pooled connections go to {@code thrift.server.host:port}, or are balanced by {@link EndpointBalancer} over the
+ * backends listed in {@code thrift.client.endpoints}, each with its own pool, without a proxy in between. The async
+ * client only connects to {@code thrift.server.host:port}: setting endpoints with {@code thrift.client.mode=async}
+ * fails at startup rather than silently sending everything to one backend.
+ * <p>
+ * With {@code thrift.client.hedge.enabled=true} single sends with a {@code trackingId} are hedged by
+ * {@link HedgingPolicy}: a call that has not answered after the hedge delay is sent again to another of the
+ * {@code thrift.client.endpoints} and the first answer wins. A hedged message can be delivered twice: the
+ * idempotency cache of a backend only knows the calls it received, so both backends send the message, count it
+ * against the quota and journal it, and the slower answer is dropped. Hedge only where a duplicate is harmless.
+ * A hedge to the backend of the original would just wait for the original there, so hedging needs pool mode and
+ * at least two endpoints. Messages without a {@code trackingId} and batches are not hedged.
  *
  * @author phonghv
  */
@@ -22,7 +47,13 @@ public class MessageServiceClient {
 
     private static final int DEFAULT_MAX_ACTIVE = 10;
 
-    private final BlockingQueue<ClientConnection> pool = new LinkedBlockingQueue<>();
+    private final AsyncMessageServiceClient asyncClient;
+    private final MeterRegistry meterRegistry;
+    private final ThriftStack thriftStack;
+
+    // pool: one blocking connection per in-flight call, async: AsyncMessageServiceClient, no thread per call
+    @Value("${thrift.client.mode:pool}")
+    private String mode;
 
     @Value("${thrift.server.host:localhost}")
     private String host;
@@ -30,6 +61,11 @@ public class MessageServiceClient {
     @Value("${thrift.server.port:9091}")
     private int port;
 
+    // host:port,host:port... balanced by the client; empty: thrift.server.host:port
+    @Value("${thrift.client.endpoints:}")
+    private String endpoints;
+
+    // pool settings apply to each endpoint
     @Value("${thrift.client.pool.maxSize:2000}")
     private int maxPoolSize;
 
@@ -42,149 +78,245 @@ public class MessageServiceClient {
     @Value("${thrift.client.pool.borrowTimeoutMillis:100}")
     private int borrowTimeoutMillis;
 
-    // request timeout in milliseconds
+    @Value("${thrift.client.pool.idleTimeoutMillis:60000}")
+    private long idleTimeoutMillis;
+
+    @Value("${thrift.client.pool.maxLifetimeMillis:1800000}")
+    private long maxLifetimeMillis;
+
+    @Value("${thrift.client.pool.validationIntervalMillis:30000}")
+    private long validationIntervalMillis;
+
+    // request timeout in milliseconds, also sent as the timeoutMillis of messages that have none
     @Value("${thrift.client.requestTimeoutMillis:3000}")
     private int requestTimeoutMillis;
 
-    private Semaphore permits;
-    private ScheduledExecutorService housekeeper;
+    // outlier ejection of balanced endpoints: failures in a row, or average latency above latencyFactor times
+    // the fastest endpoint's (0: off) once minRequests were served
+    @Value("${thrift.client.lb.consecutiveFailures:5}")
+    private int lbConsecutiveFailures;
+
+    @Value("${thrift.client.lb.latencyFactor:3.0}")
+    private double lbLatencyFactor;
+
+    @Value("${thrift.client.lb.minRequests:50}")
+    private int lbMinRequests;
+
+    @Value("${thrift.client.lb.ejectionMillis:10000}")
+    private long lbEjectionMillis;
+
+    @Value("${thrift.client.lb.maxEjectionMillis:300000}")
+    private long lbMaxEjectionMillis;
+
+    @Value("${thrift.client.lb.maxEjectedPercent:50}")
+    private int lbMaxEjectedPercent;
+
+    @Value("${thrift.client.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    // fixed hedge delay, 0: the percentile of recent latencies
+    @Value("${thrift.client.hedge.delayMillis:0}")
+    private long hedgeDelayMillis;
+
+    @Value("${thrift.client.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    @Value("${thrift.client.hedge.minDelayMillis:50}")
+    private long hedgeMinDelayMillis;
+
+    // share of calls that may be hedged, and hedges allowed in a burst
+    @Value("${thrift.client.hedge.maxRatio:0.05}")
+    private double hedgeMaxRatio;
+
+    @Value("${thrift.client.hedge.burst:10}")
+    private int hedgeBurst;
+
+    private EndpointBalancer balancer;
+    // null unless hedging is enabled
+    private HedgingPolicy hedging;
+    private ExecutorService hedgeExecutor;
+
+    public MessageServiceClient(AsyncMessageServiceClient asyncClient, MeterRegistry meterRegistry,
+                                ThriftStack thriftStack) {
+        this.asyncClient = asyncClient;
+        this.meterRegistry = meterRegistry;
+        this.thriftStack = thriftStack;
+    }
 
     @PostConstruct
     void init() {
         applyConfigGuards();
-
-        this.permits = new Semaphore(maxPoolSize, true);
-
-        if (minIdle > 0) {
-            this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
-                Thread t = new Thread(r, "thrift-client-pool-housekeeper");
-                t.setDaemon(true);
-                return t;
-            });
-            ensureMinIdle();
-            housekeeper.scheduleAtFixedRate(this::safeEnsureMinIdle, 1, 1, TimeUnit.SECONDS);
+        boolean balanced = endpoints != null && !endpoints.isBlank();
+        if (isAsync() && balanced) {
+            throw new IllegalArgumentException("thrift.client.endpoints is only balanced by thrift.client.mode=pool, "
+                    + "the async client connects to thrift.server.host:port");
+        }
+        if (isAsync()) {
+            // the blocking pool is only used through getClient(), don't keep idle sockets open for it
+            minIdle = 0;
         }
 
-        for (int i = 0; i < minIdle; i++) {
-            try {
-                ClientConnection conn = createNewConnection();
-                if (!pool.offer(conn)) {
-                    closeQuietly(conn);
-                    permits.release();
-                }
-            } catch (Exception e) {
-                permits.release();
+        ThriftConnectionPool.Settings poolSettings = new ThriftConnectionPool.Settings(maxPoolSize, minIdle, maxIdle,
+                borrowTimeoutMillis, idleTimeoutMillis, maxLifetimeMillis, validationIntervalMillis);
+        List<String> addresses = balanced
+                ? Arrays.stream(endpoints.split(",")).map(String::trim).filter(e -> !e.isEmpty()).toList()
+                : List.of(host + ":" + port);
+        this.balancer = new EndpointBalancer(addresses,
+                (endpointHost, endpointPort) -> new ThriftConnectionPool(
+                        () -> createNewConnection(endpointHost, endpointPort), poolSettings, meterRegistry,
+                        thriftStack.protocol(), endpointHost + ":" + endpointPort),
+                new EndpointBalancer.Settings(lbConsecutiveFailures, lbLatencyFactor, lbMinRequests,
+                        lbEjectionMillis, lbMaxEjectionMillis, lbMaxEjectedPercent),
+                System::nanoTime, meterRegistry, thriftStack.protocol());
+        if (hedgeEnabled) {
+            if (isAsync() || addresses.size() < 2) {
+                throw new IllegalArgumentException("thrift.client.hedge.enabled needs thrift.client.mode=pool and "
+                        + "at least two thrift.client.endpoints, a hedge is sent to another backend");
             }
+            this.hedging = new HedgingPolicy(new HedgingPolicy.Settings(hedgeDelayMillis, hedgePercentile,
+                    hedgeMinDelayMillis, hedgeMaxRatio, hedgeBurst), System::nanoTime,
+                    meterRegistry, thriftStack.protocol());
+            // a blocking attempt per virtual thread, so the caller can wait on whichever answers first
+            this.hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
         }
     }
 
     @PreDestroy
     void shutdown() {
-        if (housekeeper != null) {
-            housekeeper.shutdownNow();
-        }
-        ClientConnection conn;
-        while ((conn = pool.poll()) != null) {
-            closeQuietly(conn);
-            permits.release();
+        if (hedging != null) {
+            hedging.close();
+            hedgeExecutor.shutdownNow();
         }
+        balancer.close();
     }
 
     public ClientConnection getClient() throws InterruptedException {
-        ClientConnection conn = pool.poll(borrowTimeoutMillis, TimeUnit.MILLISECONDS);
-        if (conn != null) {
-            if (isOpen(conn)) {
-                return conn;
-            }
-            try {
-                conn.transport.open();
-                return conn;
-            } catch (Exception e) {
-                invalidateConnection(conn);
-            }
+        return balancer.borrow();
+    }
+
+    public MessageResponse sendMessage(Message request) throws TException, InterruptedException {
+        Message message = withTimeout(request);
+        if (isHedged(message)) {
+            return await(callHedged(client -> client.sendMessage(message)));
         }
+        if (isAsync()) {
+            return await(asyncClient.sendMessage(message));
+        }
+        return callPooled(client -> client.sendMessage(message));
+    }
 
-        try {
-            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
-                throw new RuntimeException("Timeout acquiring connection from pool");
-            }
-        } catch (InterruptedException ie) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Interrupted while waiting for connection", ie);
+    public MessageResponse sendMessageNoRandomDelay(Message request) throws TException, InterruptedException {
+        Message message = withTimeout(request);
+        if (isHedged(message)) {
+            return await(callHedged(client -> client.sendMessageNoRandomDelay(message)));
+        }
+        if (isAsync()) {
+            return await(asyncClient.sendMessageNoRandomDelay(message));
+        }
+        return callPooled(client -> client.sendMessageNoRandomDelay(message));
+    }
+
+    /**
+     * Sends a whole batch in one framed round trip. The call returns once the slowest message
+     * of the batch has completed, so size {@code requestTimeoutMillis} accordingly.
+     */
+    public List<MessageResponse> sendMessages(List<Message> requests) throws TException, InterruptedException {
+        List<Message> messages = requests == null ? null : requests.stream().map(this::withTimeout).toList();
+        if (isAsync()) {
+            return await(asyncClient.sendMessages(messages));
         }
+        return callPooled(client -> client.sendMessages(messages));
+    }
 
+    private <R> R callPooled(PooledCall<R> call) throws TException, InterruptedException {
+        ClientConnection conn = getClient();
         try {
-            return createNewConnection();
-        } catch (Exception e) {
-            permits.release();
-            throw new RuntimeException("Failed to create Thrift client", e);
+            R response = call.apply(conn.client());
+            releaseConnection(conn);
+            return response;
+        } catch (TException | RuntimeException e) {
+            invalidateConnection(conn);
+            throw e;
         }
     }
 
     public void releaseConnection(ClientConnection conn) {
         if (conn == null) return;
-        if (isOpen(conn)) {
-            if (!pool.offer(conn)) {
-                invalidateConnection(conn);
-            }
-        } else {
-            invalidateConnection(conn);
-        }
+        balancer.release(conn);
     }
 
     public void invalidateConnection(ClientConnection conn) {
         if (conn == null) return;
-        closeQuietly(conn);
-        permits.release();
+        balancer.invalidate(conn);
     }
 
-    private ClientConnection createNewConnection() throws Exception {
-        TSocket socket = new TSocket(host, port);
-        socket.setTimeout(requestTimeoutMillis);
+    /**
+     * Tells the server how long this client waits, so it can give up on the message when the client does.
+     * The caller's message is left as it is, it may be sent again later or by another client.
+     */
+    private Message withTimeout(Message message) {
+        return withTimeout(message, requestTimeoutMillis);
+    }
 
-        TFramedTransport transport = new TFramedTransport(socket);
-        TProtocol protocol = new TBinaryProtocol(transport);
-        MessageService.Client client = new MessageService.Client(protocol);
-        transport.open();
-        return new ClientConnection(client, transport);
+    // a copy of message with timeoutMillis, when it has none
+    static Message withTimeout(Message message, int timeoutMillis) {
+        if (message != null && !message.isSetTimeoutMillis() && timeoutMillis > 0) {
+            return new Message(message).setTimeoutMillis(timeoutMillis);
+        }
+        return message;
     }
 
-    private boolean isOpen(ClientConnection conn) {
-        return conn.transport != null && conn.transport.isOpen();
+    private boolean isHedged(Message message) {
+        return hedging != null && message != null && message.isSetTrackingId();
     }
 
-    private void closeQuietly(ClientConnection conn) {
-        try {
-            if (conn.transport != null && conn.transport.isOpen()) {
-                conn.transport.close();
+    // the hedge goes to another endpoint than the first attempt, none is sent while that one waits for a connection
+    private <R> CompletableFuture<R> callHedged(PooledCall<R> call) {
+        AtomicReference<PooledAttempt<R>> first = new AtomicReference<>();
+        return hedging.call(() -> {
+            PooledAttempt<R> primary = first.get();
+            if (primary == null) {
+                PooledAttempt<R> attempt = pooledAttempt(call, null);
+                first.set(attempt);
+                return attempt;
             }
-        } catch (Exception ignored) {
-        }
+            EndpointBalancer.Endpoint taken = primary.endpoint;
+            return taken == null ? null : pooledAttempt(call, taken);
+        });
     }
 
-    private void ensureMinIdle() {
-        while (pool.size() < Math.min(minIdle, maxIdle) && permits.tryAcquire()) {
-            try {
-                ClientConnection conn = createNewConnection();
-                if (!pool.offer(conn)) {
-                    closeQuietly(conn);
-                    permits.release();
-                    break;
-                }
-            } catch (Exception e) {
-                permits.release();
-                break;
-            }
-        }
+    private <R> PooledAttempt<R> pooledAttempt(PooledCall<R> call, EndpointBalancer.Endpoint excluded) {
+        PooledAttempt<R> attempt = new PooledAttempt<>();
+        hedgeExecutor.execute(() -> attempt.run(call, excluded));
+        return attempt;
+    }
+
+    private boolean isAsync() {
+        return "async".equalsIgnoreCase(mode);
     }
 
-    private void safeEnsureMinIdle() {
+    private static <T> T await(CompletableFuture<T> future) throws TException, InterruptedException {
         try {
-            ensureMinIdle();
-        } catch (Throwable ignored) {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TException te) {
+                throw te;
+            }
+            throw new TException(e.getCause());
         }
     }
 
+    private ClientConnection createNewConnection(String host, int port) throws Exception {
+        TSocket socket = new TSocket(host, port);
+        socket.setTimeout(requestTimeoutMillis);
+
+        TTransport transport = thriftStack.transportFactory().getTransport(socket);
+        TProtocol protocol = thriftStack.protocolFactory().getProtocol(transport);
+        MessageService.Client client = new MessageService.Client(protocol);
+        transport.open();
+        return new ClientConnection(client, transport, socket.getSocket());
+    }
+
     private void applyConfigGuards() {
         if (maxIdle > maxPoolSize) maxIdle = maxPoolSize;
         if (minIdle > maxIdle) minIdle = maxIdle;
@@ -192,6 +324,109 @@ public class MessageServiceClient {
         if (maxPoolSize < 1) maxPoolSize = DEFAULT_MAX_ACTIVE;
     }
 
-    public record ClientConnection(MessageService.Client client, TTransport transport) {
+    @FunctionalInterface
+    private interface PooledCall<R> {
+        R apply(MessageService.Client client) throws TException;
+    }
+
+    /**
+     * One attempt of a hedged call on its own pooled connection. An abandoned attempt closes its connection, the
+     * reply it waits for would otherwise be left unread on the socket; the connection is then invalidated.
+     */
+    private final class PooledAttempt<R> implements HedgingPolicy.Attempt<R> {
+        private static final int RUNNING = 0, DONE = 1, ABANDONED = 2;
+
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private final AtomicInteger state = new AtomicInteger(RUNNING);
+        private volatile ClientConnection connection;
+        // the endpoint of the connection, set once borrowed
+        volatile EndpointBalancer.Endpoint endpoint;
+
+        void run(PooledCall<R> call, EndpointBalancer.Endpoint excluded) {
+            ClientConnection conn;
+            try {
+                conn = balancer.borrow(excluded);
+            } catch (InterruptedException | RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            endpoint = conn.endpoint;
+            connection = conn;
+            if (state.get() == ABANDONED) {
+                balancer.discard(conn);
+                result.cancel(false);
+                return;
+            }
+            try {
+                R response = call.apply(conn.client());
+                if (state.compareAndSet(RUNNING, DONE)) {
+                    releaseConnection(conn);
+                } else {
+                    balancer.discard(conn);
+                }
+                result.complete(response);
+            } catch (TException | RuntimeException e) {
+                if (state.get() == ABANDONED) {
+                    // failed because its connection was closed, not the endpoint's fault
+                    balancer.discard(conn);
+                } else {
+                    invalidateConnection(conn);
+                }
+                result.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public CompletableFuture<R> result() {
+            return result;
+        }
+
+        @Override
+        public void abandon() {
+            if (state.compareAndSet(RUNNING, ABANDONED)) {
+                ClientConnection conn = connection;
+                if (conn != null) {
+                    conn.transport().close();
+                }
+            }
+        }
+    }
+
+    /**
+     * A pooled connection. The timestamps are maintained by {@link ThriftConnectionPool}.
+     */
+    public static final class ClientConnection {
+
+        private final MessageService.Client client;
+        private final TTransport transport;
+        private final Socket socket;
+        long createdMillis = System.currentTimeMillis();
+        volatile long lastUsedMillis = createdMillis;
+        volatile long lastValidatedMillis = createdMillis;
+        // set by EndpointBalancer while the connection is borrowed
+        EndpointBalancer.Endpoint endpoint;
+        long borrowedNanos;
+
+        ClientConnection(MessageService.Client client, TTransport transport, Socket socket) {
+            this.client = client;
+            this.transport = transport;
+            this.socket = socket;
+        }
+
+        public MessageService.Client client() {
+            return client;
+        }
+
+        public TTransport transport() {
+            return transport;
+        }
+
+        Socket socket() {
+            return socket;
+        }
+
+        boolean isOpen() {
+            return transport != null && transport.isOpen();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,361 @@
+package com.thrift.thriftbackend.client;
+
+import com.thrift.thriftbackend.client.MessageServiceClient.ClientConnection;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free pool of blocking Thrift connections.
+ * <p>
+ * Borrowing takes the most recently used idle connection or opens a new one while the pool is below
+ * {@code maxSize}, without blocking. Only when the pool is exhausted does the caller wait, and a released
+ * connection is then handed to a waiter directly; one destroyed while callers wait is replaced in the background.
+ * A background task evicts connections that have been idle or alive for too long, validates long-idle
+ * connections and keeps {@code minIdle} connections open.
+ *
+ * @author phonghv
+ */
+class ThriftConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThriftConnectionPool.class);
+
+    @FunctionalInterface
+    interface ConnectionFactory {
+        ClientConnection create() throws Exception;
+    }
+
+    record Settings(int maxSize, int minIdle, int maxIdle, long borrowTimeoutMillis, long idleTimeoutMillis,
+                    long maxLifetimeMillis, long validationIntervalMillis) {
+    }
+
+    private final ConnectionFactory factory;
+    private final Settings settings;
+    private final LongSupplier clock;
+
+    // head is the most recently released connection
+    private final ConcurrentLinkedDeque<ClientConnection> idle = new ConcurrentLinkedDeque<>();
+    private final LinkedTransferQueue<ClientConnection> handoff = new LinkedTransferQueue<>();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Timer waitTimer;
+    private final ScheduledExecutorService housekeeper;
+
+    private volatile boolean closed;
+
+    /**
+     * @param endpoint {@code host:port} the connections go to, a tag of the pool's metrics
+     */
+    ThriftConnectionPool(ConnectionFactory factory, Settings settings, MeterRegistry meterRegistry, String protocol,
+                         String endpoint) {
+        this(factory, settings, System::currentTimeMillis, meterRegistry, protocol, endpoint);
+    }
+
+    /**
+     * @param clock milliseconds the idle, lifetime and validation intervals are measured in,
+     *              {@code System::currentTimeMillis}
+     */
+    ThriftConnectionPool(ConnectionFactory factory, Settings settings, LongSupplier clock,
+                         MeterRegistry meterRegistry, String protocol, String endpoint) {
+        this.factory = factory;
+        this.settings = settings;
+        this.clock = clock;
+
+        Gauge.builder("thrift_client_pool_active", this, ThriftConnectionPool::active)
+                .description("Số kết nối đang được sử dụng")
+                .tag("protocol", protocol)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("thrift_client_pool_idle", this, ThriftConnectionPool::idle)
+                .description("Số kết nối đang rảnh trong pool")
+                .tag("protocol", protocol)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        Gauge.builder("thrift_client_pool_pending", this, ThriftConnectionPool::pending)
+                .description("Số luồng đang chờ mượn kết nối")
+                .tag("protocol", protocol)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("thrift_client_pool_wait")
+                .description("Thời gian chờ mượn kết nối")
+                .tag("protocol", protocol)
+                .tag("endpoint", endpoint)
+                .register(meterRegistry);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "thrift-client-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        fillMinIdle();
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 1, 1, TimeUnit.SECONDS);
+    }
+
+    ClientConnection borrow() throws InterruptedException {
+        long start = System.nanoTime();
+        ClientConnection conn = tryBorrow();
+        if (conn != null) {
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return conn;
+        }
+
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(settings.borrowTimeoutMillis());
+        pending.incrementAndGet();
+        try {
+            // a connection released before this waiter was counted went to the idle deque, release hands the
+            // ones after it over
+            conn = pollUsable(clock.getAsLong());
+            if (conn == null && !closed) {
+                conn = handoff.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            if (conn != null) {
+                return conn;
+            }
+        } finally {
+            pending.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        throw new RuntimeException("Timeout acquiring connection from pool");
+    }
+
+    void release(ClientConnection conn) {
+        long now = clock.getAsLong();
+        if (closed || !conn.isOpen() || isExpired(conn, now)) {
+            destroy(conn);
+            return;
+        }
+        conn.lastUsedMillis = now;
+        if (handoff.tryTransfer(conn)) {
+            return;
+        }
+        if (idleCount.incrementAndGet() > settings.maxIdle() && pending.get() == 0) {
+            idleCount.decrementAndGet();
+            destroy(conn);
+            return;
+        }
+        idle.offerFirst(conn);
+        // a waiter counted after the transfer failed may be between its look at the deque and its wait
+        while (pending.get() > 0) {
+            ClientConnection waited = pollIdle();
+            if (waited == null) {
+                // a waiter took it from the deque
+                return;
+            }
+            if (handoff.tryTransfer(waited)) {
+                return;
+            }
+            idleCount.incrementAndGet();
+            idle.offerFirst(waited);
+            Thread.onSpinWait();
+        }
+    }
+
+    void invalidate(ClientConnection conn) {
+        destroy(conn);
+    }
+
+    void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        ClientConnection conn;
+        while ((conn = pollIdle()) != null) {
+            destroy(conn);
+        }
+    }
+
+    int active() {
+        return total.get() - idleCount.get();
+    }
+
+    int idle() {
+        return idleCount.get();
+    }
+
+    int pending() {
+        return pending.get();
+    }
+
+    private ClientConnection tryBorrow() {
+        ClientConnection conn = pollUsable(clock.getAsLong());
+        return conn != null ? conn : tryCreate();
+    }
+
+    // most recently used idle connection still open and within its lifetime, closing the others on the way
+    private ClientConnection pollUsable(long now) {
+        ClientConnection conn;
+        while ((conn = pollIdle()) != null) {
+            if (conn.isOpen() && !isExpired(conn, now)) {
+                return conn;
+            }
+            destroy(conn);
+        }
+        return null;
+    }
+
+    private ClientConnection tryCreate() {
+        int current;
+        do {
+            current = total.get();
+            if (current >= settings.maxSize()) {
+                return null;
+            }
+        } while (!total.compareAndSet(current, current + 1));
+
+        try {
+            ClientConnection conn = factory.create();
+            long now = clock.getAsLong();
+            conn.createdMillis = now;
+            conn.lastUsedMillis = now;
+            conn.lastValidatedMillis = now;
+            return conn;
+        } catch (Exception e) {
+            total.decrementAndGet();
+            throw new RuntimeException("Failed to create Thrift client", e);
+        }
+    }
+
+    private ClientConnection pollIdle() {
+        ClientConnection conn = idle.pollFirst();
+        if (conn != null) {
+            idleCount.decrementAndGet();
+        }
+        return conn;
+    }
+
+    private boolean isExpired(ClientConnection conn, long now) {
+        return settings.maxLifetimeMillis() > 0 && now - conn.createdMillis >= settings.maxLifetimeMillis();
+    }
+
+    private void destroy(ClientConnection conn) {
+        total.decrementAndGet();
+        try {
+            if (conn.transport() != null && conn.transport().isOpen()) {
+                conn.transport().close();
+            }
+        } catch (Exception ignored) {
+        }
+        if (pending.get() > 0 && !closed) {
+            // a waiter only wakes up for a released connection, open one in its place
+            try {
+                housekeeper.execute(this::replace);
+            } catch (RejectedExecutionException closing) {
+                // the pool is being closed
+            }
+        }
+    }
+
+    private void replace() {
+        if (pending.get() == 0) {
+            return;
+        }
+        try {
+            ClientConnection conn = tryCreate();
+            if (conn != null) {
+                release(conn);
+            }
+        } catch (RuntimeException e) {
+            logger.debug("Could not replace Thrift connection for a waiter: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Evicts and validates idle connections and tops them up to {@code minIdle}; run every second.
+     */
+    void housekeep() {
+        try {
+            evictAndValidate();
+            fillMinIdle();
+        } catch (Throwable e) {
+            logger.warn("Thrift client pool housekeeping failed: {}", e.getMessage());
+        }
+    }
+
+    private void evictAndValidate() {
+        long now = clock.getAsLong();
+        // oldest idle connections sit at the tail, walk from there
+        var iterator = idle.descendingIterator();
+        while (iterator.hasNext()) {
+            ClientConnection conn = iterator.next();
+            long idleMillis = now - conn.lastUsedMillis;
+            boolean idleTooLong = settings.idleTimeoutMillis() > 0 && idleMillis >= settings.idleTimeoutMillis()
+                    && idleCount.get() > settings.minIdle();
+            boolean needsValidation = settings.validationIntervalMillis() > 0
+                    && now - conn.lastValidatedMillis >= settings.validationIntervalMillis();
+            if (!idleTooLong && !needsValidation && !isExpired(conn, now)) {
+                continue;
+            }
+            // claim the connection, a borrower may have taken it meanwhile
+            if (!idle.removeLastOccurrence(conn)) {
+                continue;
+            }
+            idleCount.decrementAndGet();
+            if (idleTooLong || isExpired(conn, now) || !validate(conn)) {
+                destroy(conn);
+                continue;
+            }
+            conn.lastValidatedMillis = now;
+            idleCount.incrementAndGet();
+            idle.offerLast(conn);
+        }
+    }
+
+    /**
+     * An idle connection must have nothing to read: end of stream means the server closed it and
+     * unexpected bytes mean the protocol is out of sync. A read that times out is healthy.
+     */
+    private static boolean validate(ClientConnection conn) {
+        Socket socket = conn.socket();
+        if (socket == null || !conn.isOpen() || socket.isClosed() || socket.isInputShutdown()) {
+            return false;
+        }
+        int timeout = 0;
+        try {
+            timeout = socket.getSoTimeout();
+            socket.setSoTimeout(1);
+            InputStream in = socket.getInputStream();
+            in.read();
+            return false;
+        } catch (SocketTimeoutException e) {
+            return true;
+        } catch (Exception e) {
+            return false;
+        } finally {
+            try {
+                socket.setSoTimeout(timeout);
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private void fillMinIdle() {
+        while (!closed && idleCount.get() < Math.min(settings.minIdle(), settings.maxIdle())) {
+            ClientConnection conn;
+            try {
+                conn = tryCreate();
+            } catch (RuntimeException e) {
+                logger.debug("Could not pre-open Thrift connection: {}", e.getMessage());
+                return;
+            }
+            if (conn == null) {
+                return;
+            }
+            idleCount.incrementAndGet();
+            idle.offerLast(conn);
+        }
+    }
+}
@@ -1,11 +1,15 @@
 package com.thrift.thriftbackend.config;
 
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
 import com.thrift.thriftbackend.MessageService;
+import com.thrift.thriftbackend.handler.AsyncMessageServiceHandler;
+import com.thrift.thriftbackend.handler.ConcurrencyLimitAsyncProcessor;
+import com.thrift.thriftbackend.handler.ConcurrencyLimitProcessor;
+import com.thrift.thriftbackend.handler.OnewayAsyncProcessor;
 import com.thrift.thriftbackend.handler.MessageServiceHandler;
-import org.apache.thrift.protocol.TBinaryProtocol;
-import org.apache.thrift.server.TThreadedSelectorServer;
-import org.apache.thrift.transport.TFramedTransport;
-import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.apache.thrift.TAsyncProcessor;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.server.TServer;
 import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,9 +19,6 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
 
 import java.net.InetSocketAddress;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  *
@@ -30,6 +31,10 @@ public class AppRunner implements ApplicationRunner {
     private static final Logger logger = org.slf4j.LoggerFactory.getLogger(AppRunner.class);
 
     private final MessageServiceHandler messageServiceHandler;
+    private final AsyncMessageServiceHandler asyncMessageServiceHandler;
+    private final ThriftStack thriftStack;
+    private final ThriftServerEngine serverEngine;
+    private final ConcurrencyLimiter concurrencyLimiter;
 
     @Value("${thrift.server.host:localhost}")
     private String host;
@@ -37,44 +42,50 @@ public class AppRunner implements ApplicationRunner {
     @Value("${thrift.server.port:9091}")
     private int port;
 
-    public AppRunner(MessageServiceHandler messageServiceHandler) {
+    // sync: blocking Iface on the worker pool, async: AsyncIface completed from a timer
+    @Value("${thrift.server.mode:sync}")
+    private String mode;
+
+    public AppRunner(MessageServiceHandler messageServiceHandler, AsyncMessageServiceHandler asyncMessageServiceHandler,
+                     ThriftStack thriftStack, ThriftServerEngine serverEngine, ConcurrencyLimiter concurrencyLimiter) {
         this.messageServiceHandler = messageServiceHandler;
+        this.asyncMessageServiceHandler = asyncMessageServiceHandler;
+        this.thriftStack = thriftStack;
+        this.serverEngine = serverEngine;
+        this.concurrencyLimiter = concurrencyLimiter;
     }
 
 
     @Override
     public void run(ApplicationArguments args) throws TTransportException, InterruptedException {
-        MessageService.Processor<MessageService.Iface> processor = new MessageService.Processor<>(messageServiceHandler);
-
-        TNonblockingServerSocket socket = new TNonblockingServerSocket(new InetSocketAddress(this.host, this.port));
-        TThreadedSelectorServer.Args serverArgs = new TThreadedSelectorServer.Args(socket);
-
-        // configure executor service with virtual threads
-        ThreadFactory virtualThreadFactory = Thread.ofVirtual().factory();
-        ThreadPoolExecutor executorService = new ThreadPoolExecutor(
-                16, // corePoolSize
-                32, // maximumPoolSize
-                serverArgs.getStopTimeoutVal(), // keepAliveTime
-                serverArgs.getStopTimeoutUnit(), // đơn vị thời gian
-                new LinkedBlockingQueue<>(), // hàng đợi
-                virtualThreadFactory, // Sử dụng virtual threads
-                new ThreadPoolExecutor.AbortPolicy()
-        );
-        serverArgs.executorService(executorService);
-
-        serverArgs.processor(processor);
-
-        serverArgs.transportFactory(new TFramedTransport.Factory());
-        serverArgs.protocolFactory(new TBinaryProtocol.Factory());
-        serverArgs.acceptQueueSizePerThread(32);
-        serverArgs.selectorThreads(4);
-
-        TThreadedSelectorServer server = new TThreadedSelectorServer(serverArgs);
+        TProcessor processor = createProcessor();
+        TServer server = serverEngine.create(new InetSocketAddress(this.host, this.port), processor,
+                processor instanceof TAsyncProcessor, thriftStack);
 
         Thread serverThread = new Thread(server::serve, "thrift-test-server");
         serverThread.setDaemon(true);
         serverThread.start();
         Thread.sleep(200);
-        logger.info("Thrift server is running on {}:{}", this.host, this.port);
+        logger.info("Thrift server is running on {}:{} in {} mode ({} engine, {} executor, {} protocol, {} transport)",
+                this.host, this.port, this.mode, serverEngine.engine(), serverEngine.executor(), thriftStack.protocol(),
+                thriftStack.transport());
+    }
+
+    private TProcessor createProcessor() {
+        return switch (mode.trim().toLowerCase()) {
+            case "sync" -> {
+                TProcessor processor = new MessageService.Processor<>(messageServiceHandler);
+                yield concurrencyLimiter.enabled() ? new ConcurrencyLimitProcessor(processor, concurrencyLimiter) : processor;
+            }
+            case "async" -> {
+                MessageService.AsyncProcessor<AsyncMessageServiceHandler> processor =
+                        new MessageService.AsyncProcessor<>(asyncMessageServiceHandler);
+                // both hand the connection back after a oneway call
+                yield concurrencyLimiter.enabled()
+                        ? new ConcurrencyLimitAsyncProcessor<>(asyncMessageServiceHandler, processor, concurrencyLimiter)
+                        : new OnewayAsyncProcessor<>(asyncMessageServiceHandler, processor);
+            }
+            default -> throw new IllegalArgumentException("Unsupported thrift.server.mode: " + mode);
+        };
     }
 }
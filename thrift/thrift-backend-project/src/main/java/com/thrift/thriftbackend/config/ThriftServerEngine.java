@@ -0,0 +1,114 @@
+package com.thrift.thriftbackend.config;
+
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.server.THsHaServer;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.server.TThreadedSelectorServer;
+import org.apache.thrift.transport.TNonblockingServerSocket;
+import org.apache.thrift.transport.TServerSocket;
+import org.apache.thrift.transport.TTransportException;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thrift server implementation and the threads it runs calls on.
+ * <ul>
+ *     <li>engine: {@code threaded-selector} ({@code selectorThreads} selectors read frames, calls run on the
+ *     executor), {@code hsha} (one selector thread, calls run on the executor) or {@code thread-pool}
+ *     (blocking sockets, one executor task per connection for its whole life)</li>
+ *     <li>executor: {@code pool} ({@code workers} platform threads, calls beyond them wait in a queue;
+ *     for {@code thread-pool} connections beyond them wait to be accepted) or {@code virtual}
+ *     (a new virtual thread per call, per connection for {@code thread-pool}, unbounded)</li>
+ *     <li>acceptQueueSizePerThread: connections accepted but not yet registered with a selector, per
+ *     selector thread of {@code threaded-selector}</li>
+ *     <li>backlog: listen backlog of the server socket, {@code 0} for the JDK default</li>
+ * </ul>
+ * The async processor needs a non-blocking engine, {@code thread-pool} only serves {@code sync}.
+ *
+ * @author phonghv
+ */
+public record ThriftServerEngine(String engine, String executor, int workers, int selectorThreads,
+                                 int acceptQueueSizePerThread, int backlog) {
+
+    public static ThriftServerEngine of(String engine, String executor, int workers, int selectorThreads,
+                                        int acceptQueueSizePerThread, int backlog) {
+        String engineName = engine.trim().toLowerCase();
+        String executorName = executor.trim().toLowerCase();
+        switch (engineName) {
+            case "threaded-selector", "hsha", "thread-pool" -> {
+            }
+            default -> throw new IllegalArgumentException("Unsupported thrift.server.engine: " + engine);
+        }
+        switch (executorName) {
+            case "pool", "virtual" -> {
+            }
+            default -> throw new IllegalArgumentException("Unsupported thrift.server.executor: " + executor);
+        }
+        if (workers <= 0 || selectorThreads <= 0 || acceptQueueSizePerThread <= 0 || backlog < 0) {
+            throw new IllegalArgumentException("thrift.server.workers, selectorThreads and acceptQueueSizePerThread "
+                    + "must be positive, backlog not negative");
+        }
+        return new ThriftServerEngine(engineName, executorName, workers, selectorThreads, acceptQueueSizePerThread,
+                backlog);
+    }
+
+    /**
+     * A server for {@code processor} bound to {@code address}, not yet serving.
+     *
+     * @param async whether {@code processor} is the async processor
+     */
+    public TServer create(InetSocketAddress address, TProcessor processor, boolean async, ThriftStack stack)
+            throws TTransportException {
+        if (async && engine.equals("thread-pool")) {
+            throw new IllegalArgumentException("thrift.server.mode=async needs a non-blocking thrift.server.engine, "
+                    + "not thread-pool");
+        }
+        return switch (engine) {
+            case "threaded-selector" -> {
+                TThreadedSelectorServer.Args args = new TThreadedSelectorServer.Args(nonblockingSocket(address))
+                        .selectorThreads(selectorThreads)
+                        .acceptQueueSizePerThread(acceptQueueSizePerThread)
+                        .executorService(executorService());
+                // the selector server always reads whole frames itself, framed and fast-framed clients are both accepted
+                args.processor(processor).transportFactory(stack.transportFactory()).protocolFactory(stack.protocolFactory());
+                yield new TThreadedSelectorServer(args);
+            }
+            case "hsha" -> {
+                THsHaServer.Args args = new THsHaServer.Args(nonblockingSocket(address))
+                        .executorService(executorService());
+                args.processor(processor).transportFactory(stack.transportFactory()).protocolFactory(stack.protocolFactory());
+                yield new THsHaServer(args);
+            }
+            default -> {
+                TThreadPoolServer.Args args = new TThreadPoolServer.Args(new TServerSocket(
+                        new TServerSocket.ServerSocketTransportArgs().bindAddr(address).backlog(backlog)));
+                if (executor.equals("virtual")) {
+                    args.executorService(Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                            .name("thrift-connection-", 0).factory()));
+                } else {
+                    // a worker serves one connection until it closes, a pooled client holds on to its worker
+                    args.minWorkerThreads(workers).maxWorkerThreads(workers);
+                }
+                args.processor(processor).transportFactory(stack.transportFactory()).protocolFactory(stack.protocolFactory());
+                yield new TThreadPoolServer(args);
+            }
+        };
+    }
+
+    private TNonblockingServerSocket nonblockingSocket(InetSocketAddress address) throws TTransportException {
+        return new TNonblockingServerSocket(new TNonblockingServerSocket.NonblockingAbstractServerSocketArgs()
+                .bindAddr(address).backlog(backlog));
+    }
+
+    private ExecutorService executorService() {
+        if (executor.equals("virtual")) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("thrift-call-", 0).factory());
+        }
+        ThreadFactory workerFactory = Thread.ofPlatform().name("thrift-worker-", 0).daemon().factory();
+        return Executors.newFixedThreadPool(workers, workerFactory);
+    }
+}
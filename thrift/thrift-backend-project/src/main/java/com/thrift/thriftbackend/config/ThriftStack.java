@@ -0,0 +1,41 @@
+package com.thrift.thriftbackend.config;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TJSONProtocol;
+import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TFastFramedTransport;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TTransportFactory;
+
+/**
+ * Protocol and transport used on the Thrift wire, shared by the server and the clients so both
+ * ends always agree.
+ * <ul>
+ *     <li>protocol: {@code binary}, {@code compact} or {@code json}</li>
+ *     <li>transport: {@code framed} or {@code fast-framed} (same wire format, read/write buffers are reused)</li>
+ * </ul>
+ *
+ * @author phonghv
+ */
+public record ThriftStack(String protocol, String transport, TProtocolFactory protocolFactory,
+                          TTransportFactory transportFactory) {
+
+    public static ThriftStack of(String protocol, String transport) {
+        String protocolName = protocol.trim().toLowerCase();
+        String transportName = transport.trim().toLowerCase();
+
+        TProtocolFactory protocolFactory = switch (protocolName) {
+            case "binary" -> new TBinaryProtocol.Factory();
+            case "compact" -> new TCompactProtocol.Factory();
+            case "json" -> new TJSONProtocol.Factory();
+            default -> throw new IllegalArgumentException("Unsupported thrift.protocol: " + protocol);
+        };
+        TTransportFactory transportFactory = switch (transportName) {
+            case "framed" -> new TFramedTransport.Factory();
+            case "fast-framed" -> new TFastFramedTransport.Factory();
+            default -> throw new IllegalArgumentException("Unsupported thrift.transport: " + transport);
+        };
+        return new ThriftStack(protocolName, transportName, protocolFactory, transportFactory);
+    }
+}
@@ -0,0 +1,31 @@
+package com.thrift.thriftbackend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Thrift protocol and transport, selected through {@code thrift.protocol} and {@code thrift.transport}, and the
+ * server engine, through the {@code thrift.server.*} properties.
+ *
+ * @author phonghv
+ */
+@Configuration
+public class ThriftStackConfig {
+
+    @Bean
+    public ThriftStack thriftStack(@Value("${thrift.protocol:binary}") String protocol,
+                                   @Value("${thrift.transport:framed}") String transport) {
+        return ThriftStack.of(protocol, transport);
+    }
+
+    @Bean
+    public ThriftServerEngine thriftServerEngine(@Value("${thrift.server.engine:threaded-selector}") String engine,
+                                                 @Value("${thrift.server.executor:pool}") String executor,
+                                                 @Value("${thrift.server.workers:16}") int workers,
+                                                 @Value("${thrift.server.selectorThreads:4}") int selectorThreads,
+                                                 @Value("${thrift.server.acceptQueueSizePerThread:32}") int acceptQueueSizePerThread,
+                                                 @Value("${thrift.server.backlog:0}") int backlog) {
+        return ThriftServerEngine.of(engine, executor, workers, selectorThreads, acceptQueueSizePerThread, backlog);
+    }
+}
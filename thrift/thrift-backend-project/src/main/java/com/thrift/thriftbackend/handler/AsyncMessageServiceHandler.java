@@ -0,0 +1,252 @@
+package com.thrift.thriftbackend.handler;
+
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.id.MsgIdGenerator;
+import com.benchmark.common.idempotency.IdempotencyCache;
+import com.benchmark.common.journal.MessageJournal;
+import com.benchmark.common.latency.SimulatedLatency;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
+import com.thrift.thriftbackend.Message;
+import com.thrift.thriftbackend.MessageResponse;
+import com.thrift.thriftbackend.MessageService;
+import com.thrift.thriftbackend.config.ThriftStack;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking variant of {@link MessageServiceHandler} for the {@link MessageService.AsyncProcessor}.
+ * The simulated latency is a scheduled completion on a small timer pool instead of a sleeping
+ * worker, so a slow call only costs a timer entry and its frame buffer while it is in flight. A message whose
+ * {@code timeoutMillis} ends before its delay is answered at its deadline instead, its quota given back.
+ *
+ * @author phonghv
+ */
+@Service
+public class AsyncMessageServiceHandler implements MessageService.AsyncIface {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncMessageServiceHandler.class);
+    private final SimulatedLatency simulatedLatency;
+    private final MsgIdGenerator msgIdGenerator;
+    private final QuotaStore quotaStore;
+    private final TemplateEngine templateEngine;
+    private final IdempotencyCache<MessageResponse> idempotencyCache;
+    private final MessageJournal journal;
+    private final RateLimiter rateLimiter;
+    private final Deadlines deadlines;
+    private final Counter sendMessageCounter;
+    private final Counter sendMessageNoDelayCounter;
+    private final ScheduledThreadPoolExecutor timer;
+    private final int batchMaxSize;
+
+    public AsyncMessageServiceHandler(MeterRegistry meterRegistry, SimulatedLatency simulatedLatency,
+                                      MsgIdGenerator msgIdGenerator, QuotaStore quotaStore, TemplateEngine templateEngine,
+                                      IdempotencyCache<MessageResponse> idempotencyCache, MessageJournal journal,
+                                      RateLimiter rateLimiter, Deadlines deadlines,
+                                      ThriftStack thriftStack,
+                                      @Value("${thrift.batch.maxSize:1000}") int batchMaxSize) {
+        this.simulatedLatency = simulatedLatency;
+        this.msgIdGenerator = msgIdGenerator;
+        this.quotaStore = quotaStore;
+        this.templateEngine = templateEngine;
+        this.idempotencyCache = idempotencyCache;
+        this.journal = journal;
+        this.rateLimiter = rateLimiter;
+        this.deadlines = deadlines;
+        this.batchMaxSize = batchMaxSize;
+        this.sendMessageCounter = Counter.builder("message_service_send_total")
+                .description("Số lần gọi sendMessage()")
+                .tag("method", "sendMessage")
+                .tag("protocol", thriftStack.protocol())
+                .register(meterRegistry);
+
+        this.sendMessageNoDelayCounter = Counter.builder("message_service_send_no_delay_total")
+                .description("Số lần gọi sendMessageNoRandomDelay()")
+                .tag("method", "sendMessageNoRandomDelay")
+                .tag("protocol", thriftStack.protocol())
+                .register(meterRegistry);
+
+        this.timer = new ScheduledThreadPoolExecutor(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "thrift-async-delay-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.timer.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timer.shutdownNow();
+    }
+
+    @Override
+    public void sendMessage(Message message, @SuppressWarnings("rawtypes") AsyncMethodCallback resultHandler) {
+        AsyncMethodCallback<MessageResponse> callback = typed(resultHandler);
+        completeAfter(message, simulatedLatency.nextDelayMillis(), true, "sendMessage", sendMessageCounter,
+                callback::onComplete);
+    }
+
+    @Override
+    public void sendMessageNoRandomDelay(Message message,
+                                         @SuppressWarnings("rawtypes") AsyncMethodCallback resultHandler) {
+        AsyncMethodCallback<MessageResponse> callback = typed(resultHandler);
+        // delay for 10 milliseconds
+        completeAfter(message, 10, false, "sendMessageNoRandomDelay", sendMessageNoDelayCounter,
+                callback::onComplete);
+    }
+
+    @Override
+    public void sendMessages(List<Message> messages, @SuppressWarnings("rawtypes") AsyncMethodCallback resultHandler) {
+        AsyncMethodCallback<List<MessageResponse>> callback = typed(resultHandler);
+        if (messages == null || messages.isEmpty()) {
+            callback.onComplete(List.of());
+            return;
+        }
+        if (messages.size() > batchMaxSize) {
+            callback.onComplete(MessageResponses.batchTooLarge(messages.size(), batchMaxSize));
+            return;
+        }
+        // every message gets its own timer entry, the batch completes with the slowest one
+        MessageResponse[] responses = new MessageResponse[messages.size()];
+        AtomicInteger remaining = new AtomicInteger(responses.length);
+        for (int i = 0; i < responses.length; i++) {
+            int index = i;
+            completeAfter(messages.get(i), simulatedLatency.nextDelayMillis(), true, "sendMessages", sendMessageCounter,
+                    response -> {
+                        responses[index] = response;
+                        if (remaining.decrementAndGet() == 0) {
+                            callback.onComplete(Arrays.asList(responses));
+                        }
+                    });
+        }
+    }
+
+    @Override
+    public void sendMessagesOneway(List<Message> messages,
+                                   @SuppressWarnings("rawtypes") AsyncMethodCallback resultHandler) {
+        AsyncMethodCallback<Void> callback = typed(resultHandler);
+        if (messages != null && messages.size() > batchMaxSize) {
+            logger.warn("Dropped sendMessagesOneway batch of {} messages, more than {}", messages.size(),
+                    batchMaxSize);
+        } else if (messages != null) {
+            for (int i = 0; i < messages.size(); i++) {
+                completeAfter(messages.get(i), simulatedLatency.nextDelayMillis(), true, "sendMessagesOneway",
+                        sendMessageCounter, response -> {
+                        });
+            }
+        }
+        // nobody waits for the messages, the call is over once they are scheduled
+        callback.onComplete(null);
+    }
+
+    // the AsyncIface generated by libthrift 0.9.3 takes raw callbacks, each method knows its result type
+    @SuppressWarnings("unchecked")
+    private static <T> AsyncMethodCallback<T> typed(@SuppressWarnings("rawtypes") AsyncMethodCallback callback) {
+        return callback;
+    }
+
+    private void completeAfter(Message message, long delayMillis, boolean simulated, String method, Counter counter,
+                               Consumer<MessageResponse> onResponse) {
+        // a throttled sender is answered at once, before the idempotency cache and the timer
+        if (!rateLimiter.tryAcquire(message.getPhone(), message.getTemplateId())) {
+            counter.increment();
+            onResponse.accept(MessageResponses.rateLimited());
+            return;
+        }
+        long deadline = message.isSetTimeoutMillis()
+                ? deadlines.after(message.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+                : Deadlines.NONE;
+        // a retried tracking_id is answered with the original response, without a new timer entry
+        idempotencyCache.executeAsync(message.getTrackingId(), () -> {
+            CompletableFuture<MessageResponse> response = new CompletableFuture<>();
+            sendOnce(message, deadline, delayMillis, simulated, method, counter, response::complete);
+            return response;
+        }).thenAccept(onResponse);
+    }
+
+    private void sendOnce(Message message, long deadline, long delayMillis, boolean simulated, String method,
+                          Counter counter, Consumer<MessageResponse> onResponse) {
+        long start = System.nanoTime();
+        if (deadlines.skip(deadline)) {
+            counter.increment();
+            onResponse.accept(MessageResponses.deadlineExceeded());
+            return;
+        }
+        // both rejections answer without waiting for the simulated downstream
+        int contentLength = templateEngine.render(message.getTemplateId(), message.getTemplateData());
+        if (contentLength == TemplateEngine.NOT_FOUND) {
+            counter.increment();
+            onResponse.accept(MessageResponses.templateNotFound());
+            return;
+        }
+        int remainingQuota = quotaStore.tryAcquire(message.getPhone(), message.getTemplateId());
+        if (remainingQuota == QuotaStore.REJECTED) {
+            counter.increment();
+            onResponse.accept(MessageResponses.quotaExceeded(quotaStore.dailyLimit()));
+            return;
+        }
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        long remainingNanos = deadlines.remainingNanos(deadline);
+        try {
+            if (remainingNanos < delayNanos) {
+                // the caller stops waiting first: answer at its deadline, the rest of the delay is saved
+                timer.schedule(() -> {
+                    if (simulated) {
+                        simulatedLatency.record(System.nanoTime() - start);
+                    }
+                    quotaStore.release(message.getPhone(), message.getTemplateId());
+                    deadlines.cutShort(delayNanos - remainingNanos);
+                    counter.increment();
+                    onResponse.accept(MessageResponses.deadlineExceeded());
+                }, remainingNanos, TimeUnit.NANOSECONDS);
+                return;
+            }
+            timer.schedule(() -> {
+                if (simulated) {
+                    simulatedLatency.record(System.nanoTime() - start);
+                }
+                String msgId = msgIdGenerator.next();
+                CompletableFuture<Void> journaled;
+                try {
+                    journaled = journal.appendAsync(msgId, message.getPhone(), message.getTemplateId(),
+                            message.getTrackingId(), message.getTemplateData());
+                } catch (Exception e) {
+                    journaled = CompletableFuture.failedFuture(e);
+                }
+                // with journal.fsync=batch the response waits for the group commit, off the timer thread
+                journaled.whenComplete((ignored, e) -> {
+                    MessageResponse response;
+                    if (e == null) {
+                        response = MessageResponses.success(msgId, quotaStore.dailyLimit(), remainingQuota,
+                                contentLength);
+                        deadlines.completed(deadline);
+                    } else {
+                        logger.error("Error processing {} request: {}", method, e.getMessage(), e);
+                        response = MessageResponses.error(e);
+                    }
+                    counter.increment();
+                    onResponse.accept(response);
+                });
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            logger.error("Error scheduling {} request: {}", method, e.getMessage(), e);
+            counter.increment();
+            onResponse.accept(MessageResponses.error(e));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.thrift.thriftbackend.handler;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import org.apache.thrift.AsyncProcessFunction;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TBaseAsyncProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.server.AbstractNonblockingServer.AsyncFrameBuffer;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Adaptive concurrency limit of the async processor: every function of the delegate is wrapped so that a call over
+ * the limit is answered with a {@link org.apache.thrift.TApplicationException} instead of starting (a oneway call
+ * is dropped), and an admitted call is released when the handler completes it, which for the async handler is when
+ * its scheduled delay fires, not when {@code start} returns. A oneway call is released when {@code start} returns,
+ * without its latency, and its connection handed back to the selector as {@link OnewayAsyncProcessor} does: nobody
+ * waits for it, so its handler need not complete it. The delegate is the generated processor, not an
+ * {@link OnewayAsyncProcessor}.
+ * <p>
+ * The exception is written to the frame buffer here, as {@link TBaseAsyncProcessor} does for an unknown method: the
+ * result handlers generated by 0.9.3 cast it to {@code TBase} and fail.
+ *
+ * @author phonghv
+ */
+public class ConcurrencyLimitAsyncProcessor<I> extends TBaseAsyncProcessor<I> {
+
+    /**
+     * @param delegate the generated processor of {@code iface}, e.g. {@code new MessageService.AsyncProcessor<>(iface)}
+     */
+    public ConcurrencyLimitAsyncProcessor(I iface, TBaseAsyncProcessor<I> delegate, ConcurrencyLimiter limiter) {
+        super(iface, wrap(delegate.getProcessMapView(), limiter));
+    }
+
+    // the process map of libthrift 0.9.3 is typed with the raw TBase
+    @SuppressWarnings("rawtypes")
+    private static <I> Map<String, AsyncProcessFunction<I, ? extends TBase, ?>> wrap(
+            Map<String, AsyncProcessFunction<I, ? extends TBase, ?>> functions, ConcurrencyLimiter limiter) {
+        Map<String, AsyncProcessFunction<I, ? extends TBase, ?>> wrapped = new HashMap<>();
+        functions.forEach((name, function) -> wrapped.put(name, new LimitedFunction<>(function, limiter)));
+        return wrapped;
+    }
+
+    // isOneway is protected in another package; read once per function
+    static boolean oneway(AsyncProcessFunction<?, ?, ?> function) {
+        try {
+            Method isOneway = AsyncProcessFunction.class.getDeclaredMethod("isOneway");
+            isOneway.setAccessible(true);
+            return (boolean) isOneway.invoke(function);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot tell whether " + function.getMethodName() + " is oneway", e);
+        }
+    }
+
+    // getResultHandler of libthrift 0.9.3 returns a raw callback, it completes with the function's result type
+    @SuppressWarnings("unchecked")
+    static <R> AsyncMethodCallback<R> resultHandler(AsyncProcessFunction<?, ?, R> function, AsyncFrameBuffer fb,
+                                                    int seqid) {
+        return function.getResultHandler(fb, seqid);
+    }
+
+    private static final class LimitedFunction<I, T, R> extends AsyncProcessFunction<I, T, R> {
+        private final AsyncProcessFunction<I, T, R> function;
+        private final ConcurrencyLimiter limiter;
+        private final boolean oneway;
+
+        LimitedFunction(AsyncProcessFunction<I, T, R> function, ConcurrencyLimiter limiter) {
+            super(function.getMethodName());
+            this.function = function;
+            this.limiter = limiter;
+            this.oneway = oneway(function);
+        }
+
+        @Override
+        protected boolean isOneway() {
+            return oneway;
+        }
+
+        @Override
+        public T getEmptyArgsInstance() {
+            return function.getEmptyArgsInstance();
+        }
+
+        @Override
+        public AsyncMethodCallback<R> getResultHandler(AsyncFrameBuffer fb, int seqid) {
+            return new Admission<>(fb, seqid, resultHandler(function, fb, seqid), limiter);
+        }
+
+        // the processor hands start the handler getResultHandler returned
+        @Override
+        public void start(I iface, T args, AsyncMethodCallback<R> resultHandler) throws TException {
+            Admission<R> admission = (Admission<R>) resultHandler;
+            admission.start = limiter.tryAcquire();
+            if (admission.start == ConcurrencyLimiter.REJECTED) {
+                if (!oneway) {
+                    TProtocol out = admission.fb.getOutputProtocol();
+                    out.writeMessageBegin(new TMessage(getMethodName(), TMessageType.EXCEPTION, admission.seqid));
+                    ConcurrencyLimitProcessor.shed().write(out);
+                    out.writeMessageEnd();
+                    out.getTransport().flush();
+                }
+                // an empty response puts the connection back to reading
+                admission.fb.responseReady();
+                return;
+            }
+            try {
+                function.start(iface, args, admission);
+            } catch (TException | RuntimeException e) {
+                admission.releaseIgnored();
+                throw e;
+            } finally {
+                if (oneway) {
+                    admission.releaseIgnored();
+                    admission.fb.responseReady();
+                }
+            }
+        }
+    }
+
+    private static final class Admission<R> implements AsyncMethodCallback<R> {
+        final AsyncFrameBuffer fb;
+        final int seqid;
+        private final AsyncMethodCallback<R> resultHandler;
+        private final ConcurrencyLimiter limiter;
+        // the handler may complete a call start already released
+        private final AtomicBoolean released = new AtomicBoolean();
+        long start;
+
+        Admission(AsyncFrameBuffer fb, int seqid, AsyncMethodCallback<R> resultHandler, ConcurrencyLimiter limiter) {
+            this.fb = fb;
+            this.seqid = seqid;
+            this.resultHandler = resultHandler;
+            this.limiter = limiter;
+        }
+
+        @Override
+        public void onComplete(R response) {
+            if (released.compareAndSet(false, true)) {
+                limiter.release(start);
+            }
+            resultHandler.onComplete(response);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            releaseIgnored();
+            resultHandler.onError(e);
+        }
+
+        void releaseIgnored() {
+            if (released.compareAndSet(false, true)) {
+                limiter.releaseIgnored(start);
+            }
+        }
+    }
+}
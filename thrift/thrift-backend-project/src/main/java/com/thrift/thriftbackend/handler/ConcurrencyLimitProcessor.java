@@ -0,0 +1,79 @@
+package com.thrift.thriftbackend.handler;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.protocol.TMessage;
+import org.apache.thrift.protocol.TMessageType;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.protocol.TProtocolDecorator;
+import org.apache.thrift.protocol.TProtocolUtil;
+import org.apache.thrift.protocol.TType;
+
+/**
+ * Adaptive concurrency limit in front of the sync processor: the message header is read first, and a call over the
+ * limit has its arguments skipped and is answered with a {@link TApplicationException} without reaching the
+ * handler, its quota or its delay; a oneway call over the limit is dropped. An admitted call is released when the
+ * processor returns, and its time counts towards the latency the limit follows unless it threw.
+ *
+ * @author phonghv
+ */
+public class ConcurrencyLimitProcessor implements TProcessor {
+
+    private final TProcessor delegate;
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitProcessor(TProcessor delegate, ConcurrencyLimiter limiter) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean process(TProtocol in, TProtocol out) throws TException {
+        TMessage message = in.readMessageBegin();
+        long start = limiter.tryAcquire();
+        if (start == ConcurrencyLimiter.REJECTED) {
+            TProtocolUtil.skip(in, TType.STRUCT);
+            in.readMessageEnd();
+            if (message.type != TMessageType.ONEWAY) {
+                out.writeMessageBegin(new TMessage(message.name, TMessageType.EXCEPTION, message.seqid));
+                shed().write(out);
+                out.writeMessageEnd();
+                out.getTransport().flush();
+            }
+            return true;
+        }
+        boolean completed = false;
+        try {
+            boolean result = delegate.process(new ReadMessage(in, message), out);
+            completed = true;
+            return result;
+        } finally {
+            if (completed) {
+                limiter.release(start);
+            } else {
+                limiter.releaseIgnored(start);
+            }
+        }
+    }
+
+    static TApplicationException shed() {
+        return new TApplicationException(TApplicationException.INTERNAL_ERROR, ConcurrencyLimiter.ERROR_MESSAGE);
+    }
+
+    // hands the processor the header already read from the wire
+    private static final class ReadMessage extends TProtocolDecorator {
+        private final TMessage message;
+
+        ReadMessage(TProtocol protocol, TMessage message) {
+            super(protocol);
+            this.message = message;
+        }
+
+        @Override
+        public TMessage readMessageBegin() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.thrift.thriftbackend.handler;
+
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
+import com.thrift.thriftbackend.MessageResponse;
+import com.thrift.thriftbackend.Quota;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Response factory shared by the blocking and async handlers.
+ *
+ * @author phonghv
+ */
+final class MessageResponses {
+
+    // a batch over thrift.batch.maxSize, as HTTP's 413 Content Too Large
+    static final int BATCH_TOO_LARGE = 413;
+
+    private MessageResponses() {
+    }
+
+    static MessageResponse success(String msgId, int dailyQuota, int remainingQuota, int contentLength) {
+        long now = System.currentTimeMillis();
+
+        return new MessageResponse()
+                .setError(0)
+                .setMessage("Success")
+                .setMsgId(msgId)
+                .setSendTime(now)
+                .setSendingMode("1")
+                .setQuota(quota(dailyQuota, remainingQuota))
+                .setContentLength(contentLength);
+    }
+
+    static MessageResponse quotaExceeded(int dailyQuota) {
+        return new MessageResponse(QuotaStore.ERROR_CODE, QuotaStore.ERROR_MESSAGE)
+                .setQuota(quota(dailyQuota, 0));
+    }
+
+    static MessageResponse templateNotFound() {
+        return new MessageResponse(TemplateEngine.ERROR_CODE, TemplateEngine.ERROR_MESSAGE);
+    }
+
+    static MessageResponse rateLimited() {
+        return new MessageResponse(RateLimiter.ERROR_CODE, RateLimiter.ERROR_MESSAGE);
+    }
+
+    static MessageResponse deadlineExceeded() {
+        return new MessageResponse(Deadlines.ERROR_CODE, Deadlines.ERROR_MESSAGE);
+    }
+
+    /**
+     * The answer to each message of a rejected batch, so that the responses still line up with the request.
+     */
+    static List<MessageResponse> batchTooLarge(int size, int maxSize) {
+        MessageResponse response = new MessageResponse(BATCH_TOO_LARGE,
+                "Batch of " + size + " messages is larger than " + maxSize);
+        return Collections.nCopies(size, response);
+    }
+
+    private static Quota quota(int dailyQuota, int remainingQuota) {
+        return new Quota()
+                .setDailyQuota(String.valueOf(dailyQuota))
+                .setRemainingQuota(String.valueOf(remainingQuota));
+    }
+
+    static MessageResponse error(Throwable e) {
+        return new MessageResponse(1, "Error processing request: " + e.getMessage());
+    }
+}
@@ -1,20 +1,43 @@
 package com.thrift.thriftbackend.handler;
 
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.id.MsgIdGenerator;
+import com.benchmark.common.idempotency.IdempotencyCache;
+import com.benchmark.common.journal.MessageJournal;
+import com.benchmark.common.latency.SimulatedLatency;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
 import com.thrift.thriftbackend.Message;
 import com.thrift.thriftbackend.MessageResponse;
 import com.thrift.thriftbackend.MessageService;
-import com.thrift.thriftbackend.Quota;
+import com.thrift.thriftbackend.config.ThriftStack;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.util.Random;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Message sends over Thrift. The {@code timeoutMillis} of a message is the caller's deadline, followed through
+ * {@link Deadlines}: an expired message is not started, and its simulated delay is cut short at the deadline,
+ * giving its quota back.
+ * <p>
+ * A batch fans out to virtual threads, at most {@code thrift.batch.maxInFlight} messages at a time across all
+ * batches; a batch of more than {@code thrift.batch.maxSize} messages is rejected whole.
  *
  * @author phonghv
  */
@@ -22,79 +45,207 @@ import java.util.UUID;
 public class MessageServiceHandler implements MessageService.Iface {
 
     private static final Logger logger = LoggerFactory.getLogger(MessageServiceHandler.class);
-    private final Random random = new Random();
+    private final SimulatedLatency simulatedLatency;
+    private final MsgIdGenerator msgIdGenerator;
+    private final QuotaStore quotaStore;
+    private final TemplateEngine templateEngine;
+    private final IdempotencyCache<MessageResponse> idempotencyCache;
+    private final MessageJournal journal;
+    private final RateLimiter rateLimiter;
+    private final Deadlines deadlines;
     private final Counter sendMessageCounter;
     private final Counter sendMessageNoDelayCounter;
+    // batch fan-out, one virtual thread per message while a slot is free
+    private final ExecutorService batchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore batchSlots;
+    private final int batchMaxSize;
 
-    public MessageServiceHandler(MeterRegistry meterRegistry) {
+    public MessageServiceHandler(MeterRegistry meterRegistry, SimulatedLatency simulatedLatency,
+                                 MsgIdGenerator msgIdGenerator, QuotaStore quotaStore, TemplateEngine templateEngine,
+                                 IdempotencyCache<MessageResponse> idempotencyCache, MessageJournal journal,
+                                 RateLimiter rateLimiter, Deadlines deadlines,
+                                 ThriftStack thriftStack,
+                                 @Value("${thrift.batch.maxInFlight:256}") int batchMaxInFlight,
+                                 @Value("${thrift.batch.maxSize:1000}") int batchMaxSize) {
+        this.simulatedLatency = simulatedLatency;
+        this.msgIdGenerator = msgIdGenerator;
+        this.quotaStore = quotaStore;
+        this.templateEngine = templateEngine;
+        this.idempotencyCache = idempotencyCache;
+        this.journal = journal;
+        this.rateLimiter = rateLimiter;
+        this.deadlines = deadlines;
+        this.batchSlots = new Semaphore(Math.max(1, batchMaxInFlight));
+        this.batchMaxSize = batchMaxSize;
         this.sendMessageCounter = Counter.builder("message_service_send_total")
                 .description("Số lần gọi sendMessage()")
                 .tag("method", "sendMessage")
+                .tag("protocol", thriftStack.protocol())
                 .register(meterRegistry);
 
         this.sendMessageNoDelayCounter = Counter.builder("message_service_send_no_delay_total")
                 .description("Số lần gọi sendMessageNoRandomDelay()")
                 .tag("method", "sendMessageNoRandomDelay")
+                .tag("protocol", thriftStack.protocol())
                 .register(meterRegistry);
     }
 
+    @PreDestroy
+    void shutdown() {
+        batchExecutor.shutdownNow();
+    }
+
     @Override
     public MessageResponse sendMessage(Message message) throws TException {
+        return send(message);
+    }
+
+    // every message of a batch is checked on its own, like a single call
+    private MessageResponse send(Message message) {
         try {
-            simulateDelay();
-            String msgId = UUID.randomUUID().toString().substring(0, 20);
-            long now = System.currentTimeMillis();
-
-            return new MessageResponse()
-                    .setError(0)
-                    .setMessage("Success")
-                    .setMsgId(msgId)
-                    .setSendTime(now)
-                    .setSendingMode("1")
-                    .setQuota(new Quota()
-                            .setDailyQuota("500")
-                            .setRemainingQuota("499"));
+            if (!rateLimiter.tryAcquire(message.getPhone(), message.getTemplateId())) {
+                return MessageResponses.rateLimited();
+            }
+            long deadline = deadline(message);
+            return idempotencyCache.execute(message.getTrackingId(),
+                    () -> sendOnce(message, deadline, simulatedLatency::sleep));
         } catch (Exception e) {
             logger.error("Error processing sendMessage request: {}", e.getMessage(), e);
-            return new MessageResponse(1, "Error processing request: " + e.getMessage());
+            return MessageResponses.error(e);
         } finally {
             sendMessageCounter.increment();
         }
     }
 
-    private void simulateDelay() throws InterruptedException {
-        double p = random.nextDouble();
-        long delay;
-        if (p < 0.95) delay = 100 + random.nextInt(400);
-        else if (p < 0.98) delay = 500 + random.nextInt(500);
-        else if (p < 0.9995) delay = 1000 + random.nextInt(2000);
-        else delay = 3001 + random.nextInt(2000);
-        Thread.sleep(delay);
-    }
-
     @Override
     public MessageResponse sendMessageNoRandomDelay(Message message) throws TException {
         try {
+            if (!rateLimiter.tryAcquire(message.getPhone(), message.getTemplateId())) {
+                return MessageResponses.rateLimited();
+            }
+            long deadline = deadline(message);
             // delay for 10 milliseconds
-            Thread.sleep(10);
-
-            String msgId = UUID.randomUUID().toString().substring(0, 20);
-            long now = System.currentTimeMillis();
-
-            return new MessageResponse()
-                    .setError(0)
-                    .setMessage("Success")
-                    .setMsgId(msgId)
-                    .setSendTime(now)
-                    .setSendingMode("1")
-                    .setQuota(new Quota()
-                            .setDailyQuota("500")
-                            .setRemainingQuota("499"));
+            return idempotencyCache.execute(message.getTrackingId(),
+                    () -> sendOnce(message, deadline, (deadlines, at) -> deadlines.sleep(10, at)));
         } catch (Exception e) {
             logger.error("Error processing sendMessageNoRandomDelay request: {}", e.getMessage(), e);
-            return new MessageResponse(1, "Error processing request: " + e.getMessage());
+            return MessageResponses.error(e);
         } finally {
             sendMessageNoDelayCounter.increment();
         }
     }
+
+    /**
+     * One message, without the idempotency check: rendered, counted against the quota, then delayed.
+     */
+    private MessageResponse sendOnce(Message message, long deadline, Delay delay) throws InterruptedException {
+        if (deadlines.skip(deadline)) {
+            return MessageResponses.deadlineExceeded();
+        }
+        int contentLength = templateEngine.render(message.getTemplateId(), message.getTemplateData());
+        if (contentLength == TemplateEngine.NOT_FOUND) {
+            return MessageResponses.templateNotFound();
+        }
+        int remainingQuota = quotaStore.tryAcquire(message.getPhone(), message.getTemplateId());
+        if (remainingQuota == QuotaStore.REJECTED) {
+            return MessageResponses.quotaExceeded(quotaStore.dailyLimit());
+        }
+        if (!delay.apply(deadlines, deadline)) {
+            quotaStore.release(message.getPhone(), message.getTemplateId());
+            return MessageResponses.deadlineExceeded();
+        }
+        String msgId = msgIdGenerator.next();
+        journal.append(msgId, message.getPhone(), message.getTemplateId(), message.getTrackingId(),
+                message.getTemplateData());
+        deadlines.completed(deadline);
+        return MessageResponses.success(msgId, quotaStore.dailyLimit(), remainingQuota, contentLength);
+    }
+
+    @Override
+    public List<MessageResponse> sendMessages(List<Message> messages) throws TException {
+        if (messages == null || messages.isEmpty()) {
+            return List.of();
+        }
+        if (messages.size() > batchMaxSize) {
+            return MessageResponses.batchTooLarge(messages.size(), batchMaxSize);
+        }
+        List<Future<MessageResponse>> futures = new ArrayList<>(messages.size());
+        try {
+            for (Message message : messages) {
+                futures.add(submit(message));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(f -> f.cancel(true));
+            throw new TException("Interrupted while processing sendMessages batch", e);
+        }
+
+        List<MessageResponse> responses = new ArrayList<>(futures.size());
+        for (Future<MessageResponse> future : futures) {
+            try {
+                responses.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new TException("Interrupted while processing sendMessages batch", e);
+            } catch (ExecutionException e) {
+                logger.error("Error processing sendMessages request: {}", e.getCause().getMessage(), e.getCause());
+                responses.add(MessageResponses.error(e.getCause()));
+            }
+        }
+        return responses;
+    }
+
+    @Override
+    public void sendMessagesOneway(List<Message> messages) {
+        if (messages == null) {
+            return;
+        }
+        if (messages.size() > batchMaxSize) {
+            logger.warn("Dropped sendMessagesOneway batch of {} messages, more than {}", messages.size(),
+                    batchMaxSize);
+            return;
+        }
+        try {
+            for (Message message : messages) {
+                submit(message);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts one message of a batch once a slot is free, so a full server holds the batch's caller instead of
+     * starting yet more threads.
+     */
+    private Future<MessageResponse> submit(Message message) throws InterruptedException {
+        batchSlots.acquire();
+        try {
+            return batchExecutor.submit(() -> {
+                try {
+                    return send(message);
+                } finally {
+                    batchSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            batchSlots.release();
+            throw e;
+        }
+    }
+
+    private long deadline(Message message) {
+        return message.isSetTimeoutMillis()
+                ? deadlines.after(message.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+                : Deadlines.NONE;
+    }
+
+    @FunctionalInterface
+    private interface Delay {
+        /**
+         * @return {@code false} when cut short at {@code deadline}
+         */
+        boolean apply(Deadlines deadlines, long deadline) throws InterruptedException;
+    }
 }
@@ -0,0 +1,89 @@
+package com.thrift.thriftbackend.handler;
+
+import org.apache.thrift.AsyncProcessFunction;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TBaseAsyncProcessor;
+import org.apache.thrift.TException;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.server.AbstractNonblockingServer.AsyncFrameBuffer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Async processor whose oneway functions hand the connection back to the selector as soon as they are started.
+ * {@link TBaseAsyncProcessor} of 0.9.3 leaves that to the result handler, and the generated oneway result handlers
+ * do nothing, so without this the first oneway call leaves its connection waiting for a response that never comes
+ * and every later call on it hangs.
+ *
+ * @author phonghv
+ */
+public class OnewayAsyncProcessor<I> extends TBaseAsyncProcessor<I> {
+
+    /**
+     * @param delegate the generated processor of {@code iface}, e.g. {@code new MessageService.AsyncProcessor<>(iface)}
+     */
+    public OnewayAsyncProcessor(I iface, TBaseAsyncProcessor<I> delegate) {
+        super(iface, wrap(delegate.getProcessMapView()));
+    }
+
+    // the process map of libthrift 0.9.3 is typed with the raw TBase
+    @SuppressWarnings("rawtypes")
+    private static <I> Map<String, AsyncProcessFunction<I, ? extends TBase, ?>> wrap(
+            Map<String, AsyncProcessFunction<I, ? extends TBase, ?>> functions) {
+        Map<String, AsyncProcessFunction<I, ? extends TBase, ?>> wrapped = new HashMap<>();
+        functions.forEach((name, function) -> wrapped.put(name,
+                ConcurrencyLimitAsyncProcessor.oneway(function) ? new OnewayFunction<>(function) : function));
+        return wrapped;
+    }
+
+    private static final class OnewayFunction<I, T, R> extends AsyncProcessFunction<I, T, R> {
+        private final AsyncProcessFunction<I, T, R> function;
+
+        OnewayFunction(AsyncProcessFunction<I, T, R> function) {
+            super(function.getMethodName());
+            this.function = function;
+        }
+
+        @Override
+        protected boolean isOneway() {
+            return true;
+        }
+
+        @Override
+        public T getEmptyArgsInstance() {
+            return function.getEmptyArgsInstance();
+        }
+
+        @Override
+        public AsyncMethodCallback<R> getResultHandler(AsyncFrameBuffer fb, int seqid) {
+            return new Started<>(fb, ConcurrencyLimitAsyncProcessor.resultHandler(function, fb, seqid));
+        }
+
+        // the processor hands start the handler getResultHandler returned
+        @Override
+        public void start(I iface, T args, AsyncMethodCallback<R> resultHandler) throws TException {
+            Started<R> started = (Started<R>) resultHandler;
+            try {
+                function.start(iface, args, started.resultHandler);
+            } finally {
+                // nothing is written back, the connection goes back to reading
+                started.fb.responseReady();
+            }
+        }
+    }
+
+    private record Started<R>(AsyncFrameBuffer fb, AsyncMethodCallback<R> resultHandler)
+            implements AsyncMethodCallback<R> {
+
+        @Override
+        public void onComplete(R response) {
+            resultHandler.onComplete(response);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            resultHandler.onError(e);
+        }
+    }
+}
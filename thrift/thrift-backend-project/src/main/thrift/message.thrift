@@ -4,7 +4,10 @@ struct Message {
   1: required string phone,
   2: required string templateId,
   3: optional map<string, string> templateData,
-  4: optional string trackingId
+  4: optional string trackingId,
+  // milliseconds the caller waits for the response, counted from when the server handles the message;
+  // unset or 0: no deadline
+  5: optional i64 timeoutMillis
 }
 
 struct Quota {
@@ -18,10 +21,16 @@ struct MessageResponse {
   3: optional string msgId,
   4: optional i64 sendTime,
   5: optional string sendingMode,
-  6: optional Quota quota
+  6: optional Quota quota,
+  // characters of the text rendered from templateId and templateData
+  7: optional i32 contentLength
 }
 
 service MessageService {
   MessageResponse sendMessage(1: Message message);
   MessageResponse sendMessageNoRandomDelay(1: Message message);
+  // batch of sendMessage calls in one frame, responses in request order
+  list<MessageResponse> sendMessages(1: list<Message> messages);
+  // fire-and-forget batch, the server does not send a reply frame
+  oneway void sendMessagesOneway(1: list<Message> messages);
 }
\ No newline at end of file
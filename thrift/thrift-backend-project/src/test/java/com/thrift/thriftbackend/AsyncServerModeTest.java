@@ -0,0 +1,87 @@
+package com.thrift.thriftbackend;
+
+import com.thrift.thriftbackend.client.MessageServiceClient;
+import com.benchmark.common.quota.QuotaStore;
+import org.apache.thrift.TException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@SpringBootTest(properties = {
+        "thrift.server.mode=async",
+        "thrift.server.host=localhost",
+        "thrift.server.port=9093",
+        "thrift.client.pool.minIdle=0",
+        "quota.enabled=true",
+        "quota.dailyLimit=10",
+        // the calls go straight to a pooled connection, keep every delay well within its 3 s read timeout
+        "latency.buckets=1:100-500"
+})
+class AsyncServerModeTest {
+
+    @Autowired
+    MessageServiceClient client;
+
+    @Test
+    void test_roundTrip() throws TException, InterruptedException {
+        MessageServiceClient.ClientConnection conn = client.getClient();
+        try {
+            Message msg = new Message().setPhone("84987654321").setTemplateId("7895417a7d3f9461cd2e");
+            MessageResponse resp = conn.client().sendMessageNoRandomDelay(msg);
+            Assertions.assertEquals(0, resp.getError());
+            Assertions.assertEquals(20, resp.getMsgId().length());
+
+            resp = conn.client().sendMessage(msg);
+            Assertions.assertEquals(0, resp.getError());
+
+            List<MessageResponse> batch = conn.client().sendMessages(List.of(msg, msg, msg));
+            Assertions.assertEquals(3, batch.size());
+            batch.forEach(r -> Assertions.assertEquals(0, r.getError()));
+        } finally {
+            client.releaseConnection(conn);
+        }
+    }
+
+    @Test
+    void test_quotaExceeded() throws TException, InterruptedException {
+        MessageServiceClient.ClientConnection conn = client.getClient();
+        try {
+            List<Message> messages = new ArrayList<>();
+            for (int i = 0; i < 11; i++) {
+                messages.add(new Message().setPhone("84900000009").setTemplateId("7895417a7d3f9461cd2e"));
+            }
+            List<MessageResponse> batch = conn.client().sendMessages(messages);
+            Assertions.assertEquals(10, batch.stream().filter(r -> r.getError() == 0).count());
+            Assertions.assertEquals(1, batch.stream().filter(r -> r.getError() == QuotaStore.ERROR_CODE).count());
+
+            MessageResponse resp = conn.client().sendMessageNoRandomDelay(messages.get(0));
+            Assertions.assertEquals(QuotaStore.ERROR_CODE, resp.getError());
+            Assertions.assertEquals(QuotaStore.ERROR_MESSAGE, resp.getMessage());
+            Assertions.assertEquals("10", resp.getQuota().getDailyQuota());
+            Assertions.assertEquals("0", resp.getQuota().getRemainingQuota());
+        } finally {
+            client.releaseConnection(conn);
+        }
+    }
+
+    @Test
+    void test_onewayCallsLeaveTheConnectionUsable() throws TException, InterruptedException {
+        MessageServiceClient.ClientConnection conn = client.getClient();
+        try {
+            Message msg = new Message().setPhone("84900000010").setTemplateId("7895417a7d3f9461cd2e");
+            // all three on the same connection: each oneway call must hand it back to the selector
+            conn.client().sendMessagesOneway(List.of(msg));
+            conn.client().sendMessagesOneway(List.of(msg));
+            MessageResponse resp = Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10),
+                    () -> conn.client().sendMessageNoRandomDelay(msg));
+            Assertions.assertEquals(0, resp.getError());
+        } finally {
+            client.releaseConnection(conn);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.thrift.thriftbackend;
+
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.template.TemplateEngine;
+import com.thrift.thriftbackend.client.AsyncMessageServiceClient;
+import com.thrift.thriftbackend.client.MessageServiceClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@SpringBootTest(properties = {
+        "thrift.protocol=compact",
+        "thrift.transport=fast-framed",
+        "thrift.server.host=localhost",
+        "thrift.server.port=9094",
+        "thrift.client.pool.minIdle=0",
+        "quota.enabled=true",
+        "quota.dailyLimit=3",
+        "thrift.batch.maxSize=4",
+        "thrift.batch.maxInFlight=2",
+        // batches wait for their slowest message, keep it well within the 3 s client timeout
+        "latency.buckets=1:100-500"
+})
+class CompactProtocolTest {
+
+    @Autowired
+    MessageServiceClient client;
+
+    @Autowired
+    AsyncMessageServiceClient asyncClient;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void test_roundTrip() throws Exception {
+        Message msg = new Message().setPhone("84987654321").setTemplateId("7895417a7d3f9461cd2e");
+        double sentBefore = noDelayCount();
+
+        MessageResponse resp = client.sendMessageNoRandomDelay(msg);
+        Assertions.assertEquals(0, resp.getError());
+        Assertions.assertEquals(20, resp.getMsgId().length());
+        Assertions.assertTrue(resp.getContentLength() > 0);
+        // the client's timeout goes out on a copy
+        Assertions.assertFalse(msg.isSetTimeoutMillis());
+
+        resp = asyncClient.sendMessageNoRandomDelay(msg).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(0, resp.getError());
+
+        Assertions.assertEquals(2, noDelayCount() - sentBefore);
+    }
+
+    @Test
+    void test_quotaExceeded() throws Exception {
+        Message msg = new Message().setPhone("84900000009").setTemplateId("7895417a7d3f9461cd2e");
+        for (int remaining = 2; remaining >= 0; remaining--) {
+            MessageResponse resp = client.sendMessageNoRandomDelay(msg);
+            Assertions.assertEquals(0, resp.getError());
+            Assertions.assertEquals(String.valueOf(remaining), resp.getQuota().getRemainingQuota());
+        }
+
+        MessageResponse resp = client.sendMessageNoRandomDelay(msg);
+        Assertions.assertEquals(QuotaStore.ERROR_CODE, resp.getError());
+        Assertions.assertEquals("3", resp.getQuota().getDailyQuota());
+        Assertions.assertEquals("0", resp.getQuota().getRemainingQuota());
+    }
+
+    @Test
+    void test_templateNotFound() throws Exception {
+        // rejected before the simulated downstream and without counting quota
+        Message msg = new Message().setPhone("84900000010").setTemplateId("no-such-template");
+        MessageResponse resp = client.sendMessage(msg);
+        Assertions.assertEquals(TemplateEngine.ERROR_CODE, resp.getError());
+        Assertions.assertEquals(TemplateEngine.ERROR_MESSAGE, resp.getMessage());
+
+        resp = asyncClient.sendMessage(msg).get(5, TimeUnit.SECONDS);
+        Assertions.assertEquals(TemplateEngine.ERROR_CODE, resp.getError());
+    }
+
+    @Test
+    void test_retriedMessage() throws Exception {
+        Message msg = new Message().setPhone("84900000011").setTemplateId("otp").setTrackingId("retry-1");
+        MessageResponse first = client.sendMessageNoRandomDelay(msg);
+        Assertions.assertEquals(0, first.getError());
+
+        // a retry from either client gets the original response, without using quota
+        Assertions.assertEquals(first, client.sendMessageNoRandomDelay(msg));
+        Assertions.assertEquals(first, asyncClient.sendMessage(msg).get(5, TimeUnit.SECONDS));
+
+        MessageResponse other = client.sendMessageNoRandomDelay(msg.deepCopy().setTrackingId("retry-2"));
+        Assertions.assertNotEquals(first.getMsgId(), other.getMsgId());
+        Assertions.assertEquals("1", other.getQuota().getRemainingQuota());
+    }
+
+    @Test
+    void test_batchLimits() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            messages.add(new Message().setPhone("8490000002" + i).setTemplateId("otp"));
+        }
+        // over maxSize: every message is answered 413 without being sent
+        List<MessageResponse> rejected = client.sendMessages(messages);
+        Assertions.assertEquals(5, rejected.size());
+        rejected.forEach(r -> Assertions.assertEquals(413, r.getError()));
+
+        // maxInFlight only queues the fan-out, every message of the batch is still sent
+        List<MessageResponse> sent = client.sendMessages(messages.subList(0, 4));
+        Assertions.assertEquals(4, sent.size());
+        sent.forEach(r -> Assertions.assertEquals(0, r.getError()));
+        Assertions.assertEquals("2", sent.get(0).getQuota().getRemainingQuota());
+    }
+
+    private double noDelayCount() {
+        return meterRegistry.get("message_service_send_no_delay_total")
+                .tag("protocol", "compact")
+                .counter()
+                .count();
+    }
+}
@@ -0,0 +1,152 @@
+package com.thrift.thriftbackend;
+
+import com.benchmark.common.concurrency.ConcurrencyLimiter;
+import com.thrift.thriftbackend.config.ThriftServerEngine;
+import com.thrift.thriftbackend.config.ThriftStack;
+import com.thrift.thriftbackend.handler.AsyncMessageServiceHandler;
+import com.thrift.thriftbackend.handler.ConcurrencyLimitAsyncProcessor;
+import com.thrift.thriftbackend.handler.ConcurrencyLimitProcessor;
+import com.thrift.thriftbackend.handler.MessageServiceHandler;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.TProcessor;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest(properties = {
+        "thrift.server.enabled=false",
+        "quota.enabled=false",
+        "idempotency.enabled=false"
+})
+class ConcurrencyLimitTest {
+
+    @Autowired
+    MessageServiceHandler handler;
+
+    @Autowired
+    AsyncMessageServiceHandler asyncHandler;
+
+    @Autowired
+    ThriftStack thriftStack;
+
+    private int port;
+
+    @Test
+    void syncProcessor_shedsCallsOverTheLimit() throws Exception {
+        ConcurrencyLimiter limiter = limiter();
+        assertShedsOverTheLimit(limiter,
+                new ConcurrencyLimitProcessor(new MessageService.Processor<>(handler), limiter), false);
+    }
+
+    @Test
+    void asyncProcessor_shedsCallsOverTheLimit() throws Exception {
+        ConcurrencyLimiter limiter = limiter();
+        assertShedsOverTheLimit(limiter, new ConcurrencyLimitAsyncProcessor<>(asyncHandler,
+                new MessageService.AsyncProcessor<>(asyncHandler), limiter), true);
+    }
+
+    @Test
+    void asyncProcessor_releasesOnewayCallsWhenStarted() throws Exception {
+        ConcurrencyLimiter limiter = limiter();
+        // a oneway handler that never completes its callback, the AsyncIface of libthrift 0.9.3 takes raw callbacks
+        @SuppressWarnings("rawtypes")
+        MessageService.AsyncIface iface = new MessageService.AsyncIface() {
+            @Override
+            public void sendMessage(Message message, AsyncMethodCallback resultHandler) {
+                asyncHandler.sendMessage(message, resultHandler);
+            }
+
+            @Override
+            public void sendMessageNoRandomDelay(Message message, AsyncMethodCallback resultHandler) {
+                asyncHandler.sendMessageNoRandomDelay(message, resultHandler);
+            }
+
+            @Override
+            public void sendMessages(List<Message> messages, AsyncMethodCallback resultHandler) {
+                asyncHandler.sendMessages(messages, resultHandler);
+            }
+
+            @Override
+            public void sendMessagesOneway(List<Message> messages, AsyncMethodCallback resultHandler) {
+            }
+        };
+        TProcessor processor = new ConcurrencyLimitAsyncProcessor<>(iface, new MessageService.AsyncProcessor<>(iface),
+                limiter);
+        TServer server = start(processor, true);
+        TTransport transport = thriftStack.transportFactory().getTransport(new TSocket("localhost", port, 10_000));
+        try {
+            transport.open();
+            MessageService.Client client = new MessageService.Client(thriftStack.protocolFactory().getProtocol(transport));
+            Message message = new Message().setPhone("84987654321").setTemplateId("7895417a7d3f9461cd2e");
+
+            // more oneway calls than the limit of 1, one after another
+            for (int i = 0; i < 5; i++) {
+                client.sendMessagesOneway(List.of(message));
+            }
+            assertEquals(0, client.sendMessageNoRandomDelay(message).getError());
+            assertEquals(0, limiter.inFlight());
+            assertEquals(0, limiter.rejected());
+        } finally {
+            transport.close();
+            server.stop();
+        }
+    }
+
+    private static ConcurrencyLimiter limiter() {
+        return new ConcurrencyLimiter(true, 1, 1, 1, 2.0, 0.2, 500, 20, 60, System::nanoTime);
+    }
+
+    private TServer start(TProcessor processor, boolean async) throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        TServer server = ThriftServerEngine.of("threaded-selector", "pool", 4, 1, 32, 0)
+                .create(new InetSocketAddress("localhost", port), processor, async, thriftStack);
+        Thread serverThread = new Thread(server::serve, "concurrency-limit-test-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        while (!server.isServing()) {
+            Thread.sleep(10);
+        }
+        return server;
+    }
+
+    private void assertShedsOverTheLimit(ConcurrencyLimiter limiter, TProcessor processor, boolean async)
+            throws Exception {
+        TServer server = start(processor, async);
+        TTransport transport = thriftStack.transportFactory().getTransport(new TSocket("localhost", port, 10_000));
+        try {
+            transport.open();
+            MessageService.Client client = new MessageService.Client(thriftStack.protocolFactory().getProtocol(transport));
+            Message message = new Message().setPhone("84987654321").setTemplateId("7895417a7d3f9461cd2e");
+
+            // the only slot is taken by a call in flight
+            long inFlight = limiter.tryAcquire();
+            TApplicationException e = assertThrows(TApplicationException.class,
+                    () -> client.sendMessageNoRandomDelay(message));
+            assertEquals(ConcurrencyLimiter.ERROR_MESSAGE, e.getMessage());
+            // a dropped oneway call leaves the connection usable
+            client.sendMessagesOneway(List.of(message));
+            assertThrows(TApplicationException.class, () -> client.sendMessages(List.of(message)));
+
+            limiter.release(inFlight);
+            assertEquals(0, client.sendMessageNoRandomDelay(message).getError());
+            assertEquals(0, limiter.inFlight());
+            assertEquals(3, limiter.rejected());
+        } finally {
+            transport.close();
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.thrift.thriftbackend;
+
+import com.benchmark.common.deadline.Deadlines;
+import com.thrift.thriftbackend.handler.AsyncMessageServiceHandler;
+import com.thrift.thriftbackend.handler.MessageServiceHandler;
+import org.apache.thrift.async.AsyncMethodCallback;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "thrift.server.enabled=false",
+        "latency.model=fixed",
+        "latency.fixed.millis=5000",
+        "quota.enabled=true",
+        "idempotency.enabled=false"
+})
+class DeadlineTest {
+
+    @Autowired
+    MessageServiceHandler handler;
+
+    @Autowired
+    AsyncMessageServiceHandler asyncHandler;
+
+    @Test
+    void syncHandler_cutsTheDelayShortAndGivesTheQuotaBack() throws Exception {
+        long start = System.nanoTime();
+        MessageResponse expired = handler.sendMessage(message("84900000061").setTimeoutMillis(100));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(Deadlines.ERROR_CODE, expired.getError());
+        assertEquals(Deadlines.ERROR_MESSAGE, expired.getMessage());
+
+        MessageResponse sent = handler.sendMessageNoRandomDelay(message("84900000061"));
+        assertEquals(0, sent.getError());
+        assertEquals("499", sent.getQuota().getRemainingQuota());
+    }
+
+    @Test
+    void asyncHandler_answersAtTheDeadlineAndGivesTheQuotaBack() throws Exception {
+        long start = System.nanoTime();
+        MessageResponse expired = call(true, message("84900000062").setTimeoutMillis(100));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+        assertEquals(Deadlines.ERROR_CODE, expired.getError());
+
+        MessageResponse sent = call(false, message("84900000062"));
+        assertEquals(0, sent.getError());
+        assertEquals("499", sent.getQuota().getRemainingQuota());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private MessageResponse call(boolean randomDelay, Message message) throws Exception {
+        CompletableFuture<MessageResponse> response = new CompletableFuture<>();
+        AsyncMethodCallback callback = new AsyncMethodCallback<MessageResponse>() {
+            @Override
+            public void onComplete(MessageResponse value) {
+                response.complete(value);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                response.completeExceptionally(e);
+            }
+        };
+        if (randomDelay) {
+            asyncHandler.sendMessage(message, callback);
+        } else {
+            asyncHandler.sendMessageNoRandomDelay(message, callback);
+        }
+        return response.get(10, TimeUnit.SECONDS);
+    }
+
+    private static Message message(String phone) {
+        return new Message().setPhone(phone).setTemplateId("7895417a7d3f9461cd2e");
+    }
+}
@@ -0,0 +1,215 @@
+package com.thrift.thriftbackend;
+
+import com.thrift.thriftbackend.client.MessageServiceClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TServerSocket;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "thrift.server.enabled=false",
+        "thrift.client.endpoints=localhost:9096,localhost:9097",
+        "thrift.client.pool.minIdle=0",
+        "thrift.client.lb.consecutiveFailures=3",
+        "thrift.client.lb.latencyFactor=3.0",
+        "thrift.client.lb.minRequests=20",
+        "thrift.client.lb.ejectionMillis=300",
+        "thrift.client.lb.maxEjectionMillis=1000"
+})
+class EndpointBalancingTest {
+
+    private static final String SLOW = "localhost:9097";
+
+    // the first backend answers at once, the second as configured by the test
+    private static final AtomicInteger fastCalls = new AtomicInteger();
+    private static final AtomicInteger slowCalls = new AtomicInteger();
+    private static volatile long slowMillis;
+    private static volatile boolean slowFails;
+
+    private static final List<TServer> servers = new ArrayList<>();
+
+    @BeforeAll
+    static void startServers() throws Exception {
+        start(9096, () -> {
+            fastCalls.incrementAndGet();
+            return new MessageResponse().setError(0).setMessage("fast");
+        });
+        start(9097, () -> {
+            slowCalls.incrementAndGet();
+            if (slowFails) {
+                throw new IllegalStateException("backend failure");
+            }
+            Thread.sleep(slowMillis);
+            return new MessageResponse().setError(0).setMessage("slow");
+        });
+    }
+
+    @AfterAll
+    static void stopServers() {
+        servers.forEach(TServer::stop);
+    }
+
+    @Autowired
+    MessageServiceClient client;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void awaitAdmitted() throws Exception {
+        slowFails = false;
+        slowMillis = 0;
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (ejected() && System.nanoTime() < until) {
+            Thread.sleep(20);
+        }
+        fastCalls.set(0);
+        slowCalls.set(0);
+    }
+
+    @Test
+    void callsGoToTheLessBusyEndpoint() throws Exception {
+        slowMillis = 100;
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            callers.add(Thread.ofVirtual().start(() -> {
+                while (System.nanoTime() < end) {
+                    try {
+                        client.sendMessageNoRandomDelay(message());
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }));
+        }
+        for (Thread caller : callers) {
+            caller.join();
+        }
+        assertTrue(fastCalls.get() > 5 * slowCalls.get(), fastCalls.get() + " fast, " + slowCalls.get() + " slow");
+    }
+
+    @Test
+    void failingEndpointIsEjectedThenReadmitted() throws Exception {
+        slowFails = true;
+        double ejectionsBefore = ejections();
+        int failures = 0;
+        for (int i = 0; i < 40; i++) {
+            try {
+                client.sendMessageNoRandomDelay(message());
+            } catch (TException e) {
+                failures++;
+            }
+        }
+        assertEquals(3, failures);
+        assertEquals(ejectionsBefore + 1, ejections());
+        assertTrue(ejected());
+
+        // once its time is up the endpoint gets calls again, and fails them
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (ejected() && System.nanoTime() < until) {
+            Thread.sleep(20);
+        }
+        int slowBefore = slowCalls.get();
+        for (int i = 0; i < 40 && slowCalls.get() == slowBefore; i++) {
+            try {
+                client.sendMessageNoRandomDelay(message());
+            } catch (TException ignored) {
+            }
+        }
+        assertTrue(slowCalls.get() > slowBefore);
+    }
+
+    @Test
+    void slowEndpointIsEjected() throws Exception {
+        slowMillis = 30;
+        double ejectionsBefore = ejections();
+        // sequential calls: both endpoints are idle at every pick, each gets about half until judged
+        for (int i = 0; i < 120 && ejections() == ejectionsBefore; i++) {
+            assertEquals(0, client.sendMessageNoRandomDelay(message()).getError());
+        }
+        assertEquals(ejectionsBefore + 1, ejections());
+        int slowBefore = slowCalls.get();
+        for (int i = 0; i < 20; i++) {
+            assertEquals("fast", client.sendMessageNoRandomDelay(message()).getMessage());
+        }
+        assertEquals(slowBefore, slowCalls.get());
+    }
+
+    private boolean ejected() {
+        return meterRegistry.get("thrift_client_endpoint_ejected").tag("endpoint", SLOW).gauge().value() == 1;
+    }
+
+    private double ejections() {
+        return meterRegistry.get("thrift_client_endpoint_ejections_total").tag("endpoint", SLOW).counter().count();
+    }
+
+    private static Message message() {
+        return new Message().setPhone("84900000081").setTemplateId("7895417a7d3f9461cd2e");
+    }
+
+    @FunctionalInterface
+    private interface Answer {
+        MessageResponse answer() throws Exception;
+    }
+
+    private static void start(int port, Answer answer) throws Exception {
+        MessageService.Iface handler = new MessageService.Iface() {
+            @Override
+            public MessageResponse sendMessage(Message message) throws TException {
+                return sendMessageNoRandomDelay(message);
+            }
+
+            @Override
+            public MessageResponse sendMessageNoRandomDelay(Message message) throws TException {
+                try {
+                    return answer.answer();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new TException(e);
+                }
+            }
+
+            @Override
+            public List<MessageResponse> sendMessages(List<Message> messages) {
+                return List.of();
+            }
+
+            @Override
+            public void sendMessagesOneway(List<Message> messages) {
+            }
+        };
+        TThreadPoolServer.Args args = new TThreadPoolServer.Args(new TServerSocket(new InetSocketAddress("localhost", port)))
+                .processor(new MessageService.Processor<>(handler))
+                .protocolFactory(new TBinaryProtocol.Factory())
+                .transportFactory(new TFramedTransport.Factory());
+        TServer server = new TThreadPoolServer(args);
+        Thread serverThread = new Thread(server::serve, "balancing-test-server-" + port);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        while (!server.isServing()) {
+            Thread.sleep(10);
+        }
+        servers.add(server);
+    }
+}
@@ -0,0 +1,137 @@
+package com.thrift.thriftbackend;
+
+import com.benchmark.common.deadline.Deadlines;
+import com.benchmark.common.id.MsgIdGenerator;
+import com.benchmark.common.idempotency.IdempotencyCache;
+import com.benchmark.common.journal.MessageJournal;
+import com.benchmark.common.latency.SimulatedLatency;
+import com.benchmark.common.quota.QuotaStore;
+import com.benchmark.common.ratelimit.RateLimiter;
+import com.benchmark.common.template.TemplateEngine;
+import com.thrift.thriftbackend.client.MessageServiceClient;
+import com.thrift.thriftbackend.config.ThriftStack;
+import com.thrift.thriftbackend.handler.MessageServiceHandler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TServerSocket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.InetSocketAddress;
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// the real handler twice: the embedded server and a second backend with its own idempotency cache, both
+// sending every message in 300 ms
+@SpringBootTest(properties = {
+        "thrift.server.port=9099",
+        "thrift.client.endpoints=localhost:9099,localhost:9100",
+        "thrift.client.pool.minIdle=0",
+        "thrift.client.hedge.enabled=true",
+        "thrift.client.hedge.delayMillis=50",
+        "thrift.client.hedge.maxRatio=0",
+        "thrift.client.hedge.burst=1",
+        "latency.model=fixed",
+        "latency.fixed.millis=300",
+        "quota.enabled=true",
+        "quota.dailyLimit=10"
+})
+class HedgedDeliveryTest {
+
+    private static final String PHONE = "84900000091";
+    private static final String TEMPLATE = "7895417a7d3f9461cd2e";
+
+    @Autowired
+    MessageServiceClient client;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    SimulatedLatency simulatedLatency;
+
+    @Autowired
+    MsgIdGenerator msgIdGenerator;
+
+    @Autowired
+    QuotaStore quotaStore;
+
+    @Autowired
+    TemplateEngine templateEngine;
+
+    @Autowired
+    MessageJournal journal;
+
+    @Autowired
+    RateLimiter rateLimiter;
+
+    @Autowired
+    Deadlines deadlines;
+
+    @Autowired
+    ThriftStack thriftStack;
+
+    private final MeterRegistry otherRegistry = new SimpleMeterRegistry();
+    private TServer other;
+
+    // the quota store is shared, as a central one would be, so both sends show in it
+    @BeforeEach
+    void startOtherBackend() throws Exception {
+        MessageServiceHandler handler = new MessageServiceHandler(otherRegistry, simulatedLatency, msgIdGenerator,
+                quotaStore, templateEngine,
+                new IdempotencyCache<>(true, 300_000, 1000, response -> response.getError() == 0, Clock.systemUTC()),
+                journal, rateLimiter, deadlines, thriftStack, 256, 1000);
+        TThreadPoolServer.Args args = new TThreadPoolServer.Args(new TServerSocket(new InetSocketAddress("localhost", 9100)))
+                .processor(new MessageService.Processor<>(handler))
+                .protocolFactory(new TBinaryProtocol.Factory())
+                .transportFactory(new TFramedTransport.Factory());
+        other = new TThreadPoolServer(args);
+        Thread serverThread = new Thread(other::serve, "hedged-delivery-test-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        while (!other.isServing()) {
+            Thread.sleep(10);
+        }
+    }
+
+    @AfterEach
+    void stopOtherBackend() {
+        other.stop();
+    }
+
+    @Test
+    void hedgeGoesToTheOtherBackendAndIsSentThereToo() throws Exception {
+        MessageResponse response = client.sendMessage(new Message().setPhone(PHONE).setTemplateId(TEMPLATE)
+                .setTrackingId("hedged-delivery-1"));
+        assertEquals(0, response.getError());
+        assertEquals(1.0, meterRegistry.get("thrift_client_hedge_total").tag("result", "sent").counter().count());
+
+        // the backend of the losing attempt does not know it lost: each backend sends the message once
+        awaitSends(meterRegistry);
+        awaitSends(otherRegistry);
+        assertEquals(1.0, sends(meterRegistry));
+        assertEquals(1.0, sends(otherRegistry));
+        assertEquals(quotaStore.dailyLimit() - 2, quotaStore.remaining(PHONE, TEMPLATE));
+    }
+
+    private static void awaitSends(MeterRegistry registry) throws InterruptedException {
+        long until = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (sends(registry) < 1 && System.nanoTime() < until) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static double sends(MeterRegistry registry) {
+        return registry.find("message_service_send_total").counters().stream().mapToDouble(Counter::count).sum();
+    }
+}
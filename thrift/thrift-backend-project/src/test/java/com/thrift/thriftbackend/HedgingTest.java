@@ -0,0 +1,138 @@
+package com.thrift.thriftbackend;
+
+import com.thrift.thriftbackend.client.MessageServiceClient;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TServerSocket;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = {
+        "thrift.server.enabled=false",
+        "thrift.client.endpoints=localhost:9095,localhost:9098",
+        "thrift.client.pool.minIdle=0",
+        "thrift.client.hedge.enabled=true",
+        "thrift.client.hedge.delayMillis=50",
+        "thrift.client.hedge.maxRatio=0",
+        "thrift.client.hedge.burst=1"
+})
+class HedgingTest {
+
+    // the first attempt of every tracking_id is slow, a second one answers at once
+    private static final long SLOW_MILLIS = 1_500;
+    private static final Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+    private static final List<TServer> servers = new ArrayList<>();
+
+    // two backends answering alike, a hedge goes to the one the first attempt did not
+    @BeforeAll
+    static void startServers() throws Exception {
+        start(9095);
+        start(9098);
+    }
+
+    @AfterAll
+    static void stopServers() {
+        servers.forEach(TServer::stop);
+    }
+
+    private static void start(int port) throws Exception {
+        MessageService.Iface handler = new MessageService.Iface() {
+            @Override
+            public MessageResponse sendMessage(Message message) {
+                int attempt = attempts.computeIfAbsent(String.valueOf(message.getTrackingId()),
+                        id -> new AtomicInteger()).incrementAndGet();
+                if (attempt == 1) {
+                    try {
+                        Thread.sleep(SLOW_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new MessageResponse().setError(0).setMessage("attempt " + attempt);
+            }
+
+            @Override
+            public MessageResponse sendMessageNoRandomDelay(Message message) {
+                return new MessageResponse().setError(0).setMessage("success");
+            }
+
+            @Override
+            public List<MessageResponse> sendMessages(List<Message> messages) {
+                return List.of();
+            }
+
+            @Override
+            public void sendMessagesOneway(List<Message> messages) {
+            }
+        };
+        TThreadPoolServer.Args args = new TThreadPoolServer.Args(new TServerSocket(new InetSocketAddress("localhost", port)))
+                .processor(new MessageService.Processor<>(handler))
+                .protocolFactory(new TBinaryProtocol.Factory())
+                .transportFactory(new TFramedTransport.Factory());
+        TServer server = new TThreadPoolServer(args);
+        Thread serverThread = new Thread(server::serve, "hedging-test-server-" + port);
+        serverThread.setDaemon(true);
+        serverThread.start();
+        while (!server.isServing()) {
+            Thread.sleep(10);
+        }
+        servers.add(server);
+    }
+
+    @Autowired
+    MessageServiceClient client;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    void slowCallIsHedgedOnceThenTheBudgetIsSpent() throws Exception {
+        long start = System.nanoTime();
+        MessageResponse hedged = client.sendMessage(message("hedge-1"));
+        assertEquals("attempt 2", hedged.getMessage());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS));
+        assertEquals(1.0, hedges("won"));
+
+        // burst=1 and nothing earned back: the next slow call waits for its only attempt
+        MessageResponse waited = client.sendMessage(message("hedge-2"));
+        assertEquals("attempt 1", waited.getMessage());
+        assertEquals(1.0, hedges("sent"));
+        assertEquals(1.0, hedges("denied"));
+
+        // the abandoned connection was closed, the pool still serves calls
+        assertEquals("success", client.sendMessageNoRandomDelay(message("hedge-3")).getMessage());
+    }
+
+    @Test
+    void messagesWithoutTrackingIdAreNotHedged() throws Exception {
+        MessageResponse response = client.sendMessage(new Message().setPhone("84900000071")
+                .setTemplateId("7895417a7d3f9461cd2e"));
+        assertEquals("attempt 1", response.getMessage());
+    }
+
+    private double hedges(String result) {
+        return meterRegistry.get("thrift_client_hedge_total").tag("result", result).counter().count();
+    }
+
+    private static Message message(String trackingId) {
+        return new Message().setPhone("84900000071").setTemplateId("7895417a7d3f9461cd2e").setTrackingId(trackingId);
+    }
+}
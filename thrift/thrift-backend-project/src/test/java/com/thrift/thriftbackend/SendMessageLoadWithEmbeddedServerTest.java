@@ -1,5 +1,7 @@
 package com.thrift.thriftbackend;
 
+import com.thrift.thriftbackend.client.AsyncMessageServiceClient;
+import com.thrift.thriftbackend.client.MessageBatcher;
 import com.thrift.thriftbackend.client.MessageServiceClient;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
@@ -15,11 +17,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @SpringBootTest(properties = {
         "thrift.server.enabled=false",    // prevent Spring server
         "thrift.server.host=localhost",
-        "thrift.server.port=9090"
+        "thrift.server.port=9090",
+        "thrift.client.async.maxConnections=8",
+        "thrift.client.async.maxQueued=500",
+        "thrift.client.async.queueTimeoutMillis=1000"
 })
 class SendMessageLoadWithEmbeddedServerTest {
 
@@ -31,13 +43,32 @@ class SendMessageLoadWithEmbeddedServerTest {
         MessageService.Iface handler = new MessageService.Iface() {
             @Override
             public MessageResponse sendMessage(Message message) throws TException {
-                return null;
+                // holds its connection longer than a queued call may wait for one
+                try {
+                    Thread.sleep(1500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new MessageResponse().setError(0).setMessage("slow");
             }
 
             @Override
             public MessageResponse sendMessageNoRandomDelay(Message message) {
                 return new MessageResponse().setError(0).setMessage("success");
             }
+
+            @Override
+            public List<MessageResponse> sendMessages(List<Message> messages) {
+                List<MessageResponse> responses = new ArrayList<>(messages.size());
+                for (Message message : messages) {
+                    responses.add(new MessageResponse().setError(0).setMessage(message.getTrackingId()));
+                }
+                return responses;
+            }
+
+            @Override
+            public void sendMessagesOneway(List<Message> messages) {
+            }
         };
         MessageService.Processor<MessageService.Iface> processor = new MessageService.Processor<>(handler);
         TServerSocket socket = new TServerSocket(new InetSocketAddress("localhost", 9090));
@@ -62,11 +93,17 @@ class SendMessageLoadWithEmbeddedServerTest {
     @Autowired
     MessageServiceClient client;
 
+    @Autowired
+    MessageBatcher batcher;
+
+    @Autowired
+    AsyncMessageServiceClient asyncClient;
+
     @Test
     void test_roundTrip() throws TException, InterruptedException {
         MessageServiceClient.ClientConnection conn = client.getClient();
         try {
-            Message msg = new Message().setPhone("123").setTemplateId("1234");
+            Message msg = new Message().setPhone("123").setTemplateId("7895417a7d3f9461cd2e");
             MessageResponse resp = conn.client().sendMessageNoRandomDelay(msg);
             System.out.println(resp);
             Assertions.assertNotNull(resp);
@@ -74,4 +111,62 @@ class SendMessageLoadWithEmbeddedServerTest {
             client.releaseConnection(conn);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void test_sendMessagesKeepsRequestOrder() throws Exception {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            messages.add(new Message().setPhone("123").setTemplateId("7895417a7d3f9461cd2e").setTrackingId("t" + i));
+        }
+        List<MessageResponse> responses = client.sendMessages(messages);
+        Assertions.assertEquals(messages.size(), responses.size());
+        for (int i = 0; i < messages.size(); i++) {
+            Assertions.assertEquals("t" + i, responses.get(i).getMessage());
+        }
+    }
+
+    @Test
+    void test_batcherCompletesEveryMessage() throws Exception {
+        List<CompletableFuture<MessageResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            futures.add(batcher.send(new Message().setPhone("123").setTemplateId("7895417a7d3f9461cd2e").setTrackingId("t" + i)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            Assertions.assertEquals("t" + i, futures.get(i).get(5, TimeUnit.SECONDS).getMessage());
+        }
+    }
+
+    @Test
+    void test_asyncClientSharesFewConnections() throws Exception {
+        List<CompletableFuture<MessageResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            futures.add(asyncClient.sendMessageNoRandomDelay(new Message().setPhone("123").setTemplateId("7895417a7d3f9461cd2e")));
+        }
+        for (CompletableFuture<MessageResponse> future : futures) {
+            Assertions.assertEquals("success", future.get(5, TimeUnit.SECONDS).getMessage());
+        }
+        Assertions.assertTrue(asyncClient.openConnections() <= 8);
+    }
+
+    @Test
+    void test_asyncQueueIsBoundedAndTimesOut() throws Exception {
+        // 8 slow calls hold every connection, 500 wait for one and the last 2 find the queue full
+        List<CompletableFuture<MessageResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 510; i++) {
+            futures.add(asyncClient.sendMessage(new Message().setPhone("123").setTemplateId("7895417a7d3f9461cd2e")));
+        }
+        for (int i = 508; i < 510; i++) {
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class, futures.get(i)::get);
+            Assertions.assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        }
+        for (int i = 8; i < 508; i++) {
+            CompletableFuture<MessageResponse> queued = futures.get(i);
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                    () -> queued.get(5, TimeUnit.SECONDS));
+            Assertions.assertInstanceOf(TimeoutException.class, e.getCause());
+        }
+        for (int i = 0; i < 8; i++) {
+            Assertions.assertEquals("slow", futures.get(i).get(5, TimeUnit.SECONDS).getMessage());
+        }
+    }
+}
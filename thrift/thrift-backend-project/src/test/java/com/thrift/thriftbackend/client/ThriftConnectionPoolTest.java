@@ -0,0 +1,209 @@
+package com.thrift.thriftbackend.client;
+
+import com.thrift.thriftbackend.client.MessageServiceClient.ClientConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.thrift.transport.TTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThriftConnectionPoolTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final List<FakeTransport> opened = new ArrayList<>();
+    private ThriftConnectionPool pool;
+
+    @AfterEach
+    void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void idleConnectionsAreEvictedDownToMinIdle() throws Exception {
+        pool = pool(new ThriftConnectionPool.Settings(4, 1, 4, 1000, 1000, 0, 0));
+        List<ClientConnection> borrowed = List.of(pool.borrow(), pool.borrow(), pool.borrow());
+        borrowed.forEach(pool::release);
+        assertEquals(3, pool.idle());
+
+        clock.addAndGet(999);
+        pool.housekeep();
+        assertEquals(3, pool.idle());
+
+        clock.addAndGet(1);
+        pool.housekeep();
+        assertEquals(1, pool.idle());
+        assertEquals(2, closed());
+    }
+
+    @Test
+    void connectionsPastTheirLifetimeAreClosed() throws Exception {
+        pool = pool(new ThriftConnectionPool.Settings(4, 0, 4, 1000, 0, 5000, 0));
+        ClientConnection first = pool.borrow();
+        ClientConnection second = pool.borrow();
+        pool.release(second);
+
+        clock.addAndGet(5000);
+        // on release
+        pool.release(first);
+        assertFalse(first.isOpen());
+        // and while idle
+        pool.housekeep();
+        assertFalse(second.isOpen());
+        assertEquals(0, pool.idle());
+        assertEquals(0, pool.active());
+    }
+
+    @Test
+    void idleConnectionsFailingValidationAreClosed() throws Exception {
+        pool = pool(new ThriftConnectionPool.Settings(4, 0, 4, 1000, 0, 0, 1000));
+        ClientConnection conn = pool.borrow();
+        pool.release(conn);
+
+        clock.addAndGet(1000);
+        // a fake connection has no socket to probe, so it fails
+        pool.housekeep();
+        assertFalse(conn.isOpen());
+        assertEquals(0, pool.idle());
+    }
+
+    @Test
+    void borrowSkipsIdleConnectionsClosedMeanwhile() throws Exception {
+        pool = pool(new ThriftConnectionPool.Settings(4, 0, 4, 1000, 0, 0, 0));
+        ClientConnection conn = pool.borrow();
+        pool.release(conn);
+        conn.transport().close();
+
+        ClientConnection next = pool.borrow();
+        assertNotSame(conn, next);
+        assertTrue(next.isOpen());
+        assertEquals(1, pool.active());
+        assertEquals(0, pool.idle());
+    }
+
+    @Test
+    void releaseClosesConnectionsAboveMaxIdle() throws Exception {
+        pool = pool(new ThriftConnectionPool.Settings(4, 0, 1, 1000, 0, 0, 0));
+        ClientConnection first = pool.borrow();
+        ClientConnection second = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+
+        assertTrue(first.isOpen());
+        assertFalse(second.isOpen());
+        assertEquals(1, pool.idle());
+    }
+
+    @Test
+    void releasedConnectionIsHandedToAWaiter() throws Exception {
+        pool = pool(new ThriftConnectionPool.Settings(1, 0, 1, 10_000, 0, 0, 0));
+        ClientConnection conn = pool.borrow();
+        CompletableFuture<ClientConnection> waiter = CompletableFuture.supplyAsync(this::borrow);
+        awaitPending(1);
+
+        long start = System.nanoTime();
+        pool.release(conn);
+        assertSame(conn, waiter.get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals(0, pool.pending());
+        assertEquals(0, pool.idle());
+    }
+
+    @Test
+    void connectionDestroyedWhileCallersWaitIsReplaced() throws Exception {
+        pool = pool(new ThriftConnectionPool.Settings(1, 0, 1, 10_000, 0, 0, 0));
+        ClientConnection conn = pool.borrow();
+        CompletableFuture<ClientConnection> waiter = CompletableFuture.supplyAsync(this::borrow);
+        awaitPending(1);
+
+        pool.invalidate(conn);
+        ClientConnection replacement = waiter.get(5, TimeUnit.SECONDS);
+        assertNotSame(conn, replacement);
+        assertTrue(replacement.isOpen());
+    }
+
+    @Test
+    void waiterTimesOutWhenNothingIsReleased() throws Exception {
+        pool = pool(new ThriftConnectionPool.Settings(1, 0, 1, 50, 0, 0, 0));
+        pool.borrow();
+
+        long start = System.nanoTime();
+        assertThrows(RuntimeException.class, pool::borrow);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(0, pool.pending());
+    }
+
+    private ThriftConnectionPool pool(ThriftConnectionPool.Settings settings) {
+        return new ThriftConnectionPool(() -> {
+            FakeTransport transport = new FakeTransport();
+            synchronized (opened) {
+                opened.add(transport);
+            }
+            return new ClientConnection(null, transport, null);
+        }, settings, clock::get, new SimpleMeterRegistry(), "binary", "fake:1");
+    }
+
+    private ClientConnection borrow() {
+        try {
+            return pool.borrow();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void awaitPending(int waiters) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.pending() < waiters && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(waiters, pool.pending());
+    }
+
+    private long closed() {
+        synchronized (opened) {
+            return opened.stream().filter(transport -> !transport.isOpen()).count();
+        }
+    }
+
+    private static final class FakeTransport extends TTransport {
+        private volatile boolean open = true;
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void open() {
+            open = true;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(byte[] buf, int off, int len) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -18,6 +18,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -29,6 +30,8 @@ public class SendMessageLoadTest {
 
     private static final Logger logger = org.slf4j.LoggerFactory.getLogger(SendMessageLoadTest.class);
 
+    private final AtomicLong trackingIds = new AtomicLong();
+
     @Autowired
     private MessageServiceClient messageServiceClient;
 
@@ -134,7 +137,8 @@ public class SendMessageLoadTest {
             Message message = new Message();
             message.setPhone("84987654321")
                     .setTemplateId("7895417a7d3f9461cd2e")
-                    .setTrackingId("tracking_id")
+                    // unique per message, a repeated tracking_id would be answered from the idempotency cache
+                    .setTrackingId("tracking_id-" + trackingIds.incrementAndGet())
                     .setTemplateData(Map.of("ky", "1", "thang", "4/2020",
                             "start_date", "20/03/2020",
                             "end_date", "20/04/2020",
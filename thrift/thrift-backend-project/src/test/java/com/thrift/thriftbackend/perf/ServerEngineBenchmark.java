@@ -0,0 +1,182 @@
+package com.thrift.thriftbackend.perf;
+
+import com.thrift.thriftbackend.Message;
+import com.thrift.thriftbackend.MessageResponse;
+import com.thrift.thriftbackend.MessageService;
+import com.thrift.thriftbackend.config.ThriftServerEngine;
+import com.thrift.thriftbackend.config.ThriftStack;
+import com.thrift.thriftbackend.handler.MessageServiceHandler;
+import org.apache.thrift.server.TServer;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the Thrift server engines on the real {@link MessageServiceHandler}: every engine and executor of
+ * {@link ThriftServerEngine} is started in turn on a loopback port and driven by {@code concurrency} closed-loop
+ * clients, each on its own connection, first with {@code sendMessage} (random delay) then with
+ * {@code sendMessageNoRandomDelay} (10 ms). Calls and latency percentiles are printed as a table and written to
+ * {@code build/reports/engine-benchmark.csv}.
+ * <p>
+ * Not part of {@code test}; run with
+ * {@code ./gradlew engineBenchmark -Pconcurrency=256 -Pduration=20 -Pwarmup=5} (seconds).
+ *
+ * @author phonghv
+ */
+@SpringBootTest(properties = {
+        "thrift.server.enabled=false",
+        "quota.enabled=false",
+        "idempotency.enabled=false"
+})
+class ServerEngineBenchmark {
+
+    private static final Logger logger = org.slf4j.LoggerFactory.getLogger(ServerEngineBenchmark.class);
+
+    private static final List<String[]> ENGINES = List.of(
+            new String[]{"threaded-selector", "pool"},
+            new String[]{"threaded-selector", "virtual"},
+            new String[]{"hsha", "pool"},
+            new String[]{"hsha", "virtual"},
+            new String[]{"thread-pool", "pool"},
+            new String[]{"thread-pool", "virtual"});
+    private static final List<String> METHODS = List.of("sendMessage", "sendMessageNoRandomDelay");
+
+    private final int concurrency = Integer.getInteger("engineBenchmark.concurrency", 64);
+    private final long durationMillis = Long.getLong("engineBenchmark.duration", 10) * 1000;
+    private final long warmupMillis = Long.getLong("engineBenchmark.warmup", 3) * 1000;
+
+    @Autowired
+    MessageServiceHandler handler;
+
+    @Autowired
+    ThriftStack thriftStack;
+
+    @Test
+    void compareEngines() throws Exception {
+        List<String> rows = new ArrayList<>();
+        rows.add("engine,executor,method,concurrency,calls,errors,throughput_per_s,p50_ms,p99_ms,p999_ms,max_ms");
+        for (String[] engine : ENGINES) {
+            for (String method : METHODS) {
+                rows.add(run(ThriftServerEngine.of(engine[0], engine[1], 16, 4, 32, 0), method));
+            }
+        }
+        Path report = Path.of("build", "reports", "engine-benchmark.csv");
+        Files.createDirectories(report.getParent());
+        Files.write(report, rows);
+
+        StringBuilder table = new StringBuilder("\n");
+        for (String row : rows) {
+            for (String column : row.split(",")) {
+                table.append(String.format("%-26s", column));
+            }
+            table.append('\n');
+        }
+        logger.info("Thrift server engines, {} clients, {} s per run, written to {}:{}", concurrency,
+                durationMillis / 1000, report.toAbsolutePath(), table);
+    }
+
+    private String run(ThriftServerEngine engine, String method) throws Exception {
+        int port = freePort();
+        TServer server = engine.create(new InetSocketAddress("localhost", port),
+                new MessageService.Processor<>(handler), false, thriftStack);
+        Thread serverThread = new Thread(server::serve, "engine-benchmark-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        while (!server.isServing()) {
+            Thread.sleep(10);
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmupMillis * 1_000_000;
+        long end = measureFrom + durationMillis * 1_000_000;
+        AtomicLong errors = new AtomicLong();
+        long[][] latencies = new long[concurrency][];
+        List<Thread> clients = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            int client = i;
+            clients.add(Thread.ofVirtual().start(() ->
+                    latencies[client] = callUntil(port, method, client, measureFrom, end, errors)));
+        }
+        for (Thread client : clients) {
+            client.join();
+        }
+        server.stop();
+        serverThread.join(10_000);
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        double seconds = durationMillis / 1000.0;
+        return String.join(",", engine.engine(), engine.executor(), method, String.valueOf(concurrency),
+                String.valueOf(all.length), String.valueOf(errors.get()),
+                String.format("%.1f", all.length / seconds),
+                millis(all, 0.50), millis(all, 0.99), millis(all, 0.999),
+                all.length == 0 ? "" : String.format("%.2f", all[all.length - 1] / 1e6));
+    }
+
+    // one connection per client, calls back to back; latencies in nanoseconds of the calls started after warm-up
+    private long[] callUntil(int port, String method, int client, long measureFrom, long end, AtomicLong errors) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        Message message = new Message()
+                .setPhone("849" + String.format("%08d", client))
+                .setTemplateId("7895417a7d3f9461cd2e")
+                .setTemplateData(Map.of("ky", "1", "thang", "4/2020", "start_date", "20/03/2020",
+                        "end_date", "20/04/2020", "customer", "Nguyễn Thị Hoàng Anh", "cid", "PE010299485",
+                        "address", "VNG Campus, TP.HCM", "amount", "100", "total", "100000"));
+        TTransport transport = null;
+        try {
+            TSocket socket = new TSocket("localhost", port, 30_000);
+            transport = thriftStack.transportFactory().getTransport(socket);
+            transport.open();
+            MessageService.Client thrift = new MessageService.Client(thriftStack.protocolFactory().getProtocol(transport));
+            for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+                MessageResponse response = method.equals("sendMessage")
+                        ? thrift.sendMessage(message)
+                        : thrift.sendMessageNoRandomDelay(message);
+                long done = System.nanoTime();
+                if (response.getError() != 0) {
+                    errors.incrementAndGet();
+                } else if (now >= measureFrom && done <= end) {
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = done - now;
+                }
+            }
+        } catch (Exception e) {
+            // a connection the engine could not serve in time, e.g. thread-pool with every worker taken
+            errors.incrementAndGet();
+        } finally {
+            if (transport != null) {
+                transport.close();
+            }
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static String millis(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return "";
+        }
+        return String.format("%.2f", sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)] / 1e6);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}